@@ -0,0 +1,141 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.android.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.oscim.core.Tile;
+import org.oscim.renderer.bucket.BucketCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * Stores {@link BucketCache} entries in a SQLite database.
+ */
+public class BucketStore implements BucketCache.Store {
+	static final Logger log = LoggerFactory.getLogger(BucketStore.class);
+
+	static final String TABLE_NAME = "buckets";
+	static final String COLUMN_DATA = "data";
+
+	private final SQLiteDatabase mDatabase;
+	private final SQLiteStatement mStmtPutEntry;
+
+	private final String[] mQueryVals = new String[4];
+
+	public BucketStore(Context context, String dbName) {
+		mDatabase = new SQLiteHelper(context, dbName).getWritableDatabase();
+
+		mStmtPutEntry = mDatabase.compileStatement("" +
+		        "INSERT OR REPLACE INTO " + TABLE_NAME +
+		        " (ns, x, y, z, data)" +
+		        " VALUES(?,?,?,?,?)");
+	}
+
+	public void dispose() {
+		if (mDatabase.isOpen())
+			mDatabase.close();
+	}
+
+	@Override
+	public synchronized ByteBuffer read(Tile tile, String namespace) {
+		mQueryVals[0] = namespace;
+		mQueryVals[1] = String.valueOf(tile.zoomLevel);
+		mQueryVals[2] = String.valueOf(tile.tileX);
+		mQueryVals[3] = String.valueOf(tile.tileY);
+
+		Cursor cursor = mDatabase.rawQuery("SELECT " + COLUMN_DATA +
+		        " FROM " + TABLE_NAME +
+		        " WHERE ns=? AND z=? AND x=? AND y=?", mQueryVals);
+
+		try {
+			if (!cursor.moveToFirst())
+				return null;
+
+			byte[] bytes = cursor.getBlob(0);
+			ByteBuffer data = ByteBuffer.allocateDirect(bytes.length)
+			    .order(ByteOrder.nativeOrder());
+			data.put(bytes);
+			data.clear();
+			return data;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	@Override
+	public void write(Tile tile, String namespace, ByteBuffer data) {
+		ByteBuffer d = data.duplicate();
+		d.clear();
+		byte[] bytes = new byte[d.remaining()];
+		d.get(bytes);
+
+		synchronized (mStmtPutEntry) {
+			mStmtPutEntry.bindString(1, namespace);
+			mStmtPutEntry.bindLong(2, tile.tileX);
+			mStmtPutEntry.bindLong(3, tile.tileY);
+			mStmtPutEntry.bindLong(4, tile.zoomLevel);
+			mStmtPutEntry.bindBlob(5, bytes);
+
+			mStmtPutEntry.execute();
+			mStmtPutEntry.clearBindings();
+		}
+	}
+
+	class SQLiteHelper extends SQLiteOpenHelper {
+		private static final int DATABASE_VERSION = 1;
+
+		private static final String SCHEMA =
+		        "CREATE TABLE "
+		                + TABLE_NAME + "("
+		                + "ns TEXT NOT NULL,"
+		                + "x INTEGER NOT NULL,"
+		                + "y INTEGER NOT NULL,"
+		                + "z INTEGER NOT NULL,"
+		                + COLUMN_DATA + " BLOB,"
+		                + "PRIMARY KEY(ns,x,y,z));";
+
+		public SQLiteHelper(Context context, String dbName) {
+			super(context, dbName, null, DATABASE_VERSION);
+		}
+
+		@Override
+		public void onCreate(SQLiteDatabase db) {
+			log.debug("create table");
+			db.execSQL(SCHEMA);
+		}
+
+		@Override
+		public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+			log.debug("drop table");
+			db.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME);
+			onCreate(db);
+		}
+
+		@Override
+		public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+			onUpgrade(db, oldVersion, newVersion);
+		}
+	}
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.oscim.awt.AwtGraphics;
+import org.oscim.backend.AssetAdapter;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.MapElement;
+import org.oscim.core.Tile;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.ITileDataSink.QueryResult;
+import org.oscim.utils.IOUtils;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Access to the benchmark input data. By default the fixtures written by
+ * {@link FixtureWriter} are used: vector tiles from the data directory
+ * ('vtm.bench.data' system property, default 'fixtures') and the mapsforge
+ * file 'sample.map' in it. Other tiles can be used with a data directory
+ * in the same layout, another map file with 'vtm.bench.mapfile'.
+ */
+final class BenchmarkData {
+
+	static final String DATA_DIR = "vtm.bench.data";
+	static final String MAP_FILE = "vtm.bench.mapfile";
+
+	static final String MAP_FILE_NAME = "sample.map";
+
+	static final String OSCIMAP4 = "oscimap4";
+	static final String MAPNIK = "mapnik";
+
+	private static boolean initialized;
+
+	private BenchmarkData() {
+	}
+
+	static File dataDir() {
+		return new File(System.getProperty(DATA_DIR, "fixtures"));
+	}
+
+	static File mapFile() {
+		String file = System.getProperty(MAP_FILE);
+		if (file != null)
+			return new File(file);
+
+		return new File(dataDir(), MAP_FILE_NAME);
+	}
+
+	/** Directory of tiles in 'format' (z/x/y.tile) */
+	static File tileDir(String format) {
+		return tileDir(dataDir(), format);
+	}
+
+	static File tileDir(File dataDir, String format) {
+		return new File(dataDir, format);
+	}
+
+	/** Init graphics and assets backend for loading themes. */
+	static synchronized void init() {
+		if (initialized)
+			return;
+
+		AwtGraphics.init();
+		AssetAdapter.init(new AssetAdapter() {
+			@Override
+			public InputStream openFileAsStream(String name) {
+				return BenchmarkData.class.getResourceAsStream("/assets/" + name);
+			}
+		});
+		initialized = true;
+	}
+
+	static final class RecordedTile {
+		final Tile tile;
+		final byte[] data;
+
+		RecordedTile(Tile tile, byte[] data) {
+			this.tile = tile;
+			this.data = data;
+		}
+	}
+
+	/**
+	 * Read all tiles of a tile directory (z/x/y.tile) into memory.
+	 * 
+	 * @throws IllegalStateException
+	 *             when there are no tiles to read.
+	 */
+	static List<RecordedTile> readTiles(File dir) throws IOException {
+		List<RecordedTile> tiles = new ArrayList<RecordedTile>();
+
+		for (File z : listFiles(dir)) {
+			for (File x : listFiles(z)) {
+				for (File y : listFiles(x)) {
+					String name = y.getName();
+					if (!name.endsWith(".tile"))
+						continue;
+
+					try {
+						int tileX = Integer.parseInt(x.getName());
+						int tileY = Integer.parseInt(name.substring(0, name.length() - 5));
+						int zoom = Integer.parseInt(z.getName());
+						tiles.add(new RecordedTile(new Tile(tileX, tileY, (byte) zoom),
+						                           readFile(y)));
+					} catch (NumberFormatException e) {
+						/* not a tile */
+					}
+				}
+			}
+		}
+
+		if (tiles.isEmpty())
+			throw new IllegalStateException("No tiles in " + dir
+			        + " - run 'gradle :vtm-benchmarks:fixtures' to write them");
+
+		/* keep the order stable between runs */
+		Collections.sort(tiles, new Comparator<RecordedTile>() {
+			@Override
+			public int compare(RecordedTile a, RecordedTile b) {
+				if (a.tile.zoomLevel != b.tile.zoomLevel)
+					return a.tile.zoomLevel - b.tile.zoomLevel;
+				if (a.tile.tileX != b.tile.tileX)
+					return a.tile.tileX - b.tile.tileX;
+				return a.tile.tileY - b.tile.tileY;
+			}
+		});
+		return tiles;
+	}
+
+	private static File[] listFiles(File dir) {
+		File[] files = dir.listFiles();
+		return files == null ? new File[0] : files;
+	}
+
+	private static byte[] readFile(File f) throws IOException {
+		byte[] data = new byte[(int) f.length()];
+		FileInputStream is = new FileInputStream(f);
+		try {
+			int pos = 0;
+			while (pos < data.length) {
+				int n = is.read(data, pos, data.length - pos);
+				if (n < 0)
+					throw new IOException("unexpected end of " + f);
+				pos += n;
+			}
+		} finally {
+			IOUtils.closeQuietly(is);
+		}
+		return data;
+	}
+
+	/**
+	 * Passes decoded elements to the Blackhole so that decoding can not be
+	 * optimized away.
+	 */
+	static final class BlackholeSink implements ITileDataSink {
+		Blackhole bh;
+		QueryResult result;
+		int elements;
+
+		BlackholeSink reset(Blackhole bh) {
+			this.bh = bh;
+			this.result = null;
+			this.elements = 0;
+			return this;
+		}
+
+		@Override
+		public void process(MapElement element) {
+			elements++;
+			bh.consume(element.pointPos);
+			bh.consume(element.tags.numTags);
+		}
+
+		@Override
+		public void setTileImage(Bitmap bitmap) {
+			bh.consume(bitmap);
+		}
+
+		@Override
+		public void completed(QueryResult result) {
+			this.result = result;
+		}
+	}
+}
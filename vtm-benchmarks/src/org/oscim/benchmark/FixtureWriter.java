@@ -0,0 +1,827 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.zip.DeflaterOutputStream;
+
+import org.oscim.core.MercatorProjection;
+import org.oscim.core.Tile;
+import org.oscim.tiling.source.mapfile.Projection;
+import org.oscim.tiling.source.oscimap4.Tags;
+import org.oscim.utils.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the benchmark fixtures: a small synthetic town with streets,
+ * buildings, parks, a river and POIs as mapsforge map file (sample.map) and
+ * the same features as OSciMap4 and Mapnik vector tiles in z/x/y.tile
+ * directories (oscimap4/, mapnik/).
+ * <p>
+ * The output only depends on the fixed seed, i.e. the committed fixtures
+ * can be regenerated with 'gradle :vtm-benchmarks:fixtures' when the
+ * formats change.
+ *
+ * <pre>
+ * FixtureWriter [directory]
+ * </pre>
+ */
+public class FixtureWriter {
+	static final Logger log = LoggerFactory.getLogger(FixtureWriter.class);
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	static final long SEED = 1;
+
+	static final double MIN_LAT = 53.070;
+	static final double MIN_LON = 8.780;
+	static final double MAX_LAT = 53.090;
+	static final double MAX_LON = 8.820;
+
+	/** streets in each direction */
+	static final int ROWS = 20;
+	static final int COLS = 25;
+
+	/** single mapsforge sub-file */
+	static final int BASE_ZOOM = 14;
+	static final int ZOOM_MIN = 10;
+	static final int ZOOM_MAX = 21;
+
+	/** fixed map date, 2015-01-01 */
+	static final long MAP_DATE = 1420070400000L;
+
+	/** zoom levels of the vector tiles */
+	static final int TILE_ZOOM_MIN = 12;
+	static final int TILE_ZOOM_MAX = 14;
+
+	/** coordinate extent of OSciMap4 and Mapnik tiles */
+	static final int EXTENT = 4096;
+
+	static final int POINT = 0;
+	static final int LINE = 1;
+	static final int POLY = 2;
+
+	static final class Feature {
+		final int type;
+		/** minimum zoom level */
+		final int zoom;
+		/** key, value pairs */
+		final String[] tags;
+		final String name;
+		/** polygons are closed, the last point repeats the first */
+		final double[] lat;
+		final double[] lon;
+
+		double minLat = Double.MAX_VALUE, minLon = Double.MAX_VALUE;
+		double maxLat = -Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
+
+		Feature(int type, int zoom, String name, double[] lat, double[] lon, String... tags) {
+			this.type = type;
+			this.zoom = zoom;
+			this.name = name;
+			this.lat = lat;
+			this.lon = lon;
+			this.tags = tags;
+
+			for (int i = 0; i < lat.length; i++) {
+				minLat = Math.min(minLat, lat[i]);
+				maxLat = Math.max(maxLat, lat[i]);
+				minLon = Math.min(minLon, lon[i]);
+				maxLon = Math.max(maxLon, lon[i]);
+			}
+		}
+
+		boolean intersects(double south, double west, double north, double east) {
+			return minLat <= north && maxLat >= south && minLon <= east && maxLon >= west;
+		}
+
+		/** number of points, without the closing point of polygons */
+		int numPoints() {
+			return type == POLY ? lat.length - 1 : lat.length;
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		File dir = args.length > 0 ? new File(args[0]) : BenchmarkData.dataDir();
+
+		List<Feature> features = createFeatures(new Random(SEED));
+
+		File mapFile = new File(dir, BenchmarkData.MAP_FILE_NAME);
+		writeFile(mapFile, writeMapFile(features));
+		log.info("wrote {}: {} features, {} bytes", mapFile,
+		         Integer.valueOf(features.size()), Long.valueOf(mapFile.length()));
+
+		for (int z = TILE_ZOOM_MIN; z <= TILE_ZOOM_MAX; z++) {
+			int scale = 1 << z;
+			int minX = (int) (MercatorProjection.longitudeToX(MIN_LON) * scale);
+			int maxX = (int) (MercatorProjection.longitudeToX(MAX_LON) * scale);
+			int minY = (int) (MercatorProjection.latitudeToY(MAX_LAT) * scale);
+			int maxY = (int) (MercatorProjection.latitudeToY(MIN_LAT) * scale);
+
+			for (int x = minX; x <= maxX; x++) {
+				for (int y = minY; y <= maxY; y++) {
+					Tile tile = new Tile(x, y, (byte) z);
+					List<Feature> f = tileFeatures(tile, features);
+
+					writeFile(tileFile(dir, BenchmarkData.OSCIMAP4, tile),
+					          encodeOSciMap4(tile, f));
+					writeFile(tileFile(dir, BenchmarkData.MAPNIK, tile),
+					          encodeMapnik(tile, f));
+				}
+			}
+			log.info("wrote tiles of zoom level {}: {}", Integer.valueOf(z),
+			         Integer.valueOf((maxX - minX + 1) * (maxY - minY + 1)));
+		}
+	}
+
+	static File tileFile(File dir, String format, Tile tile) {
+		return new File(BenchmarkData.tileDir(dir, format),
+		                tile.zoomLevel + "/" + tile.tileX + "/" + tile.tileY + ".tile");
+	}
+
+	static void writeFile(File file, byte[] data) throws IOException {
+		File parent = file.getParentFile();
+		if (!parent.isDirectory() && !parent.mkdirs())
+			throw new IOException("cannot create " + parent);
+
+		FileOutputStream os = new FileOutputStream(file);
+		try {
+			os.write(data);
+		} finally {
+			IOUtils.closeQuietly(os);
+		}
+	}
+
+	static List<Feature> createFeatures(Random rnd) {
+		List<Feature> features = new ArrayList<Feature>();
+
+		double dLat = (MAX_LAT - MIN_LAT) / ROWS;
+		double dLon = (MAX_LON - MIN_LON) / COLS;
+
+		features.add(rect(12, null, MIN_LAT, MIN_LON, MAX_LAT, MAX_LON,
+		                  "landuse", "residential"));
+
+		/* river through the south of the town */
+		int n = 40;
+		double[] lat = new double[2 * n + 1];
+		double[] lon = new double[2 * n + 1];
+		for (int i = 0; i < n; i++) {
+			double wave = 0.0006 * Math.sin(i * 0.5);
+			lon[i] = lon[2 * n - 1 - i] = MIN_LON + (MAX_LON - MIN_LON) * i / (n - 1);
+			lat[i] = MIN_LAT + 3.6 * dLat + wave;
+			lat[2 * n - 1 - i] = MIN_LAT + 3.2 * dLat + wave;
+		}
+		lat[2 * n] = lat[0];
+		lon[2 * n] = lon[0];
+		features.add(new Feature(POLY, 10, "River", lat, lon, "natural", "water"));
+
+		/* street grid, every fifth street is a primary road */
+		for (int r = 0; r < ROWS; r++) {
+			lat = new double[COLS + 2];
+			lon = new double[COLS + 2];
+			for (int c = 0; c < COLS + 2; c++) {
+				lat[c] = MIN_LAT + (r + 0.5) * dLat;
+				lon[c] = MIN_LON + Math.max(0, Math.min(COLS, c - 0.5)) * dLon;
+			}
+			features.add(street(r % 5 == 2, "Street " + (r + 1), lat, lon));
+		}
+		for (int c = 0; c < COLS; c++) {
+			lat = new double[ROWS + 2];
+			lon = new double[ROWS + 2];
+			for (int r = 0; r < ROWS + 2; r++) {
+				lat[r] = MIN_LAT + Math.max(0, Math.min(ROWS, r - 0.5)) * dLat;
+				lon[r] = MIN_LON + (c + 0.5) * dLon;
+			}
+			features.add(street(c % 5 == 2, "Avenue " + (c + 1), lat, lon));
+		}
+
+		/* blocks between the streets */
+		String[][] pois = {
+		        { "amenity", "cafe" },
+		        { "amenity", "restaurant" },
+		        { "shop", "bakery" },
+		        { "shop", "supermarket" } };
+
+		int numParks = 0;
+		int numPois = 0;
+		for (int r = 0; r < ROWS - 1; r++) {
+			for (int c = 0; c < COLS - 1; c++) {
+				double south = MIN_LAT + (r + 0.5) * dLat;
+				double west = MIN_LON + (c + 0.5) * dLon;
+				double h = dLat;
+				double w = dLon;
+
+				if (rnd.nextInt(20) == 0) {
+					features.add(rect(12, "Park " + (++numParks),
+					                  south + 0.1 * h, west + 0.1 * w,
+					                  south + 0.9 * h, west + 0.9 * w,
+					                  "leisure", "park"));
+					continue;
+				}
+
+				/* up to three buildings side by side */
+				int num = 1 + rnd.nextInt(3);
+				for (int i = 0; i < num; i++) {
+					double x = west + w * (0.15 + 0.25 * i + 0.05 * rnd.nextDouble());
+					double y = south + h * (0.15 + 0.1 * rnd.nextDouble());
+					features.add(rect(14, null, y, x,
+					                  y + h * (0.4 + 0.3 * rnd.nextDouble()),
+					                  x + w * (0.15 + 0.05 * rnd.nextDouble()),
+					                  "building", "yes"));
+				}
+
+				if (rnd.nextInt(4) == 0) {
+					String[] tag = pois[rnd.nextInt(pois.length)];
+					features.add(new Feature(POINT, 15, "POI " + (++numPois),
+					                         new double[] { south + 0.8 * h },
+					                         new double[] { west + 0.5 * w },
+					                         tag[0], tag[1]));
+				}
+			}
+		}
+		return features;
+	}
+
+	static Feature street(boolean primary, String name, double[] lat, double[] lon) {
+		if (primary)
+			return new Feature(LINE, 10, name, lat, lon, "highway", "primary");
+
+		return new Feature(LINE, 13, name, lat, lon, "highway", "residential");
+	}
+
+	static Feature rect(int zoom, String name, double south, double west,
+	        double north, double east, String... tags) {
+		return new Feature(POLY, zoom, name,
+		                   new double[] { south, south, north, north, south },
+		                   new double[] { west, east, east, west, west },
+		                   tags);
+	}
+
+	/** Features shown on tile, sorted by minimum zoom level. */
+	static List<Feature> tileFeatures(Tile tile, List<Feature> features) {
+		int scale = 1 << tile.zoomLevel;
+		double north = MercatorProjection.toLatitude((double) tile.tileY / scale);
+		double south = MercatorProjection.toLatitude((double) (tile.tileY + 1) / scale);
+		double west = MercatorProjection.toLongitude((double) tile.tileX / scale);
+		double east = MercatorProjection.toLongitude((double) (tile.tileX + 1) / scale);
+
+		List<Feature> result = new ArrayList<Feature>();
+		for (int z = 0; z <= tile.zoomLevel; z++)
+			for (Feature f : features)
+				if (f.zoom == z && f.intersects(south, west, north, east))
+					result.add(f);
+
+		return result;
+	}
+
+	/** mapsforge layer 5 is OSM layer 0 */
+	static final int LAYER = 5;
+	static final int FEATURE_NAME = 0x80;
+
+	static byte[] writeMapFile(List<Feature> features) throws IOException {
+		int minLatE6 = toE6(MIN_LAT);
+		int minLonE6 = toE6(MIN_LON);
+		int maxLatE6 = toE6(MAX_LAT);
+		int maxLonE6 = toE6(MAX_LON);
+
+		/* the reader calculates the blocks from the header bbox */
+		long left = Projection.longitudeToTileX(minLonE6 / 1e6, BASE_ZOOM);
+		long right = Projection.longitudeToTileX(maxLonE6 / 1e6, BASE_ZOOM);
+		long top = Projection.latitudeToTileY(maxLatE6 / 1e6, BASE_ZOOM);
+		long bottom = Projection.latitudeToTileY(minLatE6 / 1e6, BASE_ZOOM);
+
+		int numBlocks = (int) ((right - left + 1) * (bottom - top + 1));
+
+		LinkedHashMap<String, Integer> poiTags = new LinkedHashMap<String, Integer>();
+		LinkedHashMap<String, Integer> wayTags = new LinkedHashMap<String, Integer>();
+
+		/* sub-file: block index followed by the blocks */
+		ByteArrayOutputStream index = new ByteArrayOutputStream();
+		ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+		long indexSize = numBlocks * 5L;
+
+		for (long y = top; y <= bottom; y++) {
+			for (long x = left; x <= right; x++) {
+				long pointer = indexSize + blocks.size();
+				for (int i = 4; i >= 0; i--)
+					index.write((int) (pointer >>> (i * 8)));
+
+				writeBlock(blocks, x, y, features, poiTags, wayTags);
+			}
+		}
+
+		/* header size does not depend on the values */
+		int headerSize = writeHeader(0, 0, poiTags, wayTags).length;
+		long subFileSize = indexSize + blocks.size();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(writeHeader(headerSize, headerSize + subFileSize, poiTags, wayTags));
+		index.writeTo(out);
+		blocks.writeTo(out);
+		return out.toByteArray();
+	}
+
+	static byte[] writeHeader(long startAddress, long fileSize,
+	        LinkedHashMap<String, Integer> poiTags, LinkedHashMap<String, Integer> wayTags)
+	        throws IOException {
+
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		DataOutputStream h = new DataOutputStream(buf);
+		h.writeInt(3);
+		h.writeLong(fileSize);
+		h.writeLong(MAP_DATE);
+		h.writeInt(toE6(MIN_LAT));
+		h.writeInt(toE6(MIN_LON));
+		h.writeInt(toE6(MAX_LAT));
+		h.writeInt(toE6(MAX_LON));
+		h.writeShort(Tile.SIZE);
+		writeString(h, "Mercator");
+		/* no optional fields */
+		h.writeByte(0);
+
+		h.writeShort(poiTags.size());
+		for (String tag : poiTags.keySet())
+			writeString(h, tag);
+
+		h.writeShort(wayTags.size());
+		for (String tag : wayTags.keySet())
+			writeString(h, tag);
+
+		h.writeByte(1);
+		h.writeByte(BASE_ZOOM);
+		h.writeByte(ZOOM_MIN);
+		h.writeByte(ZOOM_MAX);
+		h.writeLong(startAddress);
+		h.writeLong(fileSize - startAddress);
+		h.flush();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		DataOutputStream d = new DataOutputStream(out);
+		d.write("mapsforge binary OSM".getBytes(UTF8));
+		d.writeInt(buf.size());
+		buf.writeTo(d);
+		d.flush();
+		return out.toByteArray();
+	}
+
+	static void writeBlock(ByteArrayOutputStream out, long tileX, long tileY,
+	        List<Feature> features, LinkedHashMap<String, Integer> poiTags,
+	        LinkedHashMap<String, Integer> wayTags) throws IOException {
+
+		double north = Projection.tileYToLatitude(tileY, BASE_ZOOM);
+		double south = Projection.tileYToLatitude(tileY + 1, BASE_ZOOM);
+		double west = Projection.tileXToLongitude(tileX, BASE_ZOOM);
+		double east = Projection.tileXToLongitude(tileX + 1, BASE_ZOOM);
+
+		/* coordinates are stored relative to the top-left of the block */
+		int originLat = (int) (north * 1e6);
+		int originLon = (int) (west * 1e6);
+
+		int rows = ZOOM_MAX - ZOOM_MIN + 1;
+		int[] numPois = new int[rows];
+		int[] numWays = new int[rows];
+
+		ByteArrayOutputStream pois = new ByteArrayOutputStream();
+		ByteArrayOutputStream ways = new ByteArrayOutputStream();
+
+		/* elements are sorted by zoom level, the reader only reads the
+		 * elements up to the query zoom level */
+		for (int z = 0; z <= ZOOM_MAX; z++) {
+			int row = Math.max(z, ZOOM_MIN) - ZOOM_MIN;
+
+			for (Feature f : features) {
+				if (f.zoom != z)
+					continue;
+
+				if (f.type == POINT) {
+					/* POIs are only stored in the block containing them */
+					if (f.lat[0] > north || f.lat[0] <= south
+					        || f.lon[0] < west || f.lon[0] >= east)
+						continue;
+
+					writeSigned(pois, toE6(f.lat[0]) - originLat);
+					writeSigned(pois, toE6(f.lon[0]) - originLon);
+					writeElementTags(pois, f, poiTags);
+					numPois[row]++;
+				} else {
+					if (!f.intersects(south, west, north, east))
+						continue;
+
+					writeWay(ways, f, tileX, tileY, originLat, originLon, wayTags);
+					numWays[row]++;
+				}
+			}
+		}
+
+		for (int row = 0; row < rows; row++) {
+			writeUnsigned(out, numPois[row]);
+			writeUnsigned(out, numWays[row]);
+		}
+		/* offset to the first way */
+		writeUnsigned(out, pois.size());
+		pois.writeTo(out);
+		ways.writeTo(out);
+	}
+
+	static void writeWay(ByteArrayOutputStream out, Feature f, long tileX, long tileY,
+	        int originLat, int originLon, LinkedHashMap<String, Integer> wayTags)
+	        throws IOException {
+
+		ByteArrayOutputStream way = new ByteArrayOutputStream();
+
+		/* sub-tiles of the block at base zoom + 2 which the way intersects,
+		 * row by row from the top-left */
+		int bitmask = 0;
+		for (int row = 0; row < 4; row++) {
+			for (int col = 0; col < 4; col++) {
+				long x = tileX * 4 + col;
+				long y = tileY * 4 + row;
+				if (f.intersects(Projection.tileYToLatitude(y + 1, BASE_ZOOM + 2),
+				                 Projection.tileXToLongitude(x, BASE_ZOOM + 2),
+				                 Projection.tileYToLatitude(y, BASE_ZOOM + 2),
+				                 Projection.tileXToLongitude(x + 1, BASE_ZOOM + 2)))
+					bitmask |= 0x8000 >> (row * 4 + col);
+			}
+		}
+		way.write(bitmask >> 8);
+		way.write(bitmask & 0xff);
+
+		writeElementTags(way, f, wayTags);
+
+		/* one coordinate block, single-delta encoded */
+		writeUnsigned(way, 1);
+		writeUnsigned(way, f.lat.length);
+
+		int lat = originLat;
+		int lon = originLon;
+		for (int i = 0; i < f.lat.length; i++) {
+			int la = toE6(f.lat[i]);
+			int lo = toE6(f.lon[i]);
+			writeSigned(way, la - lat);
+			writeSigned(way, lo - lon);
+			lat = la;
+			lon = lo;
+		}
+
+		writeUnsigned(out, way.size());
+		way.writeTo(out);
+	}
+
+	/** layer and tags, feature byte and name of POI and way */
+	static void writeElementTags(ByteArrayOutputStream out, Feature f,
+	        LinkedHashMap<String, Integer> tagIds) throws IOException {
+
+		int numTags = f.tags.length / 2;
+		out.write(LAYER << 4 | numTags);
+
+		for (int i = 0; i < f.tags.length; i += 2) {
+			String tag = f.tags[i] + "=" + f.tags[i + 1];
+			Integer id = tagIds.get(tag);
+			if (id == null) {
+				id = Integer.valueOf(tagIds.size());
+				tagIds.put(tag, id);
+			}
+			writeUnsigned(out, id.intValue());
+		}
+
+		if (f.name != null) {
+			out.write(FEATURE_NAME);
+			writeString(out, f.name);
+		} else {
+			out.write(0);
+		}
+	}
+
+	static int toE6(double deg) {
+		return (int) Math.round(deg * 1e6);
+	}
+
+	/** mapsforge VBE-U */
+	static void writeUnsigned(OutputStream out, int val) throws IOException {
+		while ((val & ~0x7f) != 0) {
+			out.write((val & 0x7f) | 0x80);
+			val >>>= 7;
+		}
+		out.write(val);
+	}
+
+	/** mapsforge VBE-S: sign bit 0x40 in the last byte */
+	static void writeSigned(OutputStream out, int val) throws IOException {
+		int abs = Math.abs(val);
+		while ((abs & ~0x3f) != 0) {
+			out.write((abs & 0x7f) | 0x80);
+			abs >>>= 7;
+		}
+		out.write(val < 0 ? abs | 0x40 : abs);
+	}
+
+	static void writeString(OutputStream out, String s) throws IOException {
+		byte[] b = s.getBytes(UTF8);
+		writeUnsigned(out, b.length);
+		out.write(b);
+	}
+
+	/** tile coordinates of features */
+	static int[] tileCoords(Tile tile, Feature f) {
+		int scale = 1 << tile.zoomLevel;
+		int n = f.numPoints();
+		int[] xy = new int[n * 2];
+		for (int i = 0; i < n; i++) {
+			double x = MercatorProjection.longitudeToX(f.lon[i]) * scale - tile.tileX;
+			double y = MercatorProjection.latitudeToY(f.lat[i]) * scale - tile.tileY;
+			xy[i * 2 + 0] = (int) Math.round(x * EXTENT);
+			xy[i * 2 + 1] = (int) Math.round(y * EXTENT);
+		}
+		return xy;
+	}
+
+	static final HashMap<String, Integer> OSCIMAP4_KEYS = indexOf(Tags.keys);
+	static final HashMap<String, Integer> OSCIMAP4_VALUES = indexOf(Tags.values);
+
+	static HashMap<String, Integer> indexOf(String[] strings) {
+		HashMap<String, Integer> map = new HashMap<String, Integer>();
+		for (int i = strings.length - 1; i >= 0; i--)
+			map.put(strings[i], Integer.valueOf(i));
+		return map;
+	}
+
+	/** index into the OSciMap4 tag table or the strings of the tile */
+	static int oscimap4Index(String s, HashMap<String, Integer> table,
+	        LinkedHashMap<String, Integer> strings) {
+		Integer idx = table.get(s);
+		if (idx != null)
+			return idx.intValue();
+
+		idx = strings.get(s);
+		if (idx == null) {
+			idx = Integer.valueOf(strings.size());
+			strings.put(s, idx);
+		}
+		return Tags.ATTRIB_OFFSET + idx.intValue();
+	}
+
+	static byte[] encodeOSciMap4(Tile tile, List<Feature> features) throws IOException {
+		LinkedHashMap<String, Integer> keys = new LinkedHashMap<String, Integer>();
+		LinkedHashMap<String, Integer> values = new LinkedHashMap<String, Integer>();
+		LinkedHashMap<String, Integer> tags = new LinkedHashMap<String, Integer>();
+		List<Integer> tagIdx = new ArrayList<Integer>();
+
+		ByteArrayOutputStream elements = new ByteArrayOutputStream();
+
+		for (Feature f : features) {
+			List<String> kv = new ArrayList<String>();
+			for (String t : f.tags)
+				kv.add(t);
+			if (f.name != null) {
+				kv.add("name");
+				kv.add(f.name);
+			}
+
+			int[] elemTags = new int[kv.size() / 2];
+			for (int i = 0; i < kv.size(); i += 2) {
+				String tag = kv.get(i) + "=" + kv.get(i + 1);
+				Integer id = tags.get(tag);
+				if (id == null) {
+					id = Integer.valueOf(tags.size());
+					tags.put(tag, id);
+					tagIdx.add(Integer.valueOf(oscimap4Index(kv.get(i), OSCIMAP4_KEYS, keys)));
+					tagIdx.add(Integer.valueOf(oscimap4Index(kv.get(i + 1), OSCIMAP4_VALUES,
+					                                         values)));
+				}
+				elemTags[i / 2] = id.intValue();
+			}
+
+			int[] xy = tileCoords(tile, f);
+
+			ByteArrayOutputStream e = new ByteArrayOutputStream();
+			/* number of tags */
+			writeVarint(e, 2 << 3);
+			writeVarint(e, elemTags.length);
+			writePacked(e, 11, elemTags);
+			if (f.type != POINT)
+				writePacked(e, 12, xy.length / 2);
+
+			int[] deltas = new int[xy.length];
+			for (int i = 0; i < xy.length; i++)
+				deltas[i] = zigzag(xy[i] - (i < 2 ? 0 : xy[i - 2]));
+			writePacked(e, 13, deltas);
+
+			int type = f.type == POINT ? 23 : (f.type == LINE ? 21 : 22);
+			writeMessage(elements, type, e);
+		}
+
+		ByteArrayOutputStream msg = new ByteArrayOutputStream();
+		/* version */
+		writeVarint(msg, 1 << 3);
+		writeVarint(msg, 4);
+		writeVarint(msg, 11 << 3);
+		writeVarint(msg, tags.size());
+		writeVarint(msg, 12 << 3);
+		writeVarint(msg, keys.size());
+		writeVarint(msg, 13 << 3);
+		writeVarint(msg, values.size());
+		for (String k : keys.keySet())
+			writeString(msg, 14, k);
+		for (String v : values.keySet())
+			writeString(msg, 15, v);
+
+		int[] t = new int[tagIdx.size()];
+		for (int i = 0; i < t.length; i++)
+			t[i] = tagIdx.get(i).intValue();
+		writePacked(msg, 16, t);
+
+		elements.writeTo(msg);
+
+		/* message is prefixed with its length */
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new DataOutputStream(out).writeInt(msg.size());
+		msg.writeTo(out);
+		return out.toByteArray();
+	}
+
+	/** Mapnik layer of the feature, by its first key */
+	static String mapnikLayer(Feature f) {
+		String key = f.tags[0];
+		if ("highway".equals(key))
+			return "road";
+		if ("building".equals(key))
+			return "building";
+		if ("natural".equals(key))
+			return "water";
+		if ("amenity".equals(key) || "shop".equals(key))
+			return "poi_label";
+		return "landuse";
+	}
+
+	static final class MapnikLayer {
+		final LinkedHashMap<String, Integer> keys = new LinkedHashMap<String, Integer>();
+		final LinkedHashMap<String, Integer> values = new LinkedHashMap<String, Integer>();
+		final ByteArrayOutputStream features = new ByteArrayOutputStream();
+		int numFeatures;
+
+		int index(LinkedHashMap<String, Integer> strings, String s) {
+			Integer idx = strings.get(s);
+			if (idx == null) {
+				idx = Integer.valueOf(strings.size());
+				strings.put(s, idx);
+			}
+			return idx.intValue();
+		}
+	}
+
+	static byte[] encodeMapnik(Tile tile, List<Feature> features) throws IOException {
+		LinkedHashMap<String, MapnikLayer> layers = new LinkedHashMap<String, MapnikLayer>();
+
+		for (Feature f : features) {
+			String name = mapnikLayer(f);
+			MapnikLayer l = layers.get(name);
+			if (l == null) {
+				l = new MapnikLayer();
+				layers.put(name, l);
+			}
+
+			List<String> kv = new ArrayList<String>();
+			for (int i = 0; i < f.tags.length; i += 2) {
+				/* the layer name tags the feature with its first key */
+				if (i > 0) {
+					kv.add(f.tags[i]);
+					kv.add(f.tags[i + 1]);
+				}
+			}
+			kv.add("class");
+			kv.add(f.tags[1]);
+			if (f.name != null) {
+				kv.add("name");
+				kv.add(f.name);
+			}
+
+			int[] tags = new int[kv.size()];
+			for (int i = 0; i < kv.size(); i += 2) {
+				tags[i] = l.index(l.keys, kv.get(i));
+				tags[i + 1] = l.index(l.values, kv.get(i + 1));
+			}
+
+			int[] xy = tileCoords(tile, f);
+			int n = xy.length / 2;
+			int[] geom = new int[xy.length + (n > 1 ? 3 : 1)];
+			int pos = 0;
+			int lastX = 0, lastY = 0;
+			for (int i = 0; i < n; i++) {
+				if (i == 0)
+					geom[pos++] = (1 << 3) | 1;
+				else if (i == 1)
+					geom[pos++] = ((n - 1) << 3) | 2;
+
+				geom[pos++] = zigzag(xy[i * 2] - lastX);
+				geom[pos++] = zigzag(xy[i * 2 + 1] - lastY);
+				lastX = xy[i * 2];
+				lastY = xy[i * 2 + 1];
+			}
+			if (f.type == POLY)
+				geom[pos++] = (1 << 3) | 7;
+
+			int[] geometry = new int[pos];
+			System.arraycopy(geom, 0, geometry, 0, pos);
+
+			ByteArrayOutputStream feature = new ByteArrayOutputStream();
+			writeVarint(feature, 1 << 3);
+			writeVarint(feature, ++l.numFeatures);
+			writePacked(feature, 2, tags);
+			writeVarint(feature, 3 << 3);
+			writeVarint(feature, f.type == POINT ? 1 : (f.type == LINE ? 2 : 3));
+			writePacked(feature, 4, geometry);
+
+			writeMessage(l.features, 2, feature);
+		}
+
+		ByteArrayOutputStream tileMsg = new ByteArrayOutputStream();
+		for (Entry<String, MapnikLayer> e : layers.entrySet()) {
+			MapnikLayer l = e.getValue();
+
+			ByteArrayOutputStream layer = new ByteArrayOutputStream();
+			writeVarint(layer, 15 << 3);
+			writeVarint(layer, 1);
+			writeString(layer, 1, e.getKey());
+			l.features.writeTo(layer);
+			for (String k : l.keys.keySet())
+				writeString(layer, 3, k);
+			for (String v : l.values.keySet()) {
+				ByteArrayOutputStream value = new ByteArrayOutputStream();
+				writeString(value, 1, v);
+				writeMessage(layer, 4, value);
+			}
+			writeVarint(layer, 5 << 3);
+			writeVarint(layer, EXTENT);
+
+			writeMessage(tileMsg, 3, layer);
+		}
+
+		/* Mapnik tiles are zlib compressed */
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		DeflaterOutputStream os = new DeflaterOutputStream(out);
+		tileMsg.writeTo(os);
+		os.close();
+		return out.toByteArray();
+	}
+
+	static int zigzag(int v) {
+		return (v << 1) ^ (v >> 31);
+	}
+
+	static void writeVarint(OutputStream out, int val) throws IOException {
+		while ((val & ~0x7f) != 0) {
+			out.write((val & 0x7f) | 0x80);
+			val >>>= 7;
+		}
+		out.write(val);
+	}
+
+	static void writePacked(ByteArrayOutputStream out, int tag, int... vals)
+	        throws IOException {
+		ByteArrayOutputStream b = new ByteArrayOutputStream();
+		for (int v : vals)
+			writeVarint(b, v);
+		writeMessage(out, tag, b);
+	}
+
+	static void writeMessage(ByteArrayOutputStream out, int tag, ByteArrayOutputStream msg)
+	        throws IOException {
+		writeVarint(out, tag << 3 | 2);
+		writeVarint(out, msg.size());
+		msg.writeTo(out);
+	}
+
+	static void writeString(ByteArrayOutputStream out, int tag, String s) throws IOException {
+		byte[] b = s.getBytes(UTF8);
+		writeVarint(out, tag << 3 | 2);
+		writeVarint(out, b.length);
+		out.write(b);
+	}
+}
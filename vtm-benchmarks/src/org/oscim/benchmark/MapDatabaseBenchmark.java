@@ -0,0 +1,128 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.oscim.benchmark.BenchmarkData.BlackholeSink;
+import org.oscim.core.BoundingBox;
+import org.oscim.core.MercatorProjection;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.tiling.ITileDataSink.QueryResult;
+import org.oscim.tiling.TileSource.OpenResult;
+import org.oscim.tiling.source.mapfile.MapDatabase;
+import org.oscim.tiling.source.mapfile.MapFileTileSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * MapDatabase.query() for tiles around the center of the map file. Each
+ * invocation queries the next tile of the set.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MapDatabaseBenchmark {
+
+	/** max number of tiles queried per zoom level */
+	static final int MAX_TILES = 64;
+
+	@Param({ "12", "14", "16" })
+	public int zoom;
+
+	@Param({ "false", "true" })
+	public boolean memoryMapped;
+
+	private MapFileTileSource mTileSource;
+	private MapDatabase mDatabase;
+	private MapTile[] mTiles;
+	private int mCurrent;
+
+	private final BlackholeSink mSink = new BlackholeSink();
+
+	@Setup
+	public void setup() {
+		File file = BenchmarkData.mapFile();
+
+		mTileSource = new MapFileTileSource();
+		mTileSource.setMemoryMapped(memoryMapped);
+		if (!mTileSource.setMapFile(file.getPath()))
+			throw new IllegalStateException("Cannot read map file " + file);
+
+		OpenResult result = mTileSource.open();
+		if (!result.isSuccess())
+			throw new IllegalStateException("Cannot open " + file + ": "
+			        + result.getErrorMessage());
+
+		mDatabase = (MapDatabase) mTileSource.getDataSource();
+		mTiles = centerTiles(mTileSource.getMapInfo().boundingBox, zoom);
+		mCurrent = 0;
+	}
+
+	@TearDown
+	public void tearDown() {
+		mDatabase.dispose();
+		mTileSource.close();
+	}
+
+	/** Tiles of the bbox at zoom level, at most MAX_TILES around its center */
+	static MapTile[] centerTiles(BoundingBox bbox, int zoom) {
+		int scale = 1 << zoom;
+		int minX = tile(MercatorProjection.longitudeToX(bbox.getMinLongitude()), scale);
+		int maxX = tile(MercatorProjection.longitudeToX(bbox.getMaxLongitude()), scale);
+		int minY = tile(MercatorProjection.latitudeToY(bbox.getMaxLatitude()), scale);
+		int maxY = tile(MercatorProjection.latitudeToY(bbox.getMinLatitude()), scale);
+
+		int side = (int) Math.sqrt(MAX_TILES);
+		int cx = (minX + maxX) / 2;
+		int cy = (minY + maxY) / 2;
+
+		ArrayList<MapTile> tiles = new ArrayList<MapTile>();
+		for (int y = Math.max(minY, cy - side / 2); y <= maxY && tiles.size() < MAX_TILES; y++)
+			for (int x = Math.max(minX, cx - side / 2); x <= maxX && x < cx + side / 2 + 1; x++)
+				tiles.add(new MapTile(null, x, y, zoom));
+
+		return tiles.toArray(new MapTile[tiles.size()]);
+	}
+
+	private static int tile(double v, int scale) {
+		return Math.max(0, Math.min(scale - 1, (int) (v * scale)));
+	}
+
+	@Benchmark
+	public int query(Blackhole bh) {
+		MapTile tile = mTiles[mCurrent];
+		mCurrent = (mCurrent + 1) % mTiles.length;
+
+		mDatabase.query(tile, mSink.reset(bh));
+
+		if (mSink.result != QueryResult.SUCCESS)
+			throw new IllegalStateException("Query failed " + tile);
+
+		return mSink.elements;
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.benchmark;
+
+import java.io.File;
+
+import org.oscim.benchmark.headless.CameraPath;
+import org.oscim.benchmark.headless.HeadlessRunner;
+import org.oscim.benchmark.headless.HeadlessRunner.Report;
+import org.oscim.core.BoundingBox;
+import org.oscim.layers.tile.buildings.BuildingLayer;
+import org.oscim.layers.tile.vector.VectorTileLayer;
+import org.oscim.layers.tile.vector.labeling.LabelLayer;
+import org.oscim.map.Map;
+import org.oscim.theme.VtmThemes;
+import org.oscim.tiling.TileSource.OpenResult;
+import org.oscim.tiling.source.mapfile.MapFileTileSource;
+import com.badlogic.gdx.utils.SharedLibraryLoader;
+
+/**
+ * Runs the map with the default layers on a map file without display and
+ * reports tiles per second, upload bytes and draw calls per frame.
+ * 
+ * <pre>
+ * PipelineBenchmark [file.map [passes]]
+ * </pre>
+ * 
+ * The first pass loads all tiles from the map file, following passes run
+ * the same path with tiles in the TileManager cache.
+ */
+public class PipelineBenchmark {
+	static final int WIDTH = 1280;
+	static final int HEIGHT = 800;
+
+	public static void main(String[] args) throws InterruptedException {
+		File file = args.length > 0 ? new File(args[0]) : BenchmarkData.mapFile();
+		int passes = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+
+		/* GLMatrix and Tessellator */
+		new SharedLibraryLoader().load("vtm-jni");
+		BenchmarkData.init();
+
+		MapFileTileSource tileSource = new MapFileTileSource();
+		if (!tileSource.setMapFile(file.getPath()))
+			throw new IllegalArgumentException("Cannot read map file " + file);
+
+		OpenResult result = tileSource.open();
+		if (!result.isSuccess())
+			throw new IllegalArgumentException("Cannot open " + file + ": "
+			        + result.getErrorMessage());
+
+		HeadlessRunner runner = new HeadlessRunner(WIDTH, HEIGHT);
+		Map map = runner.getMap();
+
+		VectorTileLayer l = map.setBaseMap(tileSource);
+		map.setTheme(VtmThemes.DEFAULT);
+		map.layers().add(new BuildingLayer(map, l));
+		map.layers().add(new LabelLayer(map, l));
+
+		CameraPath path = createPath(tileSource.getMapInfo().boundingBox);
+
+		for (int i = 0; i < passes; i++) {
+			Report report = runner.run(path, 500);
+			System.out.println("pass " + (i + 1) + ": " + report);
+		}
+
+		runner.dispose();
+		tileSource.close();
+	}
+
+	/** Zoom into the center of bbox, pan to its corner and zoom out */
+	static CameraPath createPath(BoundingBox bbox) {
+		double lat = bbox.getCenterPoint().getLatitude();
+		double lon = bbox.getCenterPoint().getLongitude();
+		double dLat = (bbox.getMaxLatitude() - bbox.getMinLatitude()) / 4;
+		double dLon = (bbox.getMaxLongitude() - bbox.getMinLongitude()) / 4;
+
+		return new CameraPath()
+		    .add(lat, lon, 12, 30)
+		    .add(lat, lon, 16, 120)
+		    .add(lat + dLat, lon + dLon, 16, 240)
+		    .add(lat + dLat, lon + dLon, 10, 120);
+	}
+}
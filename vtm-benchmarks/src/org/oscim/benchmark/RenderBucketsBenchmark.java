@@ -0,0 +1,121 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.oscim.core.GeometryBuffer;
+import org.oscim.core.Tile;
+import org.oscim.renderer.bucket.LineBucket;
+import org.oscim.renderer.bucket.RenderBuckets;
+import org.oscim.theme.styles.AreaStyle;
+import org.oscim.theme.styles.LineStyle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Building RenderBuckets for a tile: adding lines, outlines, polygons and
+ * hairlines, RenderBuckets.prepare() and compiling vertices and indices into
+ * direct buffers with prepareBuffers(), i.e. everything compile() does
+ * except the upload on the GL thread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RenderBucketsBenchmark {
+
+	static final int POINTS = 32;
+
+	/** number of lines and polygons per tile */
+	@Param({ "100", "1000" })
+	public int elements;
+
+	private final LineStyle mLine = new LineStyle(0, 0xff000000, 2);
+	private final LineStyle mOutline = new LineStyle(1, 0xff808080, 1);
+	private final LineStyle mHairLine = new LineStyle(2, 0xff0000ff, 1);
+	private final AreaStyle mArea = new AreaStyle(3, 0xff00ff00);
+
+	private GeometryBuffer[] mLines;
+	private GeometryBuffer[] mPolygons;
+
+	@Setup
+	public void setup() {
+		/* same geometry in each run */
+		Random r = new Random(0x5eed);
+
+		mLines = new GeometryBuffer[elements];
+		mPolygons = new GeometryBuffer[elements];
+
+		for (int i = 0; i < elements; i++) {
+			GeometryBuffer g = new GeometryBuffer(POINTS * 2, 2);
+			g.startLine();
+			float x = r.nextFloat() * Tile.SIZE;
+			float y = r.nextFloat() * Tile.SIZE;
+			for (int j = 0; j < POINTS; j++) {
+				g.addPoint(x, y);
+				x += r.nextFloat() * 40 - 20;
+				y += r.nextFloat() * 40 - 20;
+			}
+			mLines[i] = g;
+
+			g = new GeometryBuffer(POINTS * 2, 2);
+			g.startPolygon();
+			float cx = r.nextFloat() * Tile.SIZE;
+			float cy = r.nextFloat() * Tile.SIZE;
+			float radius = 5 + r.nextFloat() * 30;
+			for (int j = 0; j < POINTS; j++) {
+				double a = j * 2 * Math.PI / POINTS;
+				g.addPoint(cx + (float) Math.cos(a) * radius,
+				           cy + (float) Math.sin(a) * radius);
+			}
+			mPolygons[i] = g;
+		}
+	}
+
+	@Benchmark
+	public int prepareBuffers() {
+		RenderBuckets buckets = new RenderBuckets();
+
+		LineBucket lb = buckets.addLineBucket(0, mLine);
+		for (GeometryBuffer g : mLines)
+			lb.addLine(g);
+
+		buckets.addLineBucket(1, mOutline).addOutline(lb);
+
+		for (GeometryBuffer g : mLines)
+			buckets.addHairLineBucket(2, mHairLine).addLine(g);
+
+		for (GeometryBuffer g : mPolygons)
+			buckets.addPolygonBucket(3, mArea).addPolygon(g);
+
+		buckets.prepare();
+		if (!buckets.prepareBuffers(true))
+			throw new IllegalStateException("buffers not prepared");
+
+		/* byte offset of lines, after polygons */
+		int offset = buckets.offset[0];
+		buckets.clear();
+		return offset;
+	}
+}
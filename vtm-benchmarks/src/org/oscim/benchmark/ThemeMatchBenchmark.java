@@ -0,0 +1,131 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.Tag;
+import org.oscim.core.TagSet;
+import org.oscim.theme.IRenderTheme;
+import org.oscim.theme.ThemeLoader;
+import org.oscim.theme.VtmThemes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * RenderTheme.matchElement() with the themes from vtm-themes for a set of
+ * common OSM tag combinations, i.e. mostly the path through the matching
+ * cache that is taken for all but the first elements of a kind.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ThemeMatchBenchmark {
+
+	static final String[][] LINES = {
+	        { "highway", "primary" },
+	        { "highway", "residential", "oneway", "yes" },
+	        { "highway", "trunk_link", "bridge", "yes" },
+	        { "highway", "footway" },
+	        { "highway", "service", "tunnel", "yes" },
+	        { "railway", "rail" },
+	        { "waterway", "river" },
+	        { "boundary", "administrative", "admin_level", "8" },
+	};
+
+	static final String[][] POLYGONS = {
+	        { "building", "yes" },
+	        { "landuse", "residential" },
+	        { "landuse", "forest" },
+	        { "natural", "water" },
+	        { "leisure", "park" },
+	        { "amenity", "parking" },
+	        { "area", "yes", "highway", "pedestrian" },
+	};
+
+	static final String[][] POINTS = {
+	        { "place", "city", "name", "Bremen" },
+	        { "amenity", "restaurant", "name", "Ratskeller" },
+	        { "highway", "bus_stop" },
+	        { "shop", "bakery" },
+	};
+
+	@Param({ "DEFAULT", "TRONRENDER", "NEWTRON", "OSMARENDER" })
+	public VtmThemes theme;
+
+	@Param({ "14", "17" })
+	public int zoom;
+
+	private IRenderTheme mTheme;
+	private TagSet[] mLines;
+	private TagSet[] mPolygons;
+	private TagSet[] mPoints;
+
+	@Setup
+	public void setup() {
+		BenchmarkData.init();
+		mTheme = ThemeLoader.load(theme);
+
+		mLines = tagSets(LINES);
+		mPolygons = tagSets(POLYGONS);
+		mPoints = tagSets(POINTS);
+	}
+
+	@TearDown
+	public void tearDown() {
+		mTheme.dispose();
+	}
+
+	static TagSet[] tagSets(String[][] tags) {
+		TagSet[] sets = new TagSet[tags.length];
+		for (int i = 0; i < tags.length; i++) {
+			sets[i] = new TagSet();
+			for (int j = 0; j < tags[i].length; j += 2)
+				sets[i].add(new Tag(tags[i][j], tags[i][j + 1]));
+		}
+		return sets;
+	}
+
+	private void match(GeometryType type, TagSet[] tags, Blackhole bh) {
+		for (TagSet t : tags)
+			bh.consume(mTheme.matchElement(type, t, zoom));
+	}
+
+	@Benchmark
+	public void matchLines(Blackhole bh) {
+		match(GeometryType.LINE, mLines, bh);
+	}
+
+	@Benchmark
+	public void matchPolygons(Blackhole bh) {
+		match(GeometryType.POLY, mPolygons, bh);
+	}
+
+	@Benchmark
+	public void matchPoints(Blackhole bh) {
+		match(GeometryType.POINT, mPoints, bh);
+	}
+}
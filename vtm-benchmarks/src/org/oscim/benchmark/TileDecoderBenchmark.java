@@ -0,0 +1,104 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.oscim.benchmark.BenchmarkData.BlackholeSink;
+import org.oscim.benchmark.BenchmarkData.RecordedTile;
+import org.oscim.tiling.source.PbfDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Decoding of PBF tiles with the oscimap4 and Mapnik vector tile decoders.
+ * Each invocation decodes the next tile of the data directory from memory,
+ * i.e. without network and file IO.
+ * <p>
+ * 'input' selects how the data is passed to the decoder: as InputStream,
+ * as byte[] which is decoded in place or as direct ByteBuffer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TileDecoderBenchmark {
+
+	@Param({ BenchmarkData.OSCIMAP4, BenchmarkData.MAPNIK })
+	public String format;
+
+	@Param({ "stream", "array", "direct" })
+	public String input;
+
+	private PbfDecoder mDecoder;
+	private RecordedTile[] mTiles;
+	private ByteBuffer[] mBuffers;
+	private int mCurrent;
+
+	private final BlackholeSink mSink = new BlackholeSink();
+
+	@Setup
+	public void setup() throws IOException {
+		if (BenchmarkData.OSCIMAP4.equals(format))
+			mDecoder = new org.oscim.tiling.source.oscimap4.TileDecoder();
+		else if (BenchmarkData.MAPNIK.equals(format))
+			mDecoder = new org.oscim.tiling.source.mapnik.TileDecoder();
+		else
+			throw new IllegalArgumentException("unknown format " + format);
+
+		List<RecordedTile> tiles = BenchmarkData.readTiles(BenchmarkData.tileDir(format));
+		mTiles = tiles.toArray(new RecordedTile[tiles.size()]);
+		mCurrent = 0;
+
+		mBuffers = new ByteBuffer[mTiles.length];
+		for (int i = 0; i < mTiles.length; i++) {
+			byte[] data = mTiles[i].data;
+			mBuffers[i] = ByteBuffer.allocateDirect(data.length);
+			mBuffers[i].put(data).flip();
+		}
+	}
+
+	@Benchmark
+	public int decode(Blackhole bh) throws IOException {
+		RecordedTile t = mTiles[mCurrent];
+		ByteBuffer buf = mBuffers[mCurrent];
+		mCurrent = (mCurrent + 1) % mTiles.length;
+
+		boolean ok;
+		if ("array".equals(input))
+			ok = mDecoder.decode(t.tile, mSink.reset(bh), t.data, 0, t.data.length);
+		else if ("direct".equals(input))
+			ok = mDecoder.decode(t.tile, mSink.reset(bh), buf);
+		else
+			ok = mDecoder.decode(t.tile, mSink.reset(bh), new ByteArrayInputStream(t.data));
+
+		if (!ok)
+			throw new IllegalStateException("Decoding failed " + t.tile);
+
+		return mSink.elements;
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.benchmark.headless;
+
+import java.util.ArrayList;
+
+import org.oscim.core.MapPosition;
+
+/**
+ * Scripted camera movement: a list of positions and the number of frames
+ * to move from the previous position to it. Position and scale are
+ * interpolated linearly in map coordinates and zoom level.
+ */
+public class CameraPath {
+
+	private final ArrayList<MapPosition> mPositions = new ArrayList<MapPosition>();
+	private final ArrayList<Integer> mFrames = new ArrayList<Integer>();
+	private int mNumFrames;
+
+	/**
+	 * Add position to move to within 'frames' frames. For the first
+	 * position the camera stays there for 'frames'.
+	 */
+	public CameraPath add(MapPosition pos, int frames) {
+		if (frames < 1)
+			throw new IllegalArgumentException("frames < 1");
+
+		MapPosition p = new MapPosition();
+		p.copy(pos);
+		mPositions.add(p);
+		mFrames.add(Integer.valueOf(frames));
+		mNumFrames += frames;
+		return this;
+	}
+
+	public CameraPath add(double latitude, double longitude, int zoomLevel, int frames) {
+		MapPosition pos = new MapPosition();
+		pos.setPosition(latitude, longitude);
+		pos.setZoomLevel(zoomLevel);
+		return add(pos, frames);
+	}
+
+	public int getNumFrames() {
+		return mNumFrames;
+	}
+
+	/** Set 'out' to the camera position at 'frame' */
+	public void getPosition(int frame, MapPosition out) {
+		if (mPositions.isEmpty())
+			throw new IllegalStateException("empty path");
+
+		MapPosition prev = mPositions.get(0);
+		frame -= mFrames.get(0).intValue();
+
+		for (int i = 1, n = mPositions.size(); i < n && frame >= 0; i++) {
+			MapPosition next = mPositions.get(i);
+			int frames = mFrames.get(i).intValue();
+
+			if (frame < frames) {
+				double t = (frame + 1) / (double) frames;
+				double z0 = Math.log(prev.scale);
+				double z1 = Math.log(next.scale);
+				out.set(prev.x + (next.x - prev.x) * t,
+				        prev.y + (next.y - prev.y) * t,
+				        Math.exp(z0 + (z1 - z0) * t),
+				        (float) (prev.bearing + (next.bearing - prev.bearing) * t),
+				        (float) (prev.tilt + (next.tilt - prev.tilt) * t));
+				return;
+			}
+			frame -= frames;
+			prev = next;
+		}
+		out.copy(prev);
+	}
+}
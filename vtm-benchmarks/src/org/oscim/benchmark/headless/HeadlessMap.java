@@ -0,0 +1,130 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.benchmark.headless;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.oscim.map.Map;
+
+/**
+ * Map without a window or UI thread. Tasks posted from other threads are
+ * queued and run by {@link #processEvents()} which is called by the
+ * driving thread before each frame.
+ */
+public class HeadlessMap extends Map {
+
+	private final int mWidth;
+	private final int mHeight;
+
+	private final ConcurrentLinkedQueue<Runnable> mTasks =
+	        new ConcurrentLinkedQueue<Runnable>();
+
+	/** tasks with their due time, guarded by 'this' */
+	private final ArrayList<Runnable> mDelayed = new ArrayList<Runnable>();
+	private final ArrayList<Long> mDelayedTime = new ArrayList<Long>();
+
+	private volatile boolean mUpdateRequest;
+	private volatile boolean mRenderRequest;
+
+	public HeadlessMap(int width, int height) {
+		mWidth = width;
+		mHeight = height;
+		viewport().setScreenSize(width, height);
+	}
+
+	@Override
+	public int getWidth() {
+		return mWidth;
+	}
+
+	@Override
+	public int getHeight() {
+		return mHeight;
+	}
+
+	@Override
+	public void updateMap(boolean redraw) {
+		mUpdateRequest = true;
+	}
+
+	@Override
+	public void render() {
+		if (mClearMap)
+			updateMap(false);
+
+		mRenderRequest = true;
+	}
+
+	@Override
+	public boolean post(Runnable action) {
+		mTasks.add(action);
+		return true;
+	}
+
+	@Override
+	public synchronized boolean postDelayed(Runnable action, long delay) {
+		mDelayed.add(action);
+		mDelayedTime.add(Long.valueOf(System.currentTimeMillis() + delay));
+		return true;
+	}
+
+	/**
+	 * Run posted tasks and update layers when requested.
+	 * 
+	 * @return true when a frame should be rendered.
+	 */
+	public boolean processEvents() {
+		runDelayed(System.currentTimeMillis());
+
+		Runnable task;
+		while ((task = mTasks.poll()) != null)
+			task.run();
+
+		if (mUpdateRequest) {
+			mUpdateRequest = false;
+			updateLayers();
+			mRenderRequest = true;
+		}
+
+		boolean render = mRenderRequest;
+		mRenderRequest = false;
+		return render;
+	}
+
+	private void runDelayed(long now) {
+		ArrayList<Runnable> due = null;
+
+		synchronized (this) {
+			for (int i = mDelayed.size() - 1; i >= 0; i--) {
+				if (mDelayedTime.get(i).longValue() > now)
+					continue;
+
+				if (due == null)
+					due = new ArrayList<Runnable>();
+
+				due.add(0, mDelayed.remove(i));
+				mDelayedTime.remove(i);
+			}
+		}
+
+		if (due != null) {
+			for (Runnable r : due)
+				r.run();
+		}
+	}
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.benchmark.headless;
+
+import org.oscim.backend.GLAdapter;
+import org.oscim.benchmark.headless.RecordingGL.Stats;
+import org.oscim.core.MapPosition;
+import org.oscim.event.Event;
+import org.oscim.layers.Layer;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.layers.tile.TileLayer;
+import org.oscim.layers.tile.TileManager;
+import org.oscim.map.Map;
+import org.oscim.renderer.MapRenderer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the complete tile pipeline - TileManager, TileLoaders, bucket
+ * compilation and the LayerRenderers - on a {@link HeadlessMap} with
+ * {@link RecordingGL}, moving the camera along a {@link CameraPath}.
+ * 
+ * The vtm-jni library (GLMatrix) and the AssetAdapter (for shaders) must be
+ * initialized before, and the CanvasAdapter when layers need to draw text
+ * or symbols.
+ */
+public class HeadlessRunner {
+	static final Logger log = LoggerFactory.getLogger(HeadlessRunner.class);
+
+	private final RecordingGL mGL;
+	private final HeadlessMap mMap;
+	private final MapRenderer mRenderer;
+
+	private int mFrameRate = 60;
+
+	private final Stats mLast = new Stats();
+	private final Stats mFrame = new Stats();
+
+	/** TILE_LOADED events, fired on the thread running frames */
+	private int mTilesLoaded;
+	private long mLastTileLoaded;
+
+	private final TileManager.Listener mTileListener = new TileManager.Listener() {
+		@Override
+		public void onTileManagerEvent(Event event, MapTile tile) {
+			if (event == TileManager.TILE_LOADED) {
+				mTilesLoaded++;
+				mLastTileLoaded = System.currentTimeMillis();
+			}
+		}
+	};
+
+	public static final class Report {
+		public int frames;
+		public int renderedFrames;
+		public long elapsed;
+		public int tilesLoaded;
+
+		/** GL counters of the whole run */
+		public final Stats total = new Stats();
+
+		public long maxFrameUploadBytes;
+		public long maxFrameDrawCalls;
+
+		void addFrame(Stats frame) {
+			renderedFrames++;
+			maxFrameUploadBytes = Math.max(maxFrameUploadBytes,
+			                               frame.bufferBytes + frame.textureBytes);
+			maxFrameDrawCalls = Math.max(maxFrameDrawCalls, frame.drawCalls);
+		}
+
+		public double getTilesPerSecond() {
+			return elapsed == 0 ? 0 : tilesLoaded * 1000.0 / elapsed;
+		}
+
+		public double getUploadBytesPerFrame() {
+			return renderedFrames == 0 ? 0
+			        : (total.bufferBytes + total.textureBytes) / (double) renderedFrames;
+		}
+
+		public double getDrawCallsPerFrame() {
+			return renderedFrames == 0 ? 0 : total.drawCalls / (double) renderedFrames;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("frames:%d rendered:%d time:%dms tiles:%d (%.1f/s)"
+			        + " upload/frame:%.0fb (max %d) draw calls/frame:%.1f (max %d)%n  %s",
+			                     Integer.valueOf(frames),
+			                     Integer.valueOf(renderedFrames),
+			                     Long.valueOf(elapsed),
+			                     Integer.valueOf(tilesLoaded),
+			                     Double.valueOf(getTilesPerSecond()),
+			                     Double.valueOf(getUploadBytesPerFrame()),
+			                     Long.valueOf(maxFrameUploadBytes),
+			                     Double.valueOf(getDrawCallsPerFrame()),
+			                     Long.valueOf(maxFrameDrawCalls),
+			                     total);
+		}
+	}
+
+	public HeadlessRunner(int width, int height) {
+		mGL = new RecordingGL();
+		GLAdapter.init(mGL);
+
+		mMap = new HeadlessMap(width, height);
+		mRenderer = new MapRenderer(mMap);
+		mRenderer.onSurfaceCreated();
+		mRenderer.onSurfaceChanged(width, height);
+	}
+
+	public Map getMap() {
+		return mMap;
+	}
+
+	public RecordingGL getGL() {
+		return mGL;
+	}
+
+	/**
+	 * Frames per second to run the path with, 0 to run frames as fast as
+	 * possible. Default is 60.
+	 */
+	public HeadlessRunner setFrameRate(int fps) {
+		mFrameRate = fps;
+		return this;
+	}
+
+	/**
+	 * Process events and render a frame when requested.
+	 * 
+	 * @return the GL counters of this frame, or null when no frame was
+	 *         rendered. The returned object is reused.
+	 */
+	public Stats frame() {
+		if (!mMap.processEvents())
+			return null;
+
+		mRenderer.onDrawFrame();
+
+		mFrame.diff(mGL.stats, mLast);
+		mLast.set(mGL.stats);
+		return mFrame;
+	}
+
+	/**
+	 * Move the camera along path, then continue rendering until all tile
+	 * jobs are done and no tile was loaded for 'settle' milliseconds.
+	 */
+	public Report run(CameraPath path, long settle) throws InterruptedException {
+		bindTileListener(true);
+		try {
+			return runPath(path, settle);
+		} finally {
+			bindTileListener(false);
+		}
+	}
+
+	private Report runPath(CameraPath path, long settle) throws InterruptedException {
+		Report report = new Report();
+		MapPosition pos = new MapPosition();
+		Stats start = new Stats();
+		start.set(mGL.stats);
+
+		mTilesLoaded = 0;
+		long begin = System.currentTimeMillis();
+		mLastTileLoaded = begin;
+
+		long frameTime = mFrameRate > 0 ? 1000 / mFrameRate : 0;
+		long next = begin;
+
+		for (int i = 0, n = path.getNumFrames();; i++) {
+			if (i < n) {
+				path.getPosition(i, pos);
+				mMap.setMapPosition(pos);
+			} else if (!hasTileJobs()
+			        && System.currentTimeMillis() - mLastTileLoaded > settle) {
+				break;
+			}
+
+			Stats frame = frame();
+			if (frame != null)
+				report.addFrame(frame);
+			report.frames++;
+
+			next += frameTime;
+			long wait = next - System.currentTimeMillis();
+			if (wait > 0)
+				Thread.sleep(wait);
+			else if (i >= n)
+				/* let the loaders work when unthrottled */
+				Thread.sleep(1);
+		}
+
+		report.elapsed = System.currentTimeMillis() - begin;
+		report.tilesLoaded = mTilesLoaded;
+		report.total.diff(mGL.stats, start);
+
+		log.debug("{}", report);
+		return report;
+	}
+
+	private boolean hasTileJobs() {
+		for (Layer l : mMap.layers()) {
+			if (l instanceof TileLayer && ((TileLayer) l).getManager().hasTileJobs())
+				return true;
+		}
+		return false;
+	}
+
+	private void bindTileListener(boolean bind) {
+		for (Layer l : mMap.layers()) {
+			if (!(l instanceof TileLayer))
+				continue;
+
+			TileManager m = ((TileLayer) l).getManager();
+			if (bind)
+				m.events.bind(mTileListener);
+			else
+				m.events.unbind(mTileListener);
+		}
+	}
+
+	public void dispose() {
+		mMap.destroy();
+	}
+}
@@ -0,0 +1,983 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.benchmark.headless;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.HashMap;
+
+import org.oscim.backend.GL;
+
+/**
+ * GL implementation without a GPU. Nothing is rendered, calls are only
+ * counted: buffer and texture uploads with their byte volume, draw calls,
+ * program switches and the memory of buffers and textures that would be
+ * allocated on the GPU.
+ * 
+ * Object ids are assigned sequentially, shaders always compile and
+ * attribute locations are assigned in order of lookup per program.
+ * 
+ * Must only be used from one thread, like a GL context.
+ */
+public class RecordingGL implements GL {
+
+	public static final class Stats {
+		/** all GL calls */
+		public long calls;
+		public long drawCalls;
+		/** vertices, or indices for drawElements, passed to draw calls */
+		public long vertices;
+		public long programSwitches;
+
+		public long bufferUploads;
+		public long bufferBytes;
+		public long textureUploads;
+		public long textureBytes;
+
+		/** current size of all buffer objects */
+		public long bufferMemory;
+		/** current size of all textures (level 0) */
+		public long textureMemory;
+
+		public void set(Stats o) {
+			calls = o.calls;
+			drawCalls = o.drawCalls;
+			vertices = o.vertices;
+			programSwitches = o.programSwitches;
+			bufferUploads = o.bufferUploads;
+			bufferBytes = o.bufferBytes;
+			textureUploads = o.textureUploads;
+			textureBytes = o.textureBytes;
+			bufferMemory = o.bufferMemory;
+			textureMemory = o.textureMemory;
+		}
+
+		/** Set this to the difference of counters 'a - b'. */
+		public void diff(Stats a, Stats b) {
+			calls = a.calls - b.calls;
+			drawCalls = a.drawCalls - b.drawCalls;
+			vertices = a.vertices - b.vertices;
+			programSwitches = a.programSwitches - b.programSwitches;
+			bufferUploads = a.bufferUploads - b.bufferUploads;
+			bufferBytes = a.bufferBytes - b.bufferBytes;
+			textureUploads = a.textureUploads - b.textureUploads;
+			textureBytes = a.textureBytes - b.textureBytes;
+			bufferMemory = a.bufferMemory;
+			textureMemory = a.textureMemory;
+		}
+
+		@Override
+		public String toString() {
+			return "calls:" + calls
+			        + " draw:" + drawCalls
+			        + " vertices:" + vertices
+			        + " programs:" + programSwitches
+			        + " buffer uploads:" + bufferUploads + "/" + bufferBytes + "b"
+			        + " texture uploads:" + textureUploads + "/" + textureBytes + "b"
+			        + " buffer mem:" + bufferMemory
+			        + " texture mem:" + textureMemory;
+		}
+	}
+
+	/** Counters since creation */
+	public final Stats stats = new Stats();
+
+	private int mIds;
+	private int mArrayBuffer;
+	private int mElementBuffer;
+	private int mTexture;
+
+	private final Sizes mBufferSizes = new Sizes();
+	private final Sizes mTextureSizes = new Sizes();
+
+	private final HashMap<String, Integer> mLocations = new HashMap<String, Integer>();
+	private final HashMap<Integer, int[]> mNextLocation = new HashMap<Integer, int[]>();
+
+	/** Sizes of objects indexed by id */
+	static final class Sizes {
+		int[] sizes = new int[256];
+
+		int get(int id) {
+			return id < sizes.length ? sizes[id] : 0;
+		}
+
+		void put(int id, int size) {
+			if (id >= sizes.length) {
+				int[] tmp = new int[Math.max(id + 1, sizes.length * 2)];
+				System.arraycopy(sizes, 0, tmp, 0, sizes.length);
+				sizes = tmp;
+			}
+			sizes[id] = size;
+		}
+	}
+
+	private void genIds(int n, IntBuffer ids) {
+		for (int i = ids.position(), end = i + n; i < end; i++)
+			ids.put(i, ++mIds);
+	}
+
+	private void setBufferSize(int target, int size) {
+		int id;
+		if (target == ARRAY_BUFFER)
+			id = mArrayBuffer;
+		else if (target == ELEMENT_ARRAY_BUFFER)
+			id = mElementBuffer;
+		else
+			return;
+
+		stats.bufferMemory += size - mBufferSizes.get(id);
+		mBufferSizes.put(id, size);
+	}
+
+	private int location(int program, String name, boolean attrib) {
+		String key = program + (attrib ? "a:" : "u:") + name;
+		Integer loc = mLocations.get(key);
+		if (loc != null)
+			return loc.intValue();
+
+		int[] next = mNextLocation.get(Integer.valueOf(program));
+		if (next == null) {
+			next = new int[2];
+			mNextLocation.put(Integer.valueOf(program), next);
+		}
+		loc = Integer.valueOf(next[attrib ? 0 : 1]++);
+		mLocations.put(key, loc);
+		return loc.intValue();
+	}
+
+	static int bytesPerPixel(int format, int type) {
+		if (type == UNSIGNED_SHORT_5_6_5
+		        || type == UNSIGNED_SHORT_4_4_4_4
+		        || type == UNSIGNED_SHORT_5_5_5_1)
+			return 2;
+
+		switch (format) {
+			case ALPHA:
+			case LUMINANCE:
+				return 1;
+			case LUMINANCE_ALPHA:
+				return 2;
+			case RGB:
+				return 3;
+			default:
+				return 4;
+		}
+	}
+
+	@Override
+	public void attachShader(int program, int shader) {
+		stats.calls++;
+	}
+
+	@Override
+	public void bindAttribLocation(int program, int index, String name) {
+		stats.calls++;
+	}
+
+	@Override
+	public void bindBuffer(int target, int buffer) {
+		stats.calls++;
+		if (target == ARRAY_BUFFER)
+			mArrayBuffer = buffer;
+		else if (target == ELEMENT_ARRAY_BUFFER)
+			mElementBuffer = buffer;
+	}
+
+	@Override
+	public void bindFramebuffer(int target, int framebuffer) {
+		stats.calls++;
+	}
+
+	@Override
+	public void bindRenderbuffer(int target, int renderbuffer) {
+		stats.calls++;
+	}
+
+	@Override
+	public void blendColor(float red, float green, float blue, float alpha) {
+		stats.calls++;
+	}
+
+	@Override
+	public void blendEquation(int mode) {
+		stats.calls++;
+	}
+
+	@Override
+	public void blendEquationSeparate(int modeRGB, int modeAlpha) {
+		stats.calls++;
+	}
+
+	@Override
+	public void blendFuncSeparate(int srcRGB, int dstRGB, int srcAlpha, int dstAlpha) {
+		stats.calls++;
+	}
+
+	@Override
+	public void bufferData(int target, int size, Buffer data, int usage) {
+		stats.calls++;
+		stats.bufferUploads++;
+		stats.bufferBytes += size;
+		setBufferSize(target, size);
+	}
+
+	@Override
+	public void bufferSubData(int target, int offset, int size, Buffer data) {
+		stats.calls++;
+		stats.bufferUploads++;
+		stats.bufferBytes += size;
+	}
+
+	@Override
+	public int checkFramebufferStatus(int target) {
+		stats.calls++;
+		return FRAMEBUFFER_COMPLETE;
+	}
+
+	@Override
+	public void compileShader(int shader) {
+		stats.calls++;
+	}
+
+	@Override
+	public int createProgram() {
+		stats.calls++;
+		return ++mIds;
+	}
+
+	@Override
+	public int createShader(int type) {
+		stats.calls++;
+		return ++mIds;
+	}
+
+	@Override
+	public void deleteBuffers(int n, IntBuffer buffers) {
+		stats.calls++;
+		for (int i = buffers.position(), end = i + n; i < end; i++) {
+			int id = buffers.get(i);
+			stats.bufferMemory -= mBufferSizes.get(id);
+			mBufferSizes.put(id, 0);
+		}
+	}
+
+	@Override
+	public void deleteFramebuffers(int n, IntBuffer framebuffers) {
+		stats.calls++;
+	}
+
+	@Override
+	public void deleteProgram(int program) {
+		stats.calls++;
+	}
+
+	@Override
+	public void deleteRenderbuffers(int n, IntBuffer renderbuffers) {
+		stats.calls++;
+	}
+
+	@Override
+	public void deleteShader(int shader) {
+		stats.calls++;
+	}
+
+	@Override
+	public void detachShader(int program, int shader) {
+		stats.calls++;
+	}
+
+	@Override
+	public void disableVertexAttribArray(int index) {
+		stats.calls++;
+	}
+
+	@Override
+	public void drawElements(int mode, int count, int type, int offset) {
+		stats.calls++;
+		stats.drawCalls++;
+		stats.vertices += count;
+	}
+
+	@Override
+	public void enableVertexAttribArray(int index) {
+		stats.calls++;
+	}
+
+	@Override
+	public void framebufferRenderbuffer(int target, int attachment, int renderbuffertarget,
+	        int renderbuffer) {
+		stats.calls++;
+	}
+
+	@Override
+	public void framebufferTexture2D(int target, int attachment, int textarget,
+	        int texture, int level) {
+		stats.calls++;
+	}
+
+	@Override
+	public void genBuffers(int n, IntBuffer buffers) {
+		stats.calls++;
+		genIds(n, buffers);
+	}
+
+	@Override
+	public void generateMipmap(int target) {
+		stats.calls++;
+	}
+
+	@Override
+	public void genFramebuffers(int n, IntBuffer framebuffers) {
+		stats.calls++;
+		genIds(n, framebuffers);
+	}
+
+	@Override
+	public void genRenderbuffers(int n, IntBuffer renderbuffers) {
+		stats.calls++;
+		genIds(n, renderbuffers);
+	}
+
+	@Override
+	public String getActiveAttrib(int program, int index, IntBuffer size, Buffer type) {
+		stats.calls++;
+		return null;
+	}
+
+	@Override
+	public String getActiveUniform(int program, int index, IntBuffer size, Buffer type) {
+		stats.calls++;
+		return null;
+	}
+
+	@Override
+	public void getAttachedShaders(int program, int maxcount, Buffer count, IntBuffer shaders) {
+		stats.calls++;
+	}
+
+	@Override
+	public int getAttribLocation(int program, String name) {
+		stats.calls++;
+		return location(program, name, true);
+	}
+
+	@Override
+	public void getBooleanv(int pname, Buffer params) {
+		stats.calls++;
+	}
+
+	@Override
+	public void getBufferParameteriv(int target, int pname, IntBuffer params) {
+		stats.calls++;
+	}
+
+	@Override
+	public void getFloatv(int pname, FloatBuffer params) {
+		stats.calls++;
+	}
+
+	@Override
+	public void getFramebufferAttachmentParameteriv(int target, int attachment, int pname,
+	        IntBuffer params) {
+		stats.calls++;
+	}
+
+	@Override
+	public void getProgramiv(int program, int pname, IntBuffer params) {
+		stats.calls++;
+		params.put(params.position(), TRUE);
+	}
+
+	@Override
+	public String getProgramInfoLog(int program) {
+		stats.calls++;
+		return "";
+	}
+
+	@Override
+	public void getRenderbufferParameteriv(int target, int pname, IntBuffer params) {
+		stats.calls++;
+	}
+
+	@Override
+	public void getShaderiv(int shader, int pname, IntBuffer params) {
+		stats.calls++;
+		params.put(params.position(), TRUE);
+	}
+
+	@Override
+	public String getShaderInfoLog(int shader) {
+		stats.calls++;
+		return "";
+	}
+
+	@Override
+	public void getShaderPrecisionFormat(int shadertype, int precisiontype,
+	        IntBuffer range, IntBuffer precision) {
+		stats.calls++;
+	}
+
+	@Override
+	public void getShaderSource(int shader, int bufsize, Buffer length, String source) {
+		stats.calls++;
+	}
+
+	@Override
+	public void getTexParameterfv(int target, int pname, FloatBuffer params) {
+		stats.calls++;
+	}
+
+	@Override
+	public void getTexParameteriv(int target, int pname, IntBuffer params) {
+		stats.calls++;
+	}
+
+	@Override
+	public void getUniformfv(int program, int location, FloatBuffer params) {
+		stats.calls++;
+	}
+
+	@Override
+	public void getUniformiv(int program, int location, IntBuffer params) {
+		stats.calls++;
+	}
+
+	@Override
+	public int getUniformLocation(int program, String name) {
+		stats.calls++;
+		return location(program, name, false);
+	}
+
+	@Override
+	public void getVertexAttribfv(int index, int pname, FloatBuffer params) {
+		stats.calls++;
+	}
+
+	@Override
+	public void getVertexAttribiv(int index, int pname, IntBuffer params) {
+		stats.calls++;
+	}
+
+	@Override
+	public void getVertexAttribPointerv(int index, int pname, Buffer pointer) {
+		stats.calls++;
+	}
+
+	@Override
+	public boolean isBuffer(int buffer) {
+		stats.calls++;
+		return false;
+	}
+
+	@Override
+	public boolean isEnabled(int cap) {
+		stats.calls++;
+		return false;
+	}
+
+	@Override
+	public boolean isFramebuffer(int framebuffer) {
+		stats.calls++;
+		return false;
+	}
+
+	@Override
+	public boolean isProgram(int program) {
+		stats.calls++;
+		return false;
+	}
+
+	@Override
+	public boolean isRenderbuffer(int renderbuffer) {
+		stats.calls++;
+		return false;
+	}
+
+	@Override
+	public boolean isShader(int shader) {
+		stats.calls++;
+		return false;
+	}
+
+	@Override
+	public boolean isTexture(int texture) {
+		stats.calls++;
+		return false;
+	}
+
+	@Override
+	public void linkProgram(int program) {
+		stats.calls++;
+	}
+
+	@Override
+	public void releaseShaderCompiler() {
+		stats.calls++;
+	}
+
+	@Override
+	public void renderbufferStorage(int target, int internalformat, int width, int height) {
+		stats.calls++;
+	}
+
+	@Override
+	public void sampleCoverage(float value, boolean invert) {
+		stats.calls++;
+	}
+
+	@Override
+	public void shaderBinary(int n, IntBuffer shaders, int binaryformat, Buffer binary,
+	        int length) {
+		stats.calls++;
+	}
+
+	@Override
+	public void shaderSource(int shader, String string) {
+		stats.calls++;
+	}
+
+	@Override
+	public void stencilFuncSeparate(int face, int func, int ref, int mask) {
+		stats.calls++;
+	}
+
+	@Override
+	public void stencilMaskSeparate(int face, int mask) {
+		stats.calls++;
+	}
+
+	@Override
+	public void stencilOpSeparate(int face, int fail, int zfail, int zpass) {
+		stats.calls++;
+	}
+
+	@Override
+	public void texParameterfv(int target, int pname, FloatBuffer params) {
+		stats.calls++;
+	}
+
+	@Override
+	public void texParameteri(int target, int pname, int param) {
+		stats.calls++;
+	}
+
+	@Override
+	public void texParameteriv(int target, int pname, IntBuffer params) {
+		stats.calls++;
+	}
+
+	@Override
+	public void uniform1f(int location, float x) {
+		stats.calls++;
+	}
+
+	@Override
+	public void uniform1fv(int location, int count, FloatBuffer v) {
+		stats.calls++;
+	}
+
+	@Override
+	public void uniform1i(int location, int x) {
+		stats.calls++;
+	}
+
+	@Override
+	public void uniform1iv(int location, int count, IntBuffer v) {
+		stats.calls++;
+	}
+
+	@Override
+	public void uniform2f(int location, float x, float y) {
+		stats.calls++;
+	}
+
+	@Override
+	public void uniform2fv(int location, int count, FloatBuffer v) {
+		stats.calls++;
+	}
+
+	@Override
+	public void uniform2i(int location, int x, int y) {
+		stats.calls++;
+	}
+
+	@Override
+	public void uniform2iv(int location, int count, IntBuffer v) {
+		stats.calls++;
+	}
+
+	@Override
+	public void uniform3f(int location, float x, float y, float z) {
+		stats.calls++;
+	}
+
+	@Override
+	public void uniform3fv(int location, int count, FloatBuffer v) {
+		stats.calls++;
+	}
+
+	@Override
+	public void uniform3i(int location, int x, int y, int z) {
+		stats.calls++;
+	}
+
+	@Override
+	public void uniform3iv(int location, int count, IntBuffer v) {
+		stats.calls++;
+	}
+
+	@Override
+	public void uniform4f(int location, float x, float y, float z, float w) {
+		stats.calls++;
+	}
+
+	@Override
+	public void uniform4fv(int location, int count, FloatBuffer v) {
+		stats.calls++;
+	}
+
+	@Override
+	public void uniform4i(int location, int x, int y, int z, int w) {
+		stats.calls++;
+	}
+
+	@Override
+	public void uniform4iv(int location, int count, IntBuffer v) {
+		stats.calls++;
+	}
+
+	@Override
+	public void uniformMatrix2fv(int location, int count, boolean transpose,
+	        FloatBuffer value) {
+		stats.calls++;
+	}
+
+	@Override
+	public void uniformMatrix3fv(int location, int count, boolean transpose,
+	        FloatBuffer value) {
+		stats.calls++;
+	}
+
+	@Override
+	public void uniformMatrix4fv(int location, int count, boolean transpose,
+	        FloatBuffer value) {
+		stats.calls++;
+	}
+
+	@Override
+	public void useProgram(int program) {
+		stats.calls++;
+		stats.programSwitches++;
+	}
+
+	@Override
+	public void validateProgram(int program) {
+		stats.calls++;
+	}
+
+	@Override
+	public void vertexAttrib1f(int indx, float x) {
+		stats.calls++;
+	}
+
+	@Override
+	public void vertexAttrib1fv(int indx, FloatBuffer values) {
+		stats.calls++;
+	}
+
+	@Override
+	public void vertexAttrib2f(int indx, float x, float y) {
+		stats.calls++;
+	}
+
+	@Override
+	public void vertexAttrib2fv(int indx, FloatBuffer values) {
+		stats.calls++;
+	}
+
+	@Override
+	public void vertexAttrib3f(int indx, float x, float y, float z) {
+		stats.calls++;
+	}
+
+	@Override
+	public void vertexAttrib3fv(int indx, FloatBuffer values) {
+		stats.calls++;
+	}
+
+	@Override
+	public void vertexAttrib4f(int indx, float x, float y, float z, float w) {
+		stats.calls++;
+	}
+
+	@Override
+	public void vertexAttrib4fv(int indx, FloatBuffer values) {
+		stats.calls++;
+	}
+
+	@Override
+	public void vertexAttribPointer(int indx, int size, int type, boolean normalized,
+	        int stride, Buffer ptr) {
+		stats.calls++;
+	}
+
+	@Override
+	public void vertexAttribPointer(int indx, int size, int type, boolean normalized,
+	        int stride, int offset) {
+		stats.calls++;
+	}
+
+	@Override
+	public void activeTexture(int texture) {
+		stats.calls++;
+	}
+
+	@Override
+	public void bindTexture(int target, int texture) {
+		stats.calls++;
+		mTexture = texture;
+	}
+
+	@Override
+	public void blendFunc(int sfactor, int dfactor) {
+		stats.calls++;
+	}
+
+	@Override
+	public void clear(int mask) {
+		stats.calls++;
+	}
+
+	@Override
+	public void clearColor(float red, float green, float blue, float alpha) {
+		stats.calls++;
+	}
+
+	@Override
+	public void clearDepthf(float depth) {
+		stats.calls++;
+	}
+
+	@Override
+	public void clearStencil(int s) {
+		stats.calls++;
+	}
+
+	@Override
+	public void colorMask(boolean red, boolean green, boolean blue, boolean alpha) {
+		stats.calls++;
+	}
+
+	@Override
+	public void compressedTexImage2D(int target, int level, int internalformat, int width,
+	        int height, int border, int imageSize, Buffer data) {
+		stats.calls++;
+		stats.textureUploads++;
+		stats.textureBytes += imageSize;
+	}
+
+	@Override
+	public void compressedTexSubImage2D(int target, int level, int xoffset, int yoffset,
+	        int width, int height, int format, int imageSize, Buffer data) {
+		stats.calls++;
+		stats.textureUploads++;
+		stats.textureBytes += imageSize;
+	}
+
+	@Override
+	public void copyTexImage2D(int target, int level, int internalformat, int x, int y,
+	        int width, int height, int border) {
+		stats.calls++;
+	}
+
+	@Override
+	public void copyTexSubImage2D(int target, int level, int xoffset, int yoffset, int x,
+	        int y, int width, int height) {
+		stats.calls++;
+	}
+
+	@Override
+	public void cullFace(int mode) {
+		stats.calls++;
+	}
+
+	@Override
+	public void deleteTextures(int n, IntBuffer textures) {
+		stats.calls++;
+		for (int i = textures.position(), end = i + n; i < end; i++) {
+			int id = textures.get(i);
+			stats.textureMemory -= mTextureSizes.get(id);
+			mTextureSizes.put(id, 0);
+		}
+	}
+
+	@Override
+	public void depthFunc(int func) {
+		stats.calls++;
+	}
+
+	@Override
+	public void depthMask(boolean flag) {
+		stats.calls++;
+	}
+
+	@Override
+	public void depthRangef(float zNear, float zFar) {
+		stats.calls++;
+	}
+
+	@Override
+	public void disable(int cap) {
+		stats.calls++;
+	}
+
+	@Override
+	public void drawArrays(int mode, int first, int count) {
+		stats.calls++;
+		stats.drawCalls++;
+		stats.vertices += count;
+	}
+
+	@Override
+	public void drawElements(int mode, int count, int type, Buffer indices) {
+		stats.calls++;
+		stats.drawCalls++;
+		stats.vertices += count;
+	}
+
+	@Override
+	public void enable(int cap) {
+		stats.calls++;
+	}
+
+	@Override
+	public void finish() {
+		stats.calls++;
+	}
+
+	@Override
+	public void flush() {
+		stats.calls++;
+	}
+
+	@Override
+	public void frontFace(int mode) {
+		stats.calls++;
+	}
+
+	@Override
+	public void genTextures(int n, IntBuffer textures) {
+		stats.calls++;
+		genIds(n, textures);
+	}
+
+	@Override
+	public int getError() {
+		stats.calls++;
+		return 0;
+	}
+
+	@Override
+	public void getIntegerv(int pname, IntBuffer params) {
+		stats.calls++;
+		params.put(params.position(), pname == MAX_TEXTURE_SIZE ? 4096 : 0);
+	}
+
+	@Override
+	public String getString(int name) {
+		stats.calls++;
+		return "headless";
+	}
+
+	@Override
+	public void hint(int target, int mode) {
+		stats.calls++;
+	}
+
+	@Override
+	public void lineWidth(float width) {
+		stats.calls++;
+	}
+
+	@Override
+	public void pixelStorei(int pname, int param) {
+		stats.calls++;
+	}
+
+	@Override
+	public void polygonOffset(float factor, float units) {
+		stats.calls++;
+	}
+
+	@Override
+	public void readPixels(int x, int y, int width, int height, int format, int type,
+	        Buffer pixels) {
+		stats.calls++;
+	}
+
+	@Override
+	public void scissor(int x, int y, int width, int height) {
+		stats.calls++;
+	}
+
+	@Override
+	public void stencilFunc(int func, int ref, int mask) {
+		stats.calls++;
+	}
+
+	@Override
+	public void stencilMask(int mask) {
+		stats.calls++;
+	}
+
+	@Override
+	public void stencilOp(int fail, int zfail, int zpass) {
+		stats.calls++;
+	}
+
+	@Override
+	public void texImage2D(int target, int level, int internalformat, int width,
+	        int height, int border, int format, int type, Buffer pixels) {
+		stats.calls++;
+		int size = width * height * bytesPerPixel(format, type);
+		stats.textureUploads++;
+		stats.textureBytes += size;
+		if (level == 0) {
+			stats.textureMemory += size - mTextureSizes.get(mTexture);
+			mTextureSizes.put(mTexture, size);
+		}
+	}
+
+	@Override
+	public void texParameterf(int target, int pname, float param) {
+		stats.calls++;
+	}
+
+	@Override
+	public void texSubImage2D(int target, int level, int xoffset, int yoffset, int width,
+	        int height, int format, int type, Buffer pixels) {
+		stats.calls++;
+		stats.textureUploads++;
+		stats.textureBytes += width * height * bytesPerPixel(format, type);
+	}
+
+	@Override
+	public void viewport(int x, int y, int width, int height) {
+		stats.calls++;
+	}
+}
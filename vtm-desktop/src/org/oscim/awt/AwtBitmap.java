@@ -25,10 +25,10 @@ import java.nio.IntBuffer;
 import javax.imageio.ImageIO;
 
 import org.oscim.backend.GL;
+import org.oscim.backend.GLAdapter;
 import org.oscim.backend.canvas.Bitmap;
 import org.oscim.renderer.bucket.TextureBucket;
 
-import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.utils.BufferUtils;
 
 public class AwtBitmap implements Bitmap {
@@ -129,8 +129,8 @@ public class AwtBitmap implements Bitmap {
 		buffer.put(pixels, 0, width * height);
 		buffer.flip();
 
-		Gdx.gl20.glTexImage2D(GL.TEXTURE_2D, 0, GL.RGBA, width,
-		                      height, 0, GL.RGBA, GL.UNSIGNED_BYTE, buffer);
+		GLAdapter.gl.texImage2D(GL.TEXTURE_2D, 0, GL.RGBA, width,
+		                        height, 0, GL.RGBA, GL.UNSIGNED_BYTE, buffer);
 	}
 
 	@Override
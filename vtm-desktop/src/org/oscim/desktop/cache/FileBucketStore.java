@@ -0,0 +1,123 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.desktop.cache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import org.oscim.core.Tile;
+import org.oscim.renderer.bucket.BucketCache;
+import org.oscim.utils.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores {@link BucketCache} entries in one file per tile:
+ * {@code <dir>/<namespace>/z/x/y.vbc}. Files are written to a temporary
+ * file which is renamed into place, so that readers never see partial
+ * entries.
+ */
+public class FileBucketStore implements BucketCache.Store {
+	static final Logger log = LoggerFactory.getLogger(FileBucketStore.class);
+
+	private final static String FILE_SUFFIX = ".vbc";
+	private final static String TEMP_SUFFIX = ".tmp";
+
+	private final File mCacheDir;
+
+	public FileBucketStore(File cacheDir) {
+		if (!cacheDir.isDirectory() && !cacheDir.mkdirs())
+			throw new IllegalArgumentException("cannot create cache directory: " + cacheDir);
+
+		mCacheDir = cacheDir;
+	}
+
+	private File getFile(Tile tile, String namespace) {
+		return new File(mCacheDir, namespace + "/" + tile.zoomLevel + "/"
+		        + tile.tileX + "/" + tile.tileY + FILE_SUFFIX);
+	}
+
+	@Override
+	public ByteBuffer read(Tile tile, String namespace) {
+		File f = getFile(tile, namespace);
+		if (!f.isFile())
+			return null;
+
+		FileInputStream is = null;
+		try {
+			is = new FileInputStream(f);
+			FileChannel ch = is.getChannel();
+			long size = ch.size();
+			if (size > Integer.MAX_VALUE)
+				return null;
+
+			ByteBuffer data = ByteBuffer.allocateDirect((int) size)
+			    .order(ByteOrder.nativeOrder());
+
+			while (data.hasRemaining())
+				if (ch.read(data) < 0)
+					return null;
+
+			data.clear();
+			return data;
+		} catch (IOException e) {
+			log.debug("{} read: {}", f, e.getMessage());
+			return null;
+		} finally {
+			IOUtils.closeQuietly(is);
+		}
+	}
+
+	@Override
+	public void write(Tile tile, String namespace, ByteBuffer data) {
+		File f = getFile(tile, namespace);
+		File dir = f.getParentFile();
+		if (!dir.isDirectory() && !dir.mkdirs())
+			return;
+
+		File tmp = new File(dir, tile.tileY + TEMP_SUFFIX);
+		FileOutputStream os = null;
+		boolean ok = false;
+		try {
+			os = new FileOutputStream(tmp);
+			FileChannel ch = os.getChannel();
+			ByteBuffer d = data.duplicate();
+			d.clear();
+			while (d.hasRemaining())
+				ch.write(d);
+			ok = true;
+		} catch (IOException e) {
+			log.debug("{} write: {}", f, e.getMessage());
+		} finally {
+			IOUtils.closeQuietly(os);
+		}
+
+		if (ok) {
+			/* replacing an existing file is not atomic on all platforms */
+			if (f.exists())
+				f.delete();
+			ok = tmp.renameTo(f);
+		}
+		if (!ok)
+			tmp.delete();
+	}
+}
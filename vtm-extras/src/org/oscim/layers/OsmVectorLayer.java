@@ -1,19 +1,133 @@
 package org.oscim.layers;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.oscim.backend.canvas.Color;
 import org.oscim.core.BoundingBox;
-import org.oscim.core.osm.OsmElement;
-import org.oscim.layers.vector.AbstractVectorLayer;
+import org.oscim.core.Box;
+import org.oscim.core.GeometryBuffer;
+import org.oscim.core.osm.OsmNode;
+import org.oscim.core.osm.OsmWay;
+import org.oscim.layers.vector.TiledVectorLayer;
 import org.oscim.map.Map;
+import org.oscim.renderer.bucket.LineBucket;
+import org.oscim.renderer.bucket.MeshBucket;
+import org.oscim.theme.styles.AreaStyle;
+import org.oscim.theme.styles.LineStyle;
+import org.oscim.utils.RTree;
+
+/**
+ * Draws OSM ways, closed ways as areas with outline and others as lines.
+ */
+public class OsmVectorLayer extends TiledVectorLayer {
+
+	private final static int MIN_ZOOM = 8;
+	private final static int MAX_ZOOM = 17;
 
-public class OsmVectorLayer extends AbstractVectorLayer<OsmElement> {
+	private final LineStyle mLineStyle;
+	private final AreaStyle mAreaStyle;
+
+	/** ways by bounding box. Not thread-safe, search synchronized on it */
+	private volatile RTree<OsmWay> mWays = new RTree<OsmWay>();
 
 	public OsmVectorLayer(Map map) {
-		super(map);
+		this(map, new LineStyle(Color.BLUE, 2),
+		     new AreaStyle(Color.fade(Color.BLUE, 0.3)));
+	}
+
+	public OsmVectorLayer(Map map, LineStyle line, AreaStyle area) {
+		super(map, MIN_ZOOM, MAX_ZOOM);
+		mLineStyle = line;
+		mAreaStyle = area;
+	}
+
+	/**
+	 * Replace the ways drawn by this layer, e.g. with OsmData.getWays().
+	 * Call on main thread.
+	 */
+	public void setWays(Collection<OsmWay> ways) {
+		RTree<OsmWay> index = new RTree<OsmWay>();
+		for (OsmWay w : ways) {
+			Box box = getBounds(w);
+			if (box != null)
+				index.insert(box, w);
+		}
+		mWays = index;
+		update();
 	}
 
 	@Override
-	protected void processFeatures(Task t, BoundingBox b) {
+	protected boolean processFeatures(Task t) {
+		BoundingBox b = t.bbox;
+		Box box = new Box(b.getMinLongitude(), b.getMinLatitude(),
+		                  b.getMaxLongitude(), b.getMaxLatitude());
+
+		RTree<OsmWay> index = mWays;
+		List<OsmWay> ways;
+		synchronized (index) {
+			ways = index.search(box, new ArrayList<OsmWay>());
+		}
+
+		for (OsmWay w : ways) {
+			if (t.isCanceled())
+				return false;
 
+			addWay(t, w);
+		}
+		return true;
 	}
 
+	protected void addWay(Task t, OsmWay w) {
+		List<OsmNode> nodes = w.nodes;
+		boolean area = w.isClosed() && nodes.size() > 3;
+
+		GeometryBuffer g = t.geom;
+		g.clear();
+
+		int n = nodes.size();
+		if (area) {
+			g.startPolygon();
+			/* last node repeats the first */
+			n--;
+		} else {
+			g.startLine();
+		}
+		for (int i = 0; i < n; i++) {
+			OsmNode node = nodes.get(i);
+			g.addPoint(t.longitudeToTileX(node.lon),
+			           t.latitudeToTileY(node.lat));
+		}
+
+		if (!t.clipper.clip(g))
+			return;
+
+		LineBucket ll = t.buckets.getLineBucket(1);
+		if (ll.line == null)
+			ll.line = mLineStyle;
+		ll.addLine(g);
+
+		if (area) {
+			MeshBucket mesh = t.buckets.getMeshBucket(0);
+			if (mesh.area == null)
+				mesh.area = mAreaStyle;
+			mesh.addMesh(g);
+		}
+	}
+
+	private static Box getBounds(OsmWay w) {
+		if (w.nodes.isEmpty())
+			return null;
+
+		Box box = new Box(Double.MAX_VALUE, Double.MAX_VALUE,
+		                  -Double.MAX_VALUE, -Double.MAX_VALUE);
+		for (OsmNode n : w.nodes) {
+			box.xmin = Math.min(box.xmin, n.lon);
+			box.ymin = Math.min(box.ymin, n.lat);
+			box.xmax = Math.max(box.xmax, n.lon);
+			box.ymax = Math.max(box.ymax, n.lat);
+		}
+		return box;
+	}
 }
@@ -18,11 +18,21 @@ package org.oscim.tiling.source.mapnik;
 
 import org.oscim.core.Tile;
 import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.source.ITileDecoder;
 import org.oscim.tiling.source.UrlTileDataSource;
 import org.oscim.tiling.source.UrlTileSource;
+import org.oscim.tiling.source.archive.TileArchiveSource.DecoderFactory;
 
 public class MapnikVectorTileSource extends UrlTileSource {
 
+	/** Decoder for Mapnik vector tiles stored in a TileArchive */
+	public final static DecoderFactory DECODER = new DecoderFactory() {
+		@Override
+		public ITileDecoder createDecoder() {
+			return new TileDecoder();
+		}
+	};
+
 	public MapnikVectorTileSource() {
 		super("http://d1s11ojcu7opje.cloudfront.net/dev/764e0b8d", "");
 		setUrlFormatter(new TileUrlFormatter() {
@@ -19,11 +19,14 @@ package org.oscim.tiling.source.mapnik;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 import java.util.zip.InflaterInputStream;
 
 import org.oscim.core.GeometryBuffer.GeometryType;
 import org.oscim.core.MapElement;
 import org.oscim.core.Tag;
+import org.oscim.core.TagDictionary;
 import org.oscim.core.Tile;
 import org.oscim.tiling.ITileDataSink;
 import org.oscim.tiling.source.PbfDecoder;
@@ -71,6 +74,10 @@ public class TileDecoder extends PbfDecoder {
 	private final static float REF_TILE_SIZE = 4096.0f;
 	private float mScale;
 
+	/** for decoding from memory */
+	private final Inflater mInflater = new Inflater();
+	private byte[] mInflated = new byte[1 << 16];
+
 	@Override
 	public boolean decode(Tile tile, ITileDataSink mapDataCallback, InputStream is)
 	        throws IOException {
@@ -79,6 +86,55 @@ public class TileDecoder extends PbfDecoder {
 			log.debug(tile + " decode");
 
 		setInputStream(new InflaterInputStream(is));
+
+		return decodeTile(tile, mapDataCallback);
+	}
+
+	/**
+	 * Inflate the whole tile at once and decode it from memory.
+	 */
+	@Override
+	public boolean decode(Tile tile, ITileDataSink mapDataCallback,
+	        byte[] data, int offset, int length) throws IOException {
+
+		if (debug)
+			log.debug(tile + " decode");
+
+		Inflater inflater = mInflater;
+		inflater.reset();
+		inflater.setInput(data, offset, length);
+
+		int size = 0;
+		try {
+			while (!inflater.finished()) {
+				if (size == mInflated.length) {
+					byte[] tmp = mInflated;
+					mInflated = new byte[size * 2];
+					System.arraycopy(tmp, 0, mInflated, 0, size);
+				}
+				int len = inflater.inflate(mInflated, size, mInflated.length - size);
+				if (len == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+					throw new IOException(tile + " truncated data");
+
+				size += len;
+			}
+		} catch (DataFormatException e) {
+			throw new IOException(tile + " " + e.getMessage());
+		}
+
+		setInput(mInflated, 0, size);
+
+		return decodeTile(tile, mapDataCallback);
+	}
+
+	@Override
+	public void dispose() {
+		mInflater.end();
+	}
+
+	private boolean decodeTile(Tile tile, ITileDataSink mapDataCallback)
+	        throws IOException {
+
 		mTile = tile;
 		mMapDataCallback = mapDataCallback;
 		mScale = REF_TILE_SIZE / Tile.SIZE;
@@ -132,7 +188,7 @@ public class TileDecoder extends PbfDecoder {
 
 			switch (tag) {
 				case TAG_LAYER_KEYS:
-					keys.add(decodeString());
+					keys.add(decodeSharedString(true));
 					break;
 
 				case TAG_LAYER_VALUES:
@@ -150,7 +206,7 @@ public class TileDecoder extends PbfDecoder {
 					break;
 
 				case TAG_LAYER_NAME:
-					name = decodeString();
+					name = decodeSharedString(true);
 					break;
 
 				case TAG_LAYER_EXTENT:
@@ -165,7 +221,8 @@ public class TileDecoder extends PbfDecoder {
 
 		}
 
-		Tag layerTag = new Tag(name, Tag.VALUE_YES);
+		TagDictionary dict = TagDictionary.shared;
+		Tag layerTag = dict.getTag(name, Tag.VALUE_YES);
 
 		if (numFeatures == 0)
 			return true;
@@ -225,16 +282,16 @@ public class TileDecoder extends PbfDecoder {
 
 				if (keyIdx == matchedLocal) {
 					hasName = true;
-					f.elem.tags.add(new Tag(Tag.KEY_NAME, val, false));
+					f.elem.tags.add(dict.getTag(Tag.KEY_NAME, val));
 
 				} else {
 					key = keys.get(keyIdx);
-					f.elem.tags.add(new Tag(key, val));
+					f.elem.tags.add(dict.getTag(key, val));
 				}
 			}
 
 			if (!hasName && fallbackName != null)
-				f.elem.tags.add(new Tag(Tag.KEY_NAME, fallbackName, false));
+				f.elem.tags.add(dict.getTag(Tag.KEY_NAME, fallbackName));
 
 			// FIXME extract layer tag here
 			f.elem.setLayer(5);
@@ -562,7 +619,7 @@ public class TileDecoder extends PbfDecoder {
 
 			switch (tag) {
 				case TAG_VALUE_STRING:
-					value = decodeString();
+					value = decodeSharedString(false);
 					break;
 
 				case TAG_VALUE_UINT:
@@ -0,0 +1,102 @@
+package org.oscim.core;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class TagDictionaryTest {
+
+	static byte[] utf8(String s) throws Exception {
+		return s.getBytes("UTF-8");
+	}
+
+	@Test
+	public void shouldReturnSameStringForSameBytes() throws Exception {
+		TagDictionary dict = new TagDictionary(64);
+		byte[] data = utf8("xxStra\u00dfexx");
+		byte[] other = utf8("Stra\u00dfe");
+
+		String s = dict.getString(data, 2, other.length, false);
+		assertThat(s).isEqualTo("Stra\u00dfe");
+		assertThat(dict.getString(other, 0, other.length, false)).isSameAs(s);
+	}
+
+	@Test
+	public void shouldInternKeys() throws Exception {
+		TagDictionary dict = new TagDictionary(64);
+		byte[] data = utf8("highway");
+
+		/* not interned at first */
+		String s = dict.getString(data, 0, data.length, false);
+		assertThat(dict.getString(data, 0, data.length, true)).isSameAs(Tag.KEY_HIGHWAY);
+		assertThat(dict.getString(data, 0, data.length, false)).isSameAs(Tag.KEY_HIGHWAY);
+		assertThat(s).isEqualTo(Tag.KEY_HIGHWAY);
+	}
+
+	@Test
+	public void shouldReturnSameTag() throws Exception {
+		TagDictionary dict = new TagDictionary(64);
+		byte[] data = utf8("primary");
+
+		Tag tag = dict.getTag(Tag.KEY_HIGHWAY, data, 0, data.length);
+		assertThat(dict.getTag(Tag.KEY_HIGHWAY, new String("primary"))).isSameAs(tag);
+		assertThat(tag.value).isSameAs("primary");
+		assertThat(tag).isEqualTo(new Tag("highway", "primary"));
+	}
+
+	@Test
+	public void shouldNotInternVariableValues() throws Exception {
+		TagDictionary dict = new TagDictionary(64);
+		String name = new String("Some Name");
+
+		Tag tag = dict.getTag(Tag.KEY_NAME, name);
+		assertThat(tag.value).isSameAs(name);
+		assertThat(tag.value).isNotSameAs(name.intern());
+		assertThat(tag).isEqualTo(new Tag(Tag.KEY_NAME, "Some Name", false));
+	}
+
+	@Test
+	public void shouldReplaceEntries() throws Exception {
+		TagDictionary dict = new TagDictionary(1);
+
+		Tag a = dict.getTag(Tag.KEY_HIGHWAY, "primary");
+		Tag b = dict.getTag(Tag.KEY_HIGHWAY, "secondary");
+		assertThat(a.equals(b)).isFalse();
+
+		/* equal but not the same instance after replacement */
+		Tag c = dict.getTag(Tag.KEY_HIGHWAY, "primary");
+		assertThat(c).isNotSameAs(a);
+		assertThat(c).isEqualTo(a);
+	}
+
+	@Test
+	public void shouldNotShareVariableTags() throws Exception {
+		TagDictionary dict = new TagDictionary(64);
+
+		Tag a = dict.getTag(Tag.KEY_NAME, "Some Name");
+		Tag b = dict.getTag(Tag.KEY_NAME, "Some Name");
+		assertThat(b).isNotSameAs(a);
+		assertThat(b).isEqualTo(a);
+	}
+
+	@Test
+	public void shouldNotEvictInternedByVariableValues() throws Exception {
+		TagDictionary dict = new TagDictionary(1);
+		byte[] key = utf8("highway");
+
+		String k = dict.getString(key, 0, key.length, true);
+		addNames(dict);
+		assertThat(dict.getString(key, 0, key.length, false)).isSameAs(k);
+
+		Tag tag = dict.getTag(Tag.KEY_HIGHWAY, "primary");
+		addNames(dict);
+		assertThat(dict.getTag(Tag.KEY_HIGHWAY, "primary")).isSameAs(tag);
+	}
+
+	static void addNames(TagDictionary dict) throws Exception {
+		for (int i = 0; i < 10; i++) {
+			byte[] name = utf8("Name " + i);
+			dict.getTag(Tag.KEY_NAME, name, 0, name.length);
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package org.oscim.layers;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.data.Offset.offset;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.oscim.core.GeoPoint;
+import org.oscim.core.GeometryBuffer;
+import org.oscim.core.MercatorProjection;
+import org.oscim.map.Map;
+
+public class PathLayerTest {
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void shouldRebuildPointsAfterGeom() {
+		Map map = Mockito.mock(Map.class);
+		PathLayer layer = new PathLayer(map, 0xff000000);
+
+		for (int i = 0; i < 5; i++)
+			layer.addPoint(new GeoPoint(10 + i, 20 + i));
+		layer.mWorker.doWork(new PathLayer.Task());
+		assertThat(layer.mWorker.mPath.size()).isEqualTo(5);
+
+		GeometryBuffer geom = new GeometryBuffer(3, 1);
+		geom.startLine();
+		for (int i = 0; i < 3; i++)
+			geom.addPoint(-30 - i, -40 - i);
+		layer.setGeom(geom);
+		layer.mWorker.doWork(new PathLayer.Task());
+		assertThat(layer.mWorker.mPath.size()).isEqualTo(3);
+
+		/* must not append to the path of geom */
+		layer.addPoint(new GeoPoint(15, 25));
+		layer.mWorker.doWork(new PathLayer.Task());
+
+		PathSegments path = layer.mWorker.mPath;
+		assertThat(path.size()).isEqualTo(6);
+		for (int i = 0; i < 6; i++) {
+			GeoPoint p = layer.getPoints().get(i);
+			assertThat(path.getX(i))
+			    .isEqualTo(MercatorProjection.longitudeToX(p.getLongitude()), offset(1e-9));
+			assertThat(path.getY(i))
+			    .isEqualTo(MercatorProjection.latitudeToY(p.getLatitude()), offset(1e-9));
+		}
+	}
+}
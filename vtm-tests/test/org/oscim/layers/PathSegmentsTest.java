@@ -0,0 +1,64 @@
+package org.oscim.layers;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import org.junit.Test;
+import org.oscim.layers.PathSegments.Segment;
+
+public class PathSegmentsTest {
+
+	@Test
+	public void shouldSplitIntoSegments() {
+		PathSegments p = new PathSegments();
+		int n = PathSegments.SEGMENT_SIZE * 2 + 10;
+		for (int i = 0; i < n; i++)
+			p.add(0.5 + i * 1e-6, 0.5);
+
+		assertThat(p.size()).isEqualTo(n);
+		assertThat(p.segments.size()).isEqualTo(3);
+
+		/* segments share first and last point */
+		Segment a = p.segments.get(0);
+		Segment b = p.segments.get(1);
+		assertThat(a.start).isEqualTo(0);
+		assertThat(b.start).isEqualTo(a.end - 1);
+		assertThat(p.segments.get(2).end).isEqualTo(n);
+
+		assertThat(b.xmin).isEqualTo(p.getX(b.start));
+		assertThat(b.xmax).isEqualTo(p.getX(b.end - 1));
+	}
+
+	@Test
+	public void shouldSimplifyLowLevels() {
+		PathSegments p = new PathSegments();
+		for (int i = 0; i <= PathSegments.SEGMENT_SIZE; i++)
+			p.add(0.5 + i * 1e-6, 0.5 + (i % 2) * 1e-8);
+
+		Segment s = p.segments.get(0);
+
+		/* straight line at zoom-level 0 */
+		int[] index = p.getLevel(s, 0);
+		assertThat(s.levelSize[0]).isEqualTo(2);
+		assertThat(index[0]).isEqualTo(0);
+		assertThat(index[1]).isEqualTo(PathSegments.SEGMENT_SIZE);
+
+		/* zig-zag is visible at zoom-level 20 */
+		p.getLevel(s, PathSegments.level(20));
+		assertThat(s.levelSize[PathSegments.level(20)]).isEqualTo(PathSegments.SEGMENT_SIZE + 1);
+
+		/* appending a point recreates levels */
+		p.add(0.6, 0.5);
+		assertThat(p.segments.get(p.segments.size() - 1).levels[0]).isNull();
+	}
+
+	@Test
+	public void shouldIntersectAcrossDateLine() {
+		PathSegments p = new PathSegments();
+		p.add(0.001, 0.5);
+		p.add(0.002, 0.5);
+		Segment s = p.segments.get(0);
+
+		assertThat(s.intersects(0.99, 0.4, 1.01, 0.6)).isTrue();
+		assertThat(s.intersects(0.5, 0.4, 0.6, 0.6)).isFalse();
+	}
+}
@@ -0,0 +1,64 @@
+package org.oscim.layers.marker;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.oscim.core.Box;
+import org.oscim.core.GeoPoint;
+import org.oscim.map.Map;
+
+public class ItemizedLayerTest {
+
+	static MarkerItem item(String title) {
+		return new MarkerItem(title, "", new GeoPoint(0, 0));
+	}
+
+	@Test
+	public void shouldFindIndexAfterChanges() {
+		Map map = Mockito.mock(Map.class);
+		ItemizedLayer<MarkerItem> layer = new ItemizedLayer<MarkerItem>(map, null);
+
+		MarkerItem a = item("a"), b = item("b"), c = item("c"), d = item("d");
+		layer.addItem(a);
+		layer.addItem(b);
+		assertThat(layer.indexOf(b)).isEqualTo(1);
+
+		layer.addItem(c);
+		assertThat(layer.indexOf(c)).isEqualTo(2);
+
+		layer.addItem(1, d);
+		assertThat(layer.indexOf(a)).isEqualTo(0);
+		assertThat(layer.indexOf(d)).isEqualTo(1);
+		assertThat(layer.indexOf(b)).isEqualTo(2);
+		assertThat(layer.indexOf(c)).isEqualTo(3);
+
+		layer.removeItem(a);
+		assertThat(layer.indexOf(a)).isEqualTo(-1);
+		assertThat(layer.indexOf(d)).isEqualTo(0);
+		assertThat(layer.indexOf(c)).isEqualTo(2);
+
+		/* list modified without the layer */
+		layer.mItemList.add(0, a);
+		assertThat(layer.indexOf(d)).isEqualTo(1);
+		assertThat(layer.indexOf(a)).isEqualTo(0);
+	}
+
+	@Test
+	public void shouldKeepItemAddedTwice() {
+		Map map = Mockito.mock(Map.class);
+		ItemizedLayer<MarkerItem> layer = new ItemizedLayer<MarkerItem>(map, null);
+
+		MarkerItem a = item("a"), b = item("b");
+		layer.addItem(a);
+		layer.addItem(b);
+		layer.addItem(a);
+		assertThat(layer.indexOf(a)).isEqualTo(0);
+
+		/* still in the list once */
+		layer.removeItem(0);
+		assertThat(layer.indexOf(a)).isEqualTo(1);
+		assertThat(layer.mMarkerRenderer.getItems(new Box(0, 0, 1, 1), null).size())
+		    .isEqualTo(2);
+	}
+}
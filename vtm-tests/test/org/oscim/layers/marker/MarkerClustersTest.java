@@ -0,0 +1,103 @@
+package org.oscim.layers.marker;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.data.Offset.offset;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+import org.oscim.core.Point;
+import org.oscim.layers.marker.MarkerClusters.Cluster;
+import org.oscim.layers.marker.MarkerRenderer.InternalItem;
+
+public class MarkerClustersTest {
+
+	static InternalItem item(double x, double y) {
+		InternalItem it = new InternalItem();
+		it.setPosition(new Point(x, y));
+		return it;
+	}
+
+	@Test
+	public void shouldClusterItemsPerZoomLevel() {
+		MarkerClusters c = new MarkerClusters(4);
+		InternalItem a = item(0.1, 0.1);
+		InternalItem b = item(0.1001, 0.1001);
+		InternalItem d = item(0.9, 0.9);
+		c.add(a);
+		c.add(b);
+		c.add(d);
+
+		/* a and b share one cell on zoom-level 0 */
+		int n = MarkerClusters.numCells(0) - 1;
+		Cluster root = c.get(0, 0, 0);
+		assertThat(root.count).isEqualTo(2);
+		assertThat(root.px).isEqualTo(0.10005, offset(1e-9));
+		assertThat(c.get(0, n, n).count).isEqualTo(1);
+
+		/* single item is returned instead of its cluster */
+		assertThat(c.getSingle(0, c.get(0, n, n))).isSameAs(d);
+
+		ArrayList<InternalItem> found = new ArrayList<InternalItem>();
+		c.collect(0, 0, 0, 1, 1, found);
+		assertThat(found.size()).isEqualTo(2);
+		assertThat(found.contains(root)).isTrue();
+		assertThat(found.contains(d)).isTrue();
+	}
+
+	@Test
+	public void shouldRemoveItems() {
+		MarkerClusters c = new MarkerClusters(2);
+		InternalItem a = item(0.1, 0.1);
+		InternalItem b = item(0.11, 0.11);
+		c.add(a);
+		c.add(b);
+
+		assertThat(c.remove(a)).isTrue();
+		assertThat(c.remove(a)).isFalse();
+		assertThat(c.get(0, 0, 0).count).isEqualTo(1);
+		assertThat(c.get(0, 0, 0).px).isEqualTo(0.11, offset(1e-9));
+
+		assertThat(c.remove(b)).isTrue();
+		assertThat(c.get(0, 0, 0)).isNull();
+		assertThat(c.get(2, MarkerClusters.cell(0.11, 2),
+		                        MarkerClusters.cell(0.11, 2))).isNull();
+	}
+
+	@Test
+	public void shouldCollectAcrossDateLine() {
+		MarkerClusters c = new MarkerClusters(2);
+		InternalItem a = item(0.001, 0.5);
+		InternalItem b = item(0.999, 0.5);
+		InternalItem d = item(0.5, 0.5);
+		c.add(a);
+		c.add(b);
+		c.add(d);
+
+		ArrayList<InternalItem> found = new ArrayList<InternalItem>();
+		c.collect(2, 0.99, 0.4, 1.01, 0.6, found);
+		assertThat(found.size()).isEqualTo(2);
+		assertThat(found.contains(a)).isTrue();
+		assertThat(found.contains(b)).isTrue();
+	}
+
+	@Test
+	public void shouldClusterUpToMaxZoom() {
+		MarkerClusters c = new MarkerClusters(MarkerClusters.MAX_ZOOM);
+		InternalItem a = item(0.999999, 0.999999);
+		c.add(a);
+
+		int z = MarkerClusters.MAX_ZOOM;
+		int n = MarkerClusters.numCells(z);
+		assertThat(n).isPositive();
+		assertThat(c.getSingle(0, c.get(0, MarkerClusters.cell(a.px, 0),
+		                                MarkerClusters.cell(a.py, 0)))).isSameAs(a);
+		assertThat(c.get(z, MarkerClusters.cell(a.px, z),
+		                 MarkerClusters.cell(a.py, z)).count).isEqualTo(1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldRejectMaxZoomOutOfRange() {
+		new MarkerClusters(MarkerClusters.MAX_ZOOM + 1);
+	}
+}
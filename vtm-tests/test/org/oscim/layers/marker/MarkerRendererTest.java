@@ -0,0 +1,117 @@
+package org.oscim.layers.marker;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.oscim.core.Box;
+import org.oscim.core.GeoPoint;
+
+public class MarkerRendererTest {
+
+	static MarkerItem item(double lat, double lon) {
+		return new MarkerItem(lat + "/" + lon, "", new GeoPoint(lat, lon));
+	}
+
+	@Test
+	public void shouldFindItemsInBox() {
+		MarkerRenderer r = new MarkerRenderer(null, null);
+		MarkerItem a = item(0, 0);
+		MarkerItem b = item(45, 90);
+		MarkerItem c = item(-45, -179);
+		r.addItem(a);
+		r.addItem(b);
+		r.addItem(c);
+
+		List<MarkerItem> found = r.getItems(new Box(0.4, 0.4, 0.6, 0.6), null);
+		assertThat(found.size()).isEqualTo(1);
+		assertThat(found.get(0)).isSameAs(a);
+
+		found = r.getItems(new Box(0, 0, 1, 1), null);
+		assertThat(found.size()).isEqualTo(3);
+	}
+
+	@Test
+	public void shouldFindItemsAcrossDateLine() {
+		MarkerRenderer r = new MarkerRenderer(null, null);
+		MarkerItem a = item(0, -179);
+		MarkerItem b = item(0, 179);
+		r.addItem(a);
+		r.addItem(b);
+
+		/* box from 0.99 to 1.01 wraps to 0 - 0.01 */
+		List<MarkerItem> found = r.getItems(new Box(0.99, 0.4, 1.01, 0.6), null);
+		assertThat(found.size()).isEqualTo(2);
+	}
+
+	@Test
+	public void shouldRemoveAndMoveItems() {
+		MarkerRenderer r = new MarkerRenderer(null, null);
+		MarkerItem a = item(0, 0);
+		r.addItem(a);
+
+		assertThat(r.removeItem(a)).isTrue();
+		assertThat(r.removeItem(a)).isFalse();
+		assertThat(r.getItems(new Box(0, 0, 1, 1), null).size()).isEqualTo(0);
+
+		final GeoPoint[] pos = { new GeoPoint(0, 0) };
+		MarkerItem m = new MarkerItem("m", "", pos[0]) {
+			@Override
+			public GeoPoint getPoint() {
+				return pos[0];
+			}
+		};
+		r.addItem(m);
+		assertThat(r.getItems(new Box(0.4, 0.4, 0.6, 0.6), null).size()).isEqualTo(1);
+
+		pos[0] = new GeoPoint(60.0, 120.0);
+		assertThat(r.updateItem(m)).isTrue();
+		assertThat(r.getItems(new Box(0.4, 0.4, 0.6, 0.6), null).size()).isEqualTo(0);
+		assertThat(r.getItems(new Box(0.8, 0, 1, 0.4), null).size()).isEqualTo(1);
+	}
+
+	@Test
+	public void shouldNotAddItemTwice() {
+		MarkerRenderer r = new MarkerRenderer(null, null);
+		MarkerItem a = item(0, 0);
+		assertThat(r.addItem(a)).isTrue();
+		assertThat(r.addItem(a)).isFalse();
+		assertThat(r.getItems(new Box(0, 0, 1, 1), null).size()).isEqualTo(1);
+
+		/* no item left behind in the index */
+		assertThat(r.removeItem(a)).isTrue();
+		assertThat(r.getItems(new Box(0, 0, 1, 1), null).size()).isEqualTo(0);
+	}
+
+	@Test
+	public void shouldSkipItemsHiddenInClusters() {
+		MarkerRenderer r = new MarkerRenderer(null, null);
+		MarkerItem a = item(10, -72);
+		MarkerItem b = item(10.001, -72.001);
+		MarkerItem c = item(45, 90);
+		r.addItem(a);
+		r.addItem(b);
+		r.addItem(c);
+		r.setClustering(new ClusterSymbols(0, 0, 10), 10);
+
+		Box box = new Box(0, 0, 1, 1);
+
+		/* a and b are drawn as one cluster */
+		List<MarkerItem> found = r.getItems(2, box, null);
+		assertThat(found.size()).isEqualTo(1);
+		assertThat(found.get(0)).isSameAs(c);
+
+		/* single items are found within box only, not by their cell */
+		found = r.getItems(2, new Box(0.76, 0, 0.8, 0.4), null);
+		assertThat(found.size()).isEqualTo(0);
+		found = r.getItems(2, new Box(0.7, 0, 0.8, 0.4), null);
+		assertThat(found.size()).isEqualTo(1);
+
+		/* no clusters above maxZoom */
+		assertThat(r.getItems(11, box, null).size()).isEqualTo(3);
+
+		r.setClustering(null, 0);
+		assertThat(r.getItems(2, box, null).size()).isEqualTo(3);
+	}
+}
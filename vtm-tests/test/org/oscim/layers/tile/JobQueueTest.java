@@ -0,0 +1,132 @@
+package org.oscim.layers.tile;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.oscim.layers.tile.MapTile.State.CANCEL;
+import static org.oscim.layers.tile.MapTile.State.LOADING;
+import static org.oscim.layers.tile.MapTile.State.NONE;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.oscim.core.Tile;
+
+public class JobQueueTest {
+	private JobQueue queue;
+
+	@Before
+	public void setUp() {
+		queue = new JobQueue();
+	}
+
+	static MapTile tile(int x, float distance) {
+		MapTile t = new MapTile(null, x, 0, 10);
+		t.setState(LOADING);
+		t.distance = distance;
+		return t;
+	}
+
+	@Test
+	public void shouldPollByDistance() {
+		MapTile a = tile(0, 3);
+		MapTile b = tile(1, 1);
+		MapTile c = tile(2, 2);
+
+		queue.setJobs(new MapTile[] { a, b, c }, 3);
+
+		assertThat(queue.isEmpty()).isFalse();
+		assertThat(queue.poll()).isSameAs(b);
+		assertThat(queue.poll()).isSameAs(c);
+		assertThat(queue.poll()).isSameAs(a);
+		assertThat(queue.poll()).isNull();
+		assertThat(queue.isEmpty()).isTrue();
+	}
+
+	@Test
+	public void shouldReprioritizePendingJobs() {
+		MapTile a = tile(0, 1);
+		MapTile b = tile(1, 2);
+		MapTile c = tile(2, 3);
+
+		queue.setJobs(new MapTile[] { a, b, c }, 3);
+
+		/* map moved: c is closest now, a is out of view */
+		c.distance = 0;
+		queue.setJobs(new MapTile[] { b, c }, 2);
+
+		assertThat(queue.poll()).isSameAs(c);
+		assertThat(queue.poll()).isSameAs(b);
+		assertThat(queue.poll()).isNull();
+		assertThat(a.state(NONE)).isTrue();
+	}
+
+	@Test
+	public void shouldCancelStaleRunningJobs() {
+		MapTile a = tile(0, 1);
+		MapTile b = tile(1, 2);
+
+		queue.setJobs(new MapTile[] { a, b }, 2);
+		assertThat(queue.poll()).isSameAs(a);
+
+		/* a is still wanted, keeps loading */
+		queue.setJobs(new MapTile[] { a, b }, 2);
+		assertThat(a.state(LOADING)).isTrue();
+		assertThat(queue.poll()).isSameAs(b);
+
+		/* a is not wanted anymore */
+		queue.setJobs(new MapTile[] { b }, 1);
+		assertThat(a.state(CANCEL)).isTrue();
+		assertThat(b.state(LOADING)).isTrue();
+		assertThat(queue.poll()).isNull();
+	}
+
+	@Test
+	public void shouldCancelSingleJob() {
+		MapTile a = tile(0, 1);
+		MapTile b = tile(1, 2);
+
+		queue.setJobs(new MapTile[] { a, b }, 2);
+		assertThat(queue.poll()).isSameAs(a);
+
+		assertThat(queue.cancel(b)).isTrue();
+		assertThat(b.state(NONE)).isTrue();
+		assertThat(queue.poll()).isNull();
+
+		assertThat(queue.cancel(a)).isFalse();
+		assertThat(a.state(CANCEL)).isTrue();
+	}
+
+	@Test
+	public void shouldClearPendingJobs() {
+		MapTile a = tile(0, 1);
+		MapTile b = tile(1, 2);
+
+		queue.setJobs(new MapTile[] { a, b }, 2);
+		assertThat(queue.poll()).isSameAs(a);
+		queue.clear();
+
+		assertThat(queue.isEmpty()).isTrue();
+		assertThat(a.state(LOADING)).isTrue();
+		assertThat(b.state(NONE)).isTrue();
+
+		/* completed job can be queued again */
+		queue.completed(a);
+		queue.setJobs(new MapTile[] { a }, 1);
+		assertThat(queue.poll()).isSameAs(a);
+	}
+
+	@Test
+	public void shouldPeekWithoutTaking() {
+		MapTile a = tile(0, 1);
+		MapTile b = tile(1, 2);
+		MapTile c = tile(2, 3);
+
+		queue.setJobs(new MapTile[] { a, b, c }, 3);
+		assertThat(queue.poll()).isSameAs(a);
+		queue.cancel(b);
+
+		Tile[] tiles = new Tile[2];
+		assertThat(queue.peek(tiles)).isEqualTo(1);
+		assertThat(tiles[0]).isSameAs(c);
+		assertThat(queue.poll()).isSameAs(c);
+		assertThat(queue.peek(tiles)).isEqualTo(0);
+	}
+}
@@ -0,0 +1,37 @@
+package org.oscim.layers.tile;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import org.junit.Test;
+import org.oscim.core.GeometryBuffer;
+import org.oscim.layers.tile.MapTile.TileNode;
+import org.oscim.renderer.bucket.RenderBuckets;
+import org.oscim.renderer.bucket.VertexData;
+import org.oscim.theme.styles.LineStyle;
+
+public class MapTileTest {
+
+	@Test
+	public void shouldCountDataSize() {
+		MapTile tile = new MapTile(new TileNode(), 0, 0, 0);
+		assertThat(tile.countSize()).isEqualTo(0);
+
+		GeometryBuffer g = new GeometryBuffer(16, 2);
+		g.startLine();
+		g.addPoint(10, 10);
+		g.addPoint(100, 10);
+		g.addPoint(100, 100);
+
+		RenderBuckets rb = new RenderBuckets();
+		rb.addLineBucket(0, new LineStyle(0xff000000, 2)).addLine(g);
+		tile.data = rb;
+
+		/* one chunk of vertex data */
+		assertThat(tile.countSize()).isEqualTo(VertexData.SIZE * 2);
+
+		/* vertex data moved to native buffer, with 8 fill coordinates */
+		rb.prepareBuffers(true);
+		int size = tile.countSize();
+		assertThat(size > 16 && size < VertexData.SIZE * 2).isTrue();
+	}
+}
@@ -0,0 +1,101 @@
+package org.oscim.layers.tile;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.oscim.layers.tile.MapTile.State.READY;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.oscim.core.GeometryBuffer;
+import org.oscim.core.MapPosition;
+import org.oscim.map.Map;
+import org.oscim.renderer.bucket.RenderBuckets;
+import org.oscim.theme.styles.LineStyle;
+
+public class TileManagerTest {
+	static final int ZOOM = 10;
+
+	private TileManager tm;
+	private MapPosition pos;
+
+	@Before
+	public void setUp() {
+		tm = new TileManager(Mockito.mock(Map.class), 100);
+
+		pos = new MapPosition();
+		pos.zoomLevel = ZOOM;
+		pos.scale = 1 << ZOOM;
+		pos.x = 0.5 / (1 << ZOOM);
+		pos.y = 0.5 / (1 << ZOOM);
+	}
+
+	/** add tile with some vertex data as loaded by a TileLoader */
+	private MapTile loadTile(int x) {
+		MapTile t = tm.addTile(x, 0, ZOOM);
+
+		GeometryBuffer g = new GeometryBuffer(16, 2);
+		g.startLine();
+		g.addPoint(10, 10);
+		g.addPoint(100, 10);
+		g.addPoint(100, 100);
+
+		RenderBuckets rb = new RenderBuckets();
+		rb.addLineBucket(0, new LineStyle(0xff000000, 2)).addLine(g);
+		t.data = rb;
+
+		tm.new JobCompletedEvent(t, true).run();
+		t.setState(READY);
+		return t;
+	}
+
+	@Test
+	public void shouldEvictTilesAboveMemoryLimit() {
+		MapTile[] tiles = new MapTile[5];
+		for (int i = 0; i < 5; i++)
+			tiles[i] = loadTile(i);
+
+		int size = tiles[0].size;
+		assertThat(tm.getCacheBytes()).isEqualTo(5L * size);
+
+		tm.setMemoryLimit(4L * size);
+		tiles[4].lock();
+		tiles[3].isVisible = true;
+		tm.limitCache(pos);
+
+		/* farthest tiles are removed first, unless locked or visible */
+		assertThat(tm.getCacheBytes()).isEqualTo(3L * size);
+		assertThat(tm.getTile(4, 0, ZOOM)).isSameAs(tiles[4]);
+		assertThat(tm.getTile(3, 0, ZOOM)).isSameAs(tiles[3]);
+		assertThat(tm.getTile(2, 0, ZOOM)).isNull();
+		assertThat(tm.getTile(1, 0, ZOOM)).isNull();
+		assertThat(tm.getTile(0, 0, ZOOM)).isSameAs(tiles[0]);
+	}
+
+	@Test
+	public void shouldKeepTilesWithinMemoryLimit() {
+		for (int i = 0; i < 3; i++)
+			loadTile(i);
+
+		tm.setMemoryLimit(3L * tm.getTile(0, 0, ZOOM).size);
+		tm.limitCache(pos);
+
+		for (int i = 0; i < 3; i++)
+			assertThat(tm.getTile(i, 0, ZOOM)).isNotNull();
+	}
+
+	@Test
+	public void shouldUpdateSizeOfUploadedTile() {
+		MapTile a = loadTile(0);
+		MapTile b = loadTile(1);
+		int size = a.size;
+
+		/* vertex data moved to buffers on upload */
+		((RenderBuckets) a.data).prepareBuffers(true);
+		tm.tileUploaded(a);
+		tm.limitCache(pos);
+
+		assertThat(a.size < size).isTrue();
+		assertThat(b.size).isEqualTo(size);
+		assertThat(tm.getCacheBytes()).isEqualTo((long) a.size + b.size);
+	}
+}
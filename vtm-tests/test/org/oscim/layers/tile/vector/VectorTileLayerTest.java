@@ -0,0 +1,74 @@
+package org.oscim.layers.tile.vector;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.oscim.core.MapElement;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.layers.tile.TileManager;
+import org.oscim.layers.tile.VectorTileRenderer;
+import org.oscim.layers.tile.vector.VectorTileLayer.TileLoaderCacheHook;
+import org.oscim.layers.tile.vector.VectorTileLayer.TileLoaderProcessHook;
+import org.oscim.map.Map;
+import org.oscim.renderer.bucket.RenderBuckets;
+
+public class VectorTileLayerTest {
+
+	static class Hook implements TileLoaderProcessHook {
+		@Override
+		public boolean process(MapTile tile, RenderBuckets layers, MapElement element) {
+			return false;
+		}
+
+		@Override
+		public void complete(MapTile tile, boolean success) {
+		}
+	}
+
+	static class CacheHook extends Hook implements TileLoaderCacheHook {
+		final int zoom;
+
+		CacheHook(int zoom) {
+			this.zoom = zoom;
+		}
+
+		/* only needs data of tiles at 'zoom' */
+		@Override
+		public boolean skipCached(MapTile tile) {
+			return tile.zoomLevel != zoom;
+		}
+	}
+
+	private VectorTileLayer layer;
+
+	@Before
+	public void setUp() {
+		Map map = Mockito.mock(Map.class);
+		/* renderer needs GL */
+		layer = new VectorTileLayer(map, new TileManager(map, 10),
+		                            Mockito.mock(VectorTileRenderer.class));
+	}
+
+	@Test
+	public void shouldSkipTileDataWithoutHooks() {
+		assertThat(layer.needsTileData(new MapTile(null, 1, 2, 3))).isFalse();
+	}
+
+	@Test
+	public void shouldAskCacheHooks() {
+		layer.addHook(new CacheHook(17));
+
+		assertThat(layer.needsTileData(new MapTile(null, 1, 2, 14))).isFalse();
+		assertThat(layer.needsTileData(new MapTile(null, 1, 2, 17))).isTrue();
+	}
+
+	@Test
+	public void shouldNeedTileDataForOtherHooks() {
+		layer.addHook(new CacheHook(17));
+		layer.addHook(new Hook());
+
+		assertThat(layer.needsTileData(new MapTile(null, 1, 2, 14))).isTrue();
+	}
+}
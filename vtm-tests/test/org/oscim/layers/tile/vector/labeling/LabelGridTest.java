@@ -0,0 +1,76 @@
+package org.oscim.layers.tile.vector.labeling;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LabelGridTest {
+
+	static Label label(float x, float y, float w, float h) {
+		Label l = new Label();
+		l.minX = x;
+		l.minY = y;
+		l.maxX = x + w;
+		l.maxY = y + h;
+		return l;
+	}
+
+	static boolean intersects(Label l, float minX, float minY, float maxX, float maxY) {
+		return !(l.maxX < minX || l.minX > maxX || l.maxY < minY || l.minY > maxY);
+	}
+
+	@Test
+	public void shouldFindSameLabelsAsLinearSearch() {
+		Random r = new Random(1);
+		LabelGrid grid = new LabelGrid();
+		grid.init(1000);
+
+		/* in reverse insertion order */
+		ArrayList<Label> labels = new ArrayList<Label>();
+
+		for (int i = 0; i < 2000; i++) {
+			Label l = label(r.nextFloat() * 2400 - 1200,
+			                r.nextFloat() * 2400 - 1200,
+			                r.nextFloat() * 300,
+			                r.nextFloat() * 40);
+			grid.add(l);
+			labels.add(0, l);
+
+			if (i % 3 == 0) {
+				Label rm = labels.remove(r.nextInt(labels.size()));
+				grid.remove(rm);
+			}
+		}
+
+		for (int i = 0; i < 500; i++) {
+			float x = r.nextFloat() * 2400 - 1200;
+			float y = r.nextFloat() * 2400 - 1200;
+			float w = r.nextFloat() * 400;
+			float h = r.nextFloat() * 100;
+
+			ArrayList<Label> expect = new ArrayList<Label>();
+			for (Label l : labels)
+				if (intersects(l, x, y, x + w, y + h))
+					expect.add(l);
+
+			int cnt = grid.query(x, y, x + w, y + h);
+			assertThat(cnt).isEqualTo(expect.size());
+			for (int j = 0; j < cnt; j++)
+				assertThat(grid.get(j)).isSameAs(expect.get(j));
+		}
+	}
+
+	@Test
+	public void shouldClearOnInit() {
+		LabelGrid grid = new LabelGrid();
+		grid.init(500);
+		grid.add(label(0, 0, 10, 10));
+		assertThat(grid.query(-500, -500, 500, 500)).isEqualTo(1);
+
+		grid.init(200);
+		assertThat(grid.query(-500, -500, 500, 500)).isEqualTo(0);
+	}
+}
@@ -0,0 +1,109 @@
+package org.oscim.layers.vector;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.data.Offset.offset;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.oscim.core.GeometryBuffer;
+import org.oscim.core.Tile;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.layers.tile.TileManager;
+import org.oscim.layers.tile.VectorTileRenderer;
+import org.oscim.map.Map;
+import org.oscim.renderer.bucket.LineBucket;
+import org.oscim.renderer.bucket.RenderBuckets;
+import org.oscim.theme.styles.LineStyle;
+
+public class TiledVectorLayerTest {
+
+	static class TestLayer extends TiledVectorLayer {
+		Loader loader;
+		boolean fail;
+		boolean cancel;
+		RuntimeException error;
+
+		TestLayer(Map map) {
+			/* renderer needs GL */
+			super(map, new TileManager(map, 10), Mockito.mock(VectorTileRenderer.class));
+		}
+
+		@Override
+		protected boolean processFeatures(Task t) {
+			if (error != null)
+				throw error;
+
+			/* line through the tile center */
+			GeometryBuffer g = t.geom;
+			g.clear();
+			g.startLine();
+			g.addPoint(t.longitudeToTileX(t.bbox.getMinLongitude()), Tile.SIZE / 2);
+			g.addPoint(t.longitudeToTileX(t.bbox.getMaxLongitude()), Tile.SIZE / 2);
+
+			if (t.clipper.clip(g)) {
+				LineBucket ll = t.buckets.getLineBucket(0);
+				ll.line = new LineStyle(0xff000000, 2);
+				ll.addLine(g);
+			}
+
+			if (cancel)
+				loader.cancel();
+
+			return !fail;
+		}
+	}
+
+	private TestLayer layer;
+	private MapTile tile;
+
+	@Before
+	public void setUp() {
+		layer = new TestLayer(Mockito.mock(Map.class));
+		layer.loader = (TiledVectorLayer.Loader) layer.createLoader();
+		tile = new MapTile(null, 5, 6, 4);
+	}
+
+	@Test
+	public void shouldConvertToTileCoordinates() {
+		TiledVectorLayer.Task t = new TiledVectorLayer.Task();
+		t.set(tile);
+
+		/* bbox includes the clip margin */
+		float margin = TiledVectorLayer.CLIP_MARGIN;
+		assertThat(t.longitudeToTileX(t.bbox.getMinLongitude())).isEqualTo(-margin, offset(0.01f));
+		assertThat(t.longitudeToTileX(t.bbox.getMaxLongitude()))
+		    .isEqualTo(Tile.SIZE + margin, offset(0.01f));
+		assertThat(t.latitudeToTileY(t.bbox.getMaxLatitude())).isEqualTo(-margin, offset(0.01f));
+		assertThat(t.latitudeToTileY(t.bbox.getMinLatitude()))
+		    .isEqualTo(Tile.SIZE + margin, offset(0.01f));
+	}
+
+	@Test
+	public void shouldLoadFeaturesOfTile() {
+		assertThat(layer.loader.process(tile)).isTrue();
+
+		RenderBuckets buckets = (RenderBuckets) tile.data;
+		assertThat(buckets.get()).isNotNull();
+	}
+
+	@Test
+	public void shouldFailWhenProcessingFails() {
+		layer.fail = true;
+		assertThat(layer.loader.process(tile)).isFalse();
+
+		layer.fail = false;
+		layer.error = new IllegalStateException("broken feature");
+		assertThat(layer.loader.process(tile)).isFalse();
+	}
+
+	@Test
+	public void shouldAbortCanceledTile() {
+		layer.cancel = true;
+		assertThat(layer.loader.process(tile)).isFalse();
+
+		/* next tile is loaded again */
+		layer.cancel = false;
+		assertThat(layer.loader.process(tile)).isTrue();
+	}
+}
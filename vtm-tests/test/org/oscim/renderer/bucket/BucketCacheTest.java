@@ -0,0 +1,291 @@
+package org.oscim.renderer.bucket;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.oscim.core.GeometryBuffer;
+import org.oscim.core.Tile;
+import org.oscim.renderer.bucket.BucketCache.Namespace;
+import org.oscim.theme.RenderTheme;
+import org.oscim.theme.rule.Rule;
+import org.oscim.theme.rule.RuleBuilder;
+import org.oscim.theme.styles.AreaStyle;
+import org.oscim.theme.styles.LineStyle;
+
+public class BucketCacheTest {
+
+	final LineStyle line = new LineStyle(0, 0xff000000, 2);
+	final LineStyle outline = new LineStyle(1, 0xff00ff00, 3);
+	final AreaStyle area = new AreaStyle(2, 0xff0000ff);
+
+	RenderTheme createTheme() {
+		return createTheme(new RuleBuilder());
+	}
+
+	RenderTheme createTheme(RuleBuilder b) {
+		b.addStyle(line)
+		    .addStyle(outline)
+		    .addStyle(area);
+
+		Rule[] rules = { b.onComplete(new int[1]) };
+		return new RenderTheme(0, 1, rules, 3);
+	}
+
+	RenderBuckets createBuckets() {
+		GeometryBuffer g = new GeometryBuffer(16, 2);
+		g.startPolygon();
+		g.addPoint(10, 10);
+		g.addPoint(100, 10);
+		g.addPoint(100, 100);
+		g.addPoint(10, 100);
+
+		RenderBuckets rb = new RenderBuckets();
+		rb.addPolygonBucket(0, area).addPolygon(g);
+
+		LineBucket lb = rb.addLineBucket(1, line);
+		lb.scale = 1.5f;
+		lb.addLine(g);
+
+		rb.addLineBucket(2, outline).addOutline(lb);
+
+		rb.prepare();
+		assertThat(rb.prepareBuffers(true)).isTrue();
+		return rb;
+	}
+
+	static short[] content(ShortBuffer b) {
+		ShortBuffer d = b.duplicate();
+		d.flip();
+		short[] s = new short[d.remaining()];
+		d.get(s);
+		return s;
+	}
+
+	void assertRestored(RenderBuckets rb, RenderBuckets restored) {
+		assertThat(Arrays.equals(content(rb.getPreparedVertices()),
+		                                content(restored.getPreparedVertices()))).isTrue();
+		assertThat(restored.offset).isEqualTo(rb.offset);
+
+		RenderBucket a = rb.get(), b = restored.get();
+		for (; a != null; a = a.next, b = b.next) {
+			assertThat(b).isNotNull();
+			assertThat(b.type).isEqualTo(a.type);
+			assertThat(b.level).isEqualTo(a.level);
+			assertThat(b.numVertices).isEqualTo(a.numVertices);
+			assertThat(b.vertexOffset).isEqualTo(a.vertexOffset);
+		}
+		assertThat(b).isNull();
+
+		LineBucket lb = (LineBucket) restored.get().next;
+		assertThat(lb.line).isSameAs(line);
+		assertThat(lb.scale).isEqualTo(1.5f);
+
+		LineBucket ob = (LineBucket) lb.next;
+		assertThat(ob.line).isSameAs(outline);
+		assertThat(ob.outlines).isSameAs(lb);
+
+		PolygonBucket pb = (PolygonBucket) restored.get();
+		assertThat(pb.area).isSameAs(area);
+		assertThat(pb.bbox).isEqualTo(((PolygonBucket) rb.get()).bbox);
+	}
+
+	@Test
+	public void shouldRestoreBuckets() {
+		BucketCache cache = new BucketCache(1 << 20);
+		Namespace ns = cache.getNamespace(createTheme(), "test");
+		Tile tile = new Tile(1, 2, (byte) 3);
+
+		RenderBuckets rb = createBuckets();
+		assertThat(cache.put(tile, ns, rb)).isTrue();
+
+		RenderBuckets restored = new RenderBuckets();
+		assertThat(cache.get(new Tile(2, 2, (byte) 3), ns, restored)).isFalse();
+		assertThat(cache.get(tile, ns, restored)).isTrue();
+		assertThat(restored.isPrepared()).isTrue();
+		assertRestored(rb, restored);
+
+		/* other theme instance does not match */
+		Namespace ns2 = cache.getNamespace(createTheme(), "test");
+		assertThat(cache.get(tile, ns2, new RenderBuckets())).isFalse();
+	}
+
+	@Test
+	public void shouldLimitMemory() {
+		RenderBuckets rb = createBuckets();
+		BucketCache cache = new BucketCache(1 << 20);
+		Namespace ns = cache.getNamespace(createTheme(), "test");
+
+		cache.put(new Tile(0, 0, (byte) 1), ns, rb);
+		long size = cache.getBytes();
+		cache.setMaxBytes(size * 3);
+
+		for (int i = 0; i < 5; i++)
+			cache.put(new Tile(i, 0, (byte) 4), ns, rb);
+
+		assertThat(cache.getCount()).isEqualTo(3);
+		assertThat(cache.getBytes()).isEqualTo(size * 3);
+		assertThat(cache.get(new Tile(4, 0, (byte) 4), ns, new RenderBuckets())).isTrue();
+		assertThat(cache.get(new Tile(0, 0, (byte) 4), ns, new RenderBuckets())).isFalse();
+	}
+
+	/** Store keeping entries in memory */
+	static class TestStore implements BucketCache.Store {
+		final HashMap<String, ByteBuffer> entries = new HashMap<String, ByteBuffer>();
+		int writes;
+
+		static String key(Tile tile, String namespace) {
+			return namespace + "/" + tile.zoomLevel + "/" + tile.tileX + "/" + tile.tileY;
+		}
+
+		@Override
+		public synchronized ByteBuffer read(Tile tile, String namespace) {
+			return entries.get(key(tile, namespace));
+		}
+
+		@Override
+		public synchronized void write(Tile tile, String namespace, ByteBuffer data) {
+			ByteBuffer copy = ByteBuffer.allocateDirect(data.capacity());
+			ByteBuffer d = data.duplicate();
+			d.clear();
+			copy.put(d);
+			copy.clear();
+			entries.put(key(tile, namespace), copy);
+			writes++;
+		}
+	}
+
+	@Test
+	public void shouldReadFromStore() {
+		TestStore store = new TestStore();
+		RenderTheme theme = createTheme();
+		RenderBuckets rb = createBuckets();
+		Tile tile = new Tile(5, 6, (byte) 7);
+
+		BucketCache cache = new BucketCache(1 << 20, store);
+		cache.put(tile, cache.getNamespace(theme, "test"), rb);
+		/* writes pending entries */
+		cache.dispose();
+		assertThat(store.writes).isEqualTo(1);
+
+		/* new cache with same theme structure */
+		BucketCache cache2 = new BucketCache(1 << 20, store);
+		Namespace ns = cache2.getNamespace(theme, "test");
+		RenderBuckets restored = new RenderBuckets();
+		assertThat(cache2.get(tile, ns, restored)).isTrue();
+		assertThat(cache2.getStoreHits()).isEqualTo(1);
+		assertRestored(rb, restored);
+
+		/* different source */
+		Namespace other = cache2.getNamespace(theme, "other");
+		assertThat(cache2.get(tile, other, new RenderBuckets())).isFalse();
+		cache2.dispose();
+	}
+
+	@Test
+	public void shouldReadPendingWrites() throws Exception {
+		final CountDownLatch written = new CountDownLatch(1);
+		final CountDownLatch blocked = new CountDownLatch(1);
+		TestStore store = new TestStore() {
+			@Override
+			public void write(Tile tile, String namespace, ByteBuffer data) {
+				blocked.countDown();
+				try {
+					written.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				super.write(tile, namespace, data);
+			}
+		};
+
+		BucketCache cache = new BucketCache(1 << 20, store);
+		Namespace ns = cache.getNamespace(createTheme(), "test");
+		Tile tile = new Tile(5, 6, (byte) 7);
+		RenderBuckets rb = createBuckets();
+
+		/* put() does not wait for the store */
+		assertThat(cache.put(tile, ns, rb)).isTrue();
+		assertThat(blocked.await(10, TimeUnit.SECONDS)).isTrue();
+
+		/* entry removed from memory is still found while writing */
+		cache.setMaxBytes(0);
+		assertThat(cache.getCount()).isEqualTo(0);
+		RenderBuckets restored = new RenderBuckets();
+		assertThat(cache.get(tile, ns, restored)).isTrue();
+		assertThat(cache.getStoreHits()).isEqualTo(0);
+		assertRestored(rb, restored);
+
+		written.countDown();
+		cache.dispose();
+		assertThat(store.writes).isEqualTo(1);
+	}
+
+	@Test
+	public void shouldIncludeRulesInSignature() {
+		BucketCache cache = new BucketCache(1 << 20);
+		int sig = cache.getNamespace(createTheme(), "test").signature;
+
+		assertThat(cache.getNamespace(createTheme(), "test").signature).isEqualTo(sig);
+
+		Namespace key = cache.getNamespace(createTheme(RuleBuilder
+		    .create("highway", null)), "test");
+		Namespace value = cache.getNamespace(createTheme(RuleBuilder
+		    .create("highway", "primary")), "test");
+		Namespace zoom = cache.getNamespace(createTheme(new RuleBuilder()
+		    .setZoom((byte) 0, (byte) 10)), "test");
+		Namespace select = cache.getNamespace(createTheme(new RuleBuilder()
+		    .select(Rule.Selector.FIRST)), "test");
+
+		assertThat(sig != key.signature).isTrue();
+		assertThat(sig != value.signature).isTrue();
+		assertThat(key.signature != value.signature).isTrue();
+		assertThat(sig != zoom.signature).isTrue();
+		assertThat(sig != select.signature).isTrue();
+	}
+
+	@Test
+	public void shouldIncludeWidthInSignature() {
+		BucketCache cache = new BucketCache(1 << 20);
+		int sig = cache.getNamespace(createTheme(), "test").signature;
+
+		RuleBuilder b = new RuleBuilder()
+		    .addStyle(new LineStyle(0, 0xff000000, 4))
+		    .addStyle(outline)
+		    .addStyle(area);
+		Rule[] rules = { b.onComplete(new int[1]) };
+		RenderTheme wide = new RenderTheme(0, 1, rules, 3);
+
+		assertThat(sig != cache.getNamespace(wide, "test").signature).isTrue();
+	}
+
+	@Test
+	public void shouldRejectOtherSource() {
+		TestStore store = new TestStore();
+		RenderTheme theme = createTheme();
+		Tile tile = new Tile(5, 6, (byte) 7);
+
+		BucketCache cache = new BucketCache(1 << 20, store);
+		Namespace ns = cache.getNamespace(theme, "test");
+		cache.put(tile, ns, createBuckets());
+		cache.dispose();
+
+		/* move entry to the namespace of another source */
+		Namespace other = cache.getNamespace(theme, "other");
+		ByteBuffer data = store.entries.remove(TestStore.key(tile, ns.getName()));
+		assertThat(data).isNotNull();
+		store.entries.put(TestStore.key(tile, other.getName()), data);
+
+		BucketCache cache2 = new BucketCache(1 << 20, store);
+		other = cache2.getNamespace(theme, "other");
+		assertThat(cache2.get(tile, other, new RenderBuckets())).isFalse();
+		assertThat(cache2.getCount()).isEqualTo(0);
+		cache2.dispose();
+	}
+}
@@ -0,0 +1,45 @@
+package org.oscim.renderer.bucket;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import org.junit.Test;
+import org.oscim.theme.styles.LineStyle;
+
+public class BucketPoolTest {
+
+	@Test
+	public void shouldReuseBuckets() {
+		BucketPool pool = new BucketPool();
+		RenderBuckets rb = pool.getBuckets();
+
+		LineBucket lb = rb.getLineBucket(3);
+		lb.line = new LineStyle(0xff000000, 2);
+		lb.scale = 2;
+		MeshBucket mb = rb.getMeshBucket(1);
+
+		rb.dispose();
+		assertThat(pool.getFill()).isEqualTo(1);
+		assertThat(rb.get()).isNull();
+
+		/* same objects with initial state */
+		RenderBuckets rb2 = pool.getBuckets();
+		assertThat(rb2).isSameAs(rb);
+
+		LineBucket lb2 = rb2.getLineBucket(5);
+		assertThat(lb2).isSameAs(lb);
+		assertThat(lb2.line).isNull();
+		assertThat(lb2.scale).isEqualTo(1);
+		assertThat(lb2.level).isEqualTo(5);
+		assertThat(lb2.next).isNull();
+
+		assertThat(rb2.getMeshBucket(6)).isSameAs(mb);
+	}
+
+	@Test
+	public void shouldNotPoolPlainBuckets() {
+		RenderBuckets rb = new RenderBuckets();
+		LineBucket lb = rb.getLineBucket(0);
+		rb.clear();
+		assertThat(rb.getLineBucket(0)).isNotSameAs(lb);
+	}
+}
@@ -0,0 +1,76 @@
+package org.oscim.renderer.bucket;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import org.junit.Test;
+import org.oscim.renderer.bucket.VertexData.Chunk;
+
+public class ChunkPoolTest {
+
+	static Chunk list(int n) {
+		Chunk list = null;
+		for (int i = 0; i < n; i++) {
+			Chunk c = new Chunk();
+			c.used = 10;
+			c.next = list;
+			list = c;
+		}
+		return list;
+	}
+
+	@Test
+	public void shouldHandOffBatches() {
+		ChunkPool a = new ChunkPool();
+		ChunkPool b = new ChunkPool();
+
+		int shared = ChunkPool.getSharedFill();
+
+		a.releaseAll(list(ChunkPool.MAX_LOCAL + ChunkPool.BATCH_SIZE));
+		assertThat(a.getFill()).isEqualTo(ChunkPool.MAX_LOCAL);
+		assertThat(ChunkPool.getSharedFill()).isEqualTo(shared + ChunkPool.BATCH_SIZE);
+
+		/* empty pool takes a batch from shared stack */
+		int created = ChunkPool.getCreated();
+		Chunk c = b.get();
+		assertThat(c.used).isEqualTo(0);
+		assertThat(c.next).isNull();
+		assertThat(b.getFill()).isEqualTo(ChunkPool.BATCH_SIZE - 1);
+		assertThat(ChunkPool.getSharedFill()).isEqualTo(shared);
+		assertThat(ChunkPool.getCreated()).isEqualTo(created);
+	}
+
+	@Test
+	public void shouldUseBucketChunkPool() {
+		BucketPool pool = new BucketPool();
+		RenderBuckets rb = pool.getBuckets();
+		LineBucket lb = rb.getLineBucket(0);
+		for (int i = 0; i < VertexData.SIZE * 3; i++)
+			lb.vertexItems.add((short) i);
+
+		int fill = pool.getChunkPool().getFill();
+		rb.clear();
+		assertThat(pool.getChunkPool().getFill()).isEqualTo(fill + 3);
+	}
+
+	@Test
+	public void shouldUseChunkPoolOfRenderBuckets() {
+		ChunkPool pool = new ChunkPool();
+		RenderBuckets rb = new RenderBuckets();
+		rb.setChunkPool(pool);
+		assertThat(rb.getChunkPool()).isSameAs(pool);
+
+		LineBucket lb = rb.getLineBucket(0);
+		for (int i = 0; i < VertexData.SIZE * 2; i++)
+			lb.vertexItems.add((short) i);
+
+		ExtrusionBucket eb = new ExtrusionBucket(0, 1, 0xff000000);
+		eb.setChunkPool(rb.getChunkPool());
+		for (int i = 0; i < VertexData.SIZE; i++)
+			eb.vertexItems.add((short) i);
+
+		rb.clear();
+		assertThat(pool.getFill()).isEqualTo(2);
+		eb.clear();
+		assertThat(pool.getFill()).isEqualTo(3);
+	}
+}
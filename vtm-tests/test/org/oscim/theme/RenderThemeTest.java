@@ -0,0 +1,199 @@
+package org.oscim.theme;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.Tag;
+import org.oscim.core.TagSet;
+import org.oscim.theme.rule.Rule;
+import org.oscim.theme.rule.Rule.Element;
+import org.oscim.theme.rule.Rule.Selector;
+import org.oscim.theme.rule.RuleBuilder;
+import org.oscim.theme.styles.RenderStyle;
+
+public class RenderThemeTest {
+	static final String[] KEYS = { "highway", "landuse", "name", "building", "natural" };
+	static final String[] VALUES = { "primary", "residential", "yes", "water", "wood" };
+
+	static class TestStyle extends RenderStyle {
+		@Override
+		public RenderStyle current() {
+			return this;
+		}
+	}
+
+	final Random rnd = new Random(42);
+
+	String key() {
+		return KEYS[rnd.nextInt(KEYS.length)];
+	}
+
+	String value() {
+		return VALUES[rnd.nextInt(VALUES.length)];
+	}
+
+	RuleBuilder randomRule(int depth) {
+		RuleBuilder b;
+		switch (rnd.nextInt(6)) {
+			case 0:
+				b = RuleBuilder.create(key(), null);
+				break;
+			case 1:
+				b = RuleBuilder.create(null, value());
+				break;
+			case 2:
+				b = RuleBuilder.create(key() + "|" + key(), value() + "|" + value());
+				break;
+			case 3:
+				b = RuleBuilder.create(key(), "~|" + value());
+				break;
+			case 4:
+				b = RuleBuilder.create(key(), "-|" + value());
+				break;
+			default:
+				b = RuleBuilder.create(key(), value());
+				break;
+		}
+		int[] elements = { Element.NODE, Element.LINE, Element.POLY, Element.WAY, Element.ANY };
+		b.element(elements[rnd.nextInt(elements.length)]);
+		b.setZoom((byte) rnd.nextInt(10), (byte) (10 + rnd.nextInt(10)));
+
+		int r = rnd.nextInt(4);
+		if (r == 1)
+			b.select(Selector.FIRST);
+		else if (r == 2)
+			b.select(Selector.WHEN_MATCHED);
+
+		if (rnd.nextInt(3) > 0)
+			b.addStyle(new TestStyle());
+
+		if (depth < 2) {
+			/* some with enough sub-rules to be indexed */
+			int n = rnd.nextBoolean() ? rnd.nextInt(3) : 8 + rnd.nextInt(8);
+			for (int i = 0; i < n; i++)
+				b.addSubRule(randomRule(depth + 1));
+		}
+		return b;
+	}
+
+	/* reference implementation: matching without index */
+	static boolean match(Rule rule, int type, Tag[] tags, int zoom, List<RenderStyle> result) {
+		if (((rule.element & type) == 0) || ((rule.zoom & zoom) == 0) || !rule.matchesTags(tags))
+			return false;
+
+		boolean matched = false;
+		for (Rule r : rule.subRules) {
+			if (rule.selectFirstMatch) {
+				if (matched ^ r.selectWhenMatched)
+					continue;
+			} else if (r.selectWhenMatched && !matched)
+				continue;
+
+			if (match(r, type, tags, zoom, result))
+				matched = true;
+		}
+		if (rule.styles.length == 0)
+			return matched;
+
+		for (RenderStyle s : rule.styles)
+			result.add(s);
+		return true;
+	}
+
+	static RenderStyle[] match(Rule[] rules, int type, Tag[] tags, int zoom) {
+		ArrayList<RenderStyle> result = new ArrayList<RenderStyle>();
+		for (Rule r : rules)
+			match(r, type, tags, 1 << zoom, result);
+
+		/* remove duplicates */
+		for (int i = 0; i < result.size(); i++)
+			for (int j = result.size() - 1; j > i; j--)
+				if (result.get(i) == result.get(j))
+					result.remove(j);
+
+		if (result.isEmpty())
+			return null;
+		return result.toArray(new RenderStyle[result.size()]);
+	}
+
+	TagSet randomTags() {
+		TagSet tags = new TagSet();
+		int n = rnd.nextInt(4);
+		for (int i = 0; i < n; i++)
+			tags.add(new Tag(key(), value()));
+		return tags;
+	}
+
+	Rule[] randomRules(int n) {
+		Rule[] rules = new Rule[n];
+		int[] level = { 0 };
+		for (int i = 0; i < n; i++)
+			rules[i] = randomRule(0).onComplete(level);
+		return rules;
+	}
+
+	@Test
+	public void shouldMatchLikeRuleTree() {
+		Rule[] rules = randomRules(40);
+		RenderTheme theme = new RenderTheme(0, 1, rules, 1);
+		GeometryType[] types = { GeometryType.POINT, GeometryType.LINE, GeometryType.POLY };
+
+		for (int i = 0; i < 5000; i++) {
+			TagSet tags = randomTags();
+			GeometryType type = types[rnd.nextInt(3)];
+			int zoom = rnd.nextInt(20);
+
+			RenderStyle[] expected = match(rules, 1 << (type.nativeInt - 1),
+			                               Arrays.copyOf(tags.tags, tags.numTags), zoom);
+
+			/* twice: miss and cache hit */
+			assertThat(theme.matchElement(type, tags, zoom)).isEqualTo(expected);
+			assertThat(theme.matchElement(type, tags, zoom)).isEqualTo(expected);
+		}
+	}
+
+	@Test
+	public void shouldMatchConcurrently() throws Exception {
+		final Rule[] rules = randomRules(40);
+		final RenderTheme theme = new RenderTheme(0, 1, rules, 1);
+		final TagSet[] tagSets = new TagSet[200];
+		for (int i = 0; i < tagSets.length; i++)
+			tagSets[i] = randomTags();
+
+		final int[] errors = new int[1];
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int seed = t;
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Random r = new Random(seed);
+					for (int i = 0; i < 20000; i++) {
+						TagSet tags = tagSets[r.nextInt(tagSets.length)];
+						int zoom = r.nextInt(20);
+						RenderStyle[] expected = match(rules, Element.LINE,
+						                               Arrays.copyOf(tags.tags, tags.numTags),
+						                               zoom);
+						RenderStyle[] styles = theme.matchElement(GeometryType.LINE, tags, zoom);
+						if (!Arrays.equals(expected, styles)) {
+							synchronized (errors) {
+								errors[0]++;
+							}
+						}
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread t : threads)
+			t.join();
+
+		assertThat(errors[0]).isEqualTo(0);
+	}
+}
@@ -0,0 +1,128 @@
+package org.oscim.tiling.cache;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.data.Offset.offset;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.oscim.core.Tile;
+import org.oscim.tiling.ITileCache.TileReader;
+import org.oscim.tiling.ITileCache.TileWriter;
+
+public class FileTileCacheTest {
+	private File dir;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = File.createTempFile("vtm", "cache");
+		dir.delete();
+		dir.mkdirs();
+	}
+
+	@After
+	public void tearDown() {
+		delete(dir);
+	}
+
+	static void delete(File f) {
+		File[] files = f.listFiles();
+		if (files != null)
+			for (File c : files)
+				delete(c);
+		f.delete();
+	}
+
+	static void write(FileTileCache cache, Tile tile, int size, boolean success)
+	        throws IOException {
+		TileWriter w = cache.writeTile(tile);
+		OutputStream os = w.getOutputStream();
+		for (int i = 0; i < size; i++)
+			os.write(i);
+		w.complete(success);
+	}
+
+	static int read(FileTileCache cache, Tile tile) throws IOException {
+		TileReader r = cache.getTile(tile);
+		if (r == null)
+			return -1;
+
+		InputStream is = r.getInputStream();
+		int size = 0;
+		while (is.read() >= 0)
+			size++;
+		is.close();
+		return size;
+	}
+
+	@Test
+	public void shouldStoreTiles() throws IOException {
+		FileTileCache cache = new FileTileCache(dir, 1000);
+		Tile tile = new Tile(1, 2, (byte) 3);
+
+		assertThat(read(cache, tile)).isEqualTo(-1);
+		write(cache, tile, 100, true);
+		assertThat(read(cache, tile)).isEqualTo(100);
+
+		assertThat(cache.getHits()).isEqualTo(1);
+		assertThat(cache.getMisses()).isEqualTo(1);
+		assertThat(cache.getHitRate()).isEqualTo(0.5f, offset(0.001f));
+	}
+
+	@Test
+	public void shouldDiscardFailedWrites() throws IOException {
+		FileTileCache cache = new FileTileCache(dir, 1000);
+		Tile tile = new Tile(1, 2, (byte) 3);
+
+		write(cache, tile, 100, false);
+		assertThat(read(cache, tile)).isEqualTo(-1);
+		assertThat(cache.getCacheSize()).isEqualTo(0);
+		assertThat(dir.listFiles().length).isEqualTo(0);
+	}
+
+	@Test
+	public void shouldEvictLeastRecentlyUsed() throws IOException {
+		FileTileCache cache = new FileTileCache(dir, 250);
+		Tile a = new Tile(0, 0, (byte) 1);
+		Tile b = new Tile(1, 0, (byte) 1);
+		Tile c = new Tile(0, 1, (byte) 1);
+
+		write(cache, a, 100, true);
+		write(cache, b, 100, true);
+		read(cache, a);
+		write(cache, c, 100, true);
+
+		assertThat(read(cache, a)).isEqualTo(100);
+		assertThat(read(cache, b)).isEqualTo(-1);
+		assertThat(read(cache, c)).isEqualTo(100);
+		assertThat(cache.getCacheSize()).isEqualTo(200);
+	}
+
+	@Test
+	public void shouldReopenWithIndex() throws IOException {
+		FileTileCache cache = new FileTileCache(dir, 1000);
+		Tile tile = new Tile(5, 6, (byte) 7);
+		write(cache, tile, 10, true);
+		cache.dispose();
+
+		cache = new FileTileCache(dir, 1000);
+		assertThat(cache.getCacheSize()).isEqualTo(10);
+		assertThat(read(cache, tile)).isEqualTo(10);
+	}
+
+	@Test
+	public void shouldRebuildIndexWithoutDispose() throws IOException {
+		FileTileCache cache = new FileTileCache(dir, 1000);
+		Tile tile = new Tile(5, 6, (byte) 7);
+		write(cache, tile, 10, true);
+
+		cache = new FileTileCache(dir, 1000);
+		assertThat(cache.getTileCount()).isEqualTo(1);
+		assertThat(read(cache, tile)).isEqualTo(10);
+	}
+}
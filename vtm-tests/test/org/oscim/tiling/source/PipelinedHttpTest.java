@@ -0,0 +1,339 @@
+package org.oscim.tiling.source;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.oscim.core.Tile;
+import org.oscim.layers.tile.TileManager;
+import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.source.PipelinedHttp.PipelinedHttpFactory;
+
+public class PipelinedHttpTest {
+
+	/**
+	 * Minimal HTTP/1.1 server: answers each request with the requested path
+	 * as body after 'delay' ms. Closes connections after 'maxRequests'
+	 * responses. Records the max number of requests received on one
+	 * connection that were not answered yet.
+	 */
+	static class TestServer implements Runnable {
+		final ServerSocket server;
+		final int maxRequests;
+		final AtomicInteger connections = new AtomicInteger();
+		final AtomicInteger requests = new AtomicInteger();
+		final AtomicInteger maxInFlight = new AtomicInteger();
+		volatile int delay;
+
+		TestServer(int maxRequests) throws IOException {
+			this.maxRequests = maxRequests;
+			server = new ServerSocket(0);
+			new Thread(this).start();
+		}
+
+		int getPort() {
+			return server.getLocalPort();
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					final Socket s = server.accept();
+					connections.incrementAndGet();
+					new Thread(new Runnable() {
+						@Override
+						public void run() {
+							serve(s);
+						}
+					}).start();
+				}
+			} catch (IOException e) {
+				/* closed */
+			}
+		}
+
+		void serve(final Socket s) {
+			final LinkedBlockingQueue<String> queue = new LinkedBlockingQueue<String>();
+			final AtomicInteger inFlight = new AtomicInteger();
+
+			/* read requests independently of responses */
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						BufferedReader in = new BufferedReader(
+						        new InputStreamReader(s.getInputStream()));
+						String line;
+						while ((line = in.readLine()) != null) {
+							String path = line.split(" ")[1];
+							/* skip header */
+							while ((line = in.readLine()) != null && line.length() > 0);
+
+							int n = inFlight.incrementAndGet();
+							int max;
+							while (n > (max = maxInFlight.get()))
+								if (maxInFlight.compareAndSet(max, n))
+									break;
+
+							queue.add(path);
+						}
+					} catch (IOException e) {
+						/* closed */
+					}
+					queue.add("");
+				}
+			}).start();
+
+			try {
+				OutputStream out = s.getOutputStream();
+				int cnt = 0;
+				while (true) {
+					String path = queue.take();
+					if (path.length() == 0)
+						break;
+
+					if (delay > 0)
+						Thread.sleep(delay);
+
+					requests.incrementAndGet();
+					boolean close = ++cnt == maxRequests;
+
+					byte[] body = path.getBytes();
+					out.write(("HTTP/1.1 200 OK\r\n"
+					        + "Content-Length: " + body.length + "\r\n"
+					        + (close ? "Connection: close\r\n" : "")
+					        + "\r\n").getBytes());
+					out.write(body);
+					out.flush();
+					inFlight.decrementAndGet();
+					if (close)
+						break;
+				}
+				s.close();
+			} catch (IOException e) {
+				/* closed */
+			} catch (InterruptedException e) {
+				/* stop */
+			}
+		}
+
+		void close() throws IOException {
+			server.close();
+		}
+	}
+
+	static class TestTileSource extends UrlTileSource {
+		public TestTileSource(String urlString, String tilePath) {
+			super(urlString, tilePath);
+		}
+
+		@Override
+		public ITileDataSource getDataSource() {
+			return null;
+		}
+	}
+
+	private TestServer server;
+	private TestTileSource tileSource;
+
+	static String read(HttpEngine engine, Tile tile) throws IOException {
+		engine.sendRequest(tile);
+		InputStream is = engine.read();
+		StringBuilder sb = new StringBuilder();
+		int c;
+		while ((c = is.read()) >= 0)
+			sb.append((char) c);
+		engine.requestCompleted(true);
+		return sb.toString();
+	}
+
+	static String path(Tile tile) {
+		return "/tiles/" + tile.zoomLevel + "/" + tile.tileX + "/" + tile.tileY + ".vtm";
+	}
+
+	public void start(int maxRequests) throws IOException {
+		server = new TestServer(maxRequests);
+		tileSource = new TestTileSource("http://127.0.0.1:" + server.getPort() + "/tiles",
+		                                "/{Z}/{X}/{Y}.vtm");
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		start(1000);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		server.close();
+	}
+
+	@Test
+	public void shouldReuseConnection() throws IOException {
+		PipelinedHttpFactory factory = new PipelinedHttpFactory(2, 4);
+		HttpEngine engine = factory.create(tileSource);
+
+		for (int i = 0; i < 10; i++) {
+			Tile tile = new Tile(i, i + 1, (byte) 10);
+			assertThat(read(engine, tile)).isEqualTo(path(tile));
+		}
+		assertThat(server.connections.get()).isEqualTo(1);
+		factory.close();
+	}
+
+	@Test
+	public void shouldRetryClosedConnection() throws IOException {
+		server.close();
+		start(3);
+
+		PipelinedHttpFactory factory = new PipelinedHttpFactory(1, 4);
+		HttpEngine engine = factory.create(tileSource);
+
+		for (int i = 0; i < 10; i++) {
+			Tile tile = new Tile(i, i, (byte) 10);
+			assertThat(read(engine, tile)).isEqualTo(path(tile));
+		}
+		assertThat(server.requests.get()).isEqualTo(10);
+		assertThat(server.connections.get() >= 4).isTrue();
+		factory.close();
+	}
+
+	@Test
+	public void shouldPipelineConcurrentRequests() throws Exception {
+		final PipelinedHttpFactory factory = new PipelinedHttpFactory(2, 4);
+		final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+		ArrayList<Thread> threads = new ArrayList<Thread>();
+
+		for (int t = 0; t < 8; t++) {
+			final int id = t;
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					HttpEngine engine = factory.create(tileSource);
+					try {
+						for (int i = 0; i < 12; i++) {
+							Tile tile = new Tile(id, i, (byte) 12);
+							String path = read(engine, tile);
+							if (!path(tile).equals(path))
+								errors.add(new AssertionError(tile + " got " + path));
+						}
+					} catch (IOException e) {
+						errors.add(e);
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread t : threads)
+			t.join();
+
+		assertThat(errors).isEmpty();
+		assertThat(server.requests.get()).isEqualTo(96);
+		assertThat(server.connections.get() <= 2).isTrue();
+		factory.close();
+	}
+
+	@Test
+	public void shouldLimitPipelineDepth() throws Exception {
+		server.delay = 20;
+
+		final PipelinedHttpFactory factory = new PipelinedHttpFactory(2, 2);
+		final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+		ArrayList<Thread> threads = new ArrayList<Thread>();
+
+		for (int t = 0; t < 10; t++) {
+			final int id = t;
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					HttpEngine engine = factory.create(tileSource);
+					try {
+						for (int i = 0; i < 5; i++) {
+							Tile tile = new Tile(id, i, (byte) 12);
+							String path = read(engine, tile);
+							if (!path(tile).equals(path))
+								errors.add(new AssertionError(tile + " got " + path));
+						}
+					} catch (IOException e) {
+						errors.add(e);
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread t : threads)
+			t.join();
+
+		assertThat(errors).isEmpty();
+		assertThat(server.requests.get()).isEqualTo(50);
+		assertThat(server.connections.get() <= 2).isTrue();
+		assertThat(server.maxInFlight.get() <= 2).isTrue();
+		factory.close();
+	}
+
+	@Test
+	public void shouldPrefetchQueuedTiles() throws Exception {
+		server.delay = 20;
+
+		final ArrayList<Tile> queue = new ArrayList<Tile>();
+		for (int i = 1; i < 8; i++)
+			queue.add(new Tile(i, i, (byte) 12));
+
+		/* job queue of a TileManager: taken tiles are not queued anymore */
+		TileManager tileManager = Mockito.mock(TileManager.class);
+		Mockito.when(tileManager.peekTileJobs(Mockito.any(Tile[].class)))
+		    .thenAnswer(new Answer<Integer>() {
+			    @Override
+			    public Integer answer(InvocationOnMock invocation) {
+				    Tile[] tiles = (Tile[]) invocation.getArguments()[0];
+				    synchronized (queue) {
+					    int n = Math.min(tiles.length, queue.size());
+					    for (int i = 0; i < n; i++)
+						    tiles[i] = queue.get(i);
+					    return n;
+				    }
+			    }
+		    });
+
+		PipelinedHttpFactory factory = new PipelinedHttpFactory(1, 4);
+		factory.setPrefetch(tileSource, tileManager);
+		HttpEngine engine = factory.create(tileSource);
+
+		Tile first = new Tile(0, 0, (byte) 12);
+		assertThat(read(engine, first)).isEqualTo(path(first));
+
+		while (true) {
+			Tile tile;
+			synchronized (queue) {
+				if (queue.isEmpty())
+					break;
+				tile = queue.remove(0);
+			}
+			assertThat(read(engine, tile)).isEqualTo(path(tile));
+		}
+
+		/* one loader, but the pipeline was filled with the next tiles */
+		assertThat(server.requests.get()).isEqualTo(8);
+		assertThat(server.maxInFlight.get()).isEqualTo(4);
+		factory.close();
+	}
+}
@@ -0,0 +1,244 @@
+package org.oscim.tiling.source;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import org.junit.Test;
+import org.oscim.core.BoundingBox;
+import org.oscim.core.Tile;
+import org.oscim.tiling.ITileCache;
+import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.source.TileDownloader.Progress;
+import org.oscim.tiling.source.TileDownloader.TileRange;
+
+public class TileDownloaderTest {
+
+	static final BoundingBox BBOX = new BoundingBox(53.0, 8.0, 53.2, 8.3);
+
+	@Test
+	public void shouldEnumerateTileRange() {
+		TileRange r = new TileRange(BBOX, 0, 12);
+
+		HashSet<Tile> tiles = new HashSet<Tile>();
+		for (long i = 0; i < r.count; i++) {
+			Tile t = r.get(i);
+			assertThat(tiles.add(t)).isTrue();
+		}
+		/* one tile per zoom-level at low zoom */
+		assertThat(r.get(0)).isEqualTo(new Tile(0, 0, (byte) 0));
+		assertThat(r.get(1)).isEqualTo(new Tile(1, 0, (byte) 1));
+		assertThat(TileDownloader.countTiles(BBOX, 0, 12)).isEqualTo(r.count);
+	}
+
+	@Test
+	public void shouldWrapAroundDateLine() {
+		/* from 170 east to 170 west */
+		BoundingBox bbox = new BoundingBox(-10.0, 170.0, 10.0, -170.0);
+		TileRange r = new TileRange(bbox, 0, 4);
+
+		HashSet<Tile> tiles = new HashSet<Tile>();
+		for (long i = 0; i < r.count; i++) {
+			Tile t = r.get(i);
+			assertThat(tiles.add(t)).isTrue();
+			if (t.zoomLevel == 4)
+				assertThat(t.tileX == 15 || t.tileX == 0).isTrue();
+		}
+		/* zoom 0: 1 tile, 1: 2x2, 2: 2x2, 3: 2x2, 4: 2x2 */
+		assertThat(r.count).isEqualTo(17L);
+		assertThat(r.get(0)).isEqualTo(new Tile(0, 0, (byte) 0));
+	}
+
+	@Test
+	public void shouldDownloadAndSkipCachedTiles() throws Exception {
+		TestTileSource source = new TestTileSource();
+		TestCache cache = new TestCache();
+
+		TileDownloader d = new TileDownloader(source, cache).setParallelism(3);
+		d.start(BBOX, 0, 12, null);
+		d.await();
+
+		Progress p = d.getProgress();
+		long count = TileDownloader.countTiles(BBOX, 0, 12);
+		assertThat(p.total).isEqualTo(count);
+		assertThat(p.loaded).isEqualTo(count);
+		assertThat((long) cache.tiles.size()).isEqualTo(count);
+		assertThat(p.bytes).isEqualTo(count * 4);
+		assertThat(d.isRunning()).isFalse();
+
+		/* second run only hits the cache */
+		int requests = source.requests;
+		d.start(BBOX, 0, 12, null);
+		d.await();
+		assertThat(d.getProgress().skipped).isEqualTo(count);
+		assertThat(source.requests).isEqualTo(requests);
+	}
+
+	@Test
+	public void shouldResumeFromIndex() throws Exception {
+		TestTileSource source = new TestTileSource();
+		TestCache cache = new TestCache();
+
+		TileDownloader d = new TileDownloader(source, cache).setParallelism(1);
+		long count = TileDownloader.countTiles(BBOX, 0, 12);
+
+		d.start(BBOX, 0, 12, count - 5, null);
+		d.await();
+
+		assertThat(d.getProgress().loaded).isEqualTo(5);
+		assertThat(d.getResumeIndex()).isEqualTo(count);
+	}
+
+	@Test
+	public void shouldRetryFailedTilesOnResume() throws Exception {
+		TestTileSource source = new TestTileSource();
+		TestCache cache = new TestCache();
+
+		TileDownloader d = new TileDownloader(source, cache)
+		    .setParallelism(2)
+		    .setRetries(0);
+		long count = TileDownloader.countTiles(BBOX, 0, 12);
+
+		/* index 0 and 1 */
+		source.fail.add(new Tile(0, 0, (byte) 0));
+		source.fail.add(new Tile(1, 0, (byte) 1));
+
+		d.start(BBOX, 0, 12, null);
+		d.await();
+
+		assertThat(d.getProgress().failed).isEqualTo(2);
+		assertThat(d.getResumeIndex()).isEqualTo(count);
+		assertThat(d.getRetryIndices()).isEqualTo(new long[] { 0, 1 });
+
+		source.fail.clear();
+		int requests = source.requests;
+
+		d.resume(null);
+		d.await();
+
+		assertThat(d.getProgress().loaded).isEqualTo(2);
+		assertThat(source.requests).isEqualTo(requests + 2);
+		assertThat((long) cache.tiles.size()).isEqualTo(count);
+		assertThat(d.getRetryIndices().length).isEqualTo(0);
+	}
+
+	static class TestTileSource extends UrlTileSource {
+		int requests;
+		final HashSet<Tile> fail = new HashSet<Tile>();
+
+		TestTileSource() {
+			super("http://example.org/tiles", "/{Z}/{X}/{Y}.png", 0, 18);
+			setHttpEngine(new HttpEngine.Factory() {
+				@Override
+				public HttpEngine create(UrlTileSource tileSource) {
+					return new TestEngine(TestTileSource.this);
+				}
+			});
+		}
+
+		@Override
+		public ITileDataSource getDataSource() {
+			return null;
+		}
+	}
+
+	static class TestEngine implements HttpEngine {
+		final TestTileSource source;
+		Tile tile;
+
+		TestEngine(TestTileSource source) {
+			this.source = source;
+		}
+
+		@Override
+		public InputStream read() throws IOException {
+			synchronized (source) {
+				if (source.fail.contains(tile))
+					throw new IOException("failed");
+			}
+			return new ByteArrayInputStream(new byte[] { 1, 2, 3, 4 });
+		}
+
+		@Override
+		public void sendRequest(Tile tile) {
+			this.tile = tile;
+			synchronized (source) {
+				source.requests++;
+			}
+		}
+
+		@Override
+		public void close() {
+		}
+
+		@Override
+		public void setCache(OutputStream os) {
+		}
+
+		@Override
+		public boolean requestCompleted(boolean success) {
+			return success;
+		}
+	}
+
+	static class TestCache implements ITileCache {
+		final HashMap<Tile, byte[]> tiles = new HashMap<Tile, byte[]>();
+
+		@Override
+		public TileWriter writeTile(final Tile tile) {
+			final ByteArrayOutputStream os = new ByteArrayOutputStream();
+			return new TileWriter() {
+				@Override
+				public Tile getTile() {
+					return tile;
+				}
+
+				@Override
+				public OutputStream getOutputStream() {
+					return os;
+				}
+
+				@Override
+				public void complete(boolean success) {
+					if (success) {
+						synchronized (tiles) {
+							tiles.put(tile, os.toByteArray());
+						}
+					}
+				}
+			};
+		}
+
+		@Override
+		public TileReader getTile(final Tile tile) {
+			final byte[] data;
+			synchronized (tiles) {
+				data = tiles.get(tile);
+			}
+			if (data == null)
+				return null;
+
+			return new TileReader() {
+				@Override
+				public Tile getTile() {
+					return tile;
+				}
+
+				@Override
+				public InputStream getInputStream() {
+					return new ByteArrayInputStream(data);
+				}
+			};
+		}
+
+		@Override
+		public void setCacheSize(long size) {
+		}
+	}
+}
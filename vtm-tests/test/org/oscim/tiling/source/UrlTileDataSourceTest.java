@@ -0,0 +1,105 @@
+package org.oscim.tiling.source;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.oscim.tiling.ITileDataSink.QueryResult.SUCCESS;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.oscim.core.Tile;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.tiling.ITileCache;
+import org.oscim.tiling.ITileCache.TileReader;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.ITileDataSource;
+
+public class UrlTileDataSourceTest {
+	private UrlTileSource tileSource;
+	private HttpEngine conn;
+	private TestDecoder decoder;
+	private ITileDataSink sink;
+	private MapTile tile;
+	private byte[] data;
+
+	@Before
+	public void setUp() throws Exception {
+		tileSource = new UrlTileSource("http://example.org/tiles", "/{Z}/{X}/{Y}.vtm") {
+			@Override
+			public ITileDataSource getDataSource() {
+				return null;
+			}
+		};
+		conn = mock(HttpEngine.class);
+		decoder = new TestDecoder();
+		sink = mock(ITileDataSink.class);
+		tile = new MapTile(null, 1, 2, 3);
+
+		/* larger than the initial buffer */
+		data = new byte[100000];
+		for (int i = 0; i < data.length; i++)
+			data[i] = (byte) i;
+	}
+
+	@Test
+	public void shouldDecodeResponseFromMemory() throws Exception {
+		when(conn.read()).thenReturn(new ByteArrayInputStream(data));
+		when(conn.requestCompleted(true)).thenReturn(true);
+
+		new UrlTileDataSource(tileSource, decoder, conn).query(tile, sink);
+
+		assertThat(decoder.data).isEqualTo(data);
+		verify(sink).completed(SUCCESS);
+	}
+
+	@Test
+	public void shouldDecodeCacheHitFromMemory() throws Exception {
+		ITileCache cache = mock(ITileCache.class);
+		TileReader reader = mock(TileReader.class);
+		when(reader.getInputStream()).thenReturn(new ByteArrayInputStream(data));
+		when(cache.getTile(tile)).thenReturn(reader);
+		tileSource.setCache(cache);
+
+		new UrlTileDataSource(tileSource, decoder, conn).query(tile, sink);
+
+		assertThat(decoder.data).isEqualTo(data);
+		verify(conn, never()).sendRequest(Mockito.any(Tile.class));
+		verify(sink).completed(SUCCESS);
+	}
+
+	@Test
+	public void shouldDisposeDecoder() throws Exception {
+		new UrlTileDataSource(tileSource, decoder, conn).dispose();
+
+		assertThat(decoder.disposed).isTrue();
+	}
+
+	static class TestDecoder extends PbfDecoder {
+		byte[] data;
+		boolean disposed;
+
+		@Override
+		public boolean decode(Tile tile, ITileDataSink sink, InputStream is) throws IOException {
+			throw new AssertionError("should decode from memory");
+		}
+
+		@Override
+		public boolean decode(Tile tile, ITileDataSink sink, byte[] data, int offset, int length) {
+			this.data = Arrays.copyOfRange(data, offset, offset + length);
+			return true;
+		}
+
+		@Override
+		public void dispose() {
+			disposed = true;
+		}
+	}
+}
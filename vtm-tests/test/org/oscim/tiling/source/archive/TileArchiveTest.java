@@ -0,0 +1,126 @@
+package org.oscim.tiling.source.archive;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.oscim.core.Tile;
+import org.oscim.tiling.ITileCache.TileReader;
+import org.oscim.tiling.ITileCache.TileWriter;
+
+public class TileArchiveTest {
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("vtm", ".archive");
+		file.delete();
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	static byte[] data(int size, int seed) {
+		byte[] b = new byte[size];
+		for (int i = 0; i < size; i++)
+			b[i] = (byte) (i + seed);
+		return b;
+	}
+
+	@Test
+	public void shouldReadWrittenTiles() throws IOException {
+		TileArchive archive = new TileArchive(file, true);
+		archive.open();
+
+		for (int i = 0; i < 2000; i++)
+			archive.write(new Tile(i, i * 2, (byte) 14), data(10 + i % 50, i), 0, 10 + i % 50);
+
+		for (int i = 0; i < 2000; i++)
+			assertThat(archive.read(new Tile(i, i * 2, (byte) 14))).isEqualTo(data(10 + i % 50, i));
+
+		assertThat(archive.read(new Tile(1, 1, (byte) 1))).isNull();
+		archive.close();
+	}
+
+	@Test
+	public void shouldReopenWithIndex() throws IOException {
+		TileArchive archive = new TileArchive(file, true);
+		archive.open();
+		archive.write(new Tile(1, 2, (byte) 3), data(100, 1), 0, 100);
+		archive.write(new Tile(1, 2, (byte) 3), data(50, 2), 0, 50);
+		archive.close();
+
+		archive = new TileArchive(file, false);
+		archive.open();
+		assertThat(archive.getTileCount()).isEqualTo(1);
+		assertThat(archive.read(new Tile(1, 2, (byte) 3))).isEqualTo(data(50, 2));
+		archive.close();
+	}
+
+	@Test
+	public void shouldAppendAfterReopen() throws IOException {
+		TileArchive archive = new TileArchive(file, true);
+		archive.open();
+		archive.write(new Tile(1, 2, (byte) 3), data(100, 1), 0, 100);
+		archive.close();
+
+		archive.open();
+		archive.write(new Tile(2, 2, (byte) 3), data(100, 2), 0, 100);
+		archive.close();
+
+		archive.open();
+		assertThat(archive.getTileCount()).isEqualTo(2);
+		assertThat(archive.read(new Tile(1, 2, (byte) 3))).isEqualTo(data(100, 1));
+		assertThat(archive.read(new Tile(2, 2, (byte) 3))).isEqualTo(data(100, 2));
+		archive.close();
+	}
+
+	@Test
+	public void shouldRecoverWithoutIndex() throws IOException {
+		TileArchive archive = new TileArchive(file, true);
+		archive.open();
+		archive.write(new Tile(1, 2, (byte) 3), data(100, 1), 0, 100);
+		archive.write(new Tile(2, 2, (byte) 3), data(100, 2), 0, 100);
+		/* not closed: simulate a crash with a truncated last record */
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(raf.length() - 10);
+		raf.close();
+
+		archive = new TileArchive(file, true);
+		archive.open();
+		assertThat(archive.getTileCount()).isEqualTo(1);
+		assertThat(archive.read(new Tile(1, 2, (byte) 3))).isEqualTo(data(100, 1));
+		archive.close();
+	}
+
+	@Test
+	public void shouldWorkAsTileCache() throws IOException {
+		TileArchive archive = new TileArchive(file, true);
+		archive.open();
+		Tile tile = new Tile(5, 6, (byte) 7);
+
+		assertThat(archive.getTile(tile)).isNull();
+
+		TileWriter w = archive.writeTile(tile);
+		w.getOutputStream().write(data(20, 3));
+		w.complete(true);
+
+		w = archive.writeTile(new Tile(1, 1, (byte) 1));
+		w.getOutputStream().write(data(20, 3));
+		w.complete(false);
+
+		TileReader r = archive.getTile(tile);
+		assertThat(r).isNotNull();
+		byte[] b = new byte[30];
+		assertThat(r.getInputStream().read(b)).isEqualTo(20);
+		assertThat(archive.getTileCount()).isEqualTo(1);
+		archive.close();
+	}
+}
@@ -0,0 +1,61 @@
+package org.oscim.tiling.source.mapfile;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import org.junit.Test;
+import org.oscim.tiling.source.mapfile.IndexCache.Stripe;
+
+public class IndexCacheTest {
+
+	@Test
+	public void shouldMissAndHit() {
+		Stripe s = new Stripe(2);
+		byte[] a = new byte[1];
+
+		assertThat(s.get(1)).isNull();
+
+		s.put(1, a);
+		assertThat(s.get(1)).isSameAs(a);
+		assertThat(s.get(2)).isNull();
+
+		/* block loaded concurrently by another thread is not replaced */
+		s.put(1, new byte[1]);
+		assertThat(s.get(1)).isSameAs(a);
+
+		s.clear();
+		assertThat(s.get(1)).isNull();
+	}
+
+	@Test
+	public void shouldEvictInClockOrder() {
+		Stripe s = new Stripe(3);
+		byte[] b1 = new byte[1], b2 = new byte[1], b3 = new byte[1];
+		s.put(1, b1);
+		s.put(2, b2);
+		s.put(3, b3);
+
+		/* 1 is referenced: the hand skips it and evicts 2 */
+		assertThat(s.get(1)).isSameAs(b1);
+		s.put(4, new byte[1]);
+		assertThat(s.get(2)).isNull();
+
+		/* 3 was not referenced */
+		s.put(5, new byte[1]);
+		assertThat(s.get(3)).isNull();
+
+		/* reference of 1 was cleared by the first round */
+		s.put(6, new byte[1]);
+		assertThat(s.get(1)).isNull();
+
+		assertThat(s.get(4)).isNotNull();
+		assertThat(s.get(5)).isNotNull();
+		assertThat(s.get(6)).isNotNull();
+	}
+
+	@Test
+	public void shouldNotCacheWithoutCapacity() {
+		Stripe s = new Stripe(0);
+		s.put(1, new byte[1]);
+		assertThat(s.get(1)).isNull();
+	}
+}
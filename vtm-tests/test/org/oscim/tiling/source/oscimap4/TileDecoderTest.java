@@ -0,0 +1,156 @@
+package org.oscim.tiling.source.oscimap4;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import org.junit.Test;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.MapElement;
+import org.oscim.core.Tile;
+import org.oscim.tiling.ITileDataSink;
+
+public class TileDecoderTest {
+
+	static final Tile TILE = new Tile(1, 2, (byte) 3);
+
+	/** scale of coordinates in tile data */
+	static final float SCALE = 4096f / Tile.SIZE;
+
+	static void varint(ByteArrayOutputStream out, int val) {
+		while ((val & ~0x7f) != 0) {
+			out.write((val & 0x7f) | 0x80);
+			val >>>= 7;
+		}
+		out.write(val);
+	}
+
+	static void packed(ByteArrayOutputStream out, int tag, int... vals) {
+		ByteArrayOutputStream b = new ByteArrayOutputStream();
+		for (int v : vals)
+			varint(b, v);
+
+		varint(out, tag << 3 | 2);
+		varint(out, b.size());
+		out.write(b.toByteArray(), 0, b.size());
+	}
+
+	static int zigzag(int v) {
+		return (v << 1) ^ (v >> 31);
+	}
+
+	/** tile with one line of three points and one tag */
+	static byte[] createTile() {
+		ByteArrayOutputStream elem = new ByteArrayOutputStream();
+		varint(elem, 1 << 3);
+		varint(elem, 1);
+		packed(elem, 11, 0);
+		packed(elem, 12, 3);
+		packed(elem, 13, zigzag(10), zigzag(20),
+		       zigzag(300), zigzag(-10),
+		       zigzag(-5000), zigzag(70000));
+
+		ByteArrayOutputStream msg = new ByteArrayOutputStream();
+		varint(msg, 1 << 3);
+		varint(msg, 4);
+		varint(msg, 11 << 3);
+		varint(msg, 1);
+		packed(msg, 16, 0, 0);
+		varint(msg, 21 << 3 | 2);
+		varint(msg, elem.size());
+		msg.write(elem.toByteArray(), 0, elem.size());
+
+		ByteBuffer tile = ByteBuffer.allocate(4 + msg.size());
+		tile.putInt(msg.size());
+		tile.put(msg.toByteArray());
+		return tile.array();
+	}
+
+	static class Sink implements ITileDataSink {
+		final ArrayList<MapElement> elements = new ArrayList<MapElement>();
+
+		@Override
+		public void process(MapElement element) {
+			MapElement e = new MapElement();
+			e.type = element.type;
+			e.tags.set(element.tags.asArray());
+			e.points = new float[element.pointPos];
+			System.arraycopy(element.points, 0, e.points, 0, element.pointPos);
+			e.pointPos = element.pointPos;
+			elements.add(e);
+		}
+
+		@Override
+		public void setTileImage(Bitmap bitmap) {
+		}
+
+		@Override
+		public void completed(QueryResult result) {
+		}
+	}
+
+	static void assertDecoded(Sink sink) {
+		assertThat(sink.elements.size()).isEqualTo(1);
+		MapElement e = sink.elements.get(0);
+		assertThat(e.type).isEqualTo(GeometryType.LINE);
+		assertThat(e.tags.numTags).isEqualTo(1);
+		assertThat(e.tags.tags[0].key).isSameAs(Tags.keys[0]);
+		assertThat(e.tags.tags[0].value).isSameAs(Tags.values[0]);
+
+		float[] expected = { 10, 20, 310, 10, -4690, 70010 };
+		for (int i = 0; i < expected.length; i++)
+			expected[i] /= SCALE;
+		assertThat(e.points).isEqualTo(expected);
+	}
+
+	@Test
+	public void shouldDecodeFromStream() throws IOException {
+		Sink sink = new Sink();
+		assertThat(new TileDecoder().decode(TILE, sink,
+		                                    new ByteArrayInputStream(createTile()))).isTrue();
+		assertDecoded(sink);
+	}
+
+	@Test
+	public void shouldDecodeFromArraySlice() throws IOException {
+		byte[] tile = createTile();
+		byte[] data = new byte[tile.length + 20];
+		/* garbage around the tile data must not be read */
+		for (int i = 0; i < data.length; i++)
+			data[i] = (byte) 0xff;
+		System.arraycopy(tile, 0, data, 10, tile.length);
+
+		TileDecoder decoder = new TileDecoder();
+		Sink sink = new Sink();
+		assertThat(decoder.decode(TILE, sink, data, 10, tile.length)).isTrue();
+		assertDecoded(sink);
+
+		/* stream decoding still works after decoding from memory */
+		sink = new Sink();
+		assertThat(decoder.decode(TILE, sink, new ByteArrayInputStream(tile))).isTrue();
+		assertDecoded(sink);
+	}
+
+	@Test
+	public void shouldDecodeFromDirectBuffer() throws IOException {
+		byte[] tile = createTile();
+		ByteBuffer buf = ByteBuffer.allocateDirect(tile.length);
+		buf.put(tile).flip();
+
+		Sink sink = new Sink();
+		assertThat(new TileDecoder().decode(TILE, sink, buf)).isTrue();
+		assertDecoded(sink);
+		assertThat(buf.position()).isEqualTo(0);
+	}
+
+	@Test(expected = IOException.class)
+	public void shouldFailOnTruncatedData() throws IOException {
+		byte[] tile = createTile();
+		new TileDecoder().decode(TILE, new Sink(), tile, 0, tile.length - 3);
+	}
+}
@@ -0,0 +1,47 @@
+package org.oscim.utils;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class MetricTest {
+
+	@Test
+	public void shouldCountSumAndMax() {
+		Metric m = new Metric();
+		m.add(3);
+		m.add(7);
+		m.add(2);
+		assertThat(m.getCount()).isEqualTo(3);
+		assertThat(m.getSum()).isEqualTo(12);
+		assertThat(m.getMax()).isEqualTo(7);
+		assertThat(m.getMean()).isEqualTo(4);
+
+		m.reset();
+		assertThat(m.getCount()).isEqualTo(0);
+		assertThat(m.getMean()).isEqualTo(0);
+	}
+
+	@Test
+	public void shouldAddConcurrently() throws Exception {
+		final Metric m = new Metric();
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			final int base = i * 1000;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 1; j <= 1000; j++)
+						m.add(base + j);
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread t : threads)
+			t.join();
+
+		assertThat(m.getCount()).isEqualTo(4000);
+		assertThat(m.getSum()).isEqualTo(4000 * 4001 / 2);
+		assertThat(m.getMax()).isEqualTo(4000);
+	}
+}
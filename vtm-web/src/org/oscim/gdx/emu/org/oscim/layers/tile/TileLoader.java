@@ -33,11 +33,15 @@ public abstract class TileLoader implements ITileDataSink {
 	private final TileManager mTileManager;
 	private Timer mTimer;
 
+	/** metrics of the TileManager */
+	protected final TileMetrics mMetrics;
+
 	public TileLoader(TileManager tileManager) {
 		if (mTimer == null)
 			mTimer = new Timer();
 
 		mTileManager = tileManager;
+		mMetrics = tileManager.getMetrics();
 	}
 
 	public abstract void dispose();
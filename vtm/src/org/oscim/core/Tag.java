@@ -50,7 +50,8 @@ public class Tag {
 	public final String key;
 
 	/**
-	 * The value of this tag.
+	 * The value of this tag. Tags returned by the {@link TagDictionary} are
+	 * shared between tiles, their value must not be modified.
 	 */
 	public String value;
 
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.core;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Maps UTF-8 encoded strings and key-value pairs to shared String and Tag
+ * instances, so that decoders do not need to allocate (and intern()) them
+ * again for each tile.
+ * <p>
+ * The dictionary has a fixed number of slots per table. An entry is
+ * replaced when another string or tag maps to its slot, which keeps memory
+ * bounded. Interned strings and strings that are not interned, like names
+ * and other values of {@link #isVariable(String) variable} keys, are kept
+ * in separate tables so that high cardinality values do not evict interned
+ * keys and values. Tags of variable keys are not shared. Lookups do not
+ * lock, entries are immutable and may be replaced concurrently by any
+ * thread.
+ * <p>
+ * Shared tags are used by many tiles at once and must not be modified.
+ */
+public final class TagDictionary {
+
+	private static final String CHARSET_UTF8 = "UTF-8";
+
+	/** Dictionary shared by the tile decoders */
+	public static final TagDictionary shared = new TagDictionary(1 << 14);
+
+	static final class StringEntry {
+		final byte[] bytes;
+		final int hash;
+		final String string;
+
+		StringEntry(byte[] bytes, int hash, String string) {
+			this.bytes = bytes;
+			this.hash = hash;
+			this.string = string;
+		}
+
+		boolean matches(int hash, byte[] data, int offset, int length) {
+			return this.hash == hash && TagDictionary.equals(bytes, data, offset, length);
+		}
+	}
+
+	static final class TagEntry {
+		final int hash;
+		final Tag tag;
+
+		TagEntry(int hash, Tag tag) {
+			this.hash = hash;
+			this.tag = tag;
+		}
+	}
+
+	/** intern()alized strings */
+	private final StringEntry[] mInterned;
+	/** strings that are not intern()alized */
+	private final StringEntry[] mStrings;
+	/** tags of keys that are not variable */
+	private final TagEntry[] mTags;
+	private final int mMask;
+
+	/**
+	 * @param size
+	 *            number of slots for each of interned strings, other
+	 *            strings and tags, must be a power of two.
+	 */
+	public TagDictionary(int size) {
+		if (size <= 0 || (size & (size - 1)) != 0)
+			throw new IllegalArgumentException("size must be power of two: " + size);
+
+		mInterned = new StringEntry[size];
+		mStrings = new StringEntry[size];
+		mTags = new TagEntry[size];
+		mMask = size - 1;
+	}
+
+	/**
+	 * Get String for 'length' bytes of UTF-8 'data' at 'offset'.
+	 * 
+	 * @param intern
+	 *            true when the result must be intern()alized, e.g. for keys.
+	 */
+	public String getString(byte[] data, int offset, int length, boolean intern) {
+		int hash = hash(data, offset, length);
+		int slot = hash & mMask;
+
+		/* interned strings can be used for both */
+		StringEntry e = mInterned[slot];
+		if (e != null && e.matches(hash, data, offset, length))
+			return e.string;
+
+		String s = null;
+		e = mStrings[slot];
+		if (e != null && e.matches(hash, data, offset, length)) {
+			if (!intern)
+				return e.string;
+			s = e.string;
+		}
+
+		byte[] bytes = new byte[length];
+		System.arraycopy(data, offset, bytes, 0, length);
+
+		if (s == null)
+			s = decode(bytes);
+
+		if (intern) {
+			s = s.intern();
+			mInterned[slot] = new StringEntry(bytes, hash, s);
+		} else {
+			mStrings[slot] = new StringEntry(bytes, hash, s);
+		}
+		return s;
+	}
+
+	/**
+	 * Get Tag for 'key' and the UTF-8 encoded value.
+	 * 
+	 * @param key
+	 *            the intern()alized key.
+	 */
+	public Tag getTag(String key, byte[] data, int offset, int length) {
+		return getTag(key, getString(data, offset, length, !isVariable(key)));
+	}
+
+	/**
+	 * Get Tag for 'key' and 'value'. Values of keys that are not
+	 * {@link #isVariable(String)} are intern()alized and their tags are
+	 * shared, tags of variable keys are created for each call.
+	 * 
+	 * @param key
+	 *            the intern()alized key.
+	 */
+	public Tag getTag(String key, String value) {
+		if (key == null || value == null)
+			return new Tag(key, value, false);
+
+		if (isVariable(key))
+			return new Tag(key, value, false);
+
+		int hash = key.hashCode() * 31 + value.hashCode();
+		hash ^= (hash >>> 16);
+		int slot = hash & mMask;
+
+		TagEntry e = mTags[slot];
+		if (e != null && e.hash == hash) {
+			Tag tag = e.tag;
+			if (tag.key == key && (tag.value == value || tag.value.equals(value)))
+				return tag;
+		}
+
+		Tag tag = new Tag(key, value, false, true);
+		mTags[slot] = new TagEntry(hash, tag);
+		return tag;
+	}
+
+	/**
+	 * Values of these keys are mostly unique. They are not intern()alized
+	 * and their tags are not kept in the dictionary.
+	 */
+	public static boolean isVariable(String key) {
+		return key == Tag.KEY_NAME
+		        || key == Tag.KEY_HEIGHT
+		        || key == Tag.KEY_MIN_HEIGHT
+		        || key == Tag.KEY_HOUSE_NUMBER
+		        || key == Tag.KEY_REF
+		        || key == Tag.KEY_ELE;
+	}
+
+	public void clear() {
+		for (int i = 0; i <= mMask; i++) {
+			mInterned[i] = null;
+			mStrings[i] = null;
+			mTags[i] = null;
+		}
+	}
+
+	static int hash(byte[] data, int offset, int length) {
+		int h = length;
+		for (int i = offset, end = offset + length; i < end; i++)
+			h = 31 * h + data[i];
+
+		/* spread bits for the slot mask */
+		return h ^ (h >>> 16);
+	}
+
+	static boolean equals(byte[] bytes, byte[] data, int offset, int length) {
+		if (bytes.length != length)
+			return false;
+
+		for (int i = 0; i < length; i++)
+			if (bytes[i] != data[offset + i])
+				return false;
+
+		return true;
+	}
+
+	static String decode(byte[] bytes) {
+		try {
+			return new String(bytes, CHARSET_UTF8);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
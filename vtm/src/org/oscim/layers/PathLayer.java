@@ -44,6 +44,9 @@ public class PathLayer extends Layer {
 	protected final ArrayList<GeoPoint> mPoints;
 	protected boolean mUpdatePoints;
 
+	/** points were replaced, not only appended. synchronized on mPoints */
+	private boolean mResetPoints;
+
 	/** Line style */
 	LineStyle mLineStyle;
 
@@ -67,6 +70,7 @@ public class PathLayer extends Layer {
 
 		synchronized (mPoints) {
 			mPoints.clear();
+			mResetPoints = true;
 		}
 		updatePoints();
 	}
@@ -75,6 +79,7 @@ public class PathLayer extends Layer {
 		synchronized (mPoints) {
 			mPoints.clear();
 			mPoints.addAll(pts);
+			mResetPoints = true;
 		}
 		updatePoints();
 	}
@@ -244,56 +249,60 @@ public class PathLayer extends Layer {
 
 		private static final int MIN_DIST = 3;
 
-		// pre-projected points
-		private double[] mPreprojected = new double[2];
+		/** pre-projected points with simplified levels */
+		final PathSegments mPath = new PathSegments();
+		private final double[] mProjected = new double[2];
 
 		// projected points
 		private float[] mPPoints;
 		private final LineClipper mClipper;
-		private int mNumPoints;
+
+		/* state of current line */
+		private LineBucket mLine;
+		private int mNumOut;
+		private int mFlip;
+		private int mMaxX;
+		private float mPrevX;
+		private float mPrevY;
+		private float[] mSegment;
 
 		@Override
 		public boolean doWork(Task task) {
 
-			int size = mNumPoints;
-
 			if (mUpdatePoints) {
 				synchronized (mPoints) {
 					mUpdatePoints = false;
-					mNumPoints = size = mPoints.size();
+					int size = mPoints.size();
 
-					ArrayList<GeoPoint> geopoints = mPoints;
-					double[] points = mPreprojected;
-
-					if (size * 2 >= points.length) {
-						points = mPreprojected = new double[size * 2];
-						mPPoints = new float[size * 2];
+					/* only project appended points */
+					if (mResetPoints || size < mPath.size()) {
+						mResetPoints = false;
+						mPath.clear();
+					}
+					for (int i = mPath.size(); i < size; i++) {
+						MercatorProjection.project(mPoints.get(i), mProjected, 0);
+						mPath.add(mProjected[0], mProjected[1]);
 					}
-
-					for (int i = 0; i < size; i++)
-						MercatorProjection.project(geopoints.get(i), points, i);
 				}
 
 			} else if (mGeom != null) {
 				GeometryBuffer geom = mGeom;
 				mGeom = null;
-				size = geom.index[0];
-
-				double[] points = mPreprojected;
+				int size = geom.index[0];
 
-				if (size > points.length) {
-					points = mPreprojected = new double[size * 2];
-					mPPoints = new float[size * 2];
+				/* path no longer matches mPoints, rebuild on next update */
+				synchronized (mPoints) {
+					mResetPoints = true;
 				}
-
-				for (int i = 0; i < size; i += 2)
+				mPath.clear();
+				for (int i = 0; i < size; i += 2) {
 					MercatorProjection.project(geom.points[i + 1],
-					                           geom.points[i], points,
-					                           i >> 1);
-				mNumPoints = size = size >> 1;
-
+					                           geom.points[i], mProjected, 0);
+					mPath.add(mProjected[0], mProjected[1]);
+				}
 			}
-			if (size == 0) {
+
+			if (mPath.size() == 0) {
 				if (task.bucket.get() != null) {
 					task.bucket.clear();
 					mMap.render();
@@ -317,78 +326,45 @@ public class PathLayer extends Layer {
 			double scale = Tile.SIZE * task.pos.scale;
 
 			// flip around dateline
-			int flip = 0;
-			int maxx = Tile.SIZE << (zoomlevel - 1);
-
-			int x = (int) ((mPreprojected[0] - mx) * scale);
-			int y = (int) ((mPreprojected[1] - my) * scale);
-
-			if (x > maxx) {
-				x -= (maxx * 2);
-				flip = -1;
-			} else if (x < -maxx) {
-				x += (maxx * 2);
-				flip = 1;
-			}
-
-			mClipper.clipStart(x, y);
+			mMaxX = Tile.SIZE << (zoomlevel - 1);
+			mLine = ll;
+			mNumOut = 0;
 
-			float[] projected = mPPoints;
-			int i = addPoint(projected, 0, x, y);
+			int level = PathSegments.level(zoomlevel);
 
-			float prevX = x;
-			float prevY = y;
+			/* only segments within clip region */
+			double d = (max + ll.line.width) / scale;
+			double xmin = mx - d, xmax = mx + d;
+			double ymin = my - d, ymax = my + d;
 
-			float[] segment = null;
+			boolean connected = false;
 
-			for (int j = 2; j < size * 2; j += 2) {
-				x = (int) ((mPreprojected[j + 0] - mx) * scale);
-				y = (int) ((mPreprojected[j + 1] - my) * scale);
+			for (int k = 0, n = mPath.segments.size(); k < n; k++) {
+				PathSegments.Segment s = mPath.segments.get(k);
 
-				int flipDirection = 0;
-				if (x > maxx) {
-					x -= maxx * 2;
-					flipDirection = -1;
-				} else if (x < -maxx) {
-					x += maxx * 2;
-					flipDirection = 1;
-				}
-
-				if (flip != flipDirection) {
-					flip = flipDirection;
-					if (i > 2)
-						ll.addLine(projected, i, false);
-
-					mClipper.clipStart(x, y);
-					i = addPoint(projected, 0, x, y);
+				if (!s.intersects(xmin, ymin, xmax, ymax)) {
+					connected = false;
 					continue;
 				}
 
-				int clip = mClipper.clipNext(x, y);
-				if (clip < 1) {
-					if (i > 2)
-						ll.addLine(projected, i, false);
-
-					if (clip < 0) {
-						/* add line segment */
-						segment = mClipper.getLine(segment, 0);
-						ll.addLine(segment, 4, false);
-						prevX = mClipper.outX2;
-						prevY = mClipper.outY2;
-					}
-					i = 0;
-					continue;
-				}
+				int[] index = mPath.getLevel(s, level);
+				int numPoints = s.levelSize[level];
 
-				float dx = x - prevX;
-				float dy = y - prevY;
-				if ((i == 0) || FastMath.absMaxCmp(dx, dy, MIN_DIST)) {
-					projected[i++] = prevX = x;
-					projected[i++] = prevY = y;
+				if (!connected) {
+					startLine((int) ((mPath.getX(index[0]) - mx) * scale),
+					          (int) ((mPath.getY(index[0]) - my) * scale));
+				}
+				/* first point is the last point of previous segment */
+				for (int j = 1; j < numPoints; j++) {
+					nextPoint((int) ((mPath.getX(index[j]) - mx) * scale),
+					          (int) ((mPath.getY(index[j]) - my) * scale));
 				}
+				connected = true;
 			}
-			if (i > 2)
-				ll.addLine(projected, i, false);
+			if (mNumOut > 2)
+				ll.addLine(mPPoints, mNumOut, false);
+
+			mLine = null;
 
 			// trigger redraw to let renderer fetch the result.
 			mMap.render();
@@ -396,14 +372,73 @@ public class PathLayer extends Layer {
 			return true;
 		}
 
+		private int flip(int x) {
+			if (x > mMaxX)
+				return -1;
+			if (x < -mMaxX)
+				return 1;
+			return 0;
+		}
+
+		private void startLine(int x, int y) {
+			if (mNumOut > 2)
+				mLine.addLine(mPPoints, mNumOut, false);
+
+			mFlip = flip(x);
+			x += mFlip * (mMaxX << 1);
+
+			mClipper.clipStart(x, y);
+			mNumOut = addPoint(0, x, y);
+			mPrevX = x;
+			mPrevY = y;
+		}
+
+		private void nextPoint(int x, int y) {
+			int flipDirection = flip(x);
+			if (mFlip != flipDirection) {
+				startLine(x, y);
+				return;
+			}
+			x += flipDirection * (mMaxX << 1);
+
+			int clip = mClipper.clipNext(x, y);
+			if (clip < 1) {
+				if (mNumOut > 2)
+					mLine.addLine(mPPoints, mNumOut, false);
+
+				if (clip < 0) {
+					/* add line segment */
+					mSegment = mClipper.getLine(mSegment, 0);
+					mLine.addLine(mSegment, 4, false);
+					mPrevX = mClipper.outX2;
+					mPrevY = mClipper.outY2;
+				}
+				mNumOut = 0;
+				return;
+			}
+
+			float dx = x - mPrevX;
+			float dy = y - mPrevY;
+			if ((mNumOut == 0) || FastMath.absMaxCmp(dx, dy, MIN_DIST)) {
+				mNumOut = addPoint(mNumOut, x, y);
+				mPrevX = x;
+				mPrevY = y;
+			}
+		}
+
 		@Override
 		public void cleanup(Task task) {
 			task.bucket.clear();
 		}
 
-		private int addPoint(float[] points, int i, int x, int y) {
-			points[i++] = x;
-			points[i++] = y;
+		private int addPoint(int i, int x, int y) {
+			if (i + 2 > mPPoints.length) {
+				float[] tmp = new float[Math.max(256, mPPoints.length * 2)];
+				System.arraycopy(mPPoints, 0, tmp, 0, i);
+				mPPoints = tmp;
+			}
+			mPPoints[i++] = x;
+			mPPoints[i++] = y;
 			return i;
 		}
 	}
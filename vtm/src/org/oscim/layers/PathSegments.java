@@ -0,0 +1,206 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers;
+
+import java.util.ArrayList;
+
+import org.oscim.core.Tile;
+import org.oscim.utils.geom.SimplifyDP;
+
+/**
+ * Pre-projected path split into segments of SEGMENT_SIZE points with
+ * bounding box. For each segment simplified levels are created on demand
+ * for zoom-levels 0, LEVEL_STEP, 2 * LEVEL_STEP, ..., so that drawing the
+ * path only processes the visible segments with the points needed at
+ * the current zoom-level.
+ * <p>
+ * Consecutive segments share their first and last point. Appending points
+ * only modifies the last segment.
+ */
+class PathSegments {
+
+	/** number of points per segment */
+	final static int SEGMENT_SIZE = 256;
+
+	/** zoom-levels between simplified levels */
+	final static int LEVEL_STEP = 2;
+
+	/** levels for zoom-level 0 to 20 */
+	final static int NUM_LEVELS = 11;
+
+	/** squared tolerance in pixel at level zoom-level */
+	final static float SQ_TOLERANCE = 0.25f;
+
+	static final class Segment {
+		/** index of first point */
+		final int start;
+
+		/** index after last point */
+		int end;
+
+		/** bounding box of points in projected coordinates */
+		double xmin, ymin, xmax, ymax;
+
+		/** indices of the points of each level */
+		final int[][] levels = new int[NUM_LEVELS][];
+		final int[] levelSize = new int[NUM_LEVELS];
+
+		Segment(int start) {
+			this.start = start;
+			xmin = ymin = Double.MAX_VALUE;
+			xmax = ymax = -Double.MAX_VALUE;
+		}
+
+		/** @return true when box intersects, also when shifted around the world */
+		boolean intersects(double x1, double y1, double x2, double y2) {
+			if (ymax < y1 || ymin > y2)
+				return false;
+
+			for (int shift = -1; shift <= 1; shift++) {
+				if (xmax + shift >= x1 && xmin + shift <= x2)
+					return true;
+			}
+			return false;
+		}
+	}
+
+	/** projected points, x/y pairs */
+	private double[] mPoints = new double[SEGMENT_SIZE * 2];
+	private int mNumPoints;
+
+	final ArrayList<Segment> segments = new ArrayList<Segment>();
+
+	private final SimplifyDP mSimplify = new SimplifyDP();
+	private final float[] mTmp = new float[(SEGMENT_SIZE + 1) * 2];
+
+	/** @return the level for zoom-level z */
+	static int level(int z) {
+		return Math.min(z / LEVEL_STEP, NUM_LEVELS - 1);
+	}
+
+	/** @return scale of projected coordinates to pixel of level */
+	static double levelScale(int level) {
+		return Tile.SIZE * (double) (1L << (level * LEVEL_STEP));
+	}
+
+	int size() {
+		return mNumPoints;
+	}
+
+	double getX(int i) {
+		return mPoints[i * 2];
+	}
+
+	double getY(int i) {
+		return mPoints[i * 2 + 1];
+	}
+
+	void clear() {
+		mNumPoints = 0;
+		segments.clear();
+	}
+
+	/**
+	 * Add point in projected coordinates.
+	 */
+	void add(double x, double y) {
+		if (mNumPoints * 2 == mPoints.length) {
+			double[] tmp = new double[mPoints.length * 2];
+			System.arraycopy(mPoints, 0, tmp, 0, mPoints.length);
+			mPoints = tmp;
+		}
+		mPoints[mNumPoints * 2] = x;
+		mPoints[mNumPoints * 2 + 1] = y;
+		mNumPoints++;
+
+		Segment s = null;
+		int n = segments.size();
+		if (n > 0)
+			s = segments.get(n - 1);
+
+		if (s == null) {
+			s = new Segment(0);
+			segments.add(s);
+		} else if (s.end - s.start > SEGMENT_SIZE) {
+			/* start with last point of previous segment */
+			Segment prev = s;
+			s = new Segment(prev.end - 1);
+			s.end = prev.end;
+			extend(s, prev.end - 1);
+			segments.add(s);
+		}
+		s.end++;
+		extend(s, mNumPoints - 1);
+
+		/* levels need to be recreated */
+		for (int l = 0; l < NUM_LEVELS; l++)
+			s.levels[l] = null;
+	}
+
+	private void extend(Segment s, int i) {
+		double x = mPoints[i * 2];
+		double y = mPoints[i * 2 + 1];
+		if (x < s.xmin)
+			s.xmin = x;
+		if (x > s.xmax)
+			s.xmax = x;
+		if (y < s.ymin)
+			s.ymin = y;
+		if (y > s.ymax)
+			s.ymax = y;
+	}
+
+	/**
+	 * Get indices of the simplified points of segment for level. The
+	 * number of points is s.levelSize[level].
+	 */
+	int[] getLevel(Segment s, int level) {
+		int[] index = s.levels[level];
+		if (index != null)
+			return index;
+
+		int numPoints = s.end - s.start;
+		index = new int[numPoints];
+
+		/* pixel coordinates relative to the segment for simplification */
+		float[] p = mTmp;
+		double scale = levelScale(level);
+		for (int i = 0, j = s.start * 2; i < numPoints * 2; i += 2, j += 2) {
+			p[i + 0] = (float) ((mPoints[j + 0] - s.xmin) * scale);
+			p[i + 1] = (float) ((mPoints[j + 1] - s.ymin) * scale);
+		}
+
+		int n = numPoints;
+		if (numPoints > 2) {
+			n = mSimplify.simplify(p, 0, numPoints * 2, index, SQ_TOLERANCE);
+		} else {
+			for (int i = 0; i < numPoints; i++)
+				index[i] = i;
+		}
+		if (n < numPoints) {
+			int[] tmp = new int[n];
+			System.arraycopy(index, 0, tmp, 0, n);
+			index = tmp;
+		}
+		for (int i = 0; i < n; i++)
+			index[i] += s.start;
+
+		s.levels[level] = index;
+		s.levelSize[level] = n;
+		return index;
+	}
+}
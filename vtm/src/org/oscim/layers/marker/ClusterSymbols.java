@@ -0,0 +1,109 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.marker;
+
+import java.util.HashMap;
+
+import org.oscim.backend.CanvasAdapter;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.backend.canvas.Canvas;
+import org.oscim.backend.canvas.Color;
+import org.oscim.backend.canvas.Paint;
+import org.oscim.backend.canvas.Paint.Style;
+import org.oscim.layers.marker.MarkerItem.HotspotPlace;
+
+/**
+ * Provides the MarkerSymbols for clusters of markers. By default the
+ * number of markers is drawn as text with outline. Override
+ * {@link #createSymbol(String)} to provide custom symbols.
+ */
+public class ClusterSymbols {
+
+	private final HashMap<String, MarkerSymbol> mSymbols =
+	        new HashMap<String, MarkerSymbol>();
+
+	private Paint mFill;
+	private Paint mStroke;
+
+	private final int mTextColor;
+	private final int mOutlineColor;
+	private final float mTextSize;
+
+	public ClusterSymbols() {
+		this(Color.WHITE, Color.BLACK, 16 * CanvasAdapter.textScale);
+	}
+
+	public ClusterSymbols(int textColor, int outlineColor, float textSize) {
+		mTextColor = textColor;
+		mOutlineColor = outlineColor;
+		mTextSize = textSize;
+	}
+
+	/**
+	 * @return label for a cluster of 'count' markers. Counts are rounded
+	 *         down to limit the number of different symbols.
+	 */
+	public String getLabel(int count) {
+		if (count < 10)
+			return String.valueOf(count);
+		if (count < 100)
+			return (count / 10 * 10) + "+";
+		if (count < 1000)
+			return (count / 100 * 100) + "+";
+		if (count < 10000)
+			return (count / 1000) + "k+";
+
+		return (count / 10000 * 10) + "k+";
+	}
+
+	/**
+	 * Get the symbol for a cluster of 'count' markers.
+	 */
+	public synchronized MarkerSymbol getSymbol(int count) {
+		String label = getLabel(count);
+		MarkerSymbol symbol = mSymbols.get(label);
+		if (symbol == null) {
+			symbol = createSymbol(label);
+			mSymbols.put(label, symbol);
+		}
+		return symbol;
+	}
+
+	protected MarkerSymbol createSymbol(String label) {
+		if (mFill == null) {
+			mFill = CanvasAdapter.newPaint();
+			mFill.setColor(mTextColor);
+			mFill.setTextSize(mTextSize);
+
+			mStroke = CanvasAdapter.newPaint();
+			mStroke.setColor(mOutlineColor);
+			mStroke.setStyle(Style.STROKE);
+			mStroke.setStrokeWidth(mTextSize / 4);
+			mStroke.setTextSize(mTextSize);
+		}
+		int pad = (int) (mTextSize / 2);
+		int w = (int) mFill.measureText(label) + 2 * pad;
+		int h = (int) mFill.getFontHeight() + 2 * pad;
+
+		Bitmap bitmap = CanvasAdapter.newBitmap(w, h, 0);
+		Canvas canvas = CanvasAdapter.newCanvas();
+		canvas.setBitmap(bitmap);
+		canvas.drawText(label, pad, h - pad - mFill.getFontDescent(), mFill, mStroke);
+
+		return new MarkerSymbol(bitmap, HotspotPlace.CENTER);
+	}
+}
@@ -19,9 +19,12 @@
 package org.oscim.layers.marker;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
 
 import org.oscim.core.BoundingBox;
+import org.oscim.core.Box;
+import org.oscim.core.MercatorProjection;
 import org.oscim.core.Point;
 import org.oscim.event.Gesture;
 import org.oscim.event.GestureListener;
@@ -38,6 +41,12 @@ public class ItemizedLayer<Item extends MarkerItem> extends MarkerLayer<Item>
 
 	protected final List<Item> mItemList;
 	protected final Point mTmpPoint = new Point();
+	private final Box mTmpBox = new Box();
+	private final List<MarkerItem> mTmpItems = new ArrayList<MarkerItem>();
+	/** index of items in mItemList, valid for positions below mIndexed */
+	private final IdentityHashMap<MarkerItem, Integer> mItemIndex =
+	        new IdentityHashMap<MarkerItem, Integer>();
+	private int mIndexed;
 	protected OnItemGestureListener<Item> mOnItemGestureListener;
 	protected int mDrawnItemsLimit = Integer.MAX_VALUE;
 
@@ -72,12 +81,20 @@ public class ItemizedLayer<Item extends MarkerItem> extends MarkerLayer<Item>
 
 	public boolean addItem(Item item) {
 		final boolean result = mItemList.add(item);
-		populate();
+		if (mItemList.size() > mDrawnItemsLimit)
+			populate();
+		else
+			mMarkerRenderer.addItem(item);
 		return result;
 	}
 
 	public void addItem(int location, Item item) {
 		mItemList.add(location, item);
+		invalidateIndex(location);
+		if (mItemList.size() > mDrawnItemsLimit)
+			populate();
+		else
+			mMarkerRenderer.addItem(item);
 	}
 
 	public boolean addItems(List<Item> items) {
@@ -86,26 +103,47 @@ public class ItemizedLayer<Item extends MarkerItem> extends MarkerLayer<Item>
 		return result;
 	}
 
+	/**
+	 * Update the position of an item after its getPoint() changed.
+	 */
+	public void updateItem(Item item) {
+		mMarkerRenderer.updateItem(item);
+	}
+
 	public void removeAllItems() {
 		removeAllItems(true);
 	}
 
 	public void removeAllItems(boolean withPopulate) {
 		mItemList.clear();
+		mItemIndex.clear();
+		mIndexed = 0;
 		if (withPopulate) {
 			populate();
 		}
 	}
 
 	public boolean removeItem(Item item) {
-		final boolean result = mItemList.remove(item);
-		populate();
-		return result;
+		int position = mItemList.indexOf(item);
+		if (position < 0)
+			return false;
+
+		removeItem(position);
+		return true;
 	}
 
 	public Item removeItem(int position) {
 		final Item result = mItemList.remove(position);
-		populate();
+		invalidateIndex(position);
+
+		/* items beyond the limit may become visible */
+		if (mItemList.size() >= mDrawnItemsLimit)
+			populate();
+		else if (!mItemList.contains(result)) {
+			/* renderer keeps one entry for items added more than once */
+			mMarkerRenderer.removeItem(result);
+			mItemIndex.remove(result);
+		}
 		return result;
 	}
 
@@ -169,18 +207,23 @@ public class ItemizedLayer<Item extends MarkerItem> extends MarkerLayer<Item>
 
 		BoundingBox bbox = mapPosition.getBBox(128);
 
-		int nearest = -1;
-		int inside = -1;
+		/* only check items within the view */
+		mTmpBox.xmin = MercatorProjection.longitudeToX(bbox.getMinLongitude());
+		mTmpBox.xmax = MercatorProjection.longitudeToX(bbox.getMaxLongitude());
+		mTmpBox.ymin = MercatorProjection.latitudeToY(bbox.getMaxLatitude());
+		mTmpBox.ymax = MercatorProjection.latitudeToY(bbox.getMinLatitude());
+		mTmpItems.clear();
+		mMarkerRenderer.getItems(mTmpBox, mTmpItems);
+
+		MarkerItem nearest = null;
+		MarkerItem inside = null;
 		double insideY = -Double.MAX_VALUE;
 
 		/* squared dist: 50*50 pixel ~ 2mm on 400dpi */
 		double dist = 2500;
 
-		for (int i = 0; i < size; i++) {
-			Item item = mItemList.get(i);
-
-			if (!bbox.contains(item.geoPoint))
-				continue;
+		for (int i = 0, n = mTmpItems.size(); i < n; i++) {
+			MarkerItem item = mTmpItems.get(i);
 
 			mapPosition.toScreenPoint(item.getPoint(), mTmpPoint);
 
@@ -194,10 +237,10 @@ public class ItemizedLayer<Item extends MarkerItem> extends MarkerLayer<Item>
 			if (it.isInside(dx, dy)) {
 				if (mTmpPoint.y > insideY) {
 					insideY = mTmpPoint.y;
-					inside = i;
+					inside = item;
 				}
 			}
-			if (inside >= 0)
+			if (inside != null)
 				continue;
 
 			double d = dx * dx + dy * dy;
@@ -205,13 +248,18 @@ public class ItemizedLayer<Item extends MarkerItem> extends MarkerLayer<Item>
 				continue;
 
 			dist = d;
-			nearest = i;
+			nearest = item;
 		}
+		mTmpItems.clear();
 
-		if (inside >= 0)
+		if (inside != null)
 			nearest = inside;
 
-		if (nearest >= 0 && task.run(nearest)) {
+		if (nearest == null)
+			return false;
+
+		int index = indexOf(nearest);
+		if (index >= 0 && task.run(index)) {
 			mMarkerRenderer.update();
 			mMap.render();
 			return true;
@@ -219,6 +267,45 @@ public class ItemizedLayer<Item extends MarkerItem> extends MarkerLayer<Item>
 		return false;
 	}
 
+	/**
+	 * @return index of item in mItemList, or -1
+	 */
+	int indexOf(MarkerItem item) {
+		int size = mItemList.size();
+		Integer index = mItemIndex.get(item);
+		if (index != null && index.intValue() < mIndexed) {
+			int i = index.intValue();
+			if (i < size && mItemList.get(i) == item)
+				return i;
+
+			/* mItemList was modified directly */
+			mItemIndex.clear();
+			mIndexed = 0;
+		}
+		if (mIndexed > size)
+			mIndexed = 0;
+
+		/* index positions that were appended or shifted, keep the
+		 * first position of items added more than once */
+		for (int i = mIndexed; i < size; i++) {
+			MarkerItem it = mItemList.get(i);
+			Integer prev = mItemIndex.get(it);
+			if (prev != null && prev.intValue() < i && mItemList.get(prev.intValue()) == it)
+				continue;
+			mItemIndex.put(it, Integer.valueOf(i));
+		}
+		mIndexed = size;
+
+		index = mItemIndex.get(item);
+		return index == null ? -1 : index.intValue();
+	}
+
+	/** positions from 'position' on have changed */
+	private void invalidateIndex(int position) {
+		if (position < mIndexed)
+			mIndexed = position;
+	}
+
 	/**
 	 * When the item is touched one of these methods may be invoked depending on
 	 * the type of touch. Each of them returns true if the event was completely
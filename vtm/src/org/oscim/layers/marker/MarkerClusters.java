@@ -0,0 +1,244 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.marker;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.oscim.core.Tile;
+import org.oscim.layers.marker.MarkerRenderer.InternalItem;
+import org.oscim.map.Viewport;
+
+/**
+ * Hierarchical grid of marker clusters for zoom-levels 0 to maxZoom.
+ * <p>
+ * The grid of each zoom-level has cells of CELL_SIZE pixels at that
+ * zoom-level. Cells of zoom-level z contain the four cells of z + 1, so
+ * adding, removing or moving an item only updates one cluster per
+ * zoom-level. Items are kept by the clusters of maxZoom.
+ */
+class MarkerClusters {
+
+	/** approximate cell size in pixel, Tile.SIZE / CELL_SIZE cells per tile */
+	final static int CELL_SIZE = 64;
+
+	/** highest zoom-level for clustering, cells of finer levels overflow int */
+	final static int MAX_ZOOM = Viewport.MAX_ZOOMLEVEL;
+
+	static class Cluster extends InternalItem {
+		/** grid cell */
+		final int cx, cy;
+
+		/** number of items and sum of their projected positions */
+		int count;
+		double sumX, sumY;
+
+		/** items of cluster on maxZoom */
+		ArrayList<InternalItem> items;
+
+		Cluster(int cx, int cy) {
+			this.cx = cx;
+			this.cy = cy;
+		}
+
+		/** update position to centroid of items */
+		void updatePosition() {
+			px = sumX / count;
+			py = sumY / count;
+		}
+	}
+
+	final int maxZoom;
+
+	/** clusters by cell key per zoom-level */
+	private final ArrayList<HashMap<Long, Cluster>> mLevels;
+
+	MarkerClusters(int maxZoom) {
+		if (maxZoom < 0 || maxZoom > MAX_ZOOM)
+			throw new IllegalArgumentException("maxZoom out of range: " + maxZoom);
+
+		this.maxZoom = maxZoom;
+		mLevels = new ArrayList<HashMap<Long, Cluster>>(maxZoom + 1);
+		for (int z = 0; z <= maxZoom; z++)
+			mLevels.add(new HashMap<Long, Cluster>());
+	}
+
+	/** @return number of cells in each dimension on zoom-level z */
+	static int numCells(int z) {
+		return (Tile.SIZE / CELL_SIZE) << z;
+	}
+
+	static int cell(double p, int z) {
+		int n = numCells(z);
+		int c = (int) (p * n);
+		if (c < 0)
+			return 0;
+		if (c >= n)
+			return n - 1;
+		return c;
+	}
+
+	private static Long key(int cx, int cy) {
+		return Long.valueOf(((long) cx << 32) | (cy & 0xffffffffL));
+	}
+
+	void add(InternalItem it) {
+		int cx = cell(it.px, maxZoom);
+		int cy = cell(it.py, maxZoom);
+
+		for (int z = maxZoom; z >= 0; z--, cx >>= 1, cy >>= 1) {
+			HashMap<Long, Cluster> level = mLevels.get(z);
+			Long key = key(cx, cy);
+			Cluster c = level.get(key);
+			if (c == null) {
+				c = new Cluster(cx, cy);
+				level.put(key, c);
+			}
+			c.count++;
+			c.sumX += it.px;
+			c.sumY += it.py;
+			c.updatePosition();
+
+			if (z == maxZoom) {
+				if (c.items == null)
+					c.items = new ArrayList<InternalItem>(4);
+				c.items.add(it);
+			}
+		}
+	}
+
+	/**
+	 * Remove item at its current position (it.px, it.py).
+	 */
+	boolean remove(InternalItem it) {
+		int cx = cell(it.px, maxZoom);
+		int cy = cell(it.py, maxZoom);
+
+		Cluster c = mLevels.get(maxZoom).get(key(cx, cy));
+		if (c == null || !c.items.remove(it))
+			return false;
+
+		for (int z = maxZoom; z >= 0; z--, cx >>= 1, cy >>= 1) {
+			HashMap<Long, Cluster> level = mLevels.get(z);
+			Long key = key(cx, cy);
+			c = level.get(key);
+			if (--c.count == 0) {
+				level.remove(key);
+				continue;
+			}
+			c.sumX -= it.px;
+			c.sumY -= it.py;
+			c.updatePosition();
+		}
+		return true;
+	}
+
+	void clear() {
+		for (int z = 0; z <= maxZoom; z++)
+			mLevels.get(z).clear();
+	}
+
+	/** @return cluster of cell on zoom-level z or null when empty */
+	Cluster get(int z, int cx, int cy) {
+		return mLevels.get(z).get(key(cx, cy));
+	}
+
+	/**
+	 * Collect clusters on zoom-level z within box in projected coordinates.
+	 * The range in x may extend beyond [0,1] to wrap around the date-line.
+	 * Clusters with one item are replaced by the item.
+	 */
+	void collect(int z, double xmin, double ymin, double xmax, double ymax,
+	        List<InternalItem> results) {
+
+		int n = numCells(z);
+		long x1 = (long) Math.floor(xmin * n);
+		long x2 = (long) Math.floor(xmax * n);
+		if (x2 - x1 >= n) {
+			x1 = 0;
+			x2 = n - 1;
+		}
+		int y1 = cell(ymin, z);
+		int y2 = cell(ymax, z);
+
+		HashMap<Long, Cluster> level = mLevels.get(z);
+
+		if ((x2 - x1 + 1) * (y2 - y1 + 1) > level.size()) {
+			/* less clusters than cells to check */
+			for (Cluster c : level.values()) {
+				if (c.cy < y1 || c.cy > y2)
+					continue;
+
+				long cx = c.cx;
+				if (cx < x1)
+					cx += n;
+				else if (cx > x2)
+					cx -= n;
+
+				if (cx >= x1 && cx <= x2)
+					add(z, c, results);
+			}
+			return;
+		}
+
+		for (long x = x1; x <= x2; x++) {
+			int cx = (int) (((x % n) + n) % n);
+			for (int cy = y1; cy <= y2; cy++) {
+				Cluster c = level.get(key(cx, cy));
+				if (c != null)
+					add(z, c, results);
+			}
+		}
+	}
+
+	private void add(int z, Cluster c, List<InternalItem> results) {
+		if (c.count > 1) {
+			results.add(c);
+			return;
+		}
+		InternalItem it = getSingle(z, c);
+		if (it != null)
+			results.add(it);
+	}
+
+	/**
+	 * @return the item of a cluster with count == 1, or null when the
+	 *         cluster has no child on the next zoom-level
+	 */
+	InternalItem getSingle(int z, Cluster c) {
+		int cx = c.cx;
+		int cy = c.cy;
+
+		while (z < maxZoom) {
+			z++;
+			cx <<= 1;
+			cy <<= 1;
+			Cluster child = null;
+			for (int i = 0; i < 4 && child == null; i++)
+				child = get(z, cx + (i & 1), cy + (i >> 1));
+
+			if (child == null)
+				return null;
+
+			c = child;
+			cx = c.cx;
+			cy = c.cy;
+		}
+		return c.items.get(0);
+	}
+}
@@ -66,6 +66,20 @@ public abstract class MarkerLayer<Item extends MarkerItem> extends Layer {
 		mMarkerRenderer.populate(size());
 	}
 
+	/**
+	 * Draw items as clusters up to zoom-level 'maxZoom'. Items hidden in a
+	 * cluster are not found by taps.
+	 * 
+	 * @param symbols
+	 *            symbols for clusters, or null to disable clustering
+	 * @param maxZoom
+	 *            0 to Viewport.MAX_ZOOMLEVEL
+	 */
+	public void setClustering(ClusterSymbols symbols, int maxZoom) {
+		mMarkerRenderer.setClustering(symbols, maxZoom);
+		map().updateMap(true);
+	}
+
 	/**
 	 * TODO
 	 * If the given Item is found in the overlay, force it to be the current
@@ -17,15 +17,21 @@
 
 package org.oscim.layers.marker;
 
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
 
+import org.oscim.core.Box;
 import org.oscim.core.MercatorProjection;
 import org.oscim.core.Point;
 import org.oscim.core.Tile;
+import org.oscim.layers.marker.MarkerClusters.Cluster;
 import org.oscim.renderer.BucketRenderer;
 import org.oscim.renderer.GLViewport;
 import org.oscim.renderer.bucket.SymbolBucket;
 import org.oscim.renderer.bucket.SymbolItem;
+import org.oscim.utils.RTree;
 import org.oscim.utils.TimSort;
 import org.oscim.utils.geom.GeometryUtils;
 
@@ -44,16 +50,42 @@ public class MarkerRenderer extends BucketRenderer {
 	/** flag to force update of markers */
 	private boolean mUpdate;
 
-	private InternalItem[] mItems;
+	/** items by projected position */
+	private RTree<InternalItem> mIndex;
+	private final HashMap<MarkerItem, InternalItem> mItemMap =
+	        new HashMap<MarkerItem, InternalItem>();
+
+	/** items visible after last update */
+	private InternalItem[] mVisible = new InternalItem[0];
+	private int mNumVisible;
+
+	private final ArrayList<InternalItem> mResults = new ArrayList<InternalItem>();
+	private final Box mQueryBox = new Box();
+
+	/** clusters of items up to mClusters.maxZoom, null when disabled */
+	private MarkerClusters mClusters;
+	private ClusterSymbols mClusterSymbols;
+
+	/** zoom-level of last update, clusters are drawn up to mClusters.maxZoom */
+	private int mZoomLevel = Integer.MAX_VALUE;
 
 	static class InternalItem {
 		MarkerItem item;
 		boolean visible;
-		boolean changes;
 		float x, y;
 		double px, py;
 		float dy;
 
+		/** zero sized box at projected position */
+		final Box box = new Box();
+
+		void setPosition(Point p) {
+			px = p.x;
+			py = p.y;
+			box.xmin = box.xmax = px;
+			box.ymin = box.ymax = py;
+		}
+
 		@Override
 		public String toString() {
 			return "\n" + x + ":" + y + " / " + dy + " " + visible;
@@ -72,20 +104,17 @@ public class MarkerRenderer extends BucketRenderer {
 			return;
 
 		mUpdate = false;
+		mZoomLevel = v.pos.zoomLevel;
 
 		double mx = v.pos.x;
 		double my = v.pos.y;
 		double scale = Tile.SIZE * v.pos.scale;
 
-		//int changesInvisible = 0;
-		//int changedVisible = 0;
-		int numVisible = 0;
-
 		mMarkerLayer.map().viewport().getMapExtents(mBox, mExtents);
 
 		long flip = (long) (Tile.SIZE * v.pos.scale) >> 1;
 
-		if (mItems == null) {
+		if (mIndex == null) {
 			if (buckets.get() != null) {
 				buckets.clear();
 				compile();
@@ -97,9 +126,36 @@ public class MarkerRenderer extends BucketRenderer {
 		float cos = (float) Math.cos(angle);
 		float sin = (float) Math.sin(angle);
 
+		for (int i = 0; i < mNumVisible; i++) {
+			mVisible[i].visible = false;
+			mVisible[i] = null;
+		}
+		mNumVisible = 0;
+
+		/* find items within extents of the view */
+		float minX = mBox[0], maxX = mBox[0];
+		float minY = mBox[1], maxY = mBox[1];
+		for (int i = 2; i < 8; i += 2) {
+			minX = Math.min(minX, mBox[i]);
+			maxX = Math.max(maxX, mBox[i]);
+			minY = Math.min(minY, mBox[i + 1]);
+			maxY = Math.max(maxY, mBox[i + 1]);
+		}
+		if (mClusters != null && v.pos.zoomLevel <= mClusters.maxZoom) {
+			mClusters.collect(v.pos.zoomLevel,
+			                  mx + minX / scale, my + minY / scale,
+			                  mx + maxX / scale, my + maxY / scale,
+			                  mResults);
+		} else {
+			searchWrapped(mx + minX / scale, my + minY / scale,
+			              mx + maxX / scale, my + maxY / scale,
+			              mResults);
+		}
+
 		/* check visibility */
-		for (InternalItem it : mItems) {
-			it.changes = false;
+		for (int i = 0, n = mResults.size(); i < n; i++) {
+			InternalItem it = mResults.get(i);
+
 			it.x = (float) ((it.px - mx) * scale);
 			it.y = (float) ((it.py - my) * scale);
 
@@ -108,32 +164,24 @@ public class MarkerRenderer extends BucketRenderer {
 			else if (it.x < -flip)
 				it.x += (flip << 1);
 
-			if (!GeometryUtils.pointInPoly(it.x, it.y, mBox, 8, 0)) {
-				if (it.visible) {
-					it.changes = true;
-					//changesInvisible++;
-				}
+			if (!GeometryUtils.pointInPoly(it.x, it.y, mBox, 8, 0))
 				continue;
-			}
 
 			it.dy = sin * it.x + cos * it.y;
+			it.visible = true;
 
-			if (!it.visible) {
-				it.visible = true;
-				//changedVisible++;
+			if (mNumVisible == mVisible.length) {
+				InternalItem[] tmp = new InternalItem[Math.max(16, mNumVisible * 2)];
+				System.arraycopy(mVisible, 0, tmp, 0, mNumVisible);
+				mVisible = tmp;
 			}
-			numVisible++;
+			mVisible[mNumVisible++] = it;
 		}
+		mResults.clear();
 
-		//log.debug(numVisible + " " + changedVisible + " " + changesInvisible);
-
-		/* only update when zoomlevel changed, new items are visible
-		 * or more than 10 of the current items became invisible */
-		//if ((numVisible == 0) && (changedVisible == 0 && changesInvisible < 10))
-		//	return;
 		buckets.clear();
 
-		if (numVisible == 0) {
+		if (mNumVisible == 0) {
 			compile();
 			return;
 		}
@@ -141,18 +189,17 @@ public class MarkerRenderer extends BucketRenderer {
 		mMapPosition.copy(v.pos);
 		mMapPosition.bearing = -mMapPosition.bearing;
 
-		sort(mItems, 0, mItems.length);
+		sort(mVisible, 0, mNumVisible);
 		//log.debug(Arrays.toString(mItems));
-		for (InternalItem it : mItems) {
-			if (!it.visible)
-				continue;
+		for (int i = 0; i < mNumVisible; i++) {
+			InternalItem it = mVisible[i];
 
-			if (it.changes) {
-				it.visible = false;
-				continue;
-			}
+			MarkerSymbol marker;
+			if (it instanceof Cluster)
+				marker = mClusterSymbols.getSymbol(((Cluster) it).count);
+			else
+				marker = it.item.getMarker();
 
-			MarkerSymbol marker = it.item.getMarker();
 			if (marker == null)
 				marker = mDefaultMarker;
 
@@ -169,26 +216,216 @@ public class MarkerRenderer extends BucketRenderer {
 		compile();
 	}
 
+	/**
+	 * Search items in projected coordinates. The range in x may extend
+	 * beyond [0,1] to wrap around the date-line.
+	 */
+	private void searchWrapped(double xmin, double ymin, double xmax, double ymax,
+	        List<InternalItem> results) {
+
+		mQueryBox.ymin = ymin;
+		mQueryBox.ymax = ymax;
+
+		if (xmax - xmin >= 1) {
+			mQueryBox.xmin = 0;
+			mQueryBox.xmax = 1;
+			mIndex.search(mQueryBox, results);
+			return;
+		}
+
+		/* shift into [0,1] */
+		double shift = Math.floor(xmin);
+		xmin -= shift;
+		xmax -= shift;
+
+		mQueryBox.xmin = xmin;
+		mQueryBox.xmax = Math.min(xmax, 1);
+		mIndex.search(mQueryBox, results);
+
+		if (xmax > 1) {
+			mQueryBox.xmin = 0;
+			mQueryBox.xmax = xmax - 1;
+			mIndex.search(mQueryBox, results);
+		}
+	}
+
+	/**
+	 * Get items within the box given in projected coordinates
+	 * ({@link MercatorProjection#project(org.oscim.core.GeoPoint, Point)}).
+	 * When the last update has drawn clusters only items that are drawn
+	 * by themselves are returned, not those hidden in a cluster.
+	 */
+	public synchronized List<MarkerItem> getItems(Box box, List<MarkerItem> results) {
+		return getItems(mZoomLevel, box, results);
+	}
+
+	/**
+	 * Get items within box as drawn on zoom-level.
+	 */
+	synchronized List<MarkerItem> getItems(int zoomLevel, Box box, List<MarkerItem> results) {
+		if (results == null)
+			results = new ArrayList<MarkerItem>();
+
+		if (mIndex == null)
+			return results;
+
+		if (mClusters != null && zoomLevel <= mClusters.maxZoom) {
+			/* returns clusters of all cells overlapping box */
+			mClusters.collect(zoomLevel, box.xmin, box.ymin, box.xmax, box.ymax,
+			                  mResults);
+			for (int i = 0, n = mResults.size(); i < n; i++) {
+				InternalItem it = mResults.get(i);
+				if (it != null && !(it instanceof Cluster) && contains(box, it))
+					results.add(it.item);
+			}
+		} else {
+			searchWrapped(box.xmin, box.ymin, box.xmax, box.ymax, mResults);
+			for (int i = 0, n = mResults.size(); i < n; i++)
+				results.add(mResults.get(i).item);
+		}
+		mResults.clear();
+		return results;
+	}
+
+	/**
+	 * @return true when box contains the position of item. The range of
+	 *         box in x may extend beyond [0,1].
+	 */
+	private static boolean contains(Box box, InternalItem it) {
+		if (it.py < box.ymin || it.py > box.ymax)
+			return false;
+
+		double x = it.px;
+		if (x < box.xmin)
+			x += 1;
+		else if (x > box.xmax)
+			x -= 1;
+
+		return x >= box.xmin && x <= box.xmax;
+	}
+
+	/**
+	 * Enable clustering of items up to zoom-level 'maxZoom'. Items within
+	 * a cell of MarkerClusters.CELL_SIZE pixels are drawn as one symbol
+	 * at their centroid.
+	 * 
+	 * @param symbols
+	 *            symbols for clusters, or null to disable clustering
+	 * @param maxZoom
+	 *            0 to Viewport.MAX_ZOOMLEVEL
+	 * @throws IllegalArgumentException
+	 *             when maxZoom is out of range
+	 */
+	public synchronized void setClustering(ClusterSymbols symbols, int maxZoom) {
+		MarkerClusters clusters = null;
+		if (symbols != null) {
+			clusters = new MarkerClusters(maxZoom);
+			for (InternalItem it : mItemMap.values())
+				clusters.add(it);
+		}
+		mClusterSymbols = symbols;
+		mClusters = clusters;
+		mUpdate = true;
+	}
+
 	protected void populate(int size) {
 
-		InternalItem[] tmp = new InternalItem[size];
+		RTree<InternalItem> index = new RTree<InternalItem>();
+		HashMap<MarkerItem, InternalItem> items = new HashMap<MarkerItem, InternalItem>();
 
 		for (int i = 0; i < size; i++) {
-			InternalItem it = new InternalItem();
-			tmp[i] = it;
-			it.item = mMarkerLayer.createItem(i);
-
-			/* pre-project points */
-			MercatorProjection.project(it.item.getPoint(), mMapPoint);
-			it.px = mMapPoint.x;
-			it.py = mMapPoint.y;
+			MarkerItem item = mMarkerLayer.createItem(i);
+			if (items.containsKey(item))
+				continue;
+			InternalItem it = createInternalItem(item);
+			index.insert(it.box, it);
+			items.put(it.item, it);
 		}
 		synchronized (this) {
 			mUpdate = true;
-			mItems = tmp;
+			mIndex = index;
+			mItemMap.clear();
+			mItemMap.putAll(items);
+			if (mClusters != null) {
+				mClusters.clear();
+				for (InternalItem it : items.values())
+					mClusters.add(it);
+			}
+			for (int i = 0; i < mNumVisible; i++)
+				mVisible[i] = null;
+			mNumVisible = 0;
 		}
 	}
 
+	private InternalItem createInternalItem(MarkerItem item) {
+		InternalItem it = new InternalItem();
+		it.item = item;
+
+		/* pre-project points. not locked when called by populate() */
+		Point p = new Point();
+		MercatorProjection.project(item.getPoint(), p);
+		it.setPosition(p);
+		return it;
+	}
+
+	/**
+	 * Add item without rebuilding the index.
+	 * 
+	 * @return false when item was already added
+	 */
+	protected synchronized boolean addItem(MarkerItem item) {
+		if (mItemMap.containsKey(item))
+			return false;
+
+		if (mIndex == null)
+			mIndex = new RTree<InternalItem>();
+
+		InternalItem it = createInternalItem(item);
+		mIndex.insert(it.box, it);
+		mItemMap.put(item, it);
+		if (mClusters != null)
+			mClusters.add(it);
+		mUpdate = true;
+		return true;
+	}
+
+	/**
+	 * Remove item without rebuilding the index.
+	 */
+	protected synchronized boolean removeItem(MarkerItem item) {
+		InternalItem it = mItemMap.remove(item);
+		if (it == null)
+			return false;
+
+		mIndex.remove(it.box, it);
+		if (mClusters != null)
+			mClusters.remove(it);
+		mUpdate = true;
+		return true;
+	}
+
+	/**
+	 * Update position of item after item.getPoint() changed.
+	 */
+	protected synchronized boolean updateItem(MarkerItem item) {
+		InternalItem it = mItemMap.get(item);
+		if (it == null)
+			return false;
+
+		mIndex.remove(it.box, it);
+		if (mClusters != null)
+			mClusters.remove(it);
+
+		MercatorProjection.project(item.getPoint(), mMapPoint);
+		it.setPosition(mMapPoint);
+
+		mIndex.insert(it.box, it);
+		if (mClusters != null)
+			mClusters.add(it);
+		mUpdate = true;
+		return true;
+	}
+
 	public void update() {
 		mUpdate = true;
 	}
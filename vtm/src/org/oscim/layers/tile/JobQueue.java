@@ -1,5 +1,5 @@
 /*
- * Copyright 2012, 2013 Hannes Janetzek
+ * Copyright 2012, 2013, 2014 Hannes Janetzek
  *
  * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
  *
@@ -20,78 +20,281 @@ import static org.oscim.layers.tile.MapTile.State.CANCEL;
 import static org.oscim.layers.tile.MapTile.State.LOADING;
 import static org.oscim.layers.tile.MapTile.State.NONE;
 
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.oscim.core.Tile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * A JobQueue keeps the list of pending jobs for a MapView and prioritizes them.
+ * <p>
+ * The queue is filled on the main-thread by {@link #setJobs(MapTile[], int)}
+ * which replaces the pending jobs with a new prioritized set: Jobs that are
+ * still wanted keep their place in the queue (ordered by their current
+ * priority), jobs that are no longer wanted are dropped and jobs that were
+ * already taken by a TileLoader but are not wanted anymore are canceled.
+ * <p>
+ * TileLoaders take jobs by {@link #poll()} without a common lock: Each set of
+ * jobs is published as an immutable snapshot with an atomic read index and
+ * the ownership of a tile is resolved on the tile itself.
  */
 public class JobQueue {
 
 	static final Logger log = LoggerFactory.getLogger(JobQueue.class);
+	static final boolean dbg = false;
+
+	/** MapTile.jobState: Tile is not in the queue */
+	static final int JOB_NONE = 0;
+	/** MapTile.jobState: Tile waits in the queue */
+	static final int JOB_QUEUED = 1;
+	/** MapTile.jobState: Tile was taken by a TileLoader */
+	static final int JOB_TAKEN = 2;
+
+	static final class Jobs {
+		final MapTile[] tiles;
+		final int size;
+		final AtomicInteger next = new AtomicInteger();
+
+		Jobs(MapTile[] tiles, int size) {
+			this.tiles = tiles;
+			this.size = size;
+		}
+	}
+
+	/** Current snapshot, replaced by main-thread, read by TileLoaders */
+	private volatile Jobs mJobs;
+
+	/** Tiles taken by TileLoaders and not yet completed (main-thread) */
+	private final ArrayList<MapTile> mRunning = new ArrayList<MapTile>();
 
-	private int mCurrentJob = 0;
-	private MapTile[] mJobs;
+	/** Counter to mark tiles of the current set of jobs (main-thread) */
+	private int mSerial;
+
+	private final TileMetrics mMetrics;
+
+	public JobQueue() {
+		this(null);
+	}
 
 	/**
-	 * @param tiles
-	 *            the jobs to be added to this queue.
+	 * @param metrics
+	 *            to record the time tiles wait in the queue, may be null.
 	 */
-	public synchronized void setJobs(MapTile[] tiles) {
-		mJobs = tiles;
-		mCurrentJob = 0;
+	public JobQueue(TileMetrics metrics) {
+		mMetrics = metrics;
 	}
 
 	/**
-	 * Removes all jobs from this queue.
+	 * Replace the pending jobs. Must be called on main-thread.
+	 * 
+	 * @param tiles
+	 *            the jobs to be added to this queue. Tiles must be in
+	 *            LOADING state and have their distance updated for
+	 *            prioritization. The array is owned by the queue
+	 *            afterwards.
+	 * @param size
+	 *            number of tiles in array.
 	 */
-	public synchronized void clear() {
-		if (mJobs == null) {
-			mCurrentJob = 0;
-			return;
+	public void setJobs(MapTile[] tiles, int size) {
+		int serial = ++mSerial;
+		int cnt = 0;
+		long now = (mMetrics == null) ? 0 : System.nanoTime();
+
+		for (int i = 0; i < size; i++) {
+			MapTile t = tiles[i];
+			/* tile was added twice */
+			if (t.jobSerial == serial)
+				continue;
+
+			t.jobSerial = serial;
+
+			synchronized (t) {
+				/* already being loaded */
+				if (t.jobState == JOB_TAKEN)
+					continue;
+
+				/* keep time of tiles that stay queued */
+				if (t.jobState == JOB_NONE)
+					t.jobTime = now;
+
+				t.jobState = JOB_QUEUED;
+			}
+			tiles[cnt++] = t;
 		}
-		MapTile[] tiles = mJobs;
 
-		for (int i = mCurrentJob, n = mJobs.length; i < n; i++) {
+		if (cnt > 1)
+			TileDistanceSort.sort(tiles, 0, cnt);
+
+		Jobs prev = mJobs;
+		mJobs = (cnt == 0) ? null : new Jobs(tiles, cnt);
+
+		if (prev != null)
+			dropJobs(prev, serial);
+
+		cancelRunning(serial);
+	}
+
+	/**
+	 * Drop jobs from a previous snapshot that are not wanted anymore and
+	 * keep track of the tiles that were taken from it.
+	 */
+	private void dropJobs(Jobs jobs, int serial) {
+		MapTile[] tiles = jobs.tiles;
+
+		for (int i = 0, n = jobs.size; i < n; i++) {
 			MapTile t = tiles[i];
-			if (t.state(LOADING | CANCEL)) {
-				t.setState(NONE);
-			} else {
-				log.error("Wrong tile in queue {} {}", t, t.state());
+			int jobState;
+
+			synchronized (t) {
+				jobState = t.jobState;
+				if (jobState == JOB_QUEUED && t.jobSerial != serial)
+					t.jobState = JOB_NONE;
+			}
+
+			if (jobState == JOB_TAKEN) {
+				if (!mRunning.contains(t))
+					mRunning.add(t);
+
+			} else if (jobState == JOB_QUEUED && t.jobSerial != serial) {
+				if (t.state(LOADING))
+					t.setState(NONE);
+				else
+					log.error("Wrong tile in queue {} {}", t, t.state());
+			}
+		}
+	}
+
+	/**
+	 * Cancel running jobs that are not part of the current set of jobs.
+	 */
+	private void cancelRunning(int serial) {
+		for (int i = mRunning.size() - 1; i >= 0; i--) {
+			MapTile t = mRunning.get(i);
+
+			if (t.jobState != JOB_TAKEN) {
+				mRunning.remove(i);
+				continue;
+			}
+			if (t.jobSerial != serial && t.state(LOADING)) {
+				if (dbg)
+					log.debug("{} canceled (d={})", t, t.distance);
+
+				t.setState(CANCEL);
+				mRunning.remove(i);
 			}
-			tiles[i] = null;
 		}
-		mCurrentJob = 0;
+	}
+
+	/**
+	 * Cancel the job for a tile. When the tile is still waiting in the queue
+	 * its state is reset to NONE, when it is currently loaded its state is set
+	 * to CANCEL. Must be called on main-thread.
+	 * 
+	 * @return true if the tile was removed from the queue, false if it was
+	 *         not queued (but possibly running).
+	 */
+	public boolean cancel(MapTile t) {
+		int jobState;
+		synchronized (t) {
+			jobState = t.jobState;
+			if (jobState == JOB_QUEUED)
+				t.jobState = JOB_NONE;
+		}
+
+		if (jobState == JOB_QUEUED) {
+			if (t.state(LOADING))
+				t.setState(NONE);
+			return true;
+		}
+
+		if (jobState == JOB_TAKEN && t.state(LOADING))
+			t.setState(CANCEL);
+
+		return false;
+	}
+
+	/**
+	 * Called on main-thread when the TileLoader has finished the job.
+	 */
+	public void completed(MapTile t) {
+		synchronized (t) {
+			t.jobState = JOB_NONE;
+		}
+	}
+
+	/**
+	 * Removes all pending jobs from this queue. Running jobs are not
+	 * affected. Must be called on main-thread.
+	 */
+	public void clear() {
+		Jobs jobs = mJobs;
 		mJobs = null;
+
+		if (jobs != null)
+			dropJobs(jobs, ++mSerial);
 	}
 
 	/**
 	 * @return true if this queue contains no jobs, false otherwise.
 	 */
-	public synchronized boolean isEmpty() {
-		return (mJobs == null);
+	public boolean isEmpty() {
+		Jobs jobs = mJobs;
+		return jobs == null || jobs.next.get() >= jobs.size;
 	}
 
 	/**
-	 * @return the most important job from this queue or null, if empty.
+	 * Get the next jobs without taking them from this queue, e.g. to
+	 * request their data ahead of time.
+	 * 
+	 * @param tiles
+	 *            array to be filled with the most important jobs.
+	 * @return number of tiles written to 'tiles'.
 	 */
-	public synchronized MapTile poll() {
-		if (mJobs == null)
-			return null;
+	public int peek(Tile[] tiles) {
+		Jobs jobs = mJobs;
+		if (jobs == null)
+			return 0;
 
-		if (mCurrentJob == 0) {
-			int len = mJobs.length;
-			if (len > 1)
-				TileDistanceSort.sort(mJobs, 0, len);
+		int cnt = 0;
+		for (int i = jobs.next.get(); i < jobs.size && cnt < tiles.length; i++) {
+			MapTile t = jobs.tiles[i];
+			synchronized (t) {
+				if (t.jobState != JOB_QUEUED)
+					continue;
+			}
+			tiles[cnt++] = t;
 		}
+		return cnt;
+	}
 
-		MapTile t = mJobs[mCurrentJob];
-		mJobs[mCurrentJob] = null;
+	/**
+	 * @return the most important job from this queue or null, if empty.
+	 */
+	public MapTile poll() {
+		Jobs jobs = mJobs;
+		if (jobs == null)
+			return null;
+
+		while (jobs.next.get() < jobs.size) {
+			int pos = jobs.next.getAndIncrement();
+			if (pos >= jobs.size)
+				break;
 
-		if (++mCurrentJob == mJobs.length)
-			mJobs = null;
+			MapTile t = jobs.tiles[pos];
+			synchronized (t) {
+				/* dropped, canceled or taken from previous snapshot */
+				if (t.jobState != JOB_QUEUED)
+					continue;
 
-		return t;
+				t.jobState = JOB_TAKEN;
+			}
+			if (mMetrics != null)
+				mMetrics.queueWait.addSince(t.jobTime);
 
+			return t;
+		}
+		return null;
 	}
 }
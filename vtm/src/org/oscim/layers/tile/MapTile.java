@@ -128,6 +128,21 @@ public class MapTile extends Tile {
 	 */
 	int lastDraw = 0;
 
+	/** Size in bytes accounted by TileManager, see countSize() */
+	int size;
+
+	/** Size after upload, set on GL thread. -1 when accounted */
+	volatile int uploadedSize = -1;
+
+	/** JobQueue state, synchronized on this tile */
+	int jobState;
+
+	/** Last set of jobs this tile was added to, used by JobQueue */
+	int jobSerial;
+
+	/** Time when the tile was queued, used by JobQueue for metrics */
+	long jobTime;
+
 	/** Keep track which tiles are locked as proxy for this tile */
 	private int proxy = 0;
 
@@ -147,6 +162,14 @@ public class MapTile extends Tile {
 
 		protected abstract void dispose();
 
+		/**
+		 * @return approximate number of bytes of heap, native and GL
+		 *         memory used by this data.
+		 */
+		protected int getSize() {
+			return 0;
+		}
+
 		public TileData next() {
 			return (TileData) next;
 		}
@@ -271,12 +294,24 @@ public class MapTile extends Tile {
 	 */
 	protected void clear() {
 		while (data != null) {
-			data.dispose();
-			data = data.next;
+			/* dispose may return data to a pool */
+			TileData d = data;
+			data = d.next;
+			d.dispose();
 		}
 		setState(NONE);
 	}
 
+	/**
+	 * @return approximate number of bytes used by the data of this tile.
+	 */
+	public int countSize() {
+		int sum = 0;
+		for (TileData d = data; d != null; d = d.next)
+			sum += d.getSize();
+		return sum;
+	}
+
 	/**
 	 * Get the default ElementLayers which are added
 	 * by {@link VectorTileLoader}
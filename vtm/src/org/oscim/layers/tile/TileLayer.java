@@ -69,14 +69,15 @@ public abstract class TileLayer extends Layer implements UpdateListener {
 	protected void initLoader(int numLoaders) {
 		mTileLoader = new TileLoader[numLoaders];
 
-		for (int i = 0; i < numLoaders; i++) {
+		for (int i = 0; i < numLoaders; i++)
 			mTileLoader[i] = createLoader();
-			mTileLoader[i].start();
-		}
 	}
 
 	/**
-	 * Override to set number of loader threads. Default is 4.
+	 * Override to set number of loaders, i.e. the maximum number of tiles
+	 * this layer loads concurrently. Default is 4. The loaders run on the
+	 * executor shared by all TileLayers, see
+	 * {@link TileLoader#setDefaultExecutor(java.util.concurrent.Executor)}.
 	 */
 	protected int getNumLoaders() {
 		return NUM_LOADERS;
@@ -140,4 +141,11 @@ public abstract class TileLayer extends Layer implements UpdateListener {
 	public TileManager getManager() {
 		return mTileManager;
 	}
+
+	/**
+	 * @return timings and cache statistics of tile loading for this layer.
+	 */
+	public TileMetrics getMetrics() {
+		return mTileManager.getMetrics();
+	}
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2013 Hannes Janetzek
+ * Copyright 2013, 2014 Hannes Janetzek
  *
  * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
  *
@@ -19,67 +19,224 @@ package org.oscim.layers.tile;
 import static org.oscim.tiling.ITileDataSink.QueryResult.FAILED;
 import static org.oscim.tiling.ITileDataSink.QueryResult.SUCCESS;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
 import org.oscim.backend.canvas.Bitmap;
 import org.oscim.core.MapElement;
 import org.oscim.tiling.ITileDataSink;
-import org.oscim.utils.PausableThread;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public abstract class TileLoader extends PausableThread implements ITileDataSink {
+/**
+ * A TileLoader takes jobs from its {@link TileManager} and runs them on an
+ * {@link Executor}. Each TileLoader processes at most one tile at a time, so
+ * the number of loaders of a TileLayer limits its concurrency while the
+ * threads are shared by all TileLayers using the same executor.
+ * <p>
+ * By default all TileLoaders share one thread pool, see
+ * {@link #setDefaultExecutor(Executor)} to use e.g. a ForkJoinPool instead.
+ */
+public abstract class TileLoader implements ITileDataSink, Runnable {
 
 	static final Logger log = LoggerFactory.getLogger(TileLoader.class);
 
-	private static int id;
+	/** Minimum number of threads of the default executor */
+	private static final int NUM_THREADS = 4;
+
+	private static Executor sDefaultExecutor;
+	private static int sThreadCount;
+
+	/**
+	 * Set the executor used by TileLoaders that were not created with
+	 * their own executor. Must be set before TileLayers are created.
+	 */
+	public static synchronized void setDefaultExecutor(Executor executor) {
+		sDefaultExecutor = executor;
+	}
+
+	/**
+	 * @return the executor shared by TileLoaders. Creates a pool with
+	 *         one thread per core (and at least {@value #NUM_THREADS})
+	 *         when none was set.
+	 */
+	public static synchronized Executor getDefaultExecutor() {
+		if (sDefaultExecutor == null) {
+			int cores = Runtime.getRuntime().availableProcessors();
+			sDefaultExecutor = createExecutor(Math.max(NUM_THREADS, cores));
+		}
+		return sDefaultExecutor;
+	}
+
+	/**
+	 * Creates a fixed thread pool with low-priority daemon threads.
+	 */
+	public static ExecutorService createExecutor(int numThreads) {
+		return Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "TileLoader" + nextThreadId());
+				t.setDaemon(true);
+				t.setPriority((Thread.NORM_PRIORITY + Thread.MIN_PRIORITY) / 2);
+				return t;
+			}
+		});
+	}
+
+	private static synchronized int nextThreadId() {
+		return sThreadCount++;
+	}
 
-	private final String THREAD_NAME;
 	private final TileManager mTileManager;
+	private final Executor mExecutor;
+
+	/** metrics of the TileManager */
+	protected final TileMetrics mMetrics;
+
+	/** Submitted to executor, synchronized on this */
+	private boolean mScheduled;
+	/** Currently working on a tile, synchronized on this */
+	private boolean mRunning;
+
+	private boolean mShouldPause;
+	private boolean mShouldStop;
 
 	/** currently processed tile */
 	protected MapTile mTile;
 
 	public TileLoader(TileManager tileManager) {
-		super();
+		this(tileManager, null);
+	}
+
+	/**
+	 * @param executor
+	 *            to run this loader on, null to use the default executor.
+	 */
+	public TileLoader(TileManager tileManager, Executor executor) {
 		mTileManager = tileManager;
-		THREAD_NAME = "TileLoader" + (id++);
+		mMetrics = tileManager.getMetrics();
+		mExecutor = (executor == null) ? getDefaultExecutor() : executor;
 	}
 
 	protected abstract boolean loadTile(MapTile tile);
 
+	/**
+	 * Submit this loader to its executor when there are jobs in the queue.
+	 */
 	public void go() {
 		synchronized (this) {
-			notify();
+			if (mScheduled || mShouldPause || mShouldStop)
+				return;
+
+			if (!mTileManager.hasTileJobs())
+				return;
+
+			mScheduled = true;
+		}
+
+		try {
+			mExecutor.execute(this);
+		} catch (RejectedExecutionException e) {
+			log.debug("executor rejected loader: {}", e.getMessage());
+			synchronized (this) {
+				mScheduled = false;
+			}
 		}
 	}
 
+	/**
+	 * Loads one tile and resubmits this loader to the executor while there
+	 * are more jobs. This lets loaders of different TileLayers take turns
+	 * on a shared executor.
+	 */
 	@Override
-	protected void doWork() {
-		mTile = mTileManager.getTileJob();
-
-		if (mTile == null)
-			return;
+	public final void run() {
+		synchronized (this) {
+			if (mShouldPause || mShouldStop) {
+				mScheduled = false;
+				return;
+			}
+			mRunning = true;
+		}
 
 		try {
-			loadTile(mTile);
-		} catch (Exception e) {
-			e.printStackTrace();
-			completed(FAILED);
+			mTile = mTileManager.getTileJob();
+
+			if (mTile != null) {
+				long start = System.nanoTime();
+				try {
+					loadTile(mTile);
+				} catch (Exception e) {
+					e.printStackTrace();
+					completed(FAILED);
+				}
+				mMetrics.load.addSince(start);
+			}
+		} finally {
+			synchronized (this) {
+				mRunning = false;
+				mScheduled = false;
+				notifyAll();
+			}
 		}
+		go();
 	}
 
-	@Override
-	protected String getThreadName() {
-		return THREAD_NAME;
+	/**
+	 * The loader should stop its work temporarily. The current job is
+	 * finished, use {@link #awaitPausing()} to wait for it.
+	 */
+	public final synchronized void pause() {
+		mShouldPause = true;
 	}
 
-	@Override
-	protected int getThreadPriority() {
-		return (Thread.NORM_PRIORITY + Thread.MIN_PRIORITY) / 2;
+	/**
+	 * The paused loader should continue with its work.
+	 */
+	public final void proceed() {
+		synchronized (this) {
+			if (!mShouldPause)
+				return;
+			mShouldPause = false;
+		}
+		go();
 	}
 
-	@Override
-	protected boolean hasWork() {
-		return mTileManager.hasTileJobs();
+	/**
+	 * @return true if this loader is paused and does not work on a
+	 *         tile, false otherwise.
+	 */
+	public final synchronized boolean isPausing() {
+		return (mShouldPause || mShouldStop) && !mRunning;
+	}
+
+	/**
+	 * Causes the current thread to wait until this loader is pausing.
+	 */
+	public final synchronized void awaitPausing() {
+		while (!isPausing()) {
+			try {
+				wait(100);
+			} catch (InterruptedException e) {
+				/* restore the interrupted status */
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Stop this loader, it will not be submitted to the executor again.
+	 */
+	public synchronized void finish() {
+		mShouldStop = true;
+	}
+
+	public final synchronized boolean isCanceled() {
+		return mShouldPause || mShouldStop;
 	}
 
 	public abstract void dispose();
@@ -94,7 +251,7 @@ public abstract class TileLoader extends PausableThread implements ITileDataSink
 	public void completed(QueryResult result) {
 		boolean ok = (result == SUCCESS);
 
-		if (ok && (isCanceled() || isInterrupted()))
+		if (ok && isCanceled())
 			ok = false;
 
 		mTileManager.jobCompleted(mTile, ok);
@@ -52,6 +52,15 @@ public class TileManager {
 	private final int mCacheLimit;
 	private int mCacheReduce;
 
+	/** max bytes of cached tiles, 0 to limit by mCacheLimit */
+	private long mMemoryLimit;
+
+	/** sum of MapTile.size of cached tiles */
+	private long mCacheBytes;
+
+	/** tiles uploaded by TileRenderer, their size is updated on main thread */
+	private final ArrayList<MapTile> mUploadedTiles = new ArrayList<MapTile>();
+
 	private int mMinZoom;
 	private int mMaxZoom;
 
@@ -67,6 +76,9 @@ public class TileManager {
 	private static final int CACHE_THRESHOLD = 25;
 	private static final int CACHE_CLEAR_THRESHOLD = 10;
 
+	/** bytes accounted per tile in addition to its data */
+	private static final int TILE_OVERHEAD = 256;
+
 	private final Map mMap;
 	private final Viewport mViewport;
 
@@ -130,6 +142,8 @@ public class TileManager {
 		        }
 	        };
 
+	private final TileMetrics mMetrics = new TileMetrics();
+
 	public interface Listener extends EventListener {
 		void onTileManagerEvent(Event event, MapTile tile);
 	};
@@ -143,7 +157,7 @@ public class TileManager {
 
 		mViewport = map.viewport();
 
-		jobQueue = new JobQueue();
+		jobQueue = new JobQueue(mMetrics);
 		mJobs = new ArrayList<MapTile>();
 		mTiles = new MapTile[mCacheLimit];
 
@@ -152,6 +166,72 @@ public class TileManager {
 		mUpdateSerial = 0;
 	}
 
+	/**
+	 * Limit the cache by memory used by tiles instead of by number of
+	 * tiles. When the limit is exceeded tiles farthest away from the
+	 * current position are removed until 1/8 of the limit is free.
+	 * Tiles that are visible or locked by the renderer are kept.
+	 * 
+	 * @param bytes
+	 *            max bytes of heap, native and GL memory used by cached
+	 *            tiles. 0 to limit by number of tiles.
+	 */
+	public void setMemoryLimit(long bytes) {
+		mMemoryLimit = bytes;
+	}
+
+	public long getMemoryLimit() {
+		return mMemoryLimit;
+	}
+
+	/**
+	 * @return approximate bytes used by cached tiles. Sizes of tiles are
+	 *         updated after they were uploaded on the next update().
+	 */
+	public long getCacheBytes() {
+		return mCacheBytes;
+	}
+
+	/**
+	 * Called by TileRenderer on GL thread after the data of tile was
+	 * uploaded, which usually changes its size: vertex data is moved to
+	 * buffer objects. The accounting is updated on main thread.
+	 */
+	void tileUploaded(MapTile tile) {
+		tile.uploadedSize = TILE_OVERHEAD + tile.countSize();
+		synchronized (mUploadedTiles) {
+			mUploadedTiles.add(tile);
+		}
+	}
+
+	private void updateUploadedSizes() {
+		synchronized (mUploadedTiles) {
+			for (int i = 0, n = mUploadedTiles.size(); i < n; i++) {
+				MapTile t = mUploadedTiles.get(i);
+
+				int size = t.uploadedSize;
+				if (size < 0)
+					continue;
+
+				t.uploadedSize = -1;
+				/* tile was removed or reloaded meanwhile */
+				if (t.size == 0 || !t.state(READY))
+					continue;
+
+				mCacheBytes += size - t.size;
+				t.size = size;
+			}
+			mUploadedTiles.clear();
+		}
+	}
+
+	/**
+	 * @return metrics of loading and uploading tiles of this TileManager.
+	 */
+	public TileMetrics getMetrics() {
+		return mMetrics;
+	}
+
 	public void setZoomTable(int[] zoomTable) {
 		mZoomTable = zoomTable;
 	}
@@ -172,6 +252,9 @@ public class TileManager {
 	}
 
 	public void init() {
+		/* reset queued tiles before they are marked DEADBEEF */
+		jobQueue.clear();
+
 		if (mCurrentTiles != null)
 			mCurrentTiles.releaseTiles();
 
@@ -197,6 +280,7 @@ public class TileManager {
 		Arrays.fill(mTiles, null);
 		mTilesEnd = 0;
 		mTilesCount = 0;
+		mCacheBytes = 0;
 
 		/* set up TileSet large enough to hold current tiles */
 		int num = Math.max(mMap.getWidth(), mMap.getHeight());
@@ -223,15 +307,14 @@ public class TileManager {
 			mPrevZoomlevel = pos.zoomLevel;
 			init();
 		}
-		/* clear JobQueue and set tiles to state == NONE.
-		 * one could also append new tiles and sort in JobQueue
-		 * but this has the nice side-effect that MapWorkers dont
-		 * start with old jobs while new jobs are calculated, which
-		 * should increase the chance that they are free when new
-		 * jobs come in. */
-		jobQueue.clear();
+		/* The JobQueue is not cleared here: tiles that are still
+		 * wanted keep loading, tiles that dropped out of view are
+		 * removed from the queue (or canceled when running) in
+		 * setJobs() and all pending jobs are reprioritized for the
+		 * current position. */
 
 		if (pos.zoomLevel < mMinZoom) {
+			jobQueue.clear();
 			if (mCurrentTiles.cnt > 0 && pos.zoomLevel < mMinZoom - 4) {
 				synchronized (mTilelock) {
 					mCurrentTiles.releaseTiles();
@@ -273,8 +356,10 @@ public class TileManager {
 				if (z <= tileZoom && z > match)
 					match = z;
 			}
-			if (match == 0)
+			if (match == 0) {
+				jobQueue.clear();
 				return false;
+			}
 
 			tileZoom = match;
 		}
@@ -328,15 +413,22 @@ public class TileManager {
 		}
 
 		/* Add tile jobs to queue */
-		if (mJobs.isEmpty())
+		if (mJobs.isEmpty()) {
+			jobQueue.clear();
 			return false;
+		}
 
 		MapTile[] jobs = new MapTile[mJobs.size()];
 		jobs = mJobs.toArray(jobs);
 		updateDistances(jobs, jobs.length, pos);
 
-		/* sets tiles to state == LOADING */
-		jobQueue.setJobs(jobs);
+		/* load tiles in view before those in the margin */
+		for (MapTile t : jobs)
+			if (!t.isVisible)
+				t.distance *= 4;
+
+		/* replaces the previous jobs, tiles are in state == LOADING */
+		jobQueue.setJobs(jobs, jobs.length);
 		mJobs.clear();
 
 		if (mCacheReduce < mCacheLimit / 2) {
@@ -349,21 +441,50 @@ public class TileManager {
 			}
 		}
 
+		limitCache(pos);
+		return true;
+	}
+
+	/**
+	 * Account sizes of uploaded tiles and remove tiles when the cache
+	 * exceeds its limit of tiles or memory.
+	 */
+	void limitCache(MapPosition pos) {
+		updateUploadedSizes();
+
 		/* limit cache items */
-		int remove = mTilesCount - (mCacheLimit - mCacheReduce);
+		int remove = 0;
+		long keepBytes = Long.MAX_VALUE;
+
+		if (mMemoryLimit > 0) {
+			if (mCacheBytes > mMemoryLimit)
+				keepBytes = mMemoryLimit - (mMemoryLimit >> 3);
+		} else {
+			remove = mTilesCount - (mCacheLimit - mCacheReduce);
+		}
 
-		if (remove > CACHE_THRESHOLD || mTilesToUpload > MAX_TILES_IN_QUEUE) {
+		if (remove > CACHE_THRESHOLD || keepBytes < mCacheBytes
+		        || mTilesToUpload > MAX_TILES_IN_QUEUE) {
 			synchronized (mTilelock) {
-				limitCache(pos, remove);
+				limitCache(pos, remove, keepBytes);
 			}
 		}
-		return true;
 	}
 
 	public void clearJobs() {
 		jobQueue.clear();
 	}
 
+	/**
+	 * Cancel loading of a tile. When the tile is still in the queue it is
+	 * removed, when it is currently loaded its state is set to CANCEL.
+	 * 
+	 * @return true if the tile was removed from the queue.
+	 */
+	public boolean cancelJob(MapTile tile) {
+		return jobQueue.cancel(tile);
+	}
+
 	public boolean hasTileJobs() {
 		return !jobQueue.isEmpty();
 	}
@@ -372,6 +493,15 @@ public class TileManager {
 		return jobQueue.poll();
 	}
 
+	/**
+	 * Get the next tile jobs without taking them.
+	 * 
+	 * @see JobQueue#peek(Tile[])
+	 */
+	public int peekTileJobs(Tile[] tiles) {
+		return jobQueue.peek(tiles);
+	}
+
 	/**
 	 * Retrive a TileSet of current tiles. Tiles remain locked in cache until
 	 * the set is unlocked by either passing it again to this function or to
@@ -409,9 +539,17 @@ public class TileManager {
 			tile.setState(LOADING);
 			mJobs.add(tile);
 			addToCache(tile);
+			mMetrics.cacheMisses.incrementAndGet();
 		} else if (!tile.isActive()) {
 			tile.setState(LOADING);
 			mJobs.add(tile);
+			mMetrics.cacheMisses.incrementAndGet();
+		} else if (tile.state(LOADING)) {
+			/* keep queued (or running) job */
+			mJobs.add(tile);
+		} else if (!tile.isLocked()) {
+			/* loaded tile was not visible before */
+			mMetrics.cacheHits.incrementAndGet();
 		}
 
 		if (mLoadParent && (zoomLevel > mMinZoom) && (mZoomTable == null)) {
@@ -427,6 +565,8 @@ public class TileManager {
 			} else if (!p.isActive()) {
 				p.setState(LOADING);
 				mJobs.add(p);
+			} else if (p.state(LOADING)) {
+				mJobs.add(p);
 			}
 		}
 		return tile;
@@ -452,6 +592,9 @@ public class TileManager {
 
 		mTiles[mTilesEnd++] = tile;
 		mTilesCount++;
+
+		tile.size = TILE_OVERHEAD;
+		mCacheBytes += TILE_OVERHEAD;
 	}
 
 	private boolean removeFromCache(MapTile t) {
@@ -470,12 +613,19 @@ public class TileManager {
 
 		t.clear();
 
+		mCacheBytes -= t.size;
+		t.size = 0;
+		t.uploadedSize = -1;
+
 		mIndex.removeItem(t);
 		mTilesCount--;
 		return true;
 	}
 
-	private void limitCache(MapPosition pos, int remove) {
+	/**
+	 * Remove 'remove' tiles and tiles until mCacheBytes <= keepBytes.
+	 */
+	private void limitCache(MapPosition pos, int remove, long keepBytes) {
 		MapTile[] tiles = mTiles;
 
 		/* count tiles that have new data */
@@ -504,7 +654,8 @@ public class TileManager {
 			}
 		}
 
-		if ((remove < CACHE_CLEAR_THRESHOLD) && (newTileCnt < MAX_TILES_IN_QUEUE))
+		if ((remove < CACHE_CLEAR_THRESHOLD) && (mCacheBytes <= keepBytes)
+		        && (newTileCnt < MAX_TILES_IN_QUEUE))
 			return;
 
 		updateDistances(tiles, mTilesEnd, pos);
@@ -515,7 +666,8 @@ public class TileManager {
 		mTilesEnd = mTilesCount;
 
 		/* start with farest away tile */
-		for (int i = mTilesCount - 1; i >= 0 && remove > 0; i--) {
+		for (int i = mTilesCount - 1; i >= 0
+		        && (remove > 0 || mCacheBytes > keepBytes); i--) {
 			MapTile t = tiles[i];
 
 			/* dont remove tile used by TileRenderer, or somewhere else
@@ -531,11 +683,20 @@ public class TileManager {
 				continue;
 			}
 
+			/* only the limit of tiles may remove visible tiles */
+			if (t.isVisible && remove <= 0)
+				continue;
+
 			/* cancel loading of tiles that should not even be cached */
 			if (t.state(LOADING)) {
-				t.setState(CANCEL);
 				if (dbg)
 					log.debug("{} canceled (d={})", t, t.distance);
+
+				/* remove when it was still queued */
+				if (jobQueue.cancel(t) && removeFromCache(t)) {
+					tiles[i] = null;
+					remove--;
+				}
 				continue;
 			}
 
@@ -598,7 +759,17 @@ public class TileManager {
 
 		@Override
 		public void run() {
+			jobQueue.completed(tile);
+
+			tile.uploadedSize = -1;
+
 			if (success && tile.state(LOADING)) {
+				/* account data size while it belongs to main thread. this
+				 * is updated after upload, see tileUploaded() */
+				int size = TILE_OVERHEAD + tile.countSize();
+				mCacheBytes += size - tile.size;
+				tile.size = size;
+
 				tile.setState(NEW_DATA);
 				events.fire(TILE_LOADED, tile);
 				mTilesToUpload++;
@@ -616,6 +787,12 @@ public class TileManager {
 			}
 
 			tile.clear();
+
+			/* keep accounting only for tiles in cache */
+			if (tile.size > TILE_OVERHEAD) {
+				mCacheBytes -= tile.size - TILE_OVERHEAD;
+				tile.size = TILE_OVERHEAD;
+			}
 		}
 	}
 
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.tile;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.oscim.utils.Metric;
+import org.oscim.utils.Stopwatch;
+
+/**
+ * Timings and counters of the stages of loading and uploading tiles of
+ * one TileLayer. All times are in nanoseconds. Updating the metrics does
+ * not allocate and only costs a few calls to System.nanoTime() per tile.
+ * <p>
+ * Per element timings (theme matching and bucket building) are only taken
+ * for every n-th tile, see {@link #setSampling(int)}. Decode time is the
+ * time of the data source query for those tiles without I/O and without
+ * the time spent in callbacks of the TileLoader (theme, build, hooks).
+ */
+public class TileMetrics {
+
+	/**
+	 * Implemented by ITileDataSources that can measure time spent on I/O
+	 * (network, file and cache reads).
+	 */
+	public interface IOTimed {
+		/**
+		 * @param timer
+		 *            accumulates I/O time of queries, owned by the calling
+		 *            TileLoader. null to stop measuring.
+		 */
+		void setIOTimer(Stopwatch timer);
+	}
+
+	/** Default for {@link #setSampling(int)} */
+	public static final int SAMPLING = 8;
+
+	/** Time tiles wait in JobQueue until taken by a TileLoader */
+	public final Metric queueWait = new Metric();
+
+	/** Total time of TileLoader.loadTile() */
+	public final Metric load = new Metric();
+
+	/** Time spent on I/O in the data source query */
+	public final Metric io = new Metric();
+
+	/** Time spent decoding in the data source query (sampled) */
+	public final Metric decode = new Metric();
+
+	/** Time spent on theme matching (sampled) */
+	public final Metric theme = new Metric();
+
+	/** Time spent adding elements to buckets (sampled) */
+	public final Metric build = new Metric();
+
+	/** Time spent in loader hooks, e.g. labels and extrusions (sampled) */
+	public final Metric hooks = new Metric();
+
+	/** Time to prepare buckets and compile buffers on the loader thread */
+	public final Metric prepare = new Metric();
+
+	/** Time of RenderBuckets.compile(), i.e. upload on GL thread */
+	public final Metric upload = new Metric();
+
+	/** Tiles that entered the view with data loaded */
+	public final AtomicLong cacheHits = new AtomicLong();
+
+	/** Tiles that entered the view and needed to be loaded */
+	public final AtomicLong cacheMisses = new AtomicLong();
+
+	private volatile int mSampling = SAMPLING;
+
+	/**
+	 * Take per element timings for every n-th tile, 0 to disable.
+	 */
+	public void setSampling(int n) {
+		mSampling = n;
+	}
+
+	public int getSampling() {
+		return mSampling;
+	}
+
+	/** @return ratio of tiles that were cached when they entered the view */
+	public double getCacheHitRate() {
+		long hits = cacheHits.get();
+		long all = hits + cacheMisses.get();
+		return all == 0 ? 0 : hits / (double) all;
+	}
+
+	public void reset() {
+		queueWait.reset();
+		load.reset();
+		io.reset();
+		decode.reset();
+		theme.reset();
+		build.reset();
+		hooks.reset();
+		prepare.reset();
+		upload.reset();
+		cacheHits.set(0);
+		cacheMisses.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return "queue: " + queueWait.toTimeString()
+		        + "\nload: " + load.toTimeString()
+		        + "\nio: " + io.toTimeString()
+		        + "\ndecode: " + decode.toTimeString()
+		        + "\ntheme: " + theme.toTimeString()
+		        + "\nbuild: " + build.toTimeString()
+		        + "\nhooks: " + hooks.toTimeString()
+		        + "\nprepare: " + prepare.toTimeString()
+		        + "\nupload: " + upload.toTimeString()
+		        + "\ncache hits: " + cacheHits.get() + "/" + (cacheHits.get() + cacheMisses.get());
+	}
+}
@@ -35,6 +35,10 @@ public abstract class TileRenderer extends LayerRenderer {
 
 	/** fade-in time */
 	protected static final float FADE_TIME = 500;
+	/**
+	 * max number of tiles to compile per frame. Tiles with buffers prepared
+	 * on loader thread are only uploaded and not counted.
+	 */
 	protected static final int MAX_TILE_LOAD = 8;
 
 	private TileManager mTileManager;
@@ -135,7 +139,7 @@ public abstract class TileRenderer extends LayerRenderer {
 	}
 
 	/** compile tile layer data and upload to VBOs */
-	private static int compileTileLayers(MapTile[] tiles, int tileCnt) {
+	private int compileTileLayers(MapTile[] tiles, int tileCnt) {
 		int uploadCnt = 0;
 
 		for (int i = 0; i < tileCnt; i++) {
@@ -180,7 +184,7 @@ public abstract class TileRenderer extends LayerRenderer {
 		return uploadCnt;
 	}
 
-	private static int uploadTileData(MapTile tile) {
+	private int uploadTileData(MapTile tile) {
 		tile.setState(READY);
 		RenderBuckets buckets = tile.getBuckets();
 
@@ -188,12 +192,21 @@ public abstract class TileRenderer extends LayerRenderer {
 		if (buckets == null)
 			return 0;
 
-		if (!buckets.compile(true)) {
+		/* only needs upload */
+		boolean prepared = buckets.isPrepared();
+
+		long start = System.nanoTime();
+		boolean ok = buckets.compile(true);
+		mTileManager.getMetrics().upload.addSince(start);
+
+		if (!ok) {
 			buckets.clear();
+			mTileManager.tileUploaded(tile);
 			return 0;
 		}
+		mTileManager.tileUploaded(tile);
 
-		return 1;
+		return prepared ? 0 : 1;
 	}
 
 	private final Object tilelock = new Object();
@@ -22,6 +22,7 @@ import org.oscim.core.Tag;
 import org.oscim.layers.Layer;
 import org.oscim.layers.tile.MapTile;
 import org.oscim.layers.tile.vector.VectorTileLayer;
+import org.oscim.layers.tile.vector.VectorTileLayer.TileLoaderCacheHook;
 import org.oscim.layers.tile.vector.VectorTileLayer.TileLoaderThemeHook;
 import org.oscim.map.Map;
 import org.oscim.renderer.OffscreenRenderer;
@@ -35,7 +36,8 @@ import org.oscim.utils.pool.Inlist;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class BuildingLayer extends Layer implements TileLoaderThemeHook {
+public class BuildingLayer extends Layer implements TileLoaderThemeHook,
+        TileLoaderCacheHook {
 	static final Logger log = LoggerFactory.getLogger(BuildingLayer.class);
 
 	private final static int MIN_ZOOM = 17;
@@ -46,6 +48,9 @@ public class BuildingLayer extends Layer implements TileLoaderThemeHook {
 
 	private static final Object BUILDING_DATA = BuildingLayer.class.getName();
 
+	private final int mZoomMin;
+	private final int mZoomMax;
+
 	public BuildingLayer(Map map, VectorTileLayer tileLayer) {
 		this(map, tileLayer, MIN_ZOOM, MAX_ZOOM);
 	}
@@ -54,6 +59,9 @@ public class BuildingLayer extends Layer implements TileLoaderThemeHook {
 
 		super(map);
 
+		mZoomMin = zoomMin;
+		mZoomMax = zoomMax;
+
 		tileLayer.addHook(this);
 
 		mRenderer = new BuildingRenderer(tileLayer.tileRenderer(),
@@ -101,9 +109,10 @@ public class BuildingLayer extends Layer implements TileLoaderThemeHook {
 		float groundScale = (float) MercatorProjection
 		    .groundResolution(lat, 1 << tile.zoomLevel);
 
-		ebs.buckets = Inlist.push(ebs.buckets,
-		                          new ExtrusionBucket(0, groundScale,
-		                                              extrusion.colors));
+		ExtrusionBucket b = new ExtrusionBucket(0, groundScale, extrusion.colors);
+		/* use chunks of the loader */
+		b.setChunkPool(buckets.getChunkPool());
+		ebs.buckets = Inlist.push(ebs.buckets, b);
 
 		ebs.buckets.add(element, height, minHeight);
 
@@ -119,6 +128,12 @@ public class BuildingLayer extends Layer implements TileLoaderThemeHook {
 		return eb;
 	}
 
+	/** TileLoaderCacheHook: extrusions are only drawn for these zoom-levels */
+	@Override
+	public boolean skipCached(MapTile tile) {
+		return tile.zoomLevel < mZoomMin || tile.zoomLevel > mZoomMax;
+	}
+
 	@Override
 	public void complete(MapTile tile, boolean success) {
 		if (success)
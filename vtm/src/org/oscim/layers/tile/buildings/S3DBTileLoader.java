@@ -11,6 +11,7 @@ import org.oscim.core.Tag;
 import org.oscim.layers.tile.MapTile;
 import org.oscim.layers.tile.TileLoader;
 import org.oscim.layers.tile.TileManager;
+import org.oscim.renderer.bucket.ChunkPool;
 import org.oscim.renderer.bucket.ExtrusionBucket;
 import org.oscim.tiling.ITileDataSource;
 import org.oscim.tiling.TileSource;
@@ -28,6 +29,9 @@ class S3DBTileLoader extends TileLoader {
 
 	private float mGroundScale;
 
+	/** vertex data chunks of buckets created by this loader */
+	private final ChunkPool mChunkPool = new ChunkPool();
+
 	static MapElement mTilePlane = new MapElement();
 
 	static {
@@ -80,8 +84,10 @@ class S3DBTileLoader extends TileLoader {
 		    .groundResolution(lat, 1 << mTile.zoomLevel);
 
 		mRoofs = new ExtrusionBucket(0, mGroundScale, Color.get(247, 249, 250));
+		mRoofs.setChunkPool(mChunkPool);
 
 		mParts = new ExtrusionBucket(0, mGroundScale, Color.get(255, 254, 252));
+		mParts.setChunkPool(mChunkPool);
 		//mRoofs = new ExtrusionLayer(0, mGroundScale, Color.get(207, 209, 210));
 		mRoofs.next = mParts;
 
@@ -136,6 +142,7 @@ class S3DBTileLoader extends TileLoader {
 			}
 		}
 		ExtrusionBucket l = new ExtrusionBucket(0, mGroundScale, c);
+		l.setChunkPool(mChunkPool);
 
 		l.next = mParts.next;
 		mParts.next = l;
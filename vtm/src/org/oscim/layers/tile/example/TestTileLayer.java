@@ -26,6 +26,7 @@ import org.oscim.layers.tile.TileLoader;
 import org.oscim.layers.tile.TileManager;
 import org.oscim.layers.tile.VectorTileRenderer;
 import org.oscim.map.Map;
+import org.oscim.renderer.bucket.ChunkPool;
 import org.oscim.renderer.bucket.LineBucket;
 import org.oscim.renderer.bucket.RenderBuckets;
 import org.oscim.theme.styles.LineStyle;
@@ -54,11 +55,13 @@ public class TestTileLayer extends TileLayer {
 
 		GeometryBuffer mGeom = new GeometryBuffer(128, 16);
 		LineStyle mLineStyle = new LineStyle(Color.BLUE, 2f, Cap.ROUND);
+		ChunkPool mChunkPool = new ChunkPool();
 
 		@Override
 		public boolean loadTile(MapTile tile) {
 			log.debug("load tile " + tile);
 			RenderBuckets buckets = new RenderBuckets();
+			buckets.setChunkPool(mChunkPool);
 			tile.data = buckets;
 
 			LineBucket lb = buckets.getLineBucket(0);
@@ -23,6 +23,8 @@ import org.oscim.layers.tile.TileLoader;
 import org.oscim.layers.tile.TileManager;
 import org.oscim.layers.tile.VectorTileRenderer;
 import org.oscim.map.Map;
+import org.oscim.renderer.bucket.BucketCache;
+import org.oscim.renderer.bucket.BucketCache.Namespace;
 import org.oscim.renderer.bucket.RenderBuckets;
 import org.oscim.theme.IRenderTheme;
 import org.oscim.theme.styles.RenderStyle;
@@ -92,6 +94,7 @@ public class VectorTileLayer extends TileLayer {
 		}
 
 		mTileSource = tileSource;
+		updateCacheNamespace();
 
 		for (TileLoader l : mTileLoader)
 			((VectorTileLoader) l).setDataSource(tileSource.getDataSource());
@@ -113,6 +116,7 @@ public class VectorTileLayer extends TileLayer {
 		mTileManager.clearJobs();
 
 		mTheme = theme;
+		updateCacheNamespace();
 		//	for (TileLoader l : mTileLoader)
 		//	((VectorTileLoader) l).setRenderTheme(theme);
 
@@ -127,6 +131,42 @@ public class VectorTileLayer extends TileLayer {
 		return mTheme;
 	}
 
+	private BucketCache mBucketCache;
+	private Namespace mCacheNamespace;
+
+	/**
+	 * Set {@link BucketCache} to reuse the buckets of previously loaded
+	 * tiles for current theme and TileSource. Null to disable.
+	 */
+	public void setBucketCache(BucketCache cache) {
+		pauseLoaders(true);
+		mTileManager.clearJobs();
+
+		mBucketCache = cache;
+		updateCacheNamespace();
+
+		resumeLoaders();
+	}
+
+	public BucketCache getBucketCache() {
+		return mBucketCache;
+	}
+
+	/**
+	 * @return namespace for current theme and TileSource in BucketCache,
+	 *         null when there is no cache or it cannot be used.
+	 */
+	Namespace getCacheNamespace() {
+		return mCacheNamespace;
+	}
+
+	private void updateCacheNamespace() {
+		if (mBucketCache == null || mTheme == null || mTileSource == null)
+			mCacheNamespace = null;
+		else
+			mCacheNamespace = mBucketCache.getNamespace(mTheme, mTileSource.getSourceId());
+	}
+
 	/**
 	 * Hook to intercept tile data processing. Called concurently by tile
 	 * loader threads, so dont keep tile specific state.
@@ -152,6 +192,22 @@ public class VectorTileLayer extends TileLayer {
 		public void complete(MapTile tile, boolean success);
 	}
 
+	/**
+	 * Implemented by loader hooks which can do without the tile data of
+	 * tiles restored from {@link BucketCache}. Tiles are only queried from
+	 * the TileSource when a hook needs the data, i.e. when it does not
+	 * implement this interface or skipCached() returns false.
+	 */
+	public interface TileLoaderCacheHook {
+		/**
+		 * Called on loader thread before querying a tile whose buckets
+		 * are restored from BucketCache. complete() is called in any case.
+		 *
+		 * @return true when the hook does not need the tile data.
+		 */
+		public boolean skipCached(MapTile tile);
+	}
+
 	private List<LList<TileLoaderProcessHook>> mLoaderProcessHooks =
 	        new List<LList<TileLoaderProcessHook>>();
 
@@ -172,6 +228,33 @@ public class VectorTileLayer extends TileLayer {
 		mTileSource.close();
 	}
 
+	/**
+	 * @return true when a loader hook needs the data of tile even though
+	 *         its buckets are restored from BucketCache, see
+	 *         {@link TileLoaderCacheHook}.
+	 */
+	public boolean needsTileData(MapTile tile) {
+		LList<TileLoaderThemeHook> th = mLoaderThemeHooks.head();
+		while (th != null) {
+			if (!skipCached(th.data, tile))
+				return true;
+			th = th.next;
+		}
+
+		LList<TileLoaderProcessHook> ph = mLoaderProcessHooks.head();
+		while (ph != null) {
+			if (!skipCached(ph.data, tile))
+				return true;
+			ph = ph.next;
+		}
+		return false;
+	}
+
+	private static boolean skipCached(Object hook, MapTile tile) {
+		return (hook instanceof TileLoaderCacheHook)
+		        && ((TileLoaderCacheHook) hook).skipCached(tile);
+	}
+
 	public void callThemeHooks(MapTile tile, RenderBuckets layers, MapElement element,
 	        RenderStyle style, int level) {
 
@@ -26,6 +26,10 @@ import org.oscim.core.TagSet;
 import org.oscim.core.Tile;
 import org.oscim.layers.tile.MapTile;
 import org.oscim.layers.tile.TileLoader;
+import org.oscim.layers.tile.TileMetrics;
+import org.oscim.renderer.bucket.BucketCache;
+import org.oscim.renderer.bucket.BucketCache.Namespace;
+import org.oscim.renderer.bucket.BucketPool;
 import org.oscim.renderer.bucket.LineBucket;
 import org.oscim.renderer.bucket.LineTexBucket;
 import org.oscim.renderer.bucket.MeshBucket;
@@ -41,6 +45,7 @@ import org.oscim.theme.styles.RenderStyle;
 import org.oscim.theme.styles.SymbolStyle;
 import org.oscim.theme.styles.TextStyle;
 import org.oscim.tiling.ITileDataSource;
+import org.oscim.utils.Stopwatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -75,6 +80,28 @@ public class VectorTileLoader extends TileLoader implements RenderStyle.Callback
 
 	private final VectorTileLayer mTileLayer;
 
+	/** recycles RenderBuckets of tiles loaded by this loader */
+	private final BucketPool mBucketPool = new BucketPool();
+
+	/** namespace of current tile in BucketCache, null when not cached */
+	private Namespace mCacheNamespace;
+
+	/** buckets of current tile were restored from BucketCache */
+	private boolean mBucketsCached;
+
+	/** I/O time of current query, when data source is IOTimed */
+	private final Stopwatch mIOTimer = new Stopwatch();
+	private boolean mIOTimed;
+
+	/** take per element timings for current tile */
+	private boolean mSample;
+	private int mSampleCount;
+	private long mThemeTime;
+	private long mBuildTime;
+	private long mHooksTime;
+	/** time spent in process() and completed() of current query */
+	private long mSinkTime;
+
 	public VectorTileLoader(VectorTileLayer tileLayer) {
 		super(tileLayer.getManager());
 		mTileLayer = tileLayer;
@@ -115,12 +142,30 @@ public class VectorTileLoader extends TileLoader implements RenderStyle.Callback
 
 		/* scale line width relative to latitude + PI * thumb */
 		mLineScale *= 0.4f + 0.6f * ((float) Math.sin(Math.abs(lat) * (Math.PI / 180)));
-		mBuckets = new RenderBuckets();
+		mBuckets = mBucketPool.getBuckets();
 		tile.data = mBuckets;
 
+		BucketCache cache = mTileLayer.getBucketCache();
+		mCacheNamespace = (cache == null) ? null : mTileLayer.getCacheNamespace();
+		mBucketsCached = (mCacheNamespace != null)
+		        && cache.get(tile, mCacheNamespace, mBuckets);
+
+		if (mBucketsCached && !mTileLayer.needsTileData(tile)) {
+			/* no hook needs the tile data */
+			completed(QueryResult.SUCCESS);
+			return true;
+		}
+
+		int sampling = mMetrics.getSampling();
+		mSample = sampling > 0 && (++mSampleCount % sampling) == 0;
+		mThemeTime = mBuildTime = mHooksTime = mSinkTime = 0;
+		mIOTimer.reset();
+		long start = System.nanoTime();
+
 		try {
 			/* query data source, which calls process() callback */
 			mTileDataSource.query(tile, this);
+			addQueryMetrics(System.nanoTime() - start);
 		} catch (NullPointerException e) {
 			log.debug("NPE {} {}", tile, e.getMessage());
 			e.printStackTrace();
@@ -132,15 +177,51 @@ public class VectorTileLoader extends TileLoader implements RenderStyle.Callback
 		return true;
 	}
 
+	private void addQueryMetrics(long queryTime) {
+		long io = mIOTimer.getElapsed();
+		if (mIOTimed)
+			mMetrics.io.add(io);
+
+		if (mSample) {
+			mSample = false;
+			mMetrics.theme.add(mThemeTime);
+			mMetrics.build.add(mBuildTime);
+			mMetrics.hooks.add(mHooksTime);
+			/* query time outside of I/O and callbacks of this sink */
+			mMetrics.decode.add(queryTime - io - mSinkTime);
+		}
+	}
+
 	@Override
 	public void completed(QueryResult result) {
 		boolean ok = (result == QueryResult.SUCCESS);
 
+		long start = System.nanoTime();
 		mTileLayer.callHooksComplete(mTile, ok);
+		long hooked = System.nanoTime();
+		mHooksTime += hooked - start;
+
+		if (mBucketsCached) {
+			/* restored buckets are prepared for upload */
+			mBucketsCached = false;
+		} else {
+			/* finish buckets- tessellate and cleanup on worker-thread */
+			mBuckets.prepare();
+
+			/* compile vertex data, GL-Thread only needs to upload it */
+			boolean prepared = ok && mBuckets.prepareBuffers(true);
+
+			mMetrics.prepare.add(System.nanoTime() - hooked);
+
+			if (prepared && mCacheNamespace != null
+			        && !isCanceled() && mTile.state(LOADING)) {
+				mTileLayer.getBucketCache().put(mTile, mCacheNamespace, mBuckets);
+			}
+		}
+		mCacheNamespace = null;
 
-		/* finish buckets- tessellate and cleanup on worker-thread */
-		mBuckets.prepare();
 		clearState();
+		mSinkTime += System.nanoTime() - start;
 
 		super.completed(result);
 	}
@@ -158,6 +239,10 @@ public class VectorTileLoader extends TileLoader implements RenderStyle.Callback
 	public void setDataSource(ITileDataSource dataSource) {
 		dispose();
 		mTileDataSource = dataSource;
+
+		mIOTimed = dataSource instanceof TileMetrics.IOTimed;
+		if (mIOTimed)
+			((TileMetrics.IOTimed) dataSource).setIOTimer(mIOTimer);
 	}
 
 	static class TagReplacement {
@@ -184,7 +269,23 @@ public class VectorTileLoader extends TileLoader implements RenderStyle.Callback
 		if (isCanceled() || !mTile.state(LOADING))
 			return;
 
-		if (mTileLayer.callProcessHooks(mTile, mBuckets, element))
+		if (!mSample) {
+			processElement(element, false);
+			return;
+		}
+		long start = System.nanoTime();
+		processElement(element, true);
+		mSinkTime += System.nanoTime() - start;
+	}
+
+	private void processElement(MapElement element, boolean sample) {
+		long start = sample ? System.nanoTime() : 0;
+
+		boolean done = mTileLayer.callProcessHooks(mTile, mBuckets, element);
+
+		long hooked = sample ? System.nanoTime() : 0;
+		mHooksTime += hooked - start;
+		if (done)
 			return;
 
 		TagSet tags = filterTags(element.tags);
@@ -193,14 +294,23 @@ public class VectorTileLoader extends TileLoader implements RenderStyle.Callback
 
 		mElement = element;
 
-		/* get and apply render instructions */
+		RenderStyle[] styles = renderTheme.matchElement(element.type, tags, mTile.zoomLevel);
+
+		long matched = sample ? System.nanoTime() : 0;
+
+		/* apply render instructions */
 		if (element.type == GeometryType.POINT) {
-			renderNode(renderTheme.matchElement(element.type, tags, mTile.zoomLevel));
+			renderNode(styles);
 		} else {
 			mCurBucket = getValidLayer(element.layer) * renderTheme.getLevels();
-			renderWay(renderTheme.matchElement(element.type, tags, mTile.zoomLevel));
+			renderWay(styles);
 		}
 		clearState();
+
+		if (sample) {
+			mThemeTime += matched - hooked;
+			mBuildTime += System.nanoTime() - matched;
+		}
 	}
 
 	protected void renderWay(RenderStyle[] style) {
@@ -227,6 +337,9 @@ public class VectorTileLoader extends TileLoader implements RenderStyle.Callback
 	/*** RenderThemeCallback ***/
 	@Override
 	public void renderWay(LineStyle line, int level) {
+		if (mBucketsCached)
+			return;
+
 		int nLevel = mCurBucket + level;
 
 		if (line.stipple == 0) {
@@ -278,7 +391,7 @@ public class VectorTileLoader extends TileLoader implements RenderStyle.Callback
 	@Override
 	public void renderArea(AreaStyle area, int level) {
 		/* dont add faded out polygon layers */
-		if (mTile.zoomLevel < area.fadeScale)
+		if (mTile.zoomLevel < area.fadeScale || mBucketsCached)
 			return;
 
 		int nLevel = mCurBucket + level;
@@ -34,6 +34,14 @@ final class Label extends TextItem {
 	public int active;
 	public OBB2D bbox;
 
+	/** bounds, insertion order and last query in LabelGrid */
+	float minX, minY, maxX, maxY;
+	int seq;
+	int query;
+
+	/** removed from LabelGrid, to be released */
+	boolean removed;
+
 	public Label clone(TextItem ti) {
 		this.string = ti.string;
 		this.text = ti.text;
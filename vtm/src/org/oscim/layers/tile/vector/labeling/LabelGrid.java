@@ -0,0 +1,178 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.tile.vector.labeling;
+
+/**
+ * Uniform grid of placed labels in screen coordinates relative to the map
+ * center. Used to find labels that may collide with a new label without
+ * testing all labels.
+ * <p>
+ * Labels are added with their bounds (Label.minX, ...) set. Coordinates
+ * outside of the grid extent are clamped to the border cells.
+ */
+final class LabelGrid {
+
+	final static int CELL_SIZE = 128;
+
+	private Label[][] mCells = new Label[0][];
+	private int[] mCellCnt = new int[0];
+
+	private int mCols;
+	private int mRows;
+	private float mOrigin;
+
+	/** incremented for each added label to keep the insertion order */
+	private int mSeq;
+
+	/** incremented for each query to not return labels twice */
+	private int mQuery;
+
+	private Label[] mResult = new Label[64];
+
+	/**
+	 * Clear the grid and set its extent to [-radius, radius] in both
+	 * dimensions.
+	 */
+	void init(float radius) {
+		int n = (int) Math.ceil(radius * 2 / CELL_SIZE);
+		if (n < 1)
+			n = 1;
+
+		if (n * n > mCells.length) {
+			mCells = new Label[n * n][];
+			mCellCnt = new int[n * n];
+		} else {
+			clear();
+		}
+		mCols = mRows = n;
+		mOrigin = -radius;
+	}
+
+	void clear() {
+		for (int i = 0, n = mCols * mRows; i < n; i++) {
+			Label[] c = mCells[i];
+			for (int j = 0, m = mCellCnt[i]; j < m; j++)
+				c[j] = null;
+			mCellCnt[i] = 0;
+		}
+	}
+
+	private int col(float x) {
+		int c = (int) ((x - mOrigin) / CELL_SIZE);
+		if (c < 0)
+			return 0;
+		if (c >= mCols)
+			return mCols - 1;
+		return c;
+	}
+
+	private int row(float y) {
+		int r = (int) ((y - mOrigin) / CELL_SIZE);
+		if (r < 0)
+			return 0;
+		if (r >= mRows)
+			return mRows - 1;
+		return r;
+	}
+
+	void add(Label l) {
+		l.seq = ++mSeq;
+		l.removed = false;
+
+		for (int y = row(l.minY), y2 = row(l.maxY); y <= y2; y++) {
+			for (int x = col(l.minX), x2 = col(l.maxX); x <= x2; x++) {
+				int i = y * mCols + x;
+				Label[] c = mCells[i];
+				int cnt = mCellCnt[i];
+				if (c == null) {
+					c = mCells[i] = new Label[8];
+				} else if (cnt == c.length) {
+					Label[] tmp = new Label[cnt * 2];
+					System.arraycopy(c, 0, tmp, 0, cnt);
+					c = mCells[i] = tmp;
+				}
+				c[cnt] = l;
+				mCellCnt[i] = cnt + 1;
+			}
+		}
+	}
+
+	void remove(Label l) {
+		for (int y = row(l.minY), y2 = row(l.maxY); y <= y2; y++) {
+			for (int x = col(l.minX), x2 = col(l.maxX); x <= x2; x++) {
+				int i = y * mCols + x;
+				Label[] c = mCells[i];
+				int cnt = mCellCnt[i];
+				for (int j = 0; j < cnt; j++) {
+					if (c[j] != l)
+						continue;
+
+					c[j] = c[cnt - 1];
+					c[cnt - 1] = null;
+					mCellCnt[i] = cnt - 1;
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Find labels with bounds intersecting the box. Results are returned
+	 * in reverse insertion order, i.e. the order of LabelPlacement.mLabels.
+	 * Get them with {@link #get(int)} until the next query.
+	 *
+	 * @return number of labels found
+	 */
+	int query(float minX, float minY, float maxX, float maxY) {
+		int query = ++mQuery;
+		int cnt = 0;
+
+		for (int y = row(minY), y2 = row(maxY); y <= y2; y++) {
+			for (int x = col(minX), x2 = col(maxX); x <= x2; x++) {
+				int i = y * mCols + x;
+				Label[] c = mCells[i];
+				for (int j = 0, m = mCellCnt[i]; j < m; j++) {
+					Label l = c[j];
+					if (l.query == query)
+						continue;
+
+					l.query = query;
+
+					if (l.maxX < minX || l.minX > maxX
+					        || l.maxY < minY || l.minY > maxY)
+						continue;
+
+					if (cnt == mResult.length) {
+						Label[] tmp = new Label[cnt * 2];
+						System.arraycopy(mResult, 0, tmp, 0, cnt);
+						mResult = tmp;
+					}
+					/* insertion sort by descending seq */
+					int k = cnt++;
+					for (; k > 0 && mResult[k - 1].seq < l.seq; k--)
+						mResult[k] = mResult[k - 1];
+					mResult[k] = l;
+				}
+			}
+		}
+		return cnt;
+	}
+
+	Label get(int i) {
+		return mResult[i];
+	}
+}
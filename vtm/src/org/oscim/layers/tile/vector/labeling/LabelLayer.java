@@ -23,6 +23,8 @@ import org.oscim.layers.tile.MapTile;
 import org.oscim.layers.tile.TileManager;
 import org.oscim.layers.tile.vector.VectorTileLayer;
 import org.oscim.map.Map;
+import org.oscim.renderer.bucket.ChunkPool;
+import org.oscim.renderer.bucket.LabelCache;
 import org.oscim.utils.async.SimpleWorker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,6 +40,12 @@ public class LabelLayer extends Layer implements Map.UpdateListener, TileManager
 	private final LabelPlacement mLabelPlacer;
 	private final Worker mWorker;
 
+	/** rasterized labels shared by the LabelTasks */
+	private final LabelCache mLabelCache = new LabelCache();
+
+	/** vertex data chunks of the LabelTask buckets */
+	private final ChunkPool mChunkPool = new ChunkPool();
+
 	public LabelLayer(Map map, VectorTileLayer l) {
 		super(map);
 		l.getManager().events.bind(this);
@@ -51,7 +59,9 @@ public class LabelLayer extends Layer implements Map.UpdateListener, TileManager
 	class Worker extends SimpleWorker<LabelTask> {
 
 		public Worker(Map map) {
-			super(map, 50, new LabelTask(), new LabelTask());
+			super(map, 50,
+			      new LabelTask(mLabelCache, mChunkPool),
+			      new LabelTask(mLabelCache, mChunkPool));
 		}
 
 		@Override
@@ -72,6 +82,9 @@ public class LabelLayer extends Layer implements Map.UpdateListener, TileManager
 		@Override
 		public void finish() {
 			mLabelPlacer.cleanup();
+			/* no LabelTask is prepared now. release the rasterized
+			 * labels, they may belong to a previous theme */
+			mLabelCache.clear();
 		}
 
 		public synchronized boolean isRunning() {
@@ -89,6 +102,7 @@ public class LabelLayer extends Layer implements Map.UpdateListener, TileManager
 
 	@Override
 	public void onDetach() {
+		/* label cache is cleared by Worker.finish() */
 		mWorker.cancel(true);
 		super.onDetach();
 	}
@@ -39,6 +39,9 @@ public class LabelPlacement {
 	/** list of current labels */
 	private Label mLabels;
 
+	/** index of current labels to check for collisions */
+	private final LabelGrid mGrid = new LabelGrid();
+
 	private float mSquareRadius;
 
 	/**
@@ -52,26 +55,74 @@ public class LabelPlacement {
 		mTileRenderer = tileRenderer;
 	}
 
-	/** remove Label l from mLabels and return l.next */
-	private Label removeLabel(Label l) {
-		Label ret = (Label) l.next;
-		mLabels = (Label) mPool.release(mLabels, l);
-		return ret;
+	/**
+	 * Remove Label l from index. It is removed from mLabels and released
+	 * by releaseRemoved().
+	 */
+	private void removeLabel(Label l) {
+		mGrid.remove(l);
+		l.removed = true;
+	}
+
+	private void releaseRemoved() {
+		Label prev = null;
+		for (Label l = mLabels; l != null;) {
+			if (!l.removed) {
+				prev = l;
+				l = (Label) l.next;
+				continue;
+			}
+			if (prev == null)
+				mLabels = (Label) l.next;
+			else
+				prev.next = l.next;
+
+			l = mPool.releaseAndGetNext(l);
+		}
 	}
 
 	public void addLabel(Label l) {
 		l.next = mLabels;
 		mLabels = l;
+		mGrid.add(l);
+	}
+
+	/** set bounds of l to cover its bbox and for way labels its segment */
+	private static void setBounds(Label l) {
+		float[] v = l.bbox.vec;
+		float minX = v[0], maxX = v[0];
+		float minY = v[1], maxY = v[1];
+		for (int i = 2; i < 8; i += 2) {
+			minX = Math.min(minX, v[i]);
+			maxX = Math.max(maxX, v[i]);
+			minY = Math.min(minY, v[i + 1]);
+			maxY = Math.max(maxY, v[i + 1]);
+		}
+		if (!l.text.caption) {
+			minX = Math.min(minX, Math.min(l.x1, l.x2));
+			maxX = Math.max(maxX, Math.max(l.x1, l.x2));
+			minY = Math.min(minY, Math.min(l.y1, l.y2));
+			maxY = Math.max(maxY, Math.max(l.y1, l.y2));
+		}
+		l.minX = minX;
+		l.minY = minY;
+		l.maxX = maxX;
+		l.maxY = maxY;
 	}
 
 	private byte checkOverlap(Label l) {
+		setBounds(l);
+
+		/* candidates for bboxOverlaps(l, o, 100) and bbox overlaps */
+		int cnt = mGrid.query(l.minX - 100, l.minY - 100,
+		                      l.maxX + 100, l.maxY + 100);
+
+		for (int i = 0; i < cnt; i++) {
+			Label o = mGrid.get(i);
 
-		for (Label o = mLabels; o != null;) {
 			//check bounding box
-			if (!Label.bboxOverlaps(l, o, 100)) {
-				o = (Label) o.next;
+			if (!Label.bboxOverlaps(l, o, 100))
 				continue;
-			}
 
 			if (Label.shareText(l, o)) {
 				// keep the label that was active earlier
@@ -80,7 +131,7 @@ public class LabelPlacement {
 
 				// keep the label with longer segment
 				if (o.length < l.length) {
-					o = removeLabel(o);
+					removeLabel(o);
 					continue;
 				}
 				// keep other
@@ -94,13 +145,12 @@ public class LabelPlacement {
 				        && (o.text.priority > l.text.priority
 				        || o.length < l.length)) {
 
-					o = removeLabel(o);
+					removeLabel(o);
 					continue;
 				}
 				// keep other
 				return 1;
 			}
-			o = (Label) o.next;
 		}
 		return 0;
 	}
@@ -246,15 +296,18 @@ public class LabelPlacement {
 			                     l.text.fontHeight + MIN_CAPTION_DIST,
 			                     l.text.dy);
 
-			for (Label o = mLabels; o != null;) {
+			setBounds(l);
+			int cnt = mGrid.query(l.minX, l.minY, l.maxX, l.maxY);
+
+			for (int i = 0; i < cnt; i++) {
+				Label o = mGrid.get(i);
 				if (l.bbox.overlaps(o.bbox)) {
 					if (l.text.priority < o.text.priority) {
-						o = removeLabel(o);
+						removeLabel(o);
 						continue;
 					}
 					continue O;
 				}
-				o = (Label) o.next;
 			}
 
 			addLabel(l);
@@ -315,6 +368,7 @@ public class LabelPlacement {
 
 		/* new labels */
 		mLabels = null;
+		mGrid.init((float) Math.sqrt(mSquareRadius));
 		Label l = null;
 
 		/* add currently active labels first */
@@ -400,6 +454,8 @@ public class LabelPlacement {
 			l = addNodeLabels(t, l, dx, dy, scale, cos, sin);
 		}
 
+		releaseRemoved();
+
 		for (Label ti = mLabels; ti != null; ti = (Label) ti.next) {
 			/* add caption symbols */
 			if (ti.text.caption) {
@@ -475,6 +531,7 @@ public class LabelPlacement {
 
 	public void cleanup() {
 		mLabels = (Label) mPool.releaseAll(mLabels);
+		mGrid.clear();
 		mTileSet.releaseTiles();
 	}
 
@@ -1,6 +1,8 @@
 package org.oscim.layers.tile.vector.labeling;
 
 import org.oscim.core.MapPosition;
+import org.oscim.renderer.bucket.ChunkPool;
+import org.oscim.renderer.bucket.LabelCache;
 import org.oscim.renderer.bucket.SymbolBucket;
 import org.oscim.renderer.bucket.TextBucket;
 import org.oscim.renderer.bucket.TextureBucket;
@@ -13,11 +15,14 @@ final class LabelTask {
 
 	final MapPosition pos;
 
-	LabelTask() {
+	LabelTask(LabelCache cache, ChunkPool chunkPool) {
 		pos = new MapPosition();
 
 		symbolLayer = new SymbolBucket();
+		symbolLayer.setChunkPool(chunkPool);
 		textLayer = new TextBucket();
+		textLayer.setChunkPool(chunkPool);
+		textLayer.setCache(cache);
 
 		layers = symbolLayer;
 		symbolLayer.next = textLayer;
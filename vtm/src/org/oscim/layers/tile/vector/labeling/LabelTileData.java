@@ -3,14 +3,29 @@ package org.oscim.layers.tile.vector.labeling;
 import org.oscim.layers.tile.MapTile.TileData;
 import org.oscim.renderer.bucket.SymbolItem;
 import org.oscim.renderer.bucket.TextItem;
+import org.oscim.utils.pool.SyncPool;
 
 public class LabelTileData extends TileData {
 	public final List<SymbolItem> symbols = new List<SymbolItem>();
 	public final List<TextItem> labels = new List<TextItem>();
 
+	/** pool to return this to on dispose, or null */
+	private final SyncPool<LabelTileData> mPool;
+
+	public LabelTileData() {
+		mPool = null;
+	}
+
+	LabelTileData(SyncPool<LabelTileData> pool) {
+		mPool = pool;
+	}
+
 	@Override
 	protected void dispose() {
 		TextItem.pool.releaseAll(labels.clear());
 		SymbolItem.pool.releaseAll(symbols.clear());
+
+		if (mPool != null)
+			mPool.release(this);
 	}
 }
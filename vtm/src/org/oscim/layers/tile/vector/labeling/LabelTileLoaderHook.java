@@ -15,16 +15,25 @@ import org.oscim.renderer.bucket.TextItem;
 import org.oscim.theme.styles.RenderStyle;
 import org.oscim.theme.styles.SymbolStyle;
 import org.oscim.theme.styles.TextStyle;
+import org.oscim.utils.pool.SyncPool;
 
 public class LabelTileLoaderHook implements TileLoaderThemeHook {
 
 	//public final static LabelTileData EMPTY = new LabelTileData();
 
+	/** recycles LabelTileData of cleared tiles */
+	private final SyncPool<LabelTileData> mPool = new SyncPool<LabelTileData>(64) {
+		@Override
+		protected LabelTileData createItem() {
+			return new LabelTileData(this);
+		}
+	};
+
 	private LabelTileData get(MapTile tile) {
 		// FIXME could be 'this'..
 		LabelTileData ld = (LabelTileData) tile.getData(LABEL_DATA);
 		if (ld == null) {
-			ld = new LabelTileData();
+			ld = mPool.get();
 			tile.addData(LABEL_DATA, ld);
 		}
 		return ld;
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.vector;
+
+import static org.oscim.tiling.ITileDataSink.QueryResult.FAILED;
+import static org.oscim.tiling.ITileDataSink.QueryResult.SUCCESS;
+
+import org.oscim.core.BoundingBox;
+import org.oscim.core.GeometryBuffer;
+import org.oscim.core.MercatorProjection;
+import org.oscim.core.Tile;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.layers.tile.TileLayer;
+import org.oscim.layers.tile.TileLoader;
+import org.oscim.layers.tile.TileManager;
+import org.oscim.layers.tile.VectorTileRenderer;
+import org.oscim.map.Map;
+import org.oscim.renderer.bucket.BucketPool;
+import org.oscim.renderer.bucket.RenderBuckets;
+import org.oscim.utils.geom.TileClipper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Variant of {@link AbstractVectorLayer} for large datasets: features are
+ * added per tile by TileLoaders, and the TileManager keeps the tiles for
+ * reuse. Moving the map only processes features of tiles that are not
+ * cached.
+ * <p>
+ * {@link #processFeatures(Task)} is called concurrently by the loaders,
+ * keep per-tile state in the Task. Long running implementations should
+ * return when {@link Task#isCanceled()}.
+ */
+public abstract class TiledVectorLayer extends TileLayer {
+
+	public static final Logger log = LoggerFactory.getLogger(TiledVectorLayer.class);
+
+	private final static int CACHE_LIMIT = 200;
+
+	/** clip region extends tile by this number of pixels */
+	protected final static int CLIP_MARGIN = 8;
+
+	/**
+	 * Per loader state to add features of one tile.
+	 */
+	public static class Task {
+		/** tile being processed */
+		public MapTile tile;
+
+		/** buckets of tile */
+		public RenderBuckets buckets;
+
+		/** bounding box of tile, including CLIP_MARGIN */
+		public BoundingBox bbox;
+
+		public final GeometryBuffer geom = new GeometryBuffer(128, 4);
+
+		public final TileClipper clipper =
+		        new TileClipper(-CLIP_MARGIN, -CLIP_MARGIN,
+		                        Tile.SIZE + CLIP_MARGIN,
+		                        Tile.SIZE + CLIP_MARGIN);
+
+		/** scale from projected coordinates to tile pixel */
+		public double scale;
+
+		private final BucketPool pool = new BucketPool();
+
+		/** set by the loader to abort loading the current tile */
+		volatile boolean canceled;
+
+		/**
+		 * @return true when the tile is not needed anymore, e.g. because
+		 *         the loaders were paused or the layer was removed.
+		 */
+		public boolean isCanceled() {
+			return canceled;
+		}
+
+		/** @return x in tile pixel from projected coordinate */
+		public float toTileX(double x) {
+			return (float) ((x - tile.x) * scale);
+		}
+
+		/** @return y in tile pixel from projected coordinate */
+		public float toTileY(double y) {
+			return (float) ((y - tile.y) * scale);
+		}
+
+		/** @return x in tile pixel from longitude */
+		public float longitudeToTileX(double longitude) {
+			return toTileX(MercatorProjection.longitudeToX(longitude));
+		}
+
+		/** @return y in tile pixel from latitude */
+		public float latitudeToTileY(double latitude) {
+			return toTileY(MercatorProjection.latitudeToY(latitude));
+		}
+
+		void set(MapTile tile) {
+			this.tile = tile;
+			canceled = false;
+			scale = Tile.SIZE * (double) (1 << tile.zoomLevel);
+
+			double margin = CLIP_MARGIN / scale;
+			double size = 1.0 / (1 << tile.zoomLevel);
+
+			double minLon = MercatorProjection.toLongitude(Math.max(0, tile.x - margin));
+			double maxLon = MercatorProjection.toLongitude(Math.min(1, tile.x + size + margin));
+			double minLat = MercatorProjection.toLatitude(Math.min(1, tile.y + size + margin));
+			double maxLat = MercatorProjection.toLatitude(Math.max(0, tile.y - margin));
+
+			bbox = new BoundingBox(minLat, minLon, maxLat, maxLon);
+			buckets = pool.getBuckets();
+			tile.data = buckets;
+		}
+
+		void clear() {
+			tile = null;
+			buckets = null;
+			bbox = null;
+			geom.clear();
+		}
+	}
+
+	/**
+	 * @param minZoom
+	 *            tiles are not loaded below minZoom
+	 * @param maxZoom
+	 *            tiles of maxZoom are scaled for higher zoom-levels
+	 */
+	public TiledVectorLayer(Map map, int minZoom, int maxZoom) {
+		this(map, minZoom, maxZoom, CACHE_LIMIT);
+	}
+
+	public TiledVectorLayer(Map map, int minZoom, int maxZoom, int cacheLimit) {
+		this(map, new TileManager(map, cacheLimit), new VectorTileRenderer());
+
+		mTileManager.setZoomLevel(minZoom, maxZoom);
+	}
+
+	public TiledVectorLayer(Map map, TileManager tileManager,
+	        VectorTileRenderer renderer) {
+		super(map, tileManager, renderer);
+
+		initLoader(getNumLoaders());
+	}
+
+	/**
+	 * Add the features within t.bbox to t.buckets, in pixel coordinates
+	 * relative to t.tile. Called on loader threads.
+	 *
+	 * @return false when loading failed
+	 */
+	protected abstract boolean processFeatures(Task t);
+
+	/**
+	 * Reload all tiles, e.g. after features changed. Call on main thread.
+	 */
+	public void update() {
+		pauseLoaders(true);
+		mTileManager.clearJobs();
+
+		/* sync with TileRenderer */
+		synchronized (mRenderer) {
+			tileRenderer().clearTiles();
+			mTileManager.init();
+		}
+		mTileManager.update(mMap.getMapPosition());
+
+		resumeLoaders();
+		mMap.render();
+	}
+
+	@Override
+	protected TileLoader createLoader() {
+		return new Loader();
+	}
+
+	class Loader extends TileLoader {
+		private final Task mTask = new Task();
+
+		Loader() {
+			super(mTileManager);
+		}
+
+		@Override
+		protected boolean loadTile(MapTile tile) {
+			boolean ok = process(tile);
+			completed(ok ? SUCCESS : FAILED);
+			return ok;
+		}
+
+		/** add features to tile.data, without completing the job */
+		boolean process(MapTile tile) {
+			Task t = mTask;
+			t.set(tile);
+
+			boolean ok;
+			try {
+				ok = processFeatures(t);
+				if (!ok && !t.canceled)
+					log.warn("{} processing features failed", tile);
+			} catch (Exception e) {
+				log.error("{} processing features failed", tile, e);
+				ok = false;
+			}
+
+			if (t.canceled)
+				ok = false;
+
+			/* tessellate and compile vertex data on loader thread */
+			if (ok) {
+				t.buckets.prepare();
+				t.buckets.prepareBuffers(true);
+			}
+
+			t.clear();
+			return ok;
+		}
+
+		/** Abort the current tile, the loader is not used anymore */
+		@Override
+		public void dispose() {
+			mTask.canceled = true;
+		}
+
+		/** Abort the current tile */
+		@Override
+		public void cancel() {
+			mTask.canceled = true;
+		}
+	}
+}
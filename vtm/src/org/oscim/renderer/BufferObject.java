@@ -74,6 +74,11 @@ public final class BufferObject extends Inlist<BufferObject> {
 		}
 	}
 
+	/** @return size of buffer data in bytes */
+	public int getSize() {
+		return size;
+	}
+
 	public void bind() {
 		GLState.bindBuffer(target, id);
 	}
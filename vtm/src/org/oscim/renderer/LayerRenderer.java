@@ -16,6 +16,8 @@
  */
 package org.oscim.renderer;
 
+import org.oscim.utils.Metric;
+
 public abstract class LayerRenderer {
 
 	/** flag to set when layer is ready for rendering */
@@ -24,6 +26,9 @@ public abstract class LayerRenderer {
 	/** set by MapRenderer */
 	boolean isInitialized;
 
+	/** time spent in update() and render() per frame, set by MapRenderer */
+	final Metric renderTime = new Metric();
+
 	/**
 	 * Set 'ready for render' state when layer data is ready for rendering.
 	 * 
@@ -37,6 +42,14 @@ public abstract class LayerRenderer {
 		return isReady;
 	}
 
+	/**
+	 * @return time spent per frame in update() and render() of this
+	 *         renderer.
+	 */
+	public Metric getRenderTime() {
+		return renderTime;
+	}
+
 	/**
 	 * 0. Called on GL Thread before first update().
 	 */
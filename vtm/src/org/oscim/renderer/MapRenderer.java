@@ -75,6 +75,7 @@ public class MapRenderer {
 		draw();
 
 		mBufferPool.releaseBuffers();
+		SharedBufferPool.releaseBuffers();
 		TextureItem.disposeTextures();
 	}
 
@@ -111,6 +112,7 @@ public class MapRenderer {
 
 		/* update layers */
 		LayerRenderer[] layers = mMap.layers().getLayerRenderer();
+		long time = System.nanoTime();
 
 		for (int i = 0, n = layers.length; i < n; i++) {
 			LayerRenderer renderer = layers[i];
@@ -125,6 +127,8 @@ public class MapRenderer {
 			if (renderer.isReady)
 				renderer.render(mViewport);
 
+			time = renderer.renderTime.addSince(time);
+
 			if (GLAdapter.debug)
 				GLUtils.checkGlError(renderer.getClass().getName());
 		}
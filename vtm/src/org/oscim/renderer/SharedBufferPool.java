@@ -0,0 +1,113 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.renderer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+
+/**
+ * Pool of native ShortBuffers that can be used from any thread, e.g.
+ * to prepare vertex data on a loader thread for upload on GL-Thread.
+ * <p>
+ * Buffers that were passed to glBufferData must be released with
+ * {@link #releaseUploaded(ShortBuffer)}: they are reused only after
+ * the current frame, see {@link NativeBufferPool}.
+ */
+public final class SharedBufferPool {
+
+	/** 32kb min size */
+	private final static int MIN_SHORTS = 1 << 14;
+
+	/** do not keep more than this number of buffers */
+	private final static int MAX_BUFFERS = 32;
+
+	/** do not keep buffers larger than 1MB */
+	private final static int MAX_SHORTS = 1 << 19;
+
+	private final static ArrayList<ShortBuffer> mFree = new ArrayList<ShortBuffer>();
+	private final static ArrayList<ShortBuffer> mUploaded = new ArrayList<ShortBuffer>();
+
+	private SharedBufferPool() {
+	}
+
+	/**
+	 * Get a cleared native ShortBuffer with capacity of at least 'size'
+	 * shorts.
+	 */
+	public static ShortBuffer get(int size) {
+		synchronized (mFree) {
+			ShortBuffer best = null;
+			int bestIdx = -1;
+			for (int i = 0, n = mFree.size(); i < n; i++) {
+				ShortBuffer b = mFree.get(i);
+				if (b.capacity() < size)
+					continue;
+				if (best == null || b.capacity() < best.capacity()) {
+					best = b;
+					bestIdx = i;
+				}
+			}
+			if (best != null) {
+				mFree.remove(bestIdx);
+				best.clear();
+				return best;
+			}
+		}
+
+		if (size < MIN_SHORTS)
+			size = MIN_SHORTS;
+
+		return ByteBuffer
+		    .allocateDirect(size * 2)
+		    .order(ByteOrder.nativeOrder())
+		    .asShortBuffer();
+	}
+
+	/**
+	 * Return a buffer that was not passed to GL.
+	 */
+	public static void release(ShortBuffer buffer) {
+		if (buffer == null || buffer.capacity() > MAX_SHORTS)
+			return;
+
+		synchronized (mFree) {
+			if (mFree.size() < MAX_BUFFERS)
+				mFree.add(buffer);
+		}
+	}
+
+	/**
+	 * Only use on GL Thread! Return a buffer that was passed to GL,
+	 * it is reused after the current frame.
+	 */
+	public static void releaseUploaded(ShortBuffer buffer) {
+		if (buffer != null)
+			mUploaded.add(buffer);
+	}
+
+	/**
+	 * Only use on GL Thread! Called by MapRenderer after each frame.
+	 */
+	static void releaseBuffers() {
+		for (int i = 0, n = mUploaded.size(); i < n; i++)
+			release(mUploaded.get(i));
+
+		mUploaded.clear();
+	}
+}
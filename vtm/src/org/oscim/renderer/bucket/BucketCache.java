@@ -0,0 +1,736 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.renderer.bucket;
+
+import static org.oscim.renderer.bucket.RenderBucket.HAIRLINE;
+import static org.oscim.renderer.bucket.RenderBucket.LINE;
+import static org.oscim.renderer.bucket.RenderBucket.MESH;
+import static org.oscim.renderer.bucket.RenderBucket.POLYGON;
+import static org.oscim.renderer.bucket.RenderBucket.TEXLINE;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+import org.oscim.core.Tile;
+import org.oscim.renderer.MapRenderer;
+import org.oscim.renderer.SharedBufferPool;
+import org.oscim.theme.IRenderTheme;
+import org.oscim.theme.RenderTheme;
+import org.oscim.theme.rule.Rule;
+import org.oscim.theme.rule.Rule.RuleVisitor;
+import org.oscim.theme.styles.AreaStyle;
+import org.oscim.theme.styles.LineStyle;
+import org.oscim.theme.styles.RenderStyle;
+import org.oscim.utils.async.AsyncExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of compiled RenderBuckets, i.e. the vertex data and bucket state
+ * after theme matching, tessellation and
+ * {@link RenderBuckets#prepareBuffers(boolean)}. Restoring a tile from
+ * this cache is a buffer copy instead of decoding and building buckets.
+ * <p>
+ * Entries are kept in native buffers, the total size of entries is limited
+ * to 'maxBytes' by removing the least recently used. When a {@link Store}
+ * is given entries are also written to it on a background thread and read
+ * back on misses.
+ * <p>
+ * Entries are keyed by tile and a {@link Namespace} of theme and tile
+ * source. Styles are stored by their index in the theme, so a
+ * Namespace can only be created for {@link RenderTheme}s. Only
+ * RenderBuckets containing LINE, TEXLINE, POLYGON, MESH and HAIRLINE
+ * buckets can be cached.
+ */
+public class BucketCache {
+	static final Logger log = LoggerFactory.getLogger(BucketCache.class);
+
+	final static int MAGIC = 0x56424331;
+	final static int VERSION = 3;
+
+	/**
+	 * magic, version, signature, source-id (long), buckets, offset[2],
+	 * vbo- and ibo-size
+	 */
+	private final static int HEADER_SIZE = 10 * 4;
+
+	/** type, level, vertices, indices, vertex- and indice-offset, style */
+	private final static int BUCKET_SIZE = 7 * 4;
+
+	/** max number of entries waiting to be written to Store */
+	private final static int MAX_PENDING = 32;
+
+	/**
+	 * Persistent storage of cache entries, e.g. files. Implemented by
+	 * the platform backends.
+	 */
+	public interface Store {
+		/**
+		 * Called on loader threads.
+		 *
+		 * @param namespace
+		 *            see {@link Namespace#getName()}.
+		 * @return entry data or null when not stored.
+		 */
+		public ByteBuffer read(Tile tile, String namespace);
+
+		/**
+		 * Called on the writer thread of BucketCache. 'data' must not be
+		 * modified.
+		 */
+		public void write(Tile tile, String namespace, ByteBuffer data);
+	}
+
+	/**
+	 * Theme and tile source of cache entries.
+	 */
+	public static final class Namespace {
+		final IRenderTheme theme;
+		final String source;
+
+		/** styles of theme by index */
+		final ArrayList<RenderStyle> styles = new ArrayList<RenderStyle>();
+		final IdentityHashMap<RenderStyle, Integer> styleIds =
+		        new IdentityHashMap<RenderStyle, Integer>();
+
+		/** changes when rules, styles or their order change */
+		final int signature;
+
+		/** 64bit hash of source, stored in entry header */
+		final long sourceId;
+
+		/** name of namespace in Store */
+		final String name;
+
+		Namespace(RenderTheme theme, String source) {
+			this.theme = theme;
+			this.source = source;
+			this.sourceId = sourceId(source);
+
+			/* hash of rule tree in traversal order: filters, number of
+			 * sub-rules and the styles of each rule */
+			final int[] ruleHash = new int[1];
+
+			theme.traverseRules(new RuleVisitor() {
+				@Override
+				public void apply(Rule r) {
+					int hash = ruleHash[0] * 31 + r.filterHash();
+					hash = hash * 31 + r.subRules.length;
+					for (RenderStyle s : r.styles) {
+						Integer id = styleIds.get(s);
+						if (id == null) {
+							id = Integer.valueOf(styles.size());
+							styleIds.put(s, id);
+							styles.add(s);
+						}
+						hash = hash * 31 + id.intValue();
+					}
+					ruleHash[0] = hash;
+					super.apply(r);
+				}
+			});
+
+			int h = (Tile.SIZE * 31 + (int) MapRenderer.COORD_SCALE) * 31 + VERSION;
+			h = h * 31 + ruleHash[0];
+			for (RenderStyle s : styles) {
+				h = h * 31 + s.getClass().getName().hashCode();
+				/* LineTexBucket width and LineBucket caps are set
+				 * from the style when building buckets */
+				if (s instanceof LineStyle) {
+					LineStyle l = (LineStyle) s;
+					h = h * 31 + (l.outline ? 1 : 0) + (l.stipple != 0 ? 2 : 0)
+					        + (l.fixed ? 4 : 0);
+					h = h * 31 + l.fadeScale;
+					h = h * 31 + Float.floatToIntBits(l.width);
+					h = h * 31 + (l.cap == null ? -1 : l.cap.ordinal());
+				} else if (s instanceof AreaStyle) {
+					AreaStyle a = (AreaStyle) s;
+					h = h * 31 + a.fadeScale;
+					h = h * 31 + Float.floatToIntBits(a.strokeWidth);
+				}
+			}
+			signature = h;
+
+			name = Long.toHexString(sourceId) + "-" + Integer.toHexString(signature);
+		}
+
+		/**
+		 * @return name of this namespace for {@link Store}, changes with
+		 *         source and theme signature.
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/** FNV-1a hash of source */
+		static long sourceId(String source) {
+			long h = 0xcbf29ce484222325L;
+			for (int i = 0, n = source.length(); i < n; i++) {
+				h ^= source.charAt(i);
+				h *= 0x100000001b3L;
+			}
+			return h;
+		}
+
+		int getStyleId(RenderStyle s) {
+			if (s == null)
+				return -1;
+			Integer id = styleIds.get(s);
+			return id == null ? -2 : id.intValue();
+		}
+
+		RenderStyle getStyle(int id) {
+			if (id < 0 || id >= styles.size())
+				return null;
+			return styles.get(id);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Namespace))
+				return false;
+			Namespace o = (Namespace) obj;
+			return theme == o.theme && source.equals(o.source);
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(theme) * 31 + source.hashCode();
+		}
+	}
+
+	static final class Key {
+		final int x, y, z;
+		final Namespace ns;
+
+		Key(Tile tile, Namespace ns) {
+			x = tile.tileX;
+			y = tile.tileY;
+			z = tile.zoomLevel;
+			this.ns = ns;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			Key o = (Key) obj;
+			return x == o.x && y == o.y && z == o.z && ns.equals(o.ns);
+		}
+
+		@Override
+		public int hashCode() {
+			return ((z * 31 + x) * 31 + y) * 31 + ns.hashCode();
+		}
+	}
+
+	private final LinkedHashMap<Key, ByteBuffer> mEntries =
+	        new LinkedHashMap<Key, ByteBuffer>(64, 0.75f, true);
+
+	/** entries waiting to be written to Store */
+	private final HashMap<Key, ByteBuffer> mPending = new HashMap<Key, ByteBuffer>();
+
+	private final Store mStore;
+	private final AsyncExecutor mWriter;
+
+	private long mMaxBytes;
+	private long mBytes;
+
+	private long mHits, mStoreHits, mMisses;
+
+	/**
+	 * @param maxBytes
+	 *            max size of entries in memory.
+	 */
+	public BucketCache(long maxBytes) {
+		this(maxBytes, null);
+	}
+
+	/**
+	 * @param maxBytes
+	 *            max size of entries in memory.
+	 * @param store
+	 *            persistent storage of entries, null to only keep them
+	 *            in memory.
+	 */
+	public BucketCache(long maxBytes, Store store) {
+		mMaxBytes = maxBytes;
+		mStore = store;
+		mWriter = (store == null) ? null : new AsyncExecutor(1, null);
+	}
+
+	/**
+	 * Write pending entries to Store and stop the writer thread. The
+	 * cache must not be used afterwards.
+	 */
+	public void dispose() {
+		if (mWriter != null)
+			mWriter.dispose();
+	}
+
+	/**
+	 * @param source
+	 *            identifies the tile source and its data, e.g. the url
+	 *            or file.
+	 * @return Namespace for entries of theme and source, or null when
+	 *         theme is not supported.
+	 */
+	public Namespace getNamespace(IRenderTheme theme, String source) {
+		if (!(theme instanceof RenderTheme) || source == null)
+			return null;
+
+		return new Namespace((RenderTheme) theme, source);
+	}
+
+	/**
+	 * Restore buckets of tile. On success 'buckets' are prepared for
+	 * upload and must not be modified, i.e. do not call prepare() or
+	 * prepareBuffers().
+	 *
+	 * @param buckets
+	 *            empty RenderBuckets.
+	 * @return true when buckets were restored.
+	 */
+	public boolean get(Tile tile, Namespace ns, RenderBuckets buckets) {
+		Key key = new Key(tile, ns);
+		ByteBuffer data;
+
+		synchronized (this) {
+			data = mEntries.get(key);
+			if (data == null)
+				data = mPending.get(key);
+			if (data != null)
+				mHits++;
+		}
+
+		if (data == null && mStore != null) {
+			data = mStore.read(tile, ns.name);
+			if (data != null) {
+				synchronized (this) {
+					mStoreHits++;
+					add(key, data);
+				}
+			}
+		}
+
+		if (data == null) {
+			synchronized (this) {
+				mMisses++;
+			}
+			return false;
+		}
+
+		if (decode(data, ns, buckets))
+			return true;
+
+		log.debug("{} invalid cache entry", tile);
+		buckets.clear();
+		synchronized (this) {
+			remove(key);
+		}
+		return false;
+	}
+
+	/**
+	 * Add buckets of tile. Buckets must be prepared, see
+	 * {@link RenderBuckets#prepareBuffers(boolean)}.
+	 *
+	 * @return false when buckets cannot be cached.
+	 */
+	public boolean put(Tile tile, Namespace ns, RenderBuckets buckets) {
+		ByteBuffer data = encode(buckets, ns);
+		if (data == null)
+			return false;
+
+		Key key = new Key(tile, ns);
+		boolean write = false;
+		synchronized (this) {
+			add(key, data);
+
+			/* drop writes when the Store cannot keep up */
+			if (mStore != null && mPending.size() < MAX_PENDING) {
+				mPending.put(key, data);
+				write = true;
+			}
+		}
+
+		if (write)
+			mWriter.post(new WriteTask(key, data));
+
+		return true;
+	}
+
+	final class WriteTask implements Runnable {
+		final Key key;
+		final ByteBuffer data;
+
+		WriteTask(Key key, ByteBuffer data) {
+			this.key = key;
+			this.data = data;
+		}
+
+		@Override
+		public void run() {
+			try {
+				mStore.write(new Tile(key.x, key.y, (byte) key.z), key.ns.name, data);
+			} catch (Exception e) {
+				log.debug("{}/{}/{} write: {}", key.z, key.x, key.y, e.toString());
+			} finally {
+				synchronized (BucketCache.this) {
+					/* keep newer data of the same tile */
+					if (mPending.get(key) == data)
+						mPending.remove(key);
+				}
+			}
+		}
+	}
+
+	private void add(Key key, ByteBuffer data) {
+		if (data.capacity() > mMaxBytes)
+			return;
+
+		ByteBuffer old = mEntries.put(key, data);
+		if (old != null)
+			mBytes -= old.capacity();
+		mBytes += data.capacity();
+
+		trimToSize();
+	}
+
+	private void remove(Key key) {
+		ByteBuffer old = mEntries.remove(key);
+		if (old != null)
+			mBytes -= old.capacity();
+	}
+
+	private void trimToSize() {
+		Iterator<Entry<Key, ByteBuffer>> it = mEntries.entrySet().iterator();
+		while (mBytes > mMaxBytes && it.hasNext()) {
+			mBytes -= it.next().getValue().capacity();
+			it.remove();
+		}
+	}
+
+	/**
+	 * Remove all entries from memory. Stored entries are kept.
+	 */
+	public synchronized void clear() {
+		mEntries.clear();
+		mBytes = 0;
+	}
+
+	public synchronized void setMaxBytes(long maxBytes) {
+		mMaxBytes = maxBytes;
+		trimToSize();
+	}
+
+	/** @return size of entries in memory */
+	public synchronized long getBytes() {
+		return mBytes;
+	}
+
+	public synchronized int getCount() {
+		return mEntries.size();
+	}
+
+	/** @return number of entries found in memory */
+	public synchronized long getHits() {
+		return mHits;
+	}
+
+	/** @return number of entries read from Store */
+	public synchronized long getStoreHits() {
+		return mStoreHits;
+	}
+
+	public synchronized long getMisses() {
+		return mMisses;
+	}
+
+	private static int extraSize(int type) {
+		switch (type) {
+			case LINE:
+				/* scale, roundCap, heightOffset, outlines */
+				return 4 * 4;
+			case TEXLINE:
+				/* width, evenQuads, oddQuads */
+				return 3 * 4;
+			case POLYGON:
+				/* bbox */
+				return 8 * 4;
+			case MESH:
+				/* heightOffset */
+				return 4;
+			case HAIRLINE:
+				return 0;
+			default:
+				return -1;
+		}
+	}
+
+	private static RenderStyle getStyle(RenderBucket b) {
+		switch (b.type) {
+			case LINE:
+				return ((LineBucket) b).line;
+			case TEXLINE:
+				return ((LineTexBucket) b).line;
+			case POLYGON:
+				return ((PolygonBucket) b).area;
+			case MESH:
+				return ((MeshBucket) b).area;
+			case HAIRLINE:
+				return ((HairLineBucket) b).line;
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * @return native buffer with the state and vertex data of prepared
+	 *         buckets or null when buckets cannot be encoded.
+	 */
+	static ByteBuffer encode(RenderBuckets buckets, Namespace ns) {
+		ShortBuffer vbo = buckets.getPreparedVertices();
+		if (vbo == null)
+			return null;
+
+		ShortBuffer ibo = buckets.getPreparedIndices();
+		int vboSize = vbo.position();
+		int iboSize = (ibo == null) ? 0 : ibo.position();
+
+		int numBuckets = 0;
+		int size = HEADER_SIZE;
+		for (RenderBucket b = buckets.get(); b != null; b = b.next) {
+			int extra = extraSize(b.type);
+			if (extra < 0)
+				return null;
+			size += BUCKET_SIZE + extra;
+			numBuckets++;
+		}
+		size += (vboSize + iboSize) * 2;
+
+		RenderBucket[] list = new RenderBucket[numBuckets];
+		int i = 0;
+		for (RenderBucket b = buckets.get(); b != null; b = b.next)
+			list[i++] = b;
+
+		ByteBuffer data = ByteBuffer.allocateDirect(size)
+		    .order(ByteOrder.nativeOrder());
+
+		data.putInt(MAGIC);
+		data.putInt(VERSION);
+		data.putInt(ns.signature);
+		data.putLong(ns.sourceId);
+		data.putInt(numBuckets);
+		data.putInt(buckets.offset[0]);
+		data.putInt(buckets.offset[1]);
+		data.putInt(vboSize);
+		data.putInt(iboSize);
+
+		for (RenderBucket b : list) {
+			int style = ns.getStyleId(getStyle(b));
+			if (style < -1)
+				return null;
+
+			data.putInt(b.type);
+			data.putInt(b.level);
+			data.putInt(b.numVertices);
+			data.putInt(b.numIndices);
+			data.putInt(b.vertexOffset);
+			data.putInt(b.indiceOffset);
+			data.putInt(style);
+
+			switch (b.type) {
+				case LINE:
+					LineBucket lb = (LineBucket) b;
+					data.putFloat(lb.scale);
+					data.putInt(lb.roundCap ? 1 : 0);
+					data.putFloat(lb.heightOffset);
+					data.putInt(indexOf(list, lb.outlines));
+					break;
+				case TEXLINE:
+					LineTexBucket tb = (LineTexBucket) b;
+					data.putFloat(tb.width);
+					data.putInt(tb.evenQuads);
+					data.putInt(tb.oddQuads);
+					break;
+				case POLYGON:
+					PolygonBucket pb = (PolygonBucket) b;
+					for (int j = 0; j < 8; j++)
+						data.putFloat(pb.bbox[j]);
+					break;
+				case MESH:
+					data.putFloat(((MeshBucket) b).heightOffset);
+					break;
+				default:
+					break;
+			}
+		}
+
+		ShortBuffer dst = data.asShortBuffer();
+		ShortBuffer src = vbo.duplicate();
+		src.flip();
+		dst.put(src);
+
+		if (iboSize > 0) {
+			src = ibo.duplicate();
+			src.flip();
+			dst.put(src);
+		}
+
+		data.clear();
+		return data;
+	}
+
+	private static int indexOf(RenderBucket[] list, RenderBucket b) {
+		if (b == null)
+			return -1;
+		for (int i = 0; i < list.length; i++)
+			if (list[i] == b)
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Restore buckets from data created by encode().
+	 *
+	 * @return false when data is invalid.
+	 */
+	static boolean decode(ByteBuffer data, Namespace ns, RenderBuckets buckets) {
+		ByteBuffer d = data.duplicate().order(ByteOrder.nativeOrder());
+		d.clear();
+
+		ShortBuffer vbo = null;
+		ShortBuffer ibo = null;
+		try {
+			if (d.getInt() != MAGIC || d.getInt() != VERSION || d.getInt() != ns.signature
+			        || d.getLong() != ns.sourceId)
+				return false;
+
+			int numBuckets = d.getInt();
+			int offset0 = d.getInt();
+			int offset1 = d.getInt();
+			int vboSize = d.getInt();
+			int iboSize = d.getInt();
+
+			RenderBucket[] list = new RenderBucket[numBuckets];
+			int[] outlines = new int[numBuckets];
+
+			for (int i = 0; i < numBuckets; i++) {
+				int type = d.getInt();
+				int level = d.getInt();
+				if (extraSize(type) < 0)
+					return false;
+
+				RenderBucket b = buckets.getBucket(level, type);
+				b.numVertices = d.getInt();
+				b.numIndices = d.getInt();
+				b.vertexOffset = d.getInt();
+				b.indiceOffset = d.getInt();
+				RenderStyle style = ns.getStyle(d.getInt());
+				outlines[i] = -1;
+
+				switch (type) {
+					case LINE:
+						LineBucket lb = (LineBucket) b;
+						if (!(style instanceof LineStyle))
+							return false;
+						lb.line = (LineStyle) style;
+						lb.scale = d.getFloat();
+						lb.roundCap = d.getInt() != 0;
+						lb.heightOffset = d.getFloat();
+						outlines[i] = d.getInt();
+						break;
+					case TEXLINE:
+						LineTexBucket tb = (LineTexBucket) b;
+						if (!(style instanceof LineStyle))
+							return false;
+						tb.line = (LineStyle) style;
+						tb.width = d.getFloat();
+						tb.evenQuads = d.getInt();
+						tb.oddQuads = d.getInt();
+						break;
+					case POLYGON:
+						PolygonBucket pb = (PolygonBucket) b;
+						if (!(style instanceof AreaStyle))
+							return false;
+						pb.area = (AreaStyle) style;
+						for (int j = 0; j < 8; j++)
+							pb.bbox[j] = d.getFloat();
+						break;
+					case MESH:
+						MeshBucket mb = (MeshBucket) b;
+						if (style != null && !(style instanceof AreaStyle))
+							return false;
+						mb.area = (AreaStyle) style;
+						mb.heightOffset = d.getFloat();
+						break;
+					case HAIRLINE:
+						if (!(style instanceof LineStyle))
+							return false;
+						((HairLineBucket) b).line = (LineStyle) style;
+						break;
+					default:
+						return false;
+				}
+				list[i] = b;
+			}
+
+			for (int i = 0; i < numBuckets; i++) {
+				int o = outlines[i];
+				if (o < 0)
+					continue;
+				if (o >= numBuckets || list[o].type != LINE)
+					return false;
+				((LineBucket) list[i]).outlines = (LineBucket) list[o];
+			}
+
+			if (vboSize <= 0 || iboSize < 0 || d.remaining() != (vboSize + iboSize) * 2)
+				return false;
+
+			ShortBuffer src = d.asShortBuffer();
+			vbo = SharedBufferPool.get(vboSize);
+			src.limit(vboSize);
+			vbo.put(src);
+
+			if (iboSize > 0) {
+				ibo = SharedBufferPool.get(iboSize);
+				src.limit(vboSize + iboSize);
+				ibo.put(src);
+			}
+
+			buckets.offset[0] = offset0;
+			buckets.offset[1] = offset1;
+			buckets.setPrepared(vbo, ibo);
+			return true;
+
+		} catch (RuntimeException e) {
+			/* BufferUnderflow, wrong bucket type on level, ... */
+			log.debug("decode: {}", e.toString());
+			SharedBufferPool.release(vbo);
+			SharedBufferPool.release(ibo);
+			return false;
+		}
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.renderer.bucket;
+
+import static org.oscim.renderer.bucket.RenderBucket.HAIRLINE;
+import static org.oscim.renderer.bucket.RenderBucket.LINE;
+import static org.oscim.renderer.bucket.RenderBucket.MESH;
+import static org.oscim.renderer.bucket.RenderBucket.POLYGON;
+import static org.oscim.renderer.bucket.RenderBucket.TEXLINE;
+
+import org.oscim.utils.pool.SyncPool;
+
+/**
+ * Pool of RenderBuckets and their LINE, TEXLINE, POLYGON, MESH and
+ * HAIRLINE buckets, intended to be used by one TileLoader. The buckets
+ * get VertexData chunks from a ChunkPool of this BucketPool.
+ * <p>
+ * RenderBuckets from {@link #getBuckets()} return themselves and their
+ * buckets to this pool when the tile is cleared. As tiles are usually
+ * cleared on another thread the pools are synchronized, but only this
+ * thread and the loader contend for them.
+ */
+public class BucketPool {
+
+	/** max number of RenderBuckets to keep */
+	private final static int MAX_RENDER_BUCKETS = 32;
+
+	/** max number of buckets to keep per type */
+	private final static int MAX_BUCKETS = 128;
+
+	final class RenderBucketsPool extends SyncPool<RenderBuckets> {
+		RenderBucketsPool() {
+			super(MAX_RENDER_BUCKETS);
+		}
+
+		@Override
+		protected RenderBuckets createItem() {
+			return new RenderBuckets(BucketPool.this);
+		}
+	}
+
+	final class Pool extends SyncPool<RenderBucket> {
+		final int type;
+
+		Pool(int type) {
+			super(MAX_BUCKETS);
+			this.type = type;
+		}
+
+		@Override
+		protected RenderBucket createItem() {
+			RenderBucket b = RenderBuckets.createBucket(type, 0);
+			b.setChunkPool(mChunkPool);
+			return b;
+		}
+
+		@Override
+		protected boolean clearItem(RenderBucket b) {
+			b.reset();
+			return true;
+		}
+	}
+
+	/** vertex data chunks of buckets from this pool */
+	private final ChunkPool mChunkPool = new ChunkPool();
+
+	private final RenderBucketsPool mRenderBuckets = new RenderBucketsPool();
+	private final Pool[] mPools = new Pool[HAIRLINE + 1];
+
+	public BucketPool() {
+		mPools[LINE] = new Pool(LINE);
+		mPools[TEXLINE] = new Pool(TEXLINE);
+		mPools[POLYGON] = new Pool(POLYGON);
+		mPools[MESH] = new Pool(MESH);
+		mPools[HAIRLINE] = new Pool(HAIRLINE);
+	}
+
+	/**
+	 * @return empty RenderBuckets that will be returned to this pool when
+	 *         disposed by its MapTile.
+	 */
+	public RenderBuckets getBuckets() {
+		return mRenderBuckets.get();
+	}
+
+	void release(RenderBuckets buckets) {
+		mRenderBuckets.release(buckets);
+	}
+
+	RenderBucket get(int type, int level) {
+		if (type < 0 || type >= mPools.length || mPools[type] == null)
+			return RenderBuckets.createBucket(type, level);
+
+		RenderBucket b = mPools[type].get();
+		b.level = level;
+		return b;
+	}
+
+	/**
+	 * Release list of buckets.
+	 */
+	void releaseAll(RenderBucket list) {
+		while (list != null) {
+			RenderBucket b = list;
+			list = list.next;
+			b.next = null;
+
+			if (b.type < mPools.length && mPools[b.type] != null)
+				b = mPools[b.type].release(b);
+			else
+				b.clear();
+		}
+	}
+
+	/**
+	 * @return the pool for VertexData chunks of buckets from this pool
+	 */
+	public ChunkPool getChunkPool() {
+		return mChunkPool;
+	}
+
+	/**
+	 * @return number of pooled RenderBuckets
+	 */
+	public int getFill() {
+		return mRenderBuckets.getFill();
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.renderer.bucket;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.oscim.renderer.bucket.VertexData.Chunk;
+
+/**
+ * Two-tier pool of {@link VertexData} chunks.
+ * <p>
+ * Each ChunkPool keeps a free list of up to MAX_LOCAL chunks. A pool is
+ * meant to be used mainly by one thread, e.g. the BucketPool of a loader,
+ * so its lock is uncontended. Pools exchange chunks in batches of
+ * BATCH_SIZE through a shared lock-free stack: a pool with too many free
+ * chunks pushes a batch, an empty pool pops one.
+ * <p>
+ * Loaders set their pool on the buckets they create, see
+ * {@link RenderBucket#setChunkPool(ChunkPool)} and
+ * {@link RenderBuckets#getChunkPool()} for loader hooks. Other VertexData
+ * use {@link #DEFAULT}.
+ */
+public class ChunkPool {
+
+	/** number of chunks moved to or from the shared stack at once */
+	final static int BATCH_SIZE = 64;
+
+	/** max number of free chunks of one pool */
+	final static int MAX_LOCAL = 4 * BATCH_SIZE;
+
+	/** max number of batches on the shared stack */
+	final static int MAX_SHARED = 8;
+
+	/** pool for VertexData without owner */
+	public final static ChunkPool DEFAULT = new ChunkPool();
+
+	/** immutable stack node, a new node is created for each push */
+	static final class Batch {
+		final Chunk chunks;
+		final Batch next;
+
+		Batch(Chunk chunks, Batch next) {
+			this.chunks = chunks;
+			this.next = next;
+		}
+	}
+
+	private final static AtomicReference<Batch> sShared = new AtomicReference<Batch>();
+	private final static AtomicInteger sSharedBatches = new AtomicInteger();
+
+	private final static AtomicInteger sCreated = new AtomicInteger();
+	private final static AtomicInteger sDropped = new AtomicInteger();
+
+	private Chunk mFree;
+	private int mFill;
+
+	/**
+	 * @return a chunk with used = 0
+	 */
+	public synchronized Chunk get() {
+		if (mFree == null && !popBatch()) {
+			sCreated.incrementAndGet();
+			return new Chunk();
+		}
+		Chunk c = mFree;
+		mFree = c.next;
+		c.next = null;
+		mFill--;
+		return c;
+	}
+
+	/**
+	 * Release list of chunks.
+	 */
+	public synchronized void releaseAll(Chunk list) {
+		while (list != null) {
+			Chunk c = list;
+			list = c.next;
+
+			c.used = 0;
+			c.next = mFree;
+			mFree = c;
+			mFill++;
+		}
+
+		while (mFill > MAX_LOCAL)
+			pushBatch();
+	}
+
+	private boolean popBatch() {
+		Batch b;
+		do {
+			b = sShared.get();
+			if (b == null)
+				return false;
+		} while (!sShared.compareAndSet(b, b.next));
+
+		sSharedBatches.decrementAndGet();
+		mFree = b.chunks;
+		mFill += BATCH_SIZE;
+		return true;
+	}
+
+	private void pushBatch() {
+		/* split BATCH_SIZE chunks off the free list */
+		Chunk first = mFree;
+		Chunk last = first;
+		for (int i = 1; i < BATCH_SIZE; i++)
+			last = last.next;
+
+		mFree = last.next;
+		last.next = null;
+		mFill -= BATCH_SIZE;
+
+		if (sSharedBatches.incrementAndGet() > MAX_SHARED) {
+			/* leave it to GC */
+			sSharedBatches.decrementAndGet();
+			sDropped.addAndGet(BATCH_SIZE);
+			return;
+		}
+
+		Batch top, b;
+		do {
+			top = sShared.get();
+			b = new Batch(first, top);
+		} while (!sShared.compareAndSet(top, b));
+	}
+
+	/**
+	 * @return number of free chunks in this pool
+	 */
+	public synchronized int getFill() {
+		return mFill;
+	}
+
+	/**
+	 * @return number of free chunks on the shared stack
+	 */
+	public static int getSharedFill() {
+		return sSharedBatches.get() * BATCH_SIZE;
+	}
+
+	/**
+	 * @return number of chunks created because no pool had free chunks
+	 */
+	public static int getCreated() {
+		return sCreated.get();
+	}
+
+	/**
+	 * @return number of chunks dropped because all pools were full
+	 */
+	public static int getDropped() {
+		return sDropped.get();
+	}
+}
@@ -109,6 +109,47 @@ public class ExtrusionBucket extends RenderBucket {
 		}
 	}
 
+	@Override
+	public void setChunkPool(ChunkPool pool) {
+		super.setChunkPool(pool);
+		if (mIndices == null)
+			return;
+		for (VertexData d : mIndices)
+			if (d != null)
+				d.setPool(pool);
+	}
+
+	/** number of Vertex items taken from vertexPool at once */
+	private final static int VERTEX_BATCH = 64;
+
+	/** free Vertex items of this bucket */
+	private Vertex mFreeVertices;
+
+	/**
+	 * Get Vertex from local free list. Only locks vertexPool
+	 * once for VERTEX_BATCH items.
+	 */
+	private Vertex getVertex() {
+		if (mFreeVertices == null) {
+			synchronized (vertexPool) {
+				for (int i = 0; i < VERTEX_BATCH; i++) {
+					Vertex v = vertexPool.get();
+					v.next = mFreeVertices;
+					mFreeVertices = v;
+				}
+			}
+		}
+		Vertex v = mFreeVertices;
+		mFreeVertices = (Vertex) v.next;
+		v.next = null;
+		return v;
+	}
+
+	private void releaseVertex(Vertex v) {
+		v.next = mFreeVertices;
+		mFreeVertices = v;
+	}
+
 	static Pool<Vertex> vertexPool = new Pool<Vertex>() {
 		@Override
 		protected Vertex createItem() {
@@ -155,112 +196,109 @@ public class ExtrusionBucket extends RenderBucket {
 		float[] points = element.points;
 
 		int vertexCnt = numVertices;
-		synchronized (vertexPool) {
+		Vertex key = getVertex();
+		double scale = S * Tile.SIZE / 4096;
 
-			Vertex key = vertexPool.get();
-			double scale = S * Tile.SIZE / 4096;
-
-			for (int k = 0, n = index.length; k < n;) {
-				if (index[k] < 0)
-					break;
-
-				/* FIXME: workaround: dont overflow max index id. */
-				if (vertexCnt >= 1 << 16)
-					break;
+		for (int k = 0, n = index.length; k < n;) {
+			if (index[k] < 0)
+				break;
 
-				int vtx1 = index[k++] * 3;
-				int vtx2 = index[k++] * 3;
-				int vtx3 = index[k++] * 3;
+			/* FIXME: workaround: dont overflow max index id. */
+			if (vertexCnt >= 1 << 16)
+				break;
 
-				float vx1 = points[vtx1 + 0];
-				float vy1 = points[vtx1 + 1];
-				float vz1 = points[vtx1 + 2];
+			int vtx1 = index[k++] * 3;
+			int vtx2 = index[k++] * 3;
+			int vtx3 = index[k++] * 3;
 
-				float vx2 = points[vtx2 + 0];
-				float vy2 = points[vtx2 + 1];
-				float vz2 = points[vtx2 + 2];
+			float vx1 = points[vtx1 + 0];
+			float vy1 = points[vtx1 + 1];
+			float vz1 = points[vtx1 + 2];
 
-				float vx3 = points[vtx3 + 0];
-				float vy3 = points[vtx3 + 1];
-				float vz3 = points[vtx3 + 2];
+			float vx2 = points[vtx2 + 0];
+			float vy2 = points[vtx2 + 1];
+			float vz2 = points[vtx2 + 2];
 
-				float ax = vx2 - vx1;
-				float ay = vy2 - vy1;
-				float az = vz2 - vz1;
+			float vx3 = points[vtx3 + 0];
+			float vy3 = points[vtx3 + 1];
+			float vz3 = points[vtx3 + 2];
 
-				float bx = vx3 - vx1;
-				float by = vy3 - vy1;
-				float bz = vz3 - vz1;
+			float ax = vx2 - vx1;
+			float ay = vy2 - vy1;
+			float az = vz2 - vz1;
 
-				float cx = ay * bz - az * by;
-				float cy = az * bx - ax * bz;
-				float cz = ax * by - ay * bx;
+			float bx = vx3 - vx1;
+			float by = vy3 - vy1;
+			float bz = vz3 - vz1;
 
-				double len = Math.sqrt(cx * cx + cy * cy + cz * cz);
+			float cx = ay * bz - az * by;
+			float cy = az * bx - ax * bz;
+			float cz = ax * by - ay * bx;
 
-				// packing the normal in two bytes
-				//	int mx = FastMath.clamp(127 + (int) ((cx / len) * 128), 0, 0xff);
-				//	int my = FastMath.clamp(127 + (int) ((cy / len) * 128), 0, 0xff);
-				//	short normal = (short) ((my << 8) | (mx & NORMAL_DIR_MASK) | (cz > 0 ? 1 : 0));
+			double len = Math.sqrt(cx * cx + cy * cy + cz * cz);
 
-				double p = Math.sqrt((cz / len) * 8.0 + 8.0);
-				int mx = FastMath.clamp(127 + (int) ((cx / len / p) * 128), 0, 255);
-				int my = FastMath.clamp(127 + (int) ((cy / len / p) * 128), 0, 255);
-				short normal = (short) ((my << 8) | mx);
+			// packing the normal in two bytes
+			//	int mx = FastMath.clamp(127 + (int) ((cx / len) * 128), 0, 0xff);
+			//	int my = FastMath.clamp(127 + (int) ((cy / len) * 128), 0, 0xff);
+			//	short normal = (short) ((my << 8) | (mx & NORMAL_DIR_MASK) | (cz > 0 ? 1 : 0));
 
-				if (key == null)
-					key = vertexPool.get();
+			double p = Math.sqrt((cz / len) * 8.0 + 8.0);
+			int mx = FastMath.clamp(127 + (int) ((cx / len / p) * 128), 0, 255);
+			int my = FastMath.clamp(127 + (int) ((cy / len / p) * 128), 0, 255);
+			short normal = (short) ((my << 8) | mx);
 
-				key.set((short) (vx1 * scale),
-				        (short) (vy1 * scale),
-				        (short) (vz1 * scale),
-				        normal);
+			if (key == null)
+				key = getVertex();
 
-				Vertex vertex = mVertexMap.put(key, false);
+			key.set((short) (vx1 * scale),
+			        (short) (vy1 * scale),
+			        (short) (vz1 * scale),
+			        normal);
 
-				if (vertex == null) {
-					key.id = vertexCnt++;
-					addIndex(key, true);
-					key = vertexPool.get();
-				} else {
-					//numIndexHits++;
-					addIndex(vertex, false);
-				}
+			Vertex vertex = mVertexMap.put(key, false);
 
-				key.set((short) (vx2 * scale),
-				        (short) (vy2 * scale),
-				        (short) (vz2 * scale),
-				        normal);
+			if (vertex == null) {
+				key.id = vertexCnt++;
+				addIndex(key, true);
+				key = getVertex();
+			} else {
+				//numIndexHits++;
+				addIndex(vertex, false);
+			}
 
-				vertex = mVertexMap.put(key, false);
+			key.set((short) (vx2 * scale),
+			        (short) (vy2 * scale),
+			        (short) (vz2 * scale),
+			        normal);
 
-				if (vertex == null) {
-					key.id = vertexCnt++;
-					addIndex(key, true);
-					key = vertexPool.get();
-				} else {
-					//numIndexHits++;
-					addIndex(vertex, false);
-				}
+			vertex = mVertexMap.put(key, false);
 
-				key.set((short) (vx3 * scale),
-				        (short) (vy3 * scale),
-				        (short) (vz3 * scale),
-				        (short) normal);
-
-				vertex = mVertexMap.put(key, false);
-				if (vertex == null) {
-					key.id = vertexCnt++;
-					addIndex(key, true);
-					key = vertexPool.get();
-				} else {
-					//numIndexHits++;
-					addIndex(vertex, false);
-				}
+			if (vertex == null) {
+				key.id = vertexCnt++;
+				addIndex(key, true);
+				key = getVertex();
+			} else {
+				//numIndexHits++;
+				addIndex(vertex, false);
 			}
 
-			vertexPool.release(key);
+			key.set((short) (vx3 * scale),
+			        (short) (vy3 * scale),
+			        (short) (vz3 * scale),
+			        (short) normal);
+
+			vertex = mVertexMap.put(key, false);
+			if (vertex == null) {
+				key.id = vertexCnt++;
+				addIndex(key, true);
+				key = getVertex();
+			} else {
+				//numIndexHits++;
+				addIndex(vertex, false);
+			}
 		}
+
+		releaseVertex(key);
 		numVertices = vertexCnt;
 	}
 
@@ -567,6 +605,17 @@ public class ExtrusionBucket extends RenderBucket {
 		return convex;
 	}
 
+	@Override
+	protected int getSize() {
+		int size = super.getSize();
+		if (mIndices != null) {
+			for (VertexData d : mIndices)
+				if (d != null)
+					size += d.countChunks() * VertexData.SIZE * 2;
+		}
+		return size;
+	}
+
 	@Override
 	public void compile(ShortBuffer vboData, ShortBuffer iboData) {
 
@@ -618,6 +667,7 @@ public class ExtrusionBucket extends RenderBucket {
 
 		synchronized (vertexPool) {
 			vertexPool.releaseAll(mVertexMap.releaseItems());
+			mFreeVertices = vertexPool.releaseAll(mFreeVertices);
 			mVertexMap = vertexMapPool.release(mVertexMap);
 		}
 	}
@@ -57,6 +57,20 @@ public class ExtrusionBuckets extends TileData {
 
 	}
 
+	@Override
+	protected int getSize() {
+		int size = 0;
+		for (RenderBucket b = buckets; b != null; b = b.next)
+			size += b.getSize();
+
+		if (vbo != null)
+			size += vbo.getSize();
+		if (ibo != null)
+			size += ibo.getSize();
+
+		return size;
+	}
+
 	public void prepare() {
 		for (RenderBucket b = buckets; b != null; b = b.next)
 			b.prepare();
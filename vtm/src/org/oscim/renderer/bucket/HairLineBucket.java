@@ -23,6 +23,12 @@ public class HairLineBucket extends RenderBucket {
 		this.level = level;
 	}
 
+	@Override
+	protected void reset() {
+		super.reset();
+		line = null;
+	}
+
 	public void addLine(GeometryBuffer geom) {
 		short id = (short) numVertices;
 
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.renderer.bucket;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.oscim.backend.CanvasAdapter;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.backend.canvas.Canvas;
+import org.oscim.backend.canvas.Color;
+import org.oscim.renderer.atlas.TextureAtlas;
+import org.oscim.renderer.atlas.TextureAtlas.Rect;
+import org.oscim.theme.styles.TextStyle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps rasterized label strings in TextureAtlas pages across
+ * {@link TextBucket#prepare()} passes, so that labels which were drawn
+ * before only need to be looked up. Labels are keyed by string and
+ * TextStyle.
+ * <p>
+ * When no page has space left the least recently used page is cleared.
+ * Pages used by the current or the previous pass are not cleared as the
+ * previous TextBucket may still be rendered. More pages are added when
+ * all pages are in use, these are removed again once they are unused.
+ * <p>
+ * One LabelCache can be shared by TextBuckets that are prepared on the
+ * same thread one after another, e.g. by the LabelTasks of a LabelLayer.
+ */
+public class LabelCache {
+	static final Logger log = LoggerFactory.getLogger(LabelCache.class);
+
+	final static int PAGE_WIDTH = TextureBucket.TEXTURE_WIDTH;
+	final static int PAGE_HEIGHT = TextureBucket.TEXTURE_HEIGHT;
+
+	/** number of pages to keep when they are not in use */
+	private final int mMaxPages;
+
+	static final class Entry {
+		final String string;
+		final TextStyle text;
+		final Page page;
+		final float x, y, width, height;
+
+		Entry(String string, TextStyle text, Page page,
+		        float x, float y, float width, float height) {
+			this.string = string;
+			this.text = text;
+			this.page = page;
+			this.x = x;
+			this.y = y;
+			this.width = width;
+			this.height = height;
+		}
+	}
+
+	static final class Page {
+		final TextureItem texture;
+		final Canvas canvas;
+		final TextureAtlas atlas;
+		final ArrayList<Entry> entries = new ArrayList<Entry>();
+
+		/** labels added by current pass */
+		final ArrayList<TextItem> items = new ArrayList<TextItem>();
+		final ArrayList<Entry> itemEntries = new ArrayList<Entry>();
+
+		int lastUsed;
+
+		Page() {
+			Bitmap bitmap = CanvasAdapter.newBitmap(PAGE_WIDTH, PAGE_HEIGHT, 0);
+			texture = new TextureItem(bitmap);
+			atlas = new TextureAtlas(PAGE_WIDTH, PAGE_HEIGHT);
+
+			/* NB: some Canvas implementations clear the bitmap on
+			 * setBitmap(), so keep one Canvas per page. */
+			canvas = CanvasAdapter.newCanvas();
+			canvas.setBitmap(bitmap);
+		}
+	}
+
+	private final ArrayList<Page> mPages = new ArrayList<Page>();
+
+	private final HashMap<TextStyle, HashMap<String, Entry>> mEntries =
+	        new HashMap<TextStyle, HashMap<String, Entry>>();
+
+	private int mPass;
+
+	public LabelCache() {
+		this(8);
+	}
+
+	/**
+	 * @param maxPages
+	 *            number of TextureAtlas pages to keep
+	 */
+	public LabelCache(int maxPages) {
+		mMaxPages = maxPages;
+	}
+
+	/** Start a new prepare pass. */
+	void begin() {
+		mPass++;
+
+		/* remove pages above mMaxPages that are no longer in use */
+		for (int i = mPages.size() - 1; i >= 0; i--) {
+			if (mPages.size() <= mMaxPages)
+				break;
+
+			Page p = mPages.get(i);
+			if (isUsed(p))
+				continue;
+
+			removeEntries(p);
+			mPages.remove(i);
+			synchronized (this) {
+				p.texture.dispose();
+			}
+		}
+	}
+
+	private boolean isUsed(Page p) {
+		return p.lastUsed >= mPass - 1;
+	}
+
+	/**
+	 * Get the entry for TextItem 'it', rasterize its string when
+	 * not cached, and add 'it' to the items of the entry page.
+	 */
+	Entry add(TextItem it, Entry prev) {
+		Entry e = prev;
+		if (e == null || e.text != it.text || !e.string.equals(it.string))
+			e = get(it);
+
+		e.page.lastUsed = mPass;
+		e.page.items.add(it);
+		e.page.itemEntries.add(e);
+		return e;
+	}
+
+	private Entry get(TextItem it) {
+		HashMap<String, Entry> strings = mEntries.get(it.text);
+		if (strings == null) {
+			strings = new HashMap<String, Entry>();
+			mEntries.put(it.text, strings);
+		}
+
+		Entry e = strings.get(it.string);
+		if (e != null)
+			return e;
+
+		float width = it.width + 2 * TextBucket.mFontPadX;
+		float height = (int) (it.text.fontHeight) + 0.5f;
+
+		if (height > PAGE_HEIGHT - 2)
+			height = PAGE_HEIGHT - 2;
+		if (width > PAGE_WIDTH - 2)
+			width = PAGE_WIDTH - 2;
+
+		int w = (int) Math.ceil(width);
+		int h = (int) Math.ceil(height);
+
+		Page page = null;
+		Rect r = null;
+		for (int i = 0, n = mPages.size(); i < n; i++) {
+			page = mPages.get(i);
+			r = page.atlas.getRegion(w, h);
+			if (r != null)
+				break;
+		}
+
+		if (r == null) {
+			page = getPage();
+			r = page.atlas.getRegion(w, h);
+		}
+
+		e = new Entry(it.string, it.text, page, r.x, r.y, width, height);
+
+		synchronized (this) {
+			page.canvas.drawText(it.string, r.x,
+			                     r.y + height - it.text.fontDescent,
+			                     it.text.paint, it.text.stroke);
+			page.texture.loaded = false;
+		}
+
+		page.entries.add(e);
+		strings.put(e.string, e);
+		return e;
+	}
+
+	/** clear least recently used page or add a new page */
+	private Page getPage() {
+		Page lru = null;
+
+		if (mPages.size() >= mMaxPages) {
+			for (int i = 0, n = mPages.size(); i < n; i++) {
+				Page p = mPages.get(i);
+				if (isUsed(p))
+					continue;
+				if (lru == null || p.lastUsed < lru.lastUsed)
+					lru = p;
+			}
+		}
+		if (lru == null) {
+			lru = new Page();
+			mPages.add(lru);
+			return lru;
+		}
+
+		removeEntries(lru);
+		lru.atlas.clear();
+
+		synchronized (this) {
+			/* eraseColor is not implemented by all backends, while
+			 * those clear the bitmap on setBitmap() */
+			lru.texture.bitmap.eraseColor(Color.TRANSPARENT);
+			lru.canvas.setBitmap(lru.texture.bitmap);
+			lru.texture.loaded = false;
+		}
+		return lru;
+	}
+
+	private void removeEntries(Page p) {
+		for (int i = 0, n = p.entries.size(); i < n; i++) {
+			Entry e = p.entries.get(i);
+			mEntries.get(e.text).remove(e.string);
+		}
+		p.entries.clear();
+	}
+
+	/**
+	 * @return number of pages
+	 */
+	int getNumPages() {
+		return mPages.size();
+	}
+
+	Page getPage(int i) {
+		return mPages.get(i);
+	}
+
+	/**
+	 * @return a clone of the page texture for a TextBucket
+	 */
+	synchronized TextureItem getTexture(Page p) {
+		return TextureItem.clone(p.texture);
+	}
+
+	/**
+	 * Upload pages that were modified since last upload.
+	 * [on GL-Thread]
+	 */
+	synchronized void upload(TextureItem textures) {
+		for (TextureItem t = textures; t != null; t = t.next)
+			t.upload();
+	}
+
+	/**
+	 * Remove all entries and release the page textures. Must not be
+	 * called while TextBuckets using this cache are prepared.
+	 */
+	public synchronized void clear() {
+		for (int i = 0, n = mPages.size(); i < n; i++)
+			mPages.get(i).texture.dispose();
+
+		mPages.clear();
+		mEntries.clear();
+	}
+}
@@ -77,6 +77,19 @@ public final class LineBucket extends RenderBucket {
 		this.level = layer;
 	}
 
+	@Override
+	protected void reset() {
+		super.reset();
+		outlines = null;
+		line = null;
+		scale = 1;
+		roundCap = false;
+		mMinDist = MIN_DIST;
+		heightOffset = 0;
+		tmin = Integer.MIN_VALUE;
+		tmax = Integer.MAX_VALUE;
+	}
+
 	public void addOutline(LineBucket link) {
 		for (LineBucket l = outlines; l != null; l = l.outlines)
 			if (link == l)
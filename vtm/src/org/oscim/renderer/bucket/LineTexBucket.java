@@ -105,6 +105,17 @@ public final class LineTexBucket extends RenderBucket {
 		this.evenSegment = true;
 	}
 
+	@Override
+	protected void reset() {
+		super.reset();
+		line = null;
+		width = 0;
+		evenQuads = 0;
+		oddQuads = 0;
+		evenSegment = true;
+		mRandomizeOffset = true;
+	}
+
 	public void addLine(GeometryBuffer geom) {
 		addLine(geom.points, geom.index);
 	}
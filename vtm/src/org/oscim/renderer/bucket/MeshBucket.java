@@ -52,6 +52,18 @@ public class MeshBucket extends RenderBucket {
 		this.level = level;
 	}
 
+	@Override
+	protected void reset() {
+		super.reset();
+		area = null;
+		heightOffset = 0;
+		numPoints = 0;
+		if (tess != null) {
+			tess.dispose();
+			tess = null;
+		}
+	}
+
 	public void addMesh(GeometryBuffer geom) {
 		numPoints += geom.pointPos;
 		if (tess == null)
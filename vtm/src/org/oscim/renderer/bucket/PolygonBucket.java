@@ -61,6 +61,14 @@ public final class PolygonBucket extends RenderBucket {
 		level = layer;
 	}
 
+	@Override
+	protected void reset() {
+		super.reset();
+		area = null;
+		xmin = ymin = Short.MAX_VALUE;
+		xmax = ymax = Short.MIN_VALUE;
+	}
+
 	public void addPolygon(GeometryBuffer geom) {
 		addPolygon(geom.points, geom.index);
 	}
@@ -59,6 +59,16 @@ public abstract class RenderBucket extends Inlist<RenderBucket> {
 		this.quads = quads;
 	}
 
+	/**
+	 * Use 'pool' for vertex data chunks, e.g. the pool of the loader
+	 * that creates this bucket. Only change while empty.
+	 */
+	public void setChunkPool(ChunkPool pool) {
+		vertexItems.setPool(pool);
+		if (indiceItems != EMPTY)
+			indiceItems.setPool(pool);
+	}
+
 	/** Clear all resources. */
 	protected void clear() {
 		vertexItems.dispose();
@@ -67,6 +77,24 @@ public abstract class RenderBucket extends Inlist<RenderBucket> {
 		numIndices = 0;
 	}
 
+	/**
+	 * Clear and reset to initial state for reuse by {@link BucketPool}.
+	 * Subclasses also reset their style.
+	 */
+	protected void reset() {
+		clear();
+		vertexOffset = 0;
+		indiceOffset = 0;
+	}
+
+	/**
+	 * @return bytes of vertex data chunks. Subclasses add e.g. textures.
+	 */
+	protected int getSize() {
+		return (vertexItems.countChunks() + indiceItems.countChunks())
+		        * VertexData.SIZE * 2;
+	}
+
 	/**
 	 * Final preparation of content before compilation
 	 * for stuff that should not be done on render-thread.
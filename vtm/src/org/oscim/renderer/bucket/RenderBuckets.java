@@ -29,6 +29,7 @@ import org.oscim.core.Tile;
 import org.oscim.layers.tile.MapTile.TileData;
 import org.oscim.renderer.BufferObject;
 import org.oscim.renderer.MapRenderer;
+import org.oscim.renderer.SharedBufferPool;
 import org.oscim.theme.styles.AreaStyle;
 import org.oscim.theme.styles.LineStyle;
 import org.slf4j.Logger;
@@ -77,8 +78,45 @@ public class RenderBuckets extends TileData {
 	 */
 	public int[] offset = { 0, 0 };
 
+	/** vertex and index data prepared for upload, see prepareBuffers() */
+	private ShortBuffer mVboData;
+	private ShortBuffer mIboData;
+
 	private RenderBucket mCurBucket;
 
+	/** pool to return buckets to, null when not pooled */
+	private final BucketPool mPool;
+
+	/** pool for vertex data chunks of buckets when not pooled */
+	private ChunkPool mChunkPool = ChunkPool.DEFAULT;
+
+	public RenderBuckets() {
+		mPool = null;
+	}
+
+	RenderBuckets(BucketPool pool) {
+		mPool = pool;
+	}
+
+	/**
+	 * Use 'pool' for vertex data chunks of buckets added from now on,
+	 * e.g. the pool of the loader that creates these RenderBuckets.
+	 * RenderBuckets from a {@link BucketPool} use its ChunkPool.
+	 */
+	public void setChunkPool(ChunkPool pool) {
+		mChunkPool = pool;
+	}
+
+	/**
+	 * @return pool for vertex data chunks of buckets, to be set on buckets
+	 *         created outside of these RenderBuckets on the same thread.
+	 */
+	public ChunkPool getChunkPool() {
+		if (mPool != null)
+			return mPool.getChunkPool();
+		return mChunkPool;
+	}
+
 	/**
 	 * add the LineBucket for a level with a given Line style. Levels are
 	 * ordered from bottom (0) to top
@@ -175,7 +213,7 @@ public class RenderBuckets extends TileData {
 		return buckets;
 	}
 
-	private RenderBucket getBucket(int level, int type) {
+	RenderBucket getBucket(int level, int type) {
 		RenderBucket bucket = null;
 
 		if (mCurBucket != null && mCurBucket.level == level) {
@@ -215,19 +253,12 @@ public class RenderBuckets extends TileData {
 
 		if (bucket == null) {
 			/* add a new RenderElement */
-			if (type == LINE)
-				bucket = new LineBucket(level);
-			else if (type == POLYGON)
-				bucket = new PolygonBucket(level);
-			else if (type == TEXLINE)
-				bucket = new LineTexBucket(level);
-			else if (type == MESH)
-				bucket = new MeshBucket(level);
-			else if (type == HAIRLINE)
-				bucket = new HairLineBucket(level);
-
-			if (bucket == null)
-				throw new IllegalArgumentException();
+			if (mPool != null) {
+				bucket = mPool.get(type, level);
+			} else {
+				bucket = createBucket(type, level);
+				bucket.setChunkPool(mChunkPool);
+			}
 
 			if (b == null) {
 				/** insert at start */
@@ -254,6 +285,21 @@ public class RenderBuckets extends TileData {
 		return bucket;
 	}
 
+	static RenderBucket createBucket(int type, int level) {
+		if (type == LINE)
+			return new LineBucket(level);
+		if (type == POLYGON)
+			return new PolygonBucket(level);
+		if (type == TEXLINE)
+			return new LineTexBucket(level);
+		if (type == MESH)
+			return new MeshBucket(level);
+		if (type == HAIRLINE)
+			return new HairLineBucket(level);
+
+		throw new IllegalArgumentException();
+	}
+
 	private int countVboSize() {
 		int vboShorts = 0;
 
@@ -283,14 +329,42 @@ public class RenderBuckets extends TileData {
 		buckets.mCurBucket = null;
 	}
 
+	@Override
+	protected int getSize() {
+		int size = 0;
+		for (RenderBucket b = buckets; b != null; b = b.next)
+			size += b.getSize();
+
+		if (mVboData != null)
+			size += mVboData.position() * SHORT_BYTES;
+		if (mIboData != null)
+			size += mIboData.position() * SHORT_BYTES;
+
+		if (vbo != null)
+			size += vbo.getSize();
+		if (ibo != null)
+			size += ibo.getSize();
+
+		return size;
+	}
+
 	/** cleanup only when buckets are not used by tile or bucket anymore! */
 	public void clear() {
-		/* NB: set null calls clear() on each bucket! */
-		set(null);
+		if (mPool != null) {
+			/* clears and returns buckets to pool */
+			RenderBucket list = buckets;
+			buckets = null;
+			mPool.releaseAll(list);
+		} else {
+			/* NB: set null calls clear() on each bucket! */
+			set(null);
+		}
 		mCurBucket = null;
 
 		vbo = BufferObject.release(vbo);
 		ibo = BufferObject.release(ibo);
+
+		releasePrepared();
 	}
 
 	/** cleanup only when buckets are not used by tile or bucket anymore! */
@@ -305,6 +379,11 @@ public class RenderBuckets extends TileData {
 	@Override
 	protected void dispose() {
 		clear();
+
+		if (mPool != null) {
+			offset[0] = offset[1] = 0;
+			mPool.release(this);
+		}
 	}
 
 	public void prepare() {
@@ -321,7 +400,103 @@ public class RenderBuckets extends TileData {
 
 	}
 
+	/**
+	 * Compile vertex and index data into native buffers off the GL-Thread.
+	 * Then {@link #compile(boolean)} only needs to upload the buffers.
+	 * Note: All vertex data is moved into the buffers, i.e. nothing
+	 * can be added to the buckets afterwards.
+	 * 
+	 * @param addFill
+	 *            add fill coordinates (see {@link #compile(boolean)}).
+	 *            The value passed to compile() is ignored when buffers
+	 *            have been prepared.
+	 * @return true when buffers were prepared, false when there is no data
+	 *         or buckets contain items that can only be compiled on
+	 *         GL-Thread.
+	 */
+	public boolean prepareBuffers(boolean addFill) {
+		releasePrepared();
+
+		for (RenderBucket l = buckets; l != null; l = l.next) {
+			if (l.type != LINE && l.type != TEXLINE && l.type != POLYGON
+			        && l.type != MESH && l.type != HAIRLINE)
+				return false;
+		}
+
+		int vboSize = countVboSize();
+		if (vboSize <= 0)
+			return false;
+
+		if (addFill)
+			vboSize += 8;
+
+		int iboSize = countIboSize();
+
+		ShortBuffer vboData = SharedBufferPool.get(vboSize);
+		ShortBuffer iboData = null;
+		if (iboSize > 0)
+			iboData = SharedBufferPool.get(iboSize);
+
+		if (!compileData(vboData, vboSize, iboData, iboSize, addFill)) {
+			SharedBufferPool.release(vboData);
+			SharedBufferPool.release(iboData);
+			return false;
+		}
+
+		mVboData = vboData;
+		mIboData = iboData;
+		return true;
+	}
+
+	/**
+	 * @return true when buffers are prepared for upload.
+	 */
+	public boolean isPrepared() {
+		return mVboData != null;
+	}
+
+	/** @return vertex data from prepareBuffers(), null when not prepared */
+	ShortBuffer getPreparedVertices() {
+		return mVboData;
+	}
+
+	/** @return index data from prepareBuffers(), may be null */
+	ShortBuffer getPreparedIndices() {
+		return mIboData;
+	}
+
+	/**
+	 * Set vertex and index data for buckets that were restored with
+	 * vertex offsets, see {@link BucketCache}. Buffers must be from
+	 * SharedBufferPool.
+	 */
+	void setPrepared(ShortBuffer vboData, ShortBuffer iboData) {
+		releasePrepared();
+		mVboData = vboData;
+		mIboData = iboData;
+	}
+
+	private void releasePrepared() {
+		if (mVboData == null)
+			return;
+
+		SharedBufferPool.release(mVboData);
+		SharedBufferPool.release(mIboData);
+		mVboData = null;
+		mIboData = null;
+	}
+
+	/**
+	 * Compile and upload vertex and index data to VBO and IBO. Uses
+	 * buffers from {@link #prepareBuffers(boolean)} when available.
+	 * Only use on GL-Thread!
+	 * 
+	 * @param addFill
+	 *            add fill coordinates at start of VBO
+	 */
 	public boolean compile(boolean addFill) {
+		if (mVboData != null)
+			return uploadPrepared();
 
 		int vboSize = countVboSize();
 
@@ -336,9 +511,6 @@ public class RenderBuckets extends TileData {
 
 		ShortBuffer vboData = MapRenderer.getShortBuffer(vboSize);
 
-		if (addFill)
-			vboData.put(fillCoords, 0, 8);
-
 		ShortBuffer iboData = null;
 
 		int iboSize = countIboSize();
@@ -346,6 +518,53 @@ public class RenderBuckets extends TileData {
 			iboData = MapRenderer.getShortBuffer(iboSize);
 		}
 
+		if (!compileData(vboData, vboSize, iboData, iboSize, addFill))
+			return false;
+
+		upload(vboData, iboData);
+
+		return true;
+	}
+
+	private boolean uploadPrepared() {
+		ShortBuffer vboData = mVboData;
+		ShortBuffer iboData = mIboData;
+		mVboData = null;
+		mIboData = null;
+
+		upload(vboData, iboData);
+
+		/* GL might still read from buffers until the frame is done */
+		SharedBufferPool.releaseUploaded(vboData);
+		SharedBufferPool.releaseUploaded(iboData);
+		return true;
+	}
+
+	private void upload(ShortBuffer vboData, ShortBuffer iboData) {
+		int vboSize = vboData.position();
+
+		if (vbo == null)
+			vbo = BufferObject.get(GL.ARRAY_BUFFER, vboSize);
+
+		vbo.loadBufferData(vboData.flip(), vboSize * 2);
+
+		if (iboData == null)
+			return;
+
+		int iboSize = iboData.position();
+
+		if (ibo == null)
+			ibo = BufferObject.get(GL.ELEMENT_ARRAY_BUFFER, iboSize);
+
+		ibo.loadBufferData(iboData.flip(), iboSize * 2);
+	}
+
+	private boolean compileData(ShortBuffer vboData, int vboSize,
+	        ShortBuffer iboData, int iboSize, boolean addFill) {
+
+		if (addFill)
+			vboData.put(fillCoords, 0, 8);
+
 		int pos = addFill ? 4 : 0;
 
 		for (RenderBucket l = buckets; l != null; l = l.next) {
@@ -391,18 +610,6 @@ public class RenderBuckets extends TileData {
 			return false;
 		}
 
-		if (vbo == null)
-			vbo = BufferObject.get(GL.ARRAY_BUFFER, vboSize);
-
-		vbo.loadBufferData(vboData.flip(), vboSize * 2);
-
-		if (iboSize > 0) {
-			if (ibo == null)
-				ibo = BufferObject.get(GL.ELEMENT_ARRAY_BUFFER, iboSize);
-
-			ibo.loadBufferData(iboData.flip(), iboSize * 2);
-		}
-
 		return true;
 	}
 
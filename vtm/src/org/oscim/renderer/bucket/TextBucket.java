@@ -18,6 +18,8 @@ package org.oscim.renderer.bucket;
 
 import static org.oscim.renderer.MapRenderer.COORD_SCALE;
 
+import java.nio.ShortBuffer;
+
 import org.oscim.backend.CanvasAdapter;
 import org.oscim.backend.canvas.Canvas;
 import org.slf4j.Logger;
@@ -34,6 +36,9 @@ public class TextBucket extends TextureBucket {
 	public TextItem labels;
 	protected final Canvas mCanvas;
 
+	/** optional cache of rasterized labels */
+	protected LabelCache mCache;
+
 	public TextItem getLabels() {
 		return labels;
 	}
@@ -49,6 +54,13 @@ public class TextBucket extends TextureBucket {
 		level = -1;
 	}
 
+	/**
+	 * Use LabelCache to keep rasterized labels between prepare() passes.
+	 */
+	public void setCache(LabelCache cache) {
+		mCache = cache;
+	}
+
 	public void addText(TextItem item) {
 		TextItem it = labels;
 
@@ -83,6 +95,11 @@ public class TextBucket extends TextureBucket {
 
 	@Override
 	public void prepare() {
+		if (mCache != null) {
+			prepareCached();
+			return;
+		}
+
 		int numIndices = 0;
 		int offsetIndices = 0;
 
@@ -158,6 +175,59 @@ public class TextBucket extends TextureBucket {
 		t.indices = (numIndices - offsetIndices);
 	}
 
+	private void prepareCached() {
+		LabelCache cache = mCache;
+		cache.begin();
+
+		LabelCache.Entry e = null;
+		for (TextItem it = labels; it != null; it = it.next)
+			e = cache.add(it, e);
+
+		int numIndices = 0;
+		TextureItem last = null;
+
+		/* add items grouped by page */
+		for (int i = 0, n = cache.getNumPages(); i < n; i++) {
+			LabelCache.Page p = cache.getPage(i);
+			int numItems = p.items.size();
+			if (numItems == 0)
+				continue;
+
+			TextureItem t = cache.getTexture(p);
+			t.offset = numIndices;
+
+			for (int j = 0; j < numItems; j++) {
+				e = p.itemEntries.get(j);
+				addItem(p.items.get(j), e.width, e.height, e.x, e.y);
+
+				numIndices += TextureBucket.INDICES_PER_SPRITE;
+				numVertices += 4;
+			}
+			t.indices = numIndices - t.offset;
+
+			p.items.clear();
+			p.itemEntries.clear();
+
+			if (last == null)
+				textures = t;
+			else
+				last.next = t;
+			last = t;
+		}
+	}
+
+	@Override
+	protected void compile(ShortBuffer vboData, ShortBuffer iboData) {
+		if (mCache == null) {
+			super.compile(vboData, iboData);
+			return;
+		}
+		/* pages may be modified by next prepare() meanwhile */
+		mCache.upload(textures);
+
+		compileVertexItems(vboData);
+	}
+
 	protected void addItem(TextItem it,
 	        float width, float height, float x, float y) {
 		/* texture coordinates */
@@ -68,6 +68,15 @@ public class TextureBucket extends RenderBucket {
 		compileVertexItems(vboData);
 	}
 
+	@Override
+	protected int getSize() {
+		int size = super.getSize();
+		/* RGBA textures */
+		for (TextureItem t = textures; t != null; t = t.next)
+			size += t.width * t.height * 4;
+		return size;
+	}
+
 	protected void clear() {
 		while (textures != null)
 			textures = textures.dispose();
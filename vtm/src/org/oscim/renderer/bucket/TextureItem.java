@@ -91,7 +91,10 @@ public class TextureItem extends Inlist<TextureItem> {
 		clone.ref = (ti.ref == null) ? ti : ti.ref;
 		clone.loaded = ti.loaded;
 
-		clone.ref.used++;
+		/* clones may be created and disposed on different threads */
+		synchronized (clone.ref) {
+			clone.ref.used++;
+		}
 
 		return clone;
 	}
@@ -213,12 +216,14 @@ public class TextureItem extends Inlist<TextureItem> {
 				return false;
 
 			if (t.ref != null) {
-				/* dispose texture if this clone holds the last handle */
-				if (t.ref.used == 0) {
-					t.ref.dispose();
-					return false;
+				synchronized (t.ref) {
+					/* dispose texture if this clone holds the last handle */
+					if (t.ref.used == 0) {
+						t.ref.dispose();
+						return false;
+					}
+					t.ref.used--;
 				}
-				t.ref.used--;
 				return false;
 			}
 
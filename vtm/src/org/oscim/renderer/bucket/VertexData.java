@@ -21,7 +21,6 @@ import java.nio.ShortBuffer;
 import org.oscim.renderer.bucket.VertexData.Chunk;
 import org.oscim.utils.FastMath;
 import org.oscim.utils.pool.Inlist;
-import org.oscim.utils.pool.SyncPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,31 +40,27 @@ public class VertexData extends Inlist.List<Chunk> {
 	 */
 	public static final int SIZE = 360;
 
-	/**
-	 * Shared chunk pool size.
-	 */
-	private static final int MAX_POOL = 500;
-
 	public static class Chunk extends Inlist<Chunk> {
 		public final short[] vertices = new short[SIZE];
 		public int used;
 	};
 
-	private static class Pool extends SyncPool<Chunk> {
-		public Pool() {
-			super(MAX_POOL);
-		}
+	/** pool to get and release chunks */
+	private ChunkPool pool = ChunkPool.DEFAULT;
 
-		@Override
-		protected Chunk createItem() {
-			return new Chunk();
-		}
+	/**
+	 * Set the pool for chunks. Only change while empty.
+	 */
+	void setPool(ChunkPool pool) {
+		this.pool = pool;
+	}
 
-		@Override
-		protected boolean clearItem(Chunk it) {
-			it.used = 0;
-			return true;
-		}
+	/** @return number of chunks */
+	public int countChunks() {
+		int n = 0;
+		for (Chunk it = head(); it != null; it = it.next)
+			n++;
+		return n;
 	}
 
 	public int countSize() {
@@ -94,8 +89,6 @@ public class VertexData extends Inlist.List<Chunk> {
 		return super.clear();
 	}
 
-	private final static Pool pool = new Pool();
-
 	public void dispose() {
 		pool.releaseAll(super.clear());
 		used = SIZE; /* set SIZE to get new item on add */
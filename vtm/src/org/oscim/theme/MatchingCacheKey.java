@@ -20,50 +20,34 @@ import org.oscim.core.Tag;
 import org.oscim.core.TagSet;
 
 class MatchingCacheKey {
-	int mHash;
-	Tag[] mTags;
-
-	MatchingCacheKey() {
-	}
-
-	MatchingCacheKey(MatchingCacheKey key) {
-		mTags = key.mTags;
-		mHash = key.mHash;
-	}
-
-	/** set temporary values for comparison */
-	boolean set(TagSet tags, MatchingCacheKey compare) {
-		int numTags = tags.numTags;
-
-		/* Test if tags are equal to previous query */
-		if (compare != null && numTags == compare.mTags.length) {
-			int i = 0;
-			for (; i < numTags; i++) {
-				Tag t1 = tags.tags[i];
-				Tag t2 = compare.mTags[i];
-
-				if (!(t1 == t2 || (t1.key == t2.key && t1.value == t2.value)))
-					break;
-			}
-			if (i == numTags)
-				return true;
-		}
-
-		/* Clone tags as they belong to TileDataSource.
-		 * Also needed for comparison if previous tags
-		 * were equal. */
-		mTags = new Tag[numTags];
+	final int mHash;
+	final Tag[] mTags;
+	final int mNumTags;
+
+	/**
+	 * Temporary key for lookup, references the tags array of TagSet
+	 * without copying.
+	 */
+	MatchingCacheKey(TagSet tags) {
+		mTags = tags.tags;
+		mNumTags = tags.numTags;
 
 		int result = 7;
-		for (int i = 0; i < numTags; i++) {
-			Tag t = tags.tags[i];
-			result = 31 * result + t.hashCode();
-			mTags[i] = t;
-		}
+		for (int i = 0; i < mNumTags; i++)
+			result = 31 * result + mTags[i].hashCode();
 
 		mHash = 31 * result;
+	}
 
-		return false;
+	/**
+	 * Key to be stored in cache. Clone tags as they belong to
+	 * TileDataSource.
+	 */
+	MatchingCacheKey(MatchingCacheKey key) {
+		mNumTags = key.mNumTags;
+		mTags = new Tag[mNumTags];
+		System.arraycopy(key.mTags, 0, mTags, 0, mNumTags);
+		mHash = key.mHash;
 	}
 
 	@Override
@@ -76,8 +60,8 @@ class MatchingCacheKey {
 
 		MatchingCacheKey other = (MatchingCacheKey) obj;
 
-		int length = mTags.length;
-		if (length != other.mTags.length)
+		int length = mNumTags;
+		if (length != other.mNumTags)
 			return false;
 
 		for (int i = 0; i < length; i++) {
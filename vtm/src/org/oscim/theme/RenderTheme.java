@@ -18,22 +18,27 @@ package org.oscim.theme;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.oscim.core.GeometryBuffer.GeometryType;
 import org.oscim.core.TagSet;
 import org.oscim.theme.rule.Rule;
 import org.oscim.theme.rule.Rule.Element;
 import org.oscim.theme.rule.Rule.RuleVisitor;
+import org.oscim.theme.rule.RuleIndex;
 import org.oscim.theme.styles.RenderStyle;
-import org.oscim.utils.LRUCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class RenderTheme implements IRenderTheme {
 	static final Logger log = LoggerFactory.getLogger(RenderTheme.class);
 
-	private static final int MATCHING_CACHE_SIZE = 512;
+	/** Cache is cleared when it grows beyond this number of tag sets */
+	private static final int MATCHING_CACHE_SIZE = 2048;
+
+	/** NOTE: maximum zoom level supported is 32 */
+	private static final int MAX_ZOOM = 32;
 
 	private final float mBaseTextSize;
 	private final int mMapBackground;
@@ -41,33 +46,52 @@ public class RenderTheme implements IRenderTheme {
 	private final int mLevels;
 	private final Rule[] mRules;
 
-	class RenderStyleCache {
+	/**
+	 * Rules and matched styles for one geometry type. Can be used
+	 * concurrently by all TileLoaders.
+	 */
+	static class RenderStyleCache {
 		final int matchType;
-		final LRUCache<MatchingCacheKey, RenderStyleItem> cache;
-		final MatchingCacheKey cacheKey;
-
-		/* temporary matching instructions list */
-		final ArrayList<RenderStyle> instructionList;
-
-		RenderStyleItem prevItem;
+		final RuleIndex rules;
+		final ConcurrentHashMap<MatchingCacheKey, RenderStyleItem> cache;
+		final AtomicInteger size = new AtomicInteger();
 
-		public RenderStyleCache(int type) {
-			cache = new LRUCache<MatchingCacheKey, RenderStyleItem>(MATCHING_CACHE_SIZE);
-			instructionList = new ArrayList<RenderStyle>(4);
-			cacheKey = new MatchingCacheKey();
+		RenderStyleCache(Rule[] rules, int type) {
+			this.rules = new RuleIndex(rules, type);
+			cache = new ConcurrentHashMap<MatchingCacheKey, RenderStyleItem>();
 			matchType = type;
 		}
 
-		RenderStyleItem getRenderInstructions() {
-			return cache.get(cacheKey);
+		void clear() {
+			cache.clear();
+			size.set(0);
 		}
 	}
 
-	class RenderStyleItem {
-		RenderStyleItem next;
-		int zoom;
-		RenderStyle[] list;
-		MatchingCacheKey key;
+	/**
+	 * Styles matched for one set of tags per zoom-level. Zoom-levels with
+	 * the same styles share the same array.
+	 */
+	static class RenderStyleItem {
+		/* copy-on-write */
+		volatile RenderStyle[][] levels = new RenderStyle[MAX_ZOOM][];
+
+		synchronized RenderStyle[] add(int zoomLevel, RenderStyle[] styles) {
+			RenderStyle[][] l = levels;
+
+			/* check if same styles are used in another level */
+			for (RenderStyle[] other : l) {
+				if (other != null && Arrays.equals(other, styles)) {
+					styles = other;
+					break;
+				}
+			}
+			RenderStyle[][] copy = new RenderStyle[MAX_ZOOM][];
+			System.arraycopy(l, 0, copy, 0, MAX_ZOOM);
+			copy[zoomLevel] = styles;
+			levels = copy;
+			return styles;
+		}
 	}
 
 	private final RenderStyleCache[] mStyleCache;
@@ -82,16 +106,16 @@ public class RenderTheme implements IRenderTheme {
 		mRules = rules;
 
 		mStyleCache = new RenderStyleCache[3];
-		mStyleCache[0] = new RenderStyleCache(Element.NODE);
-		mStyleCache[1] = new RenderStyleCache(Element.LINE);
-		mStyleCache[2] = new RenderStyleCache(Element.POLY);
+		mStyleCache[0] = new RenderStyleCache(rules, Element.NODE);
+		mStyleCache[1] = new RenderStyleCache(rules, Element.LINE);
+		mStyleCache[2] = new RenderStyleCache(rules, Element.POLY);
 	}
 
 	@Override
 	public void dispose() {
 
 		for (int i = 0; i < 3; i++)
-			mStyleCache[i].cache.clear();
+			mStyleCache[i].clear();
 
 		for (Rule rule : mRules)
 			rule.dispose();
@@ -107,146 +131,77 @@ public class RenderTheme implements IRenderTheme {
 		return mMapBackground;
 	}
 
-	//AtomicInteger hitCount = new AtomicInteger(0);
-	//AtomicInteger missCount = new AtomicInteger(0);
-	//AtomicInteger sameCount = new AtomicInteger(0);
-
+	/**
+	 * Lock-free: the cache is shared by all TileLoaders. On a miss the
+	 * rules are matched by the calling thread, concurrent misses for the
+	 * same tags produce the same result.
+	 */
 	@Override
 	public RenderStyle[] matchElement(GeometryType geometryType, TagSet tags, int zoomLevel) {
 
-		/* list of items in cache */
-		RenderStyleItem ris = null;
-
-		/* the item matching tags and zoomlevel */
-		RenderStyleItem ri = null;
-
 		int type = geometryType.nativeInt;
 		if (type < 1 || type > 3) {
 			log.debug("invalid geometry type for RenderTheme " + geometryType.name());
 			return null;
 		}
 
-		RenderStyleCache cache = mStyleCache[type - 1];
-
-		/* NOTE: maximum zoom level supported is 32 */
-		int zoomMask = 1 << zoomLevel;
-
-		synchronized (cache) {
+		if (zoomLevel < 0 || zoomLevel >= MAX_ZOOM)
+			return null;
 
-			if ((cache.prevItem == null) || (cache.prevItem.zoom & zoomMask) == 0) {
-				/* previous instructions zoom does not match */
-				cache.cacheKey.set(tags, null);
-			} else {
-				/* compare if tags match previous instructions */
-				if (cache.cacheKey.set(tags, cache.prevItem.key)) {
-					ri = cache.prevItem;
-					//log.debug(hitCount + "/" + sameCount.incrementAndGet()
-					//        + "/" + missCount + "same hit " + tags);
-				}
-			}
+		RenderStyleCache cache = mStyleCache[type - 1];
 
-			if (ri == null) {
-				/* get instruction for current cacheKey */
-				ris = cache.getRenderInstructions();
+		MatchingCacheKey key = new MatchingCacheKey(tags);
+		RenderStyleItem ri = cache.cache.get(key);
 
-				for (ri = ris; ri != null; ri = ri.next) {
-					if ((ri.zoom & zoomMask) != 0) {
-						/* cache hit */
+		if (ri != null) {
+			RenderStyle[] styles = ri.levels[zoomLevel];
+			if (styles != null)
+				return (styles == Rule.EMPTY_STYLE) ? null : styles;
+		}
 
-						//log.debug(hitCount.incrementAndGet()
-						//       + "/" + sameCount + "/" + missCount
-						//       + " cache hit " + tags);
-						break;
+		/* cache miss */
+		key = new MatchingCacheKey(key);
+
+		ArrayList<RenderStyle> matches = new ArrayList<RenderStyle>(4);
+		cache.rules.matchElement(cache.matchType, key.mTags, 1 << zoomLevel, matches);
+
+		int size = matches.size();
+		if (size > 1) {
+			for (int i = 0; i < size - 1; i++) {
+				RenderStyle r = matches.get(i);
+				for (int j = i + 1; j < size; j++) {
+					if (matches.get(j) == r) {
+						log.debug("fix duplicate instruction! "
+						        + Arrays.deepToString(key.mTags)
+						        + " zoom:" + zoomLevel + " "
+						        + r.getClass().getName());
+						matches.remove(j--);
+						size--;
 					}
 				}
 			}
+		}
 
-			if (ri == null) {
-				/* cache miss */
-				//missCount.incrementAndGet();
-
-				List<RenderStyle> matches = cache.instructionList;
-				matches.clear();
-
-				for (Rule rule : mRules)
-					rule.matchElement(cache.matchType, cache.cacheKey.mTags, zoomMask, matches);
-
-				int size = matches.size();
-				if (size > 1) {
-					for (int i = 0; i < size - 1; i++) {
-						RenderStyle r = matches.get(i);
-						for (int j = i + 1; j < size; j++) {
-							if (matches.get(j) == r) {
-								log.debug("fix duplicate instruction! "
-								        + Arrays.deepToString(cache.cacheKey.mTags)
-								        + " zoom:" + zoomLevel + " "
-								        + r.getClass().getName());
-								matches.remove(j--);
-								size--;
-							}
-						}
-					}
-				}
-				/* check if same instructions are used in another level */
-				for (ri = ris; ri != null; ri = ri.next) {
-					if (size == 0) {
-						if (ri.list != null)
-							continue;
-
-						/* both matchinglists are empty */
-						break;
-					}
-
-					if (ri.list == null)
-						continue;
-
-					if (ri.list.length != size)
-						continue;
-
-					int i = 0;
-					for (RenderStyle r : ri.list) {
-						if (r != matches.get(i))
-							break;
-						i++;
-					}
-					if (i == size)
-						/* both matching lists contain the same items */
-						break;
-				}
-
-				if (ri != null) {
-					/* we found a same matchting list on another zoomlevel add
-					 * this zoom level to the existing RenderInstructionItem. */
-					ri.zoom |= zoomMask;
-
-					//log.debug(zoomLevel + " same instructions " + size + " "
-					//				+ Arrays.deepToString(tags));
-				} else {
-					//log.debug(zoomLevel + " new instructions " + size + " "
-					//				+ Arrays.deepToString(tags));
-
-					ri = new RenderStyleItem();
-					ri.zoom = zoomMask;
-
-					if (size > 0) {
-						ri.list = new RenderStyle[size];
-						matches.toArray(ri.list);
-					}
+		RenderStyle[] styles = Rule.EMPTY_STYLE;
+		if (size > 0) {
+			styles = new RenderStyle[size];
+			matches.toArray(styles);
+		}
 
-					/* attach this list to the one found for MatchingKey */
-					if (ris != null) {
-						ri.next = ris.next;
-						ri.key = ris.key;
-						ris.next = ri;
-					} else {
-						ri.key = new MatchingCacheKey(cache.cacheKey);
-						cache.cache.put(ri.key, ri);
-					}
-				}
+		if (ri == null) {
+			if (cache.size.incrementAndGet() > MATCHING_CACHE_SIZE) {
+				//log.debug("clear matching cache {}", type);
+				cache.clear();
 			}
-			cache.prevItem = ri;
+			ri = new RenderStyleItem();
+			RenderStyleItem prev = cache.cache.putIfAbsent(key, ri);
+			if (prev != null)
+				ri = prev;
 		}
-		return ri.list;
+
+		styles = ri.add(zoomLevel, styles);
+
+		return (styles == Rule.EMPTY_STYLE) ? null : styles;
 	}
 
 	@Override
@@ -16,6 +16,7 @@
  */
 package org.oscim.theme.rule;
 
+import java.util.Arrays;
 import java.util.List;
 
 import org.oscim.core.Tag;
@@ -46,6 +47,9 @@ public class Rule {
 	public final static RenderStyle[] EMPTY_STYLE = new RenderStyle[0];
 	public final static Rule[] EMPTY_RULES = new Rule[0];
 
+	/** minimum number of sub-rules to use a RuleIndex */
+	private final static int MIN_INDEX_SIZE = 8;
+
 	public final Rule[] subRules;
 	public final RenderStyle[] styles;
 
@@ -54,6 +58,9 @@ public class Rule {
 	public final boolean selectFirstMatch;
 	public final boolean selectWhenMatched;
 
+	/** Index of subRules, null when there are only a few */
+	private final RuleIndex mSubIndex;
+
 	Rule(int element, int zoom, int selector, Rule[] subRules, RenderStyle[] styles) {
 		this.element = element;
 		this.zoom = zoom;
@@ -63,18 +70,69 @@ public class Rule {
 
 		selectFirstMatch = (selector & Selector.FIRST) != 0;
 		selectWhenMatched = (selector & Selector.WHEN_MATCHED) != 0;
+
+		if (this.subRules.length >= MIN_INDEX_SIZE)
+			mSubIndex = new RuleIndex(this.subRules, Element.ANY);
+		else
+			mSubIndex = null;
 	}
 
 	public boolean matchesTags(Tag[] tags) {
 		return true;
 	}
 
+	/**
+	 * @return keys of which at least one must be present for this rule to
+	 *         match, or null when the rule may match without any specific
+	 *         key. Used by {@link RuleIndex}.
+	 */
+	String[] getRequiredKeys() {
+		return null;
+	}
+
+	/**
+	 * @return the value that must be present for the single required key,
+	 *         or null. Used by {@link RuleIndex}.
+	 */
+	String getRequiredValue() {
+		return null;
+	}
+
+	/**
+	 * @return hash of what this rule selects, i.e. element, zoom-levels,
+	 *         selector and tag filter. Sub-rules and styles are not
+	 *         included.
+	 */
+	public int filterHash() {
+		int h = getClass().getName().hashCode();
+		h = h * 31 + element;
+		h = h * 31 + zoom;
+		return h * 31 + (selectFirstMatch ? 1 : 0) + (selectWhenMatched ? 2 : 0);
+	}
+
 	public boolean matchElement(int type, Tag[] tags, int zoomLevel, List<RenderStyle> result) {
 		if (((element & type) == 0) || ((zoom & zoomLevel) == 0) || !matchesTags(tags))
 			return false;
 
 		boolean matched = false;
-		if (subRules != EMPTY_RULES) {
+		if (mSubIndex != null) {
+			/* only test sub-rules that can match: skipped rules would
+			 * not match and thus not change the 'matched' state */
+			for (int i : mSubIndex.select(tags, zoomLevel)) {
+				if (i < 0)
+					break;
+
+				Rule r = mSubIndex.get(i);
+				if (selectFirstMatch) {
+					if (matched ^ r.selectWhenMatched)
+						continue;
+				} else if (r.selectWhenMatched && !matched) {
+					continue;
+				}
+				if (r.matchElement(type, tags, zoomLevel, result))
+					matched = true;
+			}
+		} else if (subRules != EMPTY_RULES) {
 			if (selectFirstMatch) {
 				/* only add first matching rule and when-matched rules iff a
 				 * previous rule matched */
@@ -188,6 +246,16 @@ public class Rule {
 
 			return false;
 		}
+
+		@Override
+		String[] getRequiredKeys() {
+			return new String[] { mKey };
+		}
+
+		@Override
+		public int filterHash() {
+			return super.filterHash() * 31 + mKey.hashCode();
+		}
 	}
 
 	static class PositiveRuleV extends Rule {
@@ -207,6 +275,11 @@ public class Rule {
 
 			return false;
 		}
+
+		@Override
+		public int filterHash() {
+			return super.filterHash() * 31 + mValue.hashCode();
+		}
 	}
 
 	static class PositiveRuleKV extends Rule {
@@ -229,6 +302,22 @@ public class Rule {
 
 			return false;
 		}
+
+		@Override
+		String[] getRequiredKeys() {
+			return new String[] { mKey };
+		}
+
+		@Override
+		String getRequiredValue() {
+			return mValue;
+		}
+
+		@Override
+		public int filterHash() {
+			int h = super.filterHash() * 31 + mKey.hashCode();
+			return h * 31 + mValue.hashCode();
+		}
 	}
 
 	static class PositiveRuleMultiKV extends Rule {
@@ -277,6 +366,17 @@ public class Rule {
 				}
 			return false;
 		}
+
+		@Override
+		String[] getRequiredKeys() {
+			return mKeys;
+		}
+
+		@Override
+		public int filterHash() {
+			int h = super.filterHash() * 31 + Arrays.hashCode(mKeys);
+			return h * 31 + Arrays.hashCode(mValues);
+		}
 	}
 
 	static class NegativeRule extends Rule {
@@ -326,6 +426,13 @@ public class Rule {
 
 			return false;
 		}
+
+		@Override
+		public int filterHash() {
+			int h = super.filterHash() * 31 + Arrays.hashCode(keys);
+			h = h * 31 + Arrays.hashCode(values);
+			return h * 31 + (exclusive ? 1 : 0);
+		}
 	}
 
 	public static RuleBuilder builder() {
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.theme.rule;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.oscim.core.Tag;
+import org.oscim.theme.styles.RenderStyle;
+
+/**
+ * Index of a list of rules by the tag keys and key-value pairs they require.
+ * Selects the rules that can possibly match a set of tags, in their original
+ * order, without testing every rule. Rules which cannot be indexed (e.g.
+ * negative rules or rules that match any key) are always selected.
+ * <p>
+ * The index is immutable and can be used concurrently.
+ */
+public class RuleIndex {
+	private final static int[] EMPTY = new int[0];
+
+	private final Rule[] mRules;
+	private final int[] mZoom;
+
+	/** rules that are always selected */
+	private final int[] mAlways;
+
+	/** rules by required key */
+	private final HashMap<String, int[]> mByKey;
+
+	/** rules by required key and value */
+	private final HashMap<String, HashMap<String, int[]>> mByKeyValue;
+
+	/**
+	 * @param rules
+	 *            to index
+	 * @param element
+	 *            only include rules for Element type, or Element.ANY.
+	 */
+	public RuleIndex(Rule[] rules, int element) {
+		HashMap<String, ArrayList<Integer>> byKey =
+		        new HashMap<String, ArrayList<Integer>>();
+		HashMap<String, HashMap<String, ArrayList<Integer>>> byKeyValue =
+		        new HashMap<String, HashMap<String, ArrayList<Integer>>>();
+		ArrayList<Integer> always = new ArrayList<Integer>();
+		ArrayList<Rule> selected = new ArrayList<Rule>();
+
+		for (Rule r : rules) {
+			if ((r.element & element) == 0)
+				continue;
+
+			Integer idx = Integer.valueOf(selected.size());
+			selected.add(r);
+
+			String[] keys = r.getRequiredKeys();
+			if (keys == null) {
+				always.add(idx);
+				continue;
+			}
+
+			String value = r.getRequiredValue();
+			if (value != null && keys.length == 1) {
+				HashMap<String, ArrayList<Integer>> values = byKeyValue.get(keys[0]);
+				if (values == null) {
+					values = new HashMap<String, ArrayList<Integer>>();
+					byKeyValue.put(keys[0], values);
+				}
+				add(values, value, idx);
+				continue;
+			}
+
+			for (String key : keys)
+				add(byKey, key, idx);
+		}
+
+		mRules = new Rule[selected.size()];
+		selected.toArray(mRules);
+
+		mZoom = new int[mRules.length];
+		for (int i = 0; i < mRules.length; i++)
+			mZoom[i] = mRules[i].zoom;
+
+		mAlways = toArray(always);
+
+		mByKey = new HashMap<String, int[]>();
+		for (String key : byKey.keySet())
+			mByKey.put(key, toArray(byKey.get(key)));
+
+		mByKeyValue = new HashMap<String, HashMap<String, int[]>>();
+		for (String key : byKeyValue.keySet()) {
+			HashMap<String, ArrayList<Integer>> values = byKeyValue.get(key);
+			HashMap<String, int[]> v = new HashMap<String, int[]>();
+			for (String value : values.keySet())
+				v.put(value, toArray(values.get(value)));
+
+			mByKeyValue.put(key, v);
+		}
+	}
+
+	private static void add(HashMap<String, ArrayList<Integer>> map, String key, Integer idx) {
+		ArrayList<Integer> list = map.get(key);
+		if (list == null) {
+			list = new ArrayList<Integer>();
+			map.put(key, list);
+		}
+		list.add(idx);
+	}
+
+	private static int[] toArray(ArrayList<Integer> list) {
+		if (list.isEmpty())
+			return EMPTY;
+
+		int[] a = new int[list.size()];
+		for (int i = 0; i < a.length; i++)
+			a[i] = list.get(i).intValue();
+		return a;
+	}
+
+	public int size() {
+		return mRules.length;
+	}
+
+	/**
+	 * @return indices of rules that may match tags at zoomLevel in
+	 *         ascending order. Terminated by -1 when shorter than the
+	 *         returned array.
+	 */
+	int[] select(Tag[] tags, int zoomLevel) {
+		int numTags = tags.length;
+
+		/* one list per tag by key, one by key-value plus always */
+		int[][] lists = new int[numTags * 2 + 1][];
+		int numLists = 0;
+		int total = 0;
+
+		if (mAlways.length > 0) {
+			lists[numLists++] = mAlways;
+			total += mAlways.length;
+		}
+
+		for (int i = 0; i < numTags; i++) {
+			Tag t = tags[i];
+			int[] l = mByKey.get(t.key);
+			if (l != null) {
+				lists[numLists++] = l;
+				total += l.length;
+			}
+			HashMap<String, int[]> values = mByKeyValue.get(t.key);
+			if (values != null) {
+				l = values.get(t.value);
+				if (l != null) {
+					lists[numLists++] = l;
+					total += l.length;
+				}
+			}
+		}
+
+		int[] result = new int[total + 1];
+		if (total == 0) {
+			result[0] = -1;
+			return result;
+		}
+
+		/* merge sorted lists */
+		int[] pos = new int[numLists];
+		int cnt = 0;
+		int last = -1;
+
+		while (true) {
+			int min = Integer.MAX_VALUE;
+			int minList = -1;
+			for (int i = 0; i < numLists; i++) {
+				if (pos[i] < lists[i].length && lists[i][pos[i]] < min) {
+					min = lists[i][pos[i]];
+					minList = i;
+				}
+			}
+			if (minList < 0)
+				break;
+
+			pos[minList]++;
+
+			if (min == last)
+				continue;
+
+			last = min;
+
+			if ((mZoom[min] & zoomLevel) != 0)
+				result[cnt++] = min;
+		}
+		result[cnt] = -1;
+		return result;
+	}
+
+	/**
+	 * Match the indexed rules.
+	 *
+	 * @return true when any of the rules matched.
+	 */
+	public boolean matchElement(int type, Tag[] tags, int zoomLevel, List<RenderStyle> result) {
+		boolean matched = false;
+		for (int i : select(tags, zoomLevel)) {
+			if (i < 0)
+				break;
+			if (mRules[i].matchElement(type, tags, zoomLevel, result))
+				matched = true;
+		}
+		return matched;
+	}
+
+	Rule get(int i) {
+		return mRules[i];
+	}
+}
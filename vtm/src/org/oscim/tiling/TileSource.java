@@ -97,6 +97,14 @@ public abstract class TileSource {
 		return mFadeSteps;
 	}
 
+	/**
+	 * @return string that identifies the data of this TileSource, e.g. to
+	 *         key caches of data derived from its tiles.
+	 */
+	public String getSourceId() {
+		return getClass().getName() + options;
+	}
+
 	public TileSource setOption(String key, String value) {
 		options.put(key, value);
 		return this;
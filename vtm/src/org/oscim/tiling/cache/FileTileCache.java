@@ -0,0 +1,511 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.oscim.core.Tile;
+import org.oscim.tiling.ITileCache;
+import org.oscim.utils.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent tile cache for the JVM which stores one file per tile in a
+ * directory sharded by zoom level and tile column: {@code <dir>/z/x/y.tile}.
+ *
+ * The index of cached tiles and their sizes is kept in memory in LRU order
+ * and the cache is limited by the total size of stored tiles. Tiles are
+ * written to a temporary file which is renamed into place when the writer
+ * completes successfully, so that interrupted downloads never become visible.
+ *
+ * The index is persisted on {@link #dispose()} and removed while the cache is
+ * open. When the cache was not disposed properly the index is rebuilt from
+ * the directory content on the next start.
+ */
+public class FileTileCache implements ITileCache {
+
+	static final Logger log = LoggerFactory.getLogger(FileTileCache.class);
+	static final boolean dbg = false;
+
+	/** Default size limit of stored tiles in bytes */
+	public static final long DEFAULT_CACHE_SIZE = 256 * 1024 * 1024;
+
+	private static final String INDEX_FILE = "index";
+	private static final int INDEX_VERSION = 1;
+	private static final String TILE_SUFFIX = ".tile";
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private final File mCacheDir;
+
+	/** Tile key to tile size in access order, guarded by itself */
+	private final LinkedHashMap<Long, Integer> mIndex;
+	private long mCacheSize;
+	private long mCacheLimit;
+
+	private final AtomicLong mHits = new AtomicLong();
+	private final AtomicLong mMisses = new AtomicLong();
+
+	class CacheTileReader implements TileReader {
+		final InputStream mInputStream;
+		final Tile mTile;
+
+		public CacheTileReader(Tile tile, InputStream is) {
+			mTile = tile;
+			mInputStream = is;
+		}
+
+		@Override
+		public Tile getTile() {
+			return mTile;
+		}
+
+		@Override
+		public InputStream getInputStream() {
+			return mInputStream;
+		}
+	}
+
+	class CacheTileWriter implements TileWriter {
+		final OutputStream mOutputStream;
+		final Tile mTile;
+		final File mTempFile;
+		/** stream of mTempFile, used to sync before rename */
+		final FileOutputStream mFileStream;
+
+		CacheTileWriter(Tile tile, File tempFile, FileOutputStream fs, OutputStream os) {
+			mTile = tile;
+			mTempFile = tempFile;
+			mFileStream = fs;
+			mOutputStream = os;
+		}
+
+		@Override
+		public Tile getTile() {
+			return mTile;
+		}
+
+		@Override
+		public OutputStream getOutputStream() {
+			return mOutputStream;
+		}
+
+		@Override
+		public void complete(boolean success) {
+			saveTile(this, success);
+		}
+	}
+
+	/**
+	 * @param cacheDirectory
+	 *            the directory to store tiles, created when it does not exist.
+	 * @param cacheSize
+	 *            the size limit of stored tiles in bytes.
+	 */
+	public FileTileCache(File cacheDirectory, long cacheSize) {
+		mCacheDir = cacheDirectory;
+		mCacheLimit = cacheSize;
+		mIndex = new LinkedHashMap<Long, Integer>(1024, 0.75f, true);
+
+		if (!mCacheDir.isDirectory() && !mCacheDir.mkdirs())
+			throw new IllegalArgumentException("cannot create cache directory: " + mCacheDir);
+
+		File indexFile = new File(mCacheDir, INDEX_FILE);
+		if (!readIndex(indexFile))
+			rebuildIndex();
+
+		/* a stale index must not be used after a crash */
+		if (indexFile.exists() && !indexFile.delete())
+			log.warn("cannot remove index {}", indexFile);
+
+		removeTempFiles();
+		trimToSize();
+
+		log.debug("opened cache {}: {} tiles, {} bytes",
+		          mCacheDir, Integer.valueOf(mIndex.size()), Long.valueOf(mCacheSize));
+	}
+
+	public FileTileCache(File cacheDirectory) {
+		this(cacheDirectory, DEFAULT_CACHE_SIZE);
+	}
+
+	@Override
+	public TileReader getTile(Tile tile) {
+		Long key = Long.valueOf(tileKey(tile));
+
+		synchronized (mIndex) {
+			if (mIndex.get(key) == null) {
+				mMisses.incrementAndGet();
+				if (dbg)
+					log.debug("not in cache {}", tile);
+				return null;
+			}
+		}
+
+		InputStream is;
+		try {
+			is = new BufferedInputStream(new FileInputStream(tileFile(tile)));
+		} catch (FileNotFoundException e) {
+			/* removed externally */
+			synchronized (mIndex) {
+				Integer size = mIndex.remove(key);
+				if (size != null)
+					mCacheSize -= size.intValue();
+			}
+			mMisses.incrementAndGet();
+			return null;
+		}
+		mHits.incrementAndGet();
+
+		if (dbg)
+			log.debug("load tile {}", tile);
+
+		return new CacheTileReader(tile, is);
+	}
+
+	@Override
+	public TileWriter writeTile(Tile tile) {
+		File tempFile = null;
+		try {
+			tempFile = File.createTempFile("tile", TEMP_SUFFIX, mCacheDir);
+			FileOutputStream fs = new FileOutputStream(tempFile);
+			return new CacheTileWriter(tile, tempFile, fs, new BufferedOutputStream(fs));
+		} catch (IOException e) {
+			log.debug("{} cannot create cache file: {}", tile, e.getMessage());
+			if (tempFile != null)
+				tempFile.delete();
+		}
+		/* discard the data */
+		return new CacheTileWriter(tile, null, null, new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+			}
+		});
+	}
+
+	void saveTile(CacheTileWriter writer, boolean success) {
+		File tempFile = writer.mTempFile;
+		try {
+			if (success && writer.mFileStream != null) {
+				/* data must be on disk before the file is renamed into
+				 * place, otherwise a crash may leave an empty tile */
+				writer.mOutputStream.flush();
+				writer.mFileStream.getFD().sync();
+			}
+			writer.mOutputStream.close();
+		} catch (IOException e) {
+			log.debug("{} cache write: {}", writer.mTile, e.getMessage());
+			IOUtils.closeQuietly(writer.mOutputStream);
+			success = false;
+		}
+		if (tempFile == null)
+			return;
+
+		long size = tempFile.length();
+		if (!success || size == 0 || size > Integer.MAX_VALUE) {
+			tempFile.delete();
+			return;
+		}
+
+		Tile tile = writer.mTile;
+		File file = tileFile(tile);
+		File dir = file.getParentFile();
+		if (!dir.isDirectory())
+			dir.mkdirs();
+
+		Long key = Long.valueOf(tileKey(tile));
+
+		synchronized (mIndex) {
+			/* replacing an existing file is not atomic on all platforms */
+			if (file.exists())
+				file.delete();
+
+			if (!tempFile.renameTo(file)) {
+				log.debug("{} cannot store cache file", tile);
+				tempFile.delete();
+				Integer old = mIndex.remove(key);
+				if (old != null)
+					mCacheSize -= old.intValue();
+				return;
+			}
+
+			Integer old = mIndex.put(key, Integer.valueOf((int) size));
+			if (old != null)
+				mCacheSize -= old.intValue();
+
+			mCacheSize += size;
+			trimToSize();
+		}
+
+		if (dbg)
+			log.debug("store tile {} {}", tile, Long.valueOf(size));
+	}
+
+	@Override
+	public void setCacheSize(long size) {
+		synchronized (mIndex) {
+			mCacheLimit = size;
+			trimToSize();
+		}
+	}
+
+	public long getCacheSize() {
+		synchronized (mIndex) {
+			return mCacheSize;
+		}
+	}
+
+	public int getTileCount() {
+		synchronized (mIndex) {
+			return mIndex.size();
+		}
+	}
+
+	public long getHits() {
+		return mHits.get();
+	}
+
+	public long getMisses() {
+		return mMisses.get();
+	}
+
+	/**
+	 * @return the ratio of cache hits to all requests, 0 when nothing was
+	 *         requested yet.
+	 */
+	public float getHitRate() {
+		long hits = mHits.get();
+		long total = hits + mMisses.get();
+		return total == 0 ? 0 : (float) hits / total;
+	}
+
+	public void resetStatistics() {
+		mHits.set(0);
+		mMisses.set(0);
+	}
+
+	/**
+	 * Persist the index. The cache must not be used afterwards.
+	 */
+	public void dispose() {
+		synchronized (mIndex) {
+			writeIndex(new File(mCacheDir, INDEX_FILE));
+		}
+	}
+
+	/** Remove least recently used tiles until the size limit is met */
+	private void trimToSize() {
+		Iterator<Map.Entry<Long, Integer>> it = mIndex.entrySet().iterator();
+		while (mCacheSize > mCacheLimit && it.hasNext()) {
+			Map.Entry<Long, Integer> e = it.next();
+			it.remove();
+			mCacheSize -= e.getValue().intValue();
+
+			long key = e.getKey().longValue();
+			File file = tileFile(keyZoom(key), keyX(key), keyY(key));
+			if (!file.delete() && file.exists())
+				log.debug("cannot remove {}", file);
+		}
+	}
+
+	private boolean readIndex(File indexFile) {
+		if (!indexFile.isFile())
+			return false;
+
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+			if (in.readInt() != INDEX_VERSION)
+				return false;
+
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				long key = in.readLong();
+				int size = in.readInt();
+				mIndex.put(Long.valueOf(key), Integer.valueOf(size));
+				mCacheSize += size;
+			}
+			return true;
+		} catch (IOException e) {
+			log.debug("cannot read index: {}", e.getMessage());
+			mIndex.clear();
+			mCacheSize = 0;
+			return false;
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	private void writeIndex(File indexFile) {
+		File tempFile = new File(mCacheDir, INDEX_FILE + TEMP_SUFFIX);
+		DataOutputStream out = null;
+		boolean ok = false;
+		try {
+			FileOutputStream fs = new FileOutputStream(tempFile);
+			out = new DataOutputStream(new BufferedOutputStream(fs));
+			out.writeInt(INDEX_VERSION);
+			out.writeInt(mIndex.size());
+			/* iteration order is the LRU order */
+			for (Map.Entry<Long, Integer> e : mIndex.entrySet()) {
+				out.writeLong(e.getKey().longValue());
+				out.writeInt(e.getValue().intValue());
+			}
+			out.flush();
+			fs.getFD().sync();
+			out.close();
+			out = null;
+			ok = true;
+		} catch (IOException e) {
+			log.debug("cannot write index: {}", e.getMessage());
+		} finally {
+			IOUtils.closeQuietly(out);
+		}
+
+		if (!ok || !tempFile.renameTo(indexFile))
+			tempFile.delete();
+	}
+
+	/**
+	 * Scan the cache directory. Files are sorted by modification time as
+	 * best guess for the access order.
+	 */
+	private void rebuildIndex() {
+		ArrayList<File> files = new ArrayList<File>();
+		ArrayList<Long> keys = new ArrayList<Long>();
+
+		File[] zoomDirs = mCacheDir.listFiles();
+		if (zoomDirs == null)
+			return;
+
+		for (File zd : zoomDirs) {
+			int z = parseInt(zd.getName());
+			File[] columnDirs = zd.listFiles();
+			if (z < 0 || columnDirs == null)
+				continue;
+
+			for (File xd : columnDirs) {
+				int x = parseInt(xd.getName());
+				File[] tiles = xd.listFiles();
+				if (x < 0 || tiles == null)
+					continue;
+
+				for (File f : tiles) {
+					String name = f.getName();
+					if (!name.endsWith(TILE_SUFFIX))
+						continue;
+
+					int y = parseInt(name.substring(0, name.length() - TILE_SUFFIX.length()));
+					if (y < 0)
+						continue;
+
+					files.add(f);
+					keys.add(Long.valueOf(tileKey(z, x, y)));
+				}
+			}
+		}
+
+		Integer[] order = new Integer[files.size()];
+		final long[] modified = new long[files.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = Integer.valueOf(i);
+			modified[i] = files.get(i).lastModified();
+		}
+
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				long ma = modified[a.intValue()];
+				long mb = modified[b.intValue()];
+				return ma < mb ? -1 : (ma == mb ? 0 : 1);
+			}
+		});
+
+		for (Integer i : order) {
+			long size = files.get(i.intValue()).length();
+			mIndex.put(keys.get(i.intValue()), Integer.valueOf((int) size));
+			mCacheSize += size;
+		}
+	}
+
+	/** Remove leftovers of interrupted writes */
+	private void removeTempFiles() {
+		File[] files = mCacheDir.listFiles();
+		if (files == null)
+			return;
+
+		for (File f : files)
+			if (f.getName().endsWith(TEMP_SUFFIX))
+				f.delete();
+	}
+
+	private File tileFile(Tile tile) {
+		return tileFile(tile.zoomLevel, tile.tileX, tile.tileY);
+	}
+
+	private File tileFile(int z, int x, int y) {
+		return new File(mCacheDir, z + File.separator + x + File.separator + y + TILE_SUFFIX);
+	}
+
+	private static int parseInt(String s) {
+		try {
+			return Integer.parseInt(s);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	static long tileKey(Tile tile) {
+		return tileKey(tile.zoomLevel, tile.tileX, tile.tileY);
+	}
+
+	static long tileKey(int z, int x, int y) {
+		return ((long) z << 56) | ((long) x << 28) | y;
+	}
+
+	static int keyZoom(long key) {
+		return (int) (key >>> 56);
+	}
+
+	static int keyX(long key) {
+		return (int) ((key >>> 28) & 0xfffffff);
+	}
+
+	static int keyY(long key) {
+		return (int) (key & 0xfffffff);
+	}
+}
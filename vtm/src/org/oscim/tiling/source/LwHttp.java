@@ -363,7 +363,7 @@ public class LwHttp implements HttpEngine {
 		int pos = REQUEST_GET_START.length;
 		int len = REQUEST_GET_END.length;
 
-		pos = formatTilePath(tile, mRequestBuffer, pos);
+		pos = formatTilePath(mTileSource, mTilePath, tile, mRequestBuffer, pos);
 		System.arraycopy(REQUEST_GET_END, 0, mRequestBuffer, pos, len);
 		len += pos;
 
@@ -481,21 +481,24 @@ public class LwHttp implements HttpEngine {
 	}
 
 	/**
+	 * @param tileSource the UrlTileSource
+	 * @param tilePath optimized tile path, null to use the UrlFormatter
 	 * @param tile the Tile
 	 * @param buf to write url string
 	 * @param pos current position
 	 * @return new position
 	 */
-	private int formatTilePath(Tile tile, byte[] buf, int pos) {
-		if (mTilePath == null) {
-			String url = mTileSource.getUrlFormatter()
-			    .formatTilePath(mTileSource, tile);
+	static int formatTilePath(UrlTileSource tileSource, byte[][] tilePath,
+	        Tile tile, byte[] buf, int pos) {
+		if (tilePath == null) {
+			String url = tileSource.getUrlFormatter()
+			    .formatTilePath(tileSource, tile);
 			byte[] b = url.getBytes();
 			System.arraycopy(b, 0, buf, pos, b.length);
 			return pos + b.length;
 		}
 
-		for (byte[] b : mTilePath) {
+		for (byte[] b : tilePath) {
 			if (b.length == 1) {
 				if (b[0] == '/') {
 					buf[pos++] = '/';
@@ -518,6 +521,23 @@ public class LwHttp implements HttpEngine {
 
 	}
 
+	/**
+	 * @return the tile path for the optimized formatter replacing the
+	 *         default formatter, null when the tile source uses a custom
+	 *         UrlFormatter.
+	 */
+	static byte[][] makeTilePath(UrlTileSource tileSource) {
+		if (tileSource.getUrlFormatter() != UrlTileSource.URL_FORMATTER)
+			return null;
+
+		String[] path = tileSource.getTilePath();
+		byte[][] tilePath = new byte[path.length][];
+		for (int i = 0; i < path.length; i++)
+			tilePath[i] = path[i].getBytes();
+
+		return tilePath;
+	}
+
 	public static class LwHttpFactory implements HttpEngine.Factory {
 		private byte[][] mTilePath;
 
@@ -527,12 +547,9 @@ public class LwHttp implements HttpEngine {
 				return new LwHttp(tileSource, null);
 
 			/* use optimized formatter replacing the default */
-			if (mTilePath == null) {
-				String[] path = tileSource.getTilePath();
-				mTilePath = new byte[path.length][];
-				for (int i = 0; i < path.length; i++)
-					mTilePath[i] = path[i].getBytes();
-			}
+			if (mTilePath == null)
+				mTilePath = makeTilePath(tileSource);
+
 			return new LwHttp(tileSource, mTilePath);
 		}
 	}
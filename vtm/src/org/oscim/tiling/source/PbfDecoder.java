@@ -16,10 +16,15 @@
  */
 package org.oscim.tiling.source;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 import org.oscim.core.GeometryBuffer;
+import org.oscim.core.TagDictionary;
+import org.oscim.core.Tile;
+import org.oscim.tiling.ITileDataSink;
 import org.oscim.utils.UTF8Decoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -61,8 +66,16 @@ public abstract class PbfDecoder implements ITileDecoder {
 	}
 
 	private final static int BUFFER_SIZE = 1 << 15; // 32kb
+
+	/** current input, either the read buffer or data set by setInput() */
 	protected byte[] buffer = new byte[BUFFER_SIZE];
 
+	/** buffer for reading from InputStream */
+	private byte[] mReadBuffer = buffer;
+
+	/** copy of direct ByteBuffer input */
+	private byte[] mCopyBuffer;
+
 	// position in buffer
 	protected int bufferPos;
 
@@ -75,6 +88,7 @@ public abstract class PbfDecoder implements ITileDecoder {
 	// overall bytes of message read
 	private int mMsgPos;
 
+	/** null when decoding from memory */
 	private InputStream mInputStream;
 
 	private final UTF8Decoder mStringDecoder;
@@ -85,6 +99,7 @@ public abstract class PbfDecoder implements ITileDecoder {
 
 	public void setInputStream(InputStream is) {
 		mInputStream = is;
+		buffer = mReadBuffer;
 
 		bufferFill = 0;
 		bufferPos = 0;
@@ -93,7 +108,63 @@ public abstract class PbfDecoder implements ITileDecoder {
 		mMsgPos = 0;
 	}
 
+	/**
+	 * Decode from 'length' bytes of 'data' at 'offset'. The data is read in
+	 * place, it must not be modified until decoding is finished.
+	 */
+	public void setInput(byte[] data, int offset, int length) {
+		mInputStream = null;
+		buffer = data;
+
+		bufferPos = offset;
+		bufferFill = offset + length;
+		mBufferOffset = -offset;
+
+		mMsgPos = length;
+	}
+
+	/**
+	 * Decode tile from data in memory. Decoders that do not override this
+	 * method fall back to decoding from an InputStream.
+	 */
+	public boolean decode(Tile tile, ITileDataSink sink, byte[] data, int offset, int length)
+	        throws IOException {
+		return decode(tile, sink, new ByteArrayInputStream(data, offset, length));
+	}
+
+	/**
+	 * Decode tile from the remaining bytes of 'data'. Heap buffers are read
+	 * in place, direct buffers are copied once. The buffer position is not
+	 * modified.
+	 */
+	public boolean decode(Tile tile, ITileDataSink sink, ByteBuffer data)
+	        throws IOException {
+		int length = data.remaining();
+
+		if (data.hasArray())
+			return decode(tile, sink, data.array(),
+			              data.arrayOffset() + data.position(), length);
+
+		if (mCopyBuffer == null || mCopyBuffer.length < length)
+			mCopyBuffer = new byte[length];
+
+		int position = data.position();
+		data.get(mCopyBuffer, 0, length);
+		data.position(position);
+
+		return decode(tile, sink, mCopyBuffer, 0, length);
+	}
+
+	/**
+	 * Release resources of the decoder. It must not be used afterwards.
+	 */
+	public void dispose() {
+	}
+
 	protected int decodeVarint32() throws IOException {
+		/* fast path: the longest varint is available */
+		if (bufferFill - bufferPos >= 5)
+			return decodeVarint32Filled();
 
 		int bytesLeft = 0;
 		int val = 0;
@@ -115,9 +186,26 @@ public abstract class PbfDecoder implements ITileDecoder {
 	}
 
 	protected long decodeVarint64() throws IOException {
+		long val = 0;
+
+		/* fast path: the longest varint is available */
+		if (bufferFill - bufferPos >= 10) {
+			byte[] buf = buffer;
+			int pos = bufferPos;
+
+			for (int shift = 0; shift < 64; shift += 7) {
+				byte b = buf[pos++];
+				val |= (long) (b & 0x7f) << shift;
+
+				if (b >= 0) {
+					bufferPos = pos;
+					return val;
+				}
+			}
+			throw INVALID_VARINT;
+		}
 
 		int bytesLeft = 0;
-		long val = 0;
 
 		for (int shift = 0; shift < 64; shift += 7) {
 			if (bytesLeft == 0)
@@ -139,7 +227,8 @@ public abstract class PbfDecoder implements ITileDecoder {
 		String result;
 
 		final int size = decodeVarint32();
-		fillBuffer(size);
+		if (fillBuffer(size) < size)
+			throw TRUNCATED_MSG;
 
 		if (mStringDecoder == null)
 			result = new String(buffer, bufferPos, size, "UTF-8");
@@ -152,6 +241,24 @@ public abstract class PbfDecoder implements ITileDecoder {
 
 	}
 
+	/**
+	 * Decode string via the shared {@link TagDictionary}. Does not allocate
+	 * when the string was decoded before.
+	 * 
+	 * @param intern
+	 *            true when the result must be intern()alized, e.g. for keys.
+	 */
+	protected String decodeSharedString(boolean intern) throws IOException {
+		final int size = decodeVarint32();
+		if (fillBuffer(size) < size)
+			throw TRUNCATED_MSG;
+
+		String result = TagDictionary.shared.getString(buffer, bufferPos, size, intern);
+		bufferPos += size;
+
+		return result;
+	}
+
 	protected float decodeFloat() throws IOException {
 		if (bufferPos + 4 > bufferFill)
 			fillBuffer(4);
@@ -192,7 +299,8 @@ public abstract class PbfDecoder implements ITileDecoder {
 
 		float[] points = geom.points;
 		int bytes = decodeVarint32();
-		fillBuffer(bytes);
+		if (fillBuffer(bytes) < bytes)
+			throw TRUNCATED_MSG;
 
 		int cnt = 0;
 		int lastX = 0;
@@ -254,7 +362,8 @@ public abstract class PbfDecoder implements ITileDecoder {
 	        throws IOException {
 
 		int bytes = decodeVarint32();
-		fillBuffer(bytes);
+		if (fillBuffer(bytes) < bytes)
+			throw TRUNCATED_MSG;
 
 		int cnt = 0;
 		int lastX = 0;
@@ -321,7 +430,8 @@ public abstract class PbfDecoder implements ITileDecoder {
 
 	public void decodeVarintArray(int num, int[] array) throws IOException {
 		int bytes = decodeVarint32();
-		fillBuffer(bytes);
+		if (fillBuffer(bytes) < bytes)
+			throw TRUNCATED_MSG;
 
 		final byte[] buf = buffer;
 		int pos = bufferPos;
@@ -376,7 +486,9 @@ public abstract class PbfDecoder implements ITileDecoder {
 			array = new short[32];
 		}
 
-		fillBuffer(bytes);
+		if (fillBuffer(bytes) < bytes)
+			throw TRUNCATED_MSG;
+
 		int cnt = 0;
 
 		final byte[] buf = buffer;
@@ -478,6 +590,10 @@ public abstract class PbfDecoder implements ITileDecoder {
 		if (bytesLeft >= size)
 			return bytesLeft;
 
+		// all data is in memory
+		if (mInputStream == null)
+			return bytesLeft;
+
 		int maxSize = buffer.length;
 
 		if (size > maxSize) {
@@ -490,6 +606,7 @@ public abstract class PbfDecoder implements ITileDecoder {
 			byte[] tmp = buffer;
 			buffer = new byte[maxSize];
 			System.arraycopy(tmp, bufferPos, buffer, 0, bytesLeft);
+			mReadBuffer = buffer;
 
 			mBufferOffset += bufferPos;
 			bufferPos = 0;
@@ -0,0 +1,910 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.zip.GZIPInputStream;
+
+import org.oscim.core.Tile;
+import org.oscim.layers.tile.TileManager;
+import org.oscim.utils.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * HTTP engine that shares a small pool of keep-alive connections per host
+ * between all data sources created by one {@link PipelinedHttpFactory}.
+ * <p>
+ * Requests are written to the connection with the fewest outstanding
+ * requests without waiting for previous responses (HTTP/1.1 pipelining),
+ * up to maxPipeline requests per connection.
+ * Responses are read in order by whichever waiting thread gets the
+ * connection first and are buffered, so that each response is passed to
+ * its decoder as soon as it has arrived - a slow decoder does not block
+ * the following responses on the same connection.
+ * <p>
+ * Each loader waits for its own response, so at most one request per
+ * loader would be in flight. With
+ * {@link PipelinedHttpFactory#setPrefetch(UrlTileSource, TileManager)}
+ * requests for the next tiles of the job queue are sent ahead on free
+ * pipeline slots and are picked up by the loader that gets the tile.
+ * <p>
+ * Like {@link LwHttp} this does not do redirects, https, chunked transfer
+ * encoding or other stuff.
+ */
+public class PipelinedHttp implements HttpEngine {
+	static final Logger log = LoggerFactory.getLogger(PipelinedHttp.class);
+	static final boolean dbg = false;
+
+	private final static int MAX_REQUESTS_PER_CONNECTION = 100;
+	private final static long KEEPALIVE_TIMEOUT = (long) 10E9; // 10 second in nanosecond
+
+	private final static int CONNECT_TIMEOUT = 15000; // 15 seconds
+	private final static int SOCKET_TIMEOUT = 8000; // 8 seconds
+	/** max time to wait for a free pipeline slot */
+	private final static long PIPELINE_TIMEOUT = SOCKET_TIMEOUT;
+	/** drop prefetched responses that were not requested within this time */
+	private final static long PREFETCH_TIMEOUT = (long) 10E9; // 10 seconds in nanosecond
+
+	private final static int BUFFER_SIZE = 8192;
+
+	private final ConnectionPool mPool;
+	private final PipelinedHttpFactory mFactory;
+	private final UrlTileSource mTileSource;
+	private final byte[][] mTilePath;
+
+	/** next tiles to prefetch */
+	private final Tile[] mPrefetchTiles;
+
+	private final byte[] REQUEST_GET_START;
+	private final byte[] REQUEST_GET_END;
+	private final byte[] mRequestBuffer;
+
+	private Response mResponse;
+	private OutputStream mCache;
+
+	PipelinedHttp(UrlTileSource tileSource, byte[][] tilePath, ConnectionPool pool,
+	        PipelinedHttpFactory factory) {
+		mTileSource = tileSource;
+		mTilePath = tilePath;
+		mPool = pool;
+		mFactory = factory;
+		mPrefetchTiles = new Tile[pool.maxConnections * pool.maxPipeline];
+
+		REQUEST_GET_START = ("GET " + tileSource.getUrl().getPath()).getBytes();
+
+		StringBuilder sb = new StringBuilder()
+		    .append(" HTTP/1.1")
+		    .append("\r\nUser-Agent: vtm/0.5.9")
+		    .append("\r\nHost: ")
+		    .append(pool.host)
+		    .append("\r\nConnection: Keep-Alive");
+
+		for (Entry<String, String> l : tileSource.getRequestHeader().entrySet())
+			sb.append("\r\n").append(l.getKey()).append(": ").append(l.getValue());
+
+		sb.append("\r\n\r\n");
+
+		REQUEST_GET_END = sb.toString().getBytes();
+
+		mRequestBuffer = new byte[1024];
+		System.arraycopy(REQUEST_GET_START, 0,
+		                 mRequestBuffer, 0,
+		                 REQUEST_GET_START.length);
+	}
+
+	@Override
+	public void sendRequest(Tile tile) throws IOException {
+		byte[] request = formatRequest(tile);
+
+		Response r = mPool.claim(request);
+		if (r != null) {
+			if (dbg)
+				log.debug("prefetched: {}", tile);
+
+			synchronized (this) {
+				mResponse = r;
+			}
+		} else {
+			r = new Response(request);
+			synchronized (this) {
+				mResponse = r;
+			}
+			mPool.send(r);
+		}
+		prefetch();
+	}
+
+	private byte[] formatRequest(Tile tile) {
+		int pos = REQUEST_GET_START.length;
+		int len = REQUEST_GET_END.length;
+
+		pos = LwHttp.formatTilePath(mTileSource, mTilePath, tile, mRequestBuffer, pos);
+		System.arraycopy(REQUEST_GET_END, 0, mRequestBuffer, pos, len);
+		len += pos;
+
+		if (dbg)
+			log.debug("request: {}", new String(mRequestBuffer, 0, len));
+
+		byte[] request = new byte[len];
+		System.arraycopy(mRequestBuffer, 0, request, 0, len);
+		return request;
+	}
+
+	/**
+	 * Send requests for the next tiles of the job queue while there are
+	 * free pipeline slots.
+	 */
+	private void prefetch() {
+		TileManager tileManager = mFactory.getPrefetch(mTileSource);
+		if (tileManager == null)
+			return;
+
+		Tile[] tiles = mPrefetchTiles;
+		int n = tileManager.peekTileJobs(tiles);
+		try {
+			for (int i = 0; i < n; i++)
+				if (!mPool.prefetch(formatRequest(tiles[i])))
+					break;
+		} finally {
+			Arrays.fill(tiles, 0, n, null);
+		}
+	}
+
+	@Override
+	public InputStream read() throws IOException {
+		Response r;
+		synchronized (this) {
+			r = mResponse;
+		}
+		if (r == null)
+			throw new IOException("No Request");
+
+		try {
+			r.await();
+		} catch (IOException e) {
+			/* retry once when the connection was closed by the server
+			 * before the response was read, e.g. on an idle keep-alive
+			 * connection or after 'Connection: close' */
+			if (!r.retry)
+				throw e;
+
+			if (dbg)
+				log.debug("retry request: {}", e.getMessage());
+
+			r = new Response(r.request);
+			synchronized (this) {
+				mResponse = r;
+			}
+			mPool.send(r);
+			r.await();
+		}
+
+		InputStream is = new ByteArrayInputStream(r.data, 0, r.size);
+		if (r.gzip)
+			return new GZIPInputStream(is);
+
+		return is;
+	}
+
+	@Override
+	public synchronized void setCache(OutputStream os) {
+		mCache = os;
+	}
+
+	@Override
+	public boolean requestCompleted(boolean ok) {
+		Response r;
+		OutputStream cache;
+		synchronized (this) {
+			r = mResponse;
+			cache = mCache;
+			mResponse = null;
+			mCache = null;
+		}
+		if (r == null)
+			return false;
+
+		if (ok && cache != null) {
+			try {
+				cache.write(r.data, 0, r.size);
+			} catch (IOException e) {
+				log.debug("cache write: {}", e.getMessage());
+			}
+		}
+		return ok;
+	}
+
+	/**
+	 * Cancels the current request. The connection is shared with other
+	 * data sources and remains open, the response will be discarded.
+	 */
+	@Override
+	public void close() {
+		Response r;
+		synchronized (this) {
+			r = mResponse;
+		}
+		if (r != null)
+			r.cancel();
+	}
+
+	static final class Response {
+		final byte[] request;
+
+		Connection conn;
+
+		/* all guarded by this */
+		byte[] data;
+		int size;
+		boolean gzip;
+		boolean done;
+		boolean canceled;
+		boolean wakeup;
+		IOException error;
+		/** failed before the response was read */
+		boolean retry;
+
+		/** when a prefetched request was sent */
+		long sent;
+
+		Response(byte[] request) {
+			this.request = request;
+		}
+
+		/**
+		 * Wait for the response: Read it when the connection is free,
+		 * otherwise wait until it was read by another thread or the
+		 * reading thread has released the connection.
+		 */
+		void await() throws IOException {
+			while (true) {
+				synchronized (this) {
+					if (done) {
+						if (error != null)
+							throw error;
+						return;
+					}
+					if (canceled)
+						throw new IOException("Canceled");
+				}
+
+				if (conn.startReading()) {
+					conn.readUntil(this);
+					continue;
+				}
+
+				synchronized (this) {
+					while (!done && !canceled && !wakeup) {
+						try {
+							wait();
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							throw new IOException("Interrupted");
+						}
+					}
+					wakeup = false;
+				}
+			}
+		}
+
+		synchronized void cancel() {
+			canceled = true;
+			notifyAll();
+		}
+
+		synchronized void wakeup() {
+			wakeup = true;
+			notifyAll();
+		}
+
+		synchronized void complete(byte[] data, int size, boolean gzip) {
+			this.data = data;
+			this.size = size;
+			this.gzip = gzip;
+			done = true;
+			notifyAll();
+		}
+
+		synchronized void fail(IOException e, boolean retry) {
+			error = e;
+			this.retry = retry;
+			done = true;
+			notifyAll();
+		}
+	}
+
+	static final class Connection {
+		final InetSocketAddress addr;
+		final ConnectionPool pool;
+
+		/* all guarded by this */
+		Socket socket;
+		OutputStream out;
+		InputStream in;
+		final ArrayDeque<Response> pending = new ArrayDeque<Response>();
+		/** slots taken by ConnectionPool for requests about to be sent */
+		int reserved;
+		int requests;
+		long lastUsed;
+		/** a thread is reading responses */
+		boolean reading;
+		/** do not send more requests */
+		boolean closing;
+		boolean closed;
+
+		byte[] header = new byte[BUFFER_SIZE];
+
+		Connection(InetSocketAddress addr, ConnectionPool pool) {
+			this.addr = addr;
+			this.pool = pool;
+			lastUsed = System.nanoTime();
+		}
+
+		/**
+		 * Write request and append response to pending queue. Releases
+		 * the slot reserved by ConnectionPool.
+		 *
+		 * @return false when the connection cannot be used anymore.
+		 */
+		synchronized boolean send(Response r) throws IOException {
+			reserved--;
+
+			if (closed || closing)
+				return false;
+
+			if (socket == null) {
+				try {
+					socket = new Socket();
+					socket.setTcpNoDelay(true);
+					socket.setSoTimeout(SOCKET_TIMEOUT);
+					socket.connect(addr, CONNECT_TIMEOUT);
+					out = socket.getOutputStream();
+					in = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+				} catch (IOException e) {
+					fail(e);
+					throw e;
+				}
+			}
+
+			try {
+				out.write(r.request);
+			} catch (IOException e) {
+				/* requests that are already sent may still be answered,
+				 * just do not use this connection for new requests */
+				closing = true;
+				if (requests == 0)
+					fail(e);
+				return false;
+			}
+
+			r.conn = this;
+			pending.add(r);
+			lastUsed = System.nanoTime();
+
+			if (++requests >= MAX_REQUESTS_PER_CONNECTION)
+				closing = true;
+
+			return true;
+		}
+
+		/**
+		 * @return number of requests in flight, including reserved slots.
+		 */
+		synchronized int pending() {
+			return pending.size() + reserved;
+		}
+
+		synchronized void reserve() {
+			reserved++;
+		}
+
+		/**
+		 * @return true when the connection should be removed from pool.
+		 */
+		synchronized boolean expired(long now) {
+			if (closed || closing)
+				return true;
+
+			if (pending.isEmpty() && reserved == 0
+			        && now - lastUsed > KEEPALIVE_TIMEOUT) {
+				close();
+				return true;
+			}
+			return false;
+		}
+
+		synchronized boolean startReading() {
+			if (reading)
+				return false;
+
+			reading = true;
+			return true;
+		}
+
+		/**
+		 * Read responses in order until the response 'r' is completed.
+		 */
+		void readUntil(Response r) {
+			try {
+				while (true) {
+					Response head;
+					InputStream is;
+					synchronized (this) {
+						head = pending.peek();
+						is = in;
+					}
+					if (head == null)
+						break;
+
+					boolean close;
+					try {
+						close = readResponse(is, head);
+					} catch (IOException e) {
+						if (dbg)
+							log.debug("read failed: {}", e.getMessage());
+
+						fail(e);
+						break;
+					}
+
+					synchronized (this) {
+						/* pending could have been cleared by fail() */
+						if (pending.peek() == head)
+							pending.poll();
+						lastUsed = System.nanoTime();
+
+						if (close)
+							fail(new IOException("Connection closed"));
+						else if (closing && pending.isEmpty())
+							close();
+					}
+					if (head == r)
+						break;
+				}
+			} finally {
+				ArrayList<Response> waiting;
+				synchronized (this) {
+					reading = false;
+					waiting = new ArrayList<Response>(pending);
+				}
+				/* let one of the waiting threads continue reading */
+				for (Response w : waiting)
+					w.wakeup();
+
+				/* responses were read or failed: free pipeline slots */
+				pool.wakeup();
+			}
+		}
+
+		/**
+		 * @return true when the server requested to close the connection.
+		 */
+		private boolean readResponse(InputStream is, Response r) throws IOException {
+			boolean ok = false;
+			boolean gzip = false;
+			boolean close = false;
+			int contentLength = -1;
+
+			int len = readLine(is);
+			if (len < 0)
+				throw new IOException("Connection closed");
+
+			String status = new String(header, 0, len);
+			/* check only for OK ("HTTP/1.? ".length == 9) */
+			if (status.startsWith(" 200", 8))
+				ok = true;
+
+			while ((len = readLine(is)) > 0) {
+				String line = new String(header, 0, len);
+				int sep = line.indexOf(':');
+				if (sep < 0)
+					continue;
+
+				String key = line.substring(0, sep).trim();
+				String val = line.substring(sep + 1).trim();
+
+				if ("Content-Length".equalsIgnoreCase(key))
+					contentLength = Integer.parseInt(val);
+				else if ("Content-Encoding".equalsIgnoreCase(key))
+					gzip = "gzip".equalsIgnoreCase(val);
+				else if ("Connection".equalsIgnoreCase(key))
+					close = "close".equalsIgnoreCase(val);
+
+				if (dbg)
+					log.debug("> {} <", line);
+			}
+			if (len < 0)
+				throw new IOException("Connection closed");
+
+			byte[] data;
+			int size = 0;
+
+			if (contentLength >= 0) {
+				data = new byte[contentLength];
+				while (size < contentLength) {
+					int n = is.read(data, size, contentLength - size);
+					if (n < 0)
+						throw new IOException("Connection closed");
+					size += n;
+				}
+			} else {
+				/* read until end of stream */
+				close = true;
+				data = new byte[BUFFER_SIZE];
+				int n;
+				while ((n = is.read(data, size, data.length - size)) >= 0) {
+					size += n;
+					if (size == data.length) {
+						byte[] tmp = new byte[size * 2];
+						System.arraycopy(data, 0, tmp, 0, size);
+						data = tmp;
+					}
+				}
+			}
+
+			if (ok)
+				r.complete(data, size, gzip);
+			else
+				r.fail(new IOException("HTTP Error: " + status), false);
+
+			return close;
+		}
+
+		/**
+		 * Read a header line into 'header'.
+		 *
+		 * @return length of line without line break or -1 at end of stream.
+		 */
+		private int readLine(InputStream is) throws IOException {
+			int len = 0;
+			int c;
+			while ((c = is.read()) >= 0) {
+				if (c == '\n') {
+					if (len > 0 && header[len - 1] == '\r')
+						len--;
+					return len;
+				}
+				if (len == header.length)
+					throw new IOException("Header too large!");
+
+				header[len++] = (byte) c;
+			}
+			return -1;
+		}
+
+		/**
+		 * Close connection and fail all pending requests. These may be
+		 * sent again on another connection.
+		 */
+		synchronized void fail(IOException e) {
+			closed = true;
+			for (Response r : pending)
+				r.fail(e, true);
+
+			pending.clear();
+			close();
+		}
+
+		synchronized void close() {
+			closed = true;
+			IOUtils.closeQuietly(socket);
+			socket = null;
+			out = null;
+			in = null;
+		}
+	}
+
+	static final class ConnectionPool {
+		final String host;
+		final int port;
+		final int maxConnections;
+		final int maxPipeline;
+
+		private final ArrayList<Connection> mConnections = new ArrayList<Connection>();
+		private InetSocketAddress mSockAddr;
+
+		/** prefetched responses by request */
+		private final HashMap<String, Response> mPrefetched = new HashMap<String, Response>();
+
+		ConnectionPool(String host, int port, int maxConnections, int maxPipeline) {
+			this.host = host;
+			this.port = port;
+			this.maxConnections = maxConnections;
+			this.maxPipeline = maxPipeline;
+		}
+
+		void send(Response r) throws IOException {
+			/* try with a new connection when the chosen one was closed */
+			for (int i = 0; i <= maxConnections; i++) {
+				Connection c = getConnection(true);
+				boolean ok = false;
+				try {
+					ok = c.send(r);
+				} finally {
+					if (!ok)
+						wakeup();
+				}
+				if (ok)
+					return;
+			}
+			throw new IOException("No connection");
+		}
+
+		/**
+		 * Send 'request' when there is a free pipeline slot, without
+		 * waiting. The response is kept until it is claimed.
+		 * 
+		 * @return false when no slot was free.
+		 */
+		boolean prefetch(byte[] request) {
+			String key = new String(request);
+			long now = System.nanoTime();
+
+			synchronized (this) {
+				expirePrefetched(now);
+
+				if (mPrefetched.containsKey(key))
+					return true;
+
+				if (mPrefetched.size() >= maxConnections * maxPipeline)
+					return false;
+			}
+
+			Response r = new Response(request);
+			boolean ok = false;
+			try {
+				Connection c = getConnection(false);
+				if (c != null)
+					ok = c.send(r);
+			} catch (IOException e) {
+				if (dbg)
+					log.debug("prefetch failed: {}", e.getMessage());
+			} finally {
+				if (!ok)
+					wakeup();
+			}
+			if (!ok)
+				return false;
+
+			synchronized (this) {
+				r.sent = now;
+				mPrefetched.put(key, r);
+			}
+			return true;
+		}
+
+		/**
+		 * @return the prefetched response for 'request' or null.
+		 */
+		synchronized Response claim(byte[] request) {
+			if (mPrefetched.isEmpty())
+				return null;
+
+			return mPrefetched.remove(new String(request));
+		}
+
+		/** Drop responses of tiles that were not loaded after all. */
+		private void expirePrefetched(long now) {
+			Iterator<Response> it = mPrefetched.values().iterator();
+			while (it.hasNext()) {
+				if (now - it.next().sent > PREFETCH_TIMEOUT)
+					it.remove();
+			}
+		}
+
+		/**
+		 * Choose the connection with the fewest pending requests and
+		 * reserve a slot for the request on it. Opens a new connection
+		 * unless there is an idle one or maxConnections are open. Waits
+		 * while all maxConnections have maxPipeline requests pending.
+		 * 
+		 * @param wait
+		 *            false to return null instead of waiting.
+		 * @throws IOException
+		 *             when no pipeline slot was freed within
+		 *             PIPELINE_TIMEOUT.
+		 */
+		private synchronized Connection getConnection(boolean wait) throws IOException {
+			if (mSockAddr == null || mSockAddr.isUnresolved()) {
+				mSockAddr = new InetSocketAddress(host, port);
+				if (mSockAddr.isUnresolved())
+					throw new UnknownHostException(host);
+			}
+
+			long deadline = System.nanoTime() + PIPELINE_TIMEOUT * 1000000L;
+
+			while (true) {
+				long now = System.nanoTime();
+				Connection best = null;
+				int min = Integer.MAX_VALUE;
+
+				for (int i = mConnections.size() - 1; i >= 0; i--) {
+					Connection c = mConnections.get(i);
+					if (c.expired(now)) {
+						mConnections.remove(i);
+						continue;
+					}
+					int n = c.pending();
+					if (n < min) {
+						min = n;
+						best = c;
+					}
+				}
+
+				if (best == null || (min > 0 && mConnections.size() < maxConnections)) {
+					best = new Connection(mSockAddr, this);
+					mConnections.add(best);
+				} else if (min >= maxPipeline) {
+					if (!wait)
+						return null;
+
+					/* all pipelines are full: wait for a response */
+					long timeout = (deadline - now) / 1000000L;
+					if (timeout <= 0)
+						throw new IOException("Pipeline full");
+
+					if (dbg)
+						log.debug("pipeline full: {}", min);
+					try {
+						wait(timeout);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new IOException("Interrupted");
+					}
+					continue;
+				}
+
+				best.reserve();
+				return best;
+			}
+		}
+
+		/**
+		 * Called when requests were completed or failed, to wake up
+		 * threads waiting for a pipeline slot.
+		 */
+		synchronized void wakeup() {
+			notifyAll();
+		}
+
+		synchronized int getConnectionCount() {
+			return mConnections.size();
+		}
+
+		synchronized void close() {
+			for (Connection c : mConnections)
+				c.fail(new IOException("Closed"));
+
+			mConnections.clear();
+			mPrefetched.clear();
+			notifyAll();
+		}
+	}
+
+	public static class PipelinedHttpFactory implements HttpEngine.Factory {
+		/** Default number of connections per host */
+		public final static int MAX_CONNECTIONS = 4;
+		/** Default number of pending requests per connection */
+		public final static int MAX_PIPELINE = 4;
+
+		private final int mMaxConnections;
+		private final int mMaxPipeline;
+
+		private final HashMap<String, ConnectionPool> mPools =
+		        new HashMap<String, ConnectionPool>();
+
+		private final HashMap<UrlTileSource, TileManager> mPrefetch =
+		        new HashMap<UrlTileSource, TileManager>();
+
+		public PipelinedHttpFactory() {
+			this(MAX_CONNECTIONS, MAX_PIPELINE);
+		}
+
+		/**
+		 * @param maxConnections
+		 *            connections per host.
+		 * @param maxPipeline
+		 *            max requests in flight per connection. When all
+		 *            maxConnections are open and full, new requests wait
+		 *            until a response was read.
+		 */
+		public PipelinedHttpFactory(int maxConnections, int maxPipeline) {
+			if (maxConnections < 1 || maxPipeline < 1)
+				throw new IllegalArgumentException();
+
+			mMaxConnections = maxConnections;
+			mMaxPipeline = maxPipeline;
+		}
+
+		@Override
+		public HttpEngine create(UrlTileSource tileSource) {
+			return new PipelinedHttp(tileSource,
+			                         LwHttp.makeTilePath(tileSource),
+			                         getPool(tileSource.getUrl()),
+			                         this);
+		}
+
+		/**
+		 * Prefetch the next tiles of the job queue of 'tileManager' when
+		 * loading tiles of 'tileSource'. Requests are sent ahead only on
+		 * free pipeline slots, so that more requests than loaders can be
+		 * in flight.
+		 * 
+		 * @param tileManager
+		 *            the TileManager of the layer using tileSource, null
+		 *            to stop prefetching.
+		 */
+		public synchronized void setPrefetch(UrlTileSource tileSource, TileManager tileManager) {
+			if (tileManager == null)
+				mPrefetch.remove(tileSource);
+			else
+				mPrefetch.put(tileSource, tileManager);
+		}
+
+		synchronized TileManager getPrefetch(UrlTileSource tileSource) {
+			if (mPrefetch.isEmpty())
+				return null;
+
+			return mPrefetch.get(tileSource);
+		}
+
+		synchronized ConnectionPool getPool(URL url) {
+			int port = url.getPort();
+			if (port < 0)
+				port = 80;
+
+			String key = url.getHost() + ":" + port;
+			ConnectionPool pool = mPools.get(key);
+			if (pool == null) {
+				pool = new ConnectionPool(url.getHost(), port,
+				                          mMaxConnections, mMaxPipeline);
+				mPools.put(key, pool);
+			}
+			return pool;
+		}
+
+		/**
+		 * @return the number of open connections for url.
+		 */
+		public int getConnectionCount(URL url) {
+			return getPool(url).getConnectionCount();
+		}
+
+		/**
+		 * Close all connections. Pending requests will fail.
+		 */
+		public synchronized void close() {
+			for (ConnectionPool pool : mPools.values())
+				pool.close();
+		}
+	}
+}
@@ -0,0 +1,620 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.oscim.core.BoundingBox;
+import org.oscim.core.MercatorProjection;
+import org.oscim.core.Tile;
+import org.oscim.layers.tile.TileLoader;
+import org.oscim.tiling.ITileCache;
+import org.oscim.tiling.ITileCache.TileReader;
+import org.oscim.tiling.ITileCache.TileWriter;
+import org.oscim.utils.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Downloads all tiles of a region from an {@link UrlTileSource} into an
+ * {@link ITileCache}, e.g. to pre-seed the cache for offline use.
+ * <p>
+ * Tiles are enumerated by index, per zoom-level row by row. A region with
+ * min longitude greater than max longitude crosses the date-line. Each
+ * worker uses its own HttpEngine and takes the next index when done, so at
+ * most 'parallelism' requests are in flight. Workers load one tile at a
+ * time on the executor of TileLoaders, so map layers keep loading while a
+ * download is running. Tiles that are already in the cache are skipped,
+ * so a cancelled or failed download can be resumed by starting it again,
+ * or from {@link #getResumeIndex()} to also skip the cache lookups for the
+ * tiles done before. In the latter case pass
+ * {@link #getRetryIndices()} to retry the tiles before the resume index
+ * that failed, see {@link #resume(Listener)}.
+ */
+public class TileDownloader {
+	static final Logger log = LoggerFactory.getLogger(TileDownloader.class);
+
+	private final static int DEFAULT_PARALLELISM = 4;
+	private final static int DEFAULT_RETRIES = 2;
+
+	/** delay before retry, multiplied by number of attempts */
+	private final static int RETRY_DELAY = 500;
+
+	private final static int BUFFER_SIZE = 8192;
+
+	public interface Listener {
+		/**
+		 * Called after each tile, from the worker threads.
+		 */
+		void onProgress(Progress progress);
+
+		/**
+		 * Called once when all tiles are processed or the download was
+		 * cancelled.
+		 */
+		void onFinished(Progress progress);
+	}
+
+	/**
+	 * Snapshot of download progress.
+	 */
+	public static final class Progress {
+		/** number of tiles in region */
+		public final long total;
+		/** tiles downloaded */
+		public final long loaded;
+		/** tiles that were already in cache */
+		public final long skipped;
+		/** tiles that could not be downloaded */
+		public final long failed;
+		/** bytes downloaded */
+		public final long bytes;
+		/** time since start in milliseconds */
+		public final long elapsed;
+		/** true when cancelled */
+		public final boolean cancelled;
+
+		Progress(long total, long loaded, long skipped, long failed,
+		        long bytes, long elapsed, boolean cancelled) {
+			this.total = total;
+			this.loaded = loaded;
+			this.skipped = skipped;
+			this.failed = failed;
+			this.bytes = bytes;
+			this.elapsed = elapsed;
+			this.cancelled = cancelled;
+		}
+
+		/** @return number of processed tiles */
+		public long getDone() {
+			return loaded + skipped + failed;
+		}
+
+		/** @return downloaded tiles per second */
+		public double getTilesPerSecond() {
+			return elapsed == 0 ? 0 : loaded * 1000.0 / elapsed;
+		}
+
+		/** @return downloaded bytes per second */
+		public double getBytesPerSecond() {
+			return elapsed == 0 ? 0 : bytes * 1000.0 / elapsed;
+		}
+
+		@Override
+		public String toString() {
+			return getDone() + "/" + total
+			        + " loaded:" + loaded
+			        + " skipped:" + skipped
+			        + " failed:" + failed
+			        + " " + (int) getTilesPerSecond() + " tiles/s"
+			        + " " + (int) (getBytesPerSecond() / 1024) + " kB/s";
+		}
+	}
+
+	/**
+	 * Tiles covering a BoundingBox on a range of zoom-levels, addressed
+	 * by index. Columns wrap around the date-line when the min longitude
+	 * of the box is greater than its max longitude.
+	 */
+	static final class TileRange {
+		final int zoomMin, zoomMax;
+		final int[] xmin, ymin, width;
+		/** index of first tile per zoom-level */
+		final long[] first;
+		final long count;
+
+		TileRange(BoundingBox bbox, int zoomMin, int zoomMax) {
+			this.zoomMin = zoomMin;
+			this.zoomMax = zoomMax;
+
+			int n = zoomMax - zoomMin + 1;
+			xmin = new int[n];
+			ymin = new int[n];
+			width = new int[n];
+			first = new long[n];
+
+			double x1 = MercatorProjection.longitudeToX(bbox.getMinLongitude());
+			double x2 = MercatorProjection.longitudeToX(bbox.getMaxLongitude());
+			double y1 = MercatorProjection.latitudeToY(bbox.getMaxLatitude());
+			double y2 = MercatorProjection.latitudeToY(bbox.getMinLatitude());
+
+			long sum = 0;
+			for (int i = 0; i < n; i++) {
+				int tiles = 1 << (zoomMin + i);
+				xmin[i] = tile(x1, tiles);
+				ymin[i] = tile(y1, tiles);
+				width[i] = tile(x2, tiles) - xmin[i] + 1;
+				if (x1 > x2)
+					width[i] = Math.min(width[i] + tiles, tiles);
+				int height = tile(y2, tiles) - ymin[i] + 1;
+
+				first[i] = sum;
+				sum += (long) width[i] * height;
+			}
+			count = sum;
+		}
+
+		private static int tile(double p, int tiles) {
+			int t = (int) (p * tiles);
+			if (t < 0)
+				return 0;
+			if (t >= tiles)
+				return tiles - 1;
+			return t;
+		}
+
+		Tile get(long index) {
+			int i = first.length - 1;
+			while (first[i] > index)
+				i--;
+
+			long pos = index - first[i];
+			int tiles = 1 << (zoomMin + i);
+			int x = (xmin[i] + (int) (pos % width[i])) % tiles;
+			int y = ymin[i] + (int) (pos / width[i]);
+			return new Tile(x, y, (byte) (zoomMin + i));
+		}
+	}
+
+	private final UrlTileSource mTileSource;
+	private final ITileCache mCache;
+
+	private int mParallelism = DEFAULT_PARALLELISM;
+	private int mRetries = DEFAULT_RETRIES;
+	private Executor mExecutor;
+
+	/* state of current download, synchronized on this */
+	private TileRange mRange;
+	private Listener mListener;
+	private long mNextIndex;
+	/** indices to process before mNextIndex, sorted */
+	private long[] mRetry;
+	private int mRetryPos;
+	/** indices of tiles that failed */
+	private long[] mFailedIndices = new long[16];
+	private int mNumFailed;
+	/** index processed by each worker, -1 when idle */
+	private long[] mWorkerIndex;
+	/** true when worker processes an index from mRetry */
+	private boolean[] mWorkerRetry;
+	private int mActiveWorkers;
+	private long mStartTime;
+	private long mLoaded, mSkipped, mFailed, mBytes;
+	private volatile boolean mCancel;
+
+	public TileDownloader(UrlTileSource tileSource, ITileCache cache) {
+		if (cache == null)
+			throw new IllegalArgumentException("cache cannot be null.");
+
+		mTileSource = tileSource;
+		mCache = cache;
+	}
+
+	/**
+	 * @param parallelism max number of concurrent requests.
+	 */
+	public synchronized TileDownloader setParallelism(int parallelism) {
+		if (parallelism < 1)
+			throw new IllegalArgumentException("parallelism must be > 0");
+		mParallelism = parallelism;
+		return this;
+	}
+
+	/**
+	 * @param retries number of retries for a tile after a network error.
+	 */
+	public synchronized TileDownloader setRetries(int retries) {
+		mRetries = retries;
+		return this;
+	}
+
+	/**
+	 * @param executor runs the workers, by default the executor shared by
+	 *            TileLoaders, see {@link TileLoader#getDefaultExecutor()}.
+	 */
+	public synchronized TileDownloader setExecutor(Executor executor) {
+		mExecutor = executor;
+		return this;
+	}
+
+	/**
+	 * @return number of tiles in region on zoom-levels zoomMin to zoomMax.
+	 */
+	public static long countTiles(BoundingBox bbox, int zoomMin, int zoomMax) {
+		return new TileRange(bbox, zoomMin, zoomMax).count;
+	}
+
+	public void start(BoundingBox bbox, int zoomMin, int zoomMax, Listener listener) {
+		start(bbox, zoomMin, zoomMax, 0, null, listener);
+	}
+
+	public void start(BoundingBox bbox, int zoomMin, int zoomMax,
+	        long startIndex, Listener listener) {
+		start(bbox, zoomMin, zoomMax, startIndex, null, listener);
+	}
+
+	/**
+	 * Start download of the tiles of region on zoom-levels zoomMin to
+	 * zoomMax. Zoom-levels are limited to those of the tile source.
+	 *
+	 * @param startIndex
+	 *            first tile to download, see {@link #getResumeIndex()}.
+	 * @param retryIndices
+	 *            tiles before startIndex to download first, see
+	 *            {@link #getRetryIndices()}. May be null.
+	 * @param listener
+	 *            may be null.
+	 */
+	public synchronized void start(BoundingBox bbox, int zoomMin, int zoomMax,
+	        long startIndex, long[] retryIndices, Listener listener) {
+
+		if (mActiveWorkers > 0)
+			throw new IllegalStateException("download is running");
+
+		zoomMin = Math.max(zoomMin, mTileSource.getZoomLevelMin());
+		zoomMax = Math.min(zoomMax, mTileSource.getZoomLevelMax());
+		if (zoomMin > zoomMax)
+			throw new IllegalArgumentException("no zoom-level in range");
+
+		start(new TileRange(bbox, zoomMin, zoomMax), startIndex, retryIndices, listener);
+	}
+
+	/**
+	 * Continue the last download from {@link #getResumeIndex()} and retry
+	 * the tiles of {@link #getRetryIndices()}.
+	 *
+	 * @param listener
+	 *            may be null.
+	 */
+	public synchronized void resume(Listener listener) {
+		if (mActiveWorkers > 0)
+			throw new IllegalStateException("download is running");
+		if (mRange == null)
+			throw new IllegalStateException("no download to resume");
+
+		start(mRange, getResumeIndex(), getRetryIndices(), listener);
+	}
+
+	private void start(TileRange range, long startIndex, long[] retryIndices,
+	        Listener listener) {
+
+		mRange = range;
+		mListener = listener;
+		mNextIndex = Math.max(0, startIndex);
+		mLoaded = mSkipped = mFailed = mBytes = 0;
+		mNumFailed = 0;
+		mCancel = false;
+		mStartTime = System.currentTimeMillis();
+
+		/* only indices before mNextIndex, once */
+		int n = 0;
+		long[] retry = new long[retryIndices == null ? 0 : retryIndices.length];
+		for (int i = 0; i < retry.length; i++) {
+			long index = retryIndices[i];
+			if (index >= 0 && index < mNextIndex && index < range.count)
+				retry[n++] = index;
+		}
+		Arrays.sort(retry, 0, n);
+		int unique = 0;
+		for (int i = 0; i < n; i++)
+			if (unique == 0 || retry[unique - 1] != retry[i])
+				retry[unique++] = retry[i];
+
+		mRetry = Arrays.copyOf(retry, unique);
+		mRetryPos = 0;
+
+		log.debug("download {} tiles, zoom {}-{}, retry {}", Long.valueOf(range.count),
+		          Integer.valueOf(range.zoomMin), Integer.valueOf(range.zoomMax),
+		          Integer.valueOf(unique));
+
+		long todo = range.count - mNextIndex + unique;
+		int workers = (int) Math.min(mParallelism, Math.max(1, todo));
+		mWorkerIndex = new long[workers];
+		mWorkerRetry = new boolean[workers];
+		mActiveWorkers = workers;
+
+		Executor executor = mExecutor;
+		if (executor == null)
+			executor = TileLoader.getDefaultExecutor();
+
+		for (int i = 0; i < workers; i++) {
+			mWorkerIndex[i] = -1;
+			new Worker(i, mTileSource.getHttpEngine(), executor).submit();
+		}
+	}
+
+	/**
+	 * Stop downloading. Requests in progress are completed.
+	 */
+	public void cancel() {
+		mCancel = true;
+	}
+
+	public synchronized boolean isRunning() {
+		return mActiveWorkers > 0;
+	}
+
+	/**
+	 * Block until the download is finished or cancelled.
+	 */
+	public synchronized void await() throws InterruptedException {
+		while (mActiveWorkers > 0)
+			wait();
+	}
+
+	/**
+	 * @return index of the first tile that was not processed. Pass to
+	 *         {@link #start(BoundingBox, int, int, long, long[], Listener)}
+	 *         to continue a cancelled download.
+	 */
+	public synchronized long getResumeIndex() {
+		long index = mNextIndex;
+		if (mWorkerIndex != null) {
+			for (int w = 0; w < mWorkerIndex.length; w++) {
+				long i = mWorkerIndex[w];
+				if (i >= 0 && i < index && !mWorkerRetry[w])
+					index = i;
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * @return sorted indices of tiles before {@link #getResumeIndex()}
+	 *         that failed or, when cancelled, were not retried yet. Pass to
+	 *         {@link #start(BoundingBox, int, int, long, long[], Listener)}
+	 *         together with the resume index.
+	 */
+	public synchronized long[] getRetryIndices() {
+		if (mRange == null)
+			return new long[0];
+
+		long resume = getResumeIndex();
+		int pending = mRetry.length - mRetryPos;
+		long[] retry = new long[mNumFailed + pending + mWorkerIndex.length];
+		int n = 0;
+
+		for (int i = 0; i < mNumFailed; i++)
+			if (mFailedIndices[i] < resume)
+				retry[n++] = mFailedIndices[i];
+
+		for (int i = mRetryPos; i < mRetry.length; i++)
+			retry[n++] = mRetry[i];
+
+		for (int w = 0; w < mWorkerIndex.length; w++)
+			if (mWorkerRetry[w] && mWorkerIndex[w] >= 0)
+				retry[n++] = mWorkerIndex[w];
+
+		retry = Arrays.copyOf(retry, n);
+		Arrays.sort(retry);
+		return retry;
+	}
+
+	public synchronized Progress getProgress() {
+		long total = mRange == null ? 0 : mRange.count;
+		return new Progress(total, mLoaded, mSkipped, mFailed, mBytes,
+		                    System.currentTimeMillis() - mStartTime, mCancel);
+	}
+
+	/**
+	 * @return index of next tile for worker or -1 when done.
+	 */
+	synchronized long nextIndex(int worker) {
+		if (!mCancel && mRetryPos < mRetry.length) {
+			mWorkerRetry[worker] = true;
+			mWorkerIndex[worker] = mRetry[mRetryPos];
+			return mRetry[mRetryPos++];
+		}
+		mWorkerRetry[worker] = false;
+
+		if (mCancel || mNextIndex >= mRange.count) {
+			mWorkerIndex[worker] = -1;
+			return -1;
+		}
+		mWorkerIndex[worker] = mNextIndex;
+		return mNextIndex++;
+	}
+
+	private static final int LOADED = 0;
+	private static final int SKIPPED = 1;
+	private static final int FAILED = 2;
+
+	void tileDone(long index, int result, long bytes) {
+		Progress p;
+		Listener l;
+		synchronized (this) {
+			switch (result) {
+				case LOADED:
+					mLoaded++;
+					mBytes += bytes;
+					break;
+				case SKIPPED:
+					mSkipped++;
+					break;
+				default:
+					mFailed++;
+					if (mNumFailed == mFailedIndices.length)
+						mFailedIndices = Arrays.copyOf(mFailedIndices, mNumFailed * 2);
+					mFailedIndices[mNumFailed++] = index;
+			}
+			l = mListener;
+			if (l == null)
+				return;
+			p = getProgress();
+		}
+		l.onProgress(p);
+	}
+
+	void workerDone() {
+		Progress p;
+		Listener l;
+		synchronized (this) {
+			if (--mActiveWorkers > 0)
+				return;
+
+			notifyAll();
+			l = mListener;
+			p = getProgress();
+			log.debug("download finished {}", p);
+		}
+		if (l != null)
+			l.onFinished(p);
+	}
+
+	/**
+	 * Loads one tile per run and then resubmits itself, so that workers
+	 * take turns with TileLoaders on a shared executor.
+	 */
+	class Worker implements Runnable {
+		private final int mId;
+		private final HttpEngine mConn;
+		private final Executor mWorkerExecutor;
+		private final byte[] mBuffer = new byte[BUFFER_SIZE];
+
+		Worker(int id, HttpEngine conn, Executor executor) {
+			mId = id;
+			mConn = conn;
+			mWorkerExecutor = executor;
+		}
+
+		void submit() {
+			try {
+				mWorkerExecutor.execute(this);
+			} catch (RejectedExecutionException e) {
+				log.error("executor rejected download: {}", e.getMessage());
+				finish();
+			}
+		}
+
+		private void finish() {
+			mConn.close();
+			workerDone();
+		}
+
+		@Override
+		public void run() {
+			long index = nextIndex(mId);
+			if (index < 0) {
+				finish();
+				return;
+			}
+
+			boolean done = false;
+			try {
+				load(index);
+				done = true;
+			} finally {
+				if (done)
+					submit();
+				else
+					finish();
+			}
+		}
+
+		private void load(long index) {
+			Tile tile = mRange.get(index);
+
+			if (isCached(tile)) {
+				tileDone(index, SKIPPED, 0);
+				return;
+			}
+
+			long bytes = -1;
+			for (int attempt = 0; attempt <= mRetries && !mCancel; attempt++) {
+				if (attempt > 0 && !sleep(RETRY_DELAY * attempt))
+					break;
+
+				bytes = download(tile);
+				if (bytes >= 0)
+					break;
+			}
+			tileDone(index, bytes >= 0 ? LOADED : FAILED, bytes);
+		}
+
+		private boolean isCached(Tile tile) {
+			TileReader c = mCache.getTile(tile);
+			if (c == null)
+				return false;
+
+			IOUtils.closeQuietly(c.getInputStream());
+			return true;
+		}
+
+		/**
+		 * @return number of bytes written to cache or -1 on failure
+		 */
+		private long download(Tile tile) {
+			boolean ok = false;
+			long bytes = 0;
+			TileWriter cacheWriter = null;
+			try {
+				mConn.sendRequest(tile);
+				InputStream is = mConn.read();
+				cacheWriter = mCache.writeTile(tile);
+				OutputStream os = cacheWriter.getOutputStream();
+
+				int len;
+				while ((len = is.read(mBuffer)) >= 0) {
+					os.write(mBuffer, 0, len);
+					bytes += len;
+				}
+				ok = bytes > 0;
+			} catch (IOException e) {
+				log.debug("{} Network Error: {}", tile, e.getMessage());
+			} finally {
+				ok = mConn.requestCompleted(ok);
+				if (cacheWriter != null)
+					cacheWriter.complete(ok);
+			}
+			return ok ? bytes : -1;
+		}
+
+		private boolean sleep(long ms) {
+			try {
+				Thread.sleep(ms);
+				return true;
+			} catch (InterruptedException e) {
+				return false;
+			}
+		}
+	}
+}
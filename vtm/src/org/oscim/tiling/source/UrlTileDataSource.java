@@ -26,40 +26,67 @@ import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
 
 import org.oscim.layers.tile.MapTile;
+import org.oscim.layers.tile.TileMetrics;
 import org.oscim.tiling.ITileCache;
 import org.oscim.tiling.ITileCache.TileReader;
 import org.oscim.tiling.ITileCache.TileWriter;
 import org.oscim.tiling.ITileDataSink;
 import org.oscim.tiling.ITileDataSource;
 import org.oscim.utils.IOUtils;
+import org.oscim.utils.Stopwatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class UrlTileDataSource implements ITileDataSource {
+public class UrlTileDataSource implements ITileDataSource, TileMetrics.IOTimed {
 	static final Logger log = LoggerFactory.getLogger(UrlTileDataSource.class);
 
+	private final static int BUFFER_SIZE = 1 << 15; // 32kb
+
 	protected final HttpEngine mConn;
 	protected final ITileDecoder mTileDecoder;
 	protected final UrlTileSource mTileSource;
 	protected final boolean mUseCache;
 
+	/** set when mTileDecoder can decode from memory */
+	private final PbfDecoder mPbfDecoder;
+
+	/** response data for mPbfDecoder, reused for each tile */
+	private byte[] mBuffer;
+
+	/**
+	 * measures time until data can be read, and buffering of the data when
+	 * decoding from memory. Not the streaming into a decoder.
+	 */
+	private Stopwatch mIOTimer;
+
 	public UrlTileDataSource(UrlTileSource tileSource, ITileDecoder tileDecoder, HttpEngine conn) {
 		mTileDecoder = tileDecoder;
+		mPbfDecoder = (tileDecoder instanceof PbfDecoder) ? (PbfDecoder) tileDecoder : null;
 		mTileSource = tileSource;
 		mUseCache = (tileSource.tileCache != null);
 		mConn = conn;
 	}
 
+	@Override
+	public void setIOTimer(Stopwatch timer) {
+		mIOTimer = timer;
+	}
+
 	@Override
 	public void query(MapTile tile, ITileDataSink sink) {
 		ITileCache cache = mTileSource.tileCache;
+		Stopwatch timer = mIOTimer;
 
 		if (mUseCache) {
+			if (timer != null)
+				timer.start();
+
 			TileReader c = cache.getTile(tile);
-			if (c != null) {
-				InputStream is = c.getInputStream();
+			InputStream is = (c == null) ? null : c.getInputStream();
+
+			if (is != null) {
 				try {
-					if (mTileDecoder.decode(tile, sink, is)) {
+					if (decode(tile, sink, is, timer)) {
 						sink.completed(SUCCESS);
 						return;
 					}
@@ -68,19 +95,25 @@ public class UrlTileDataSource implements ITileDataSource {
 				} finally {
 					IOUtils.closeQuietly(is);
 				}
+			} else if (timer != null) {
+				timer.stop();
 			}
 		}
 
 		boolean ok = false;
 		TileWriter cacheWriter = null;
 		try {
+			if (timer != null)
+				timer.start();
+
 			mConn.sendRequest(tile);
 			InputStream is = mConn.read();
+
 			if (mUseCache) {
 				cacheWriter = cache.writeTile(tile);
 				mConn.setCache(cacheWriter.getOutputStream());
 			}
-			ok = mTileDecoder.decode(tile, sink, is);
+			ok = decode(tile, sink, is, timer);
 		} catch (SocketException e) {
 			log.debug("{} Socket Error: {}", tile, e.getMessage());
 		} catch (SocketTimeoutException e) {
@@ -98,9 +131,55 @@ public class UrlTileDataSource implements ITileDataSource {
 		}
 	}
 
+	/**
+	 * Decode tile from 'is'. For a PbfDecoder the data is read into memory
+	 * first and decoded from there. Stops the running 'timer' when the data
+	 * is available.
+	 */
+	private boolean decode(MapTile tile, ITileDataSink sink, InputStream is, Stopwatch timer)
+	        throws IOException {
+
+		if (mPbfDecoder == null) {
+			if (timer != null)
+				timer.stop();
+			return mTileDecoder.decode(tile, sink, is);
+		}
+
+		int length;
+		try {
+			length = readFully(is);
+		} finally {
+			if (timer != null)
+				timer.stop();
+		}
+		return mPbfDecoder.decode(tile, sink, mBuffer, 0, length);
+	}
+
+	/** Read 'is' until EOF into mBuffer, returns the number of bytes read. */
+	private int readFully(InputStream is) throws IOException {
+		if (mBuffer == null)
+			mBuffer = new byte[BUFFER_SIZE];
+
+		int length = 0;
+		while (true) {
+			if (length == mBuffer.length) {
+				byte[] tmp = new byte[length * 2];
+				System.arraycopy(mBuffer, 0, tmp, 0, length);
+				mBuffer = tmp;
+			}
+			int len = is.read(mBuffer, length, mBuffer.length - length);
+			if (len < 0)
+				return length;
+
+			length += len;
+		}
+	}
+
 	@Override
 	public void dispose() {
 		mConn.close();
+		if (mPbfDecoder != null)
+			mPbfDecoder.dispose();
 	}
 
 	@Override
@@ -120,6 +120,15 @@ public abstract class UrlTileSource extends TileSource {
 		return mUrl;
 	}
 
+	@Override
+	public String getSourceId() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(getClass().getName()).append(':').append(mUrl);
+		for (String p : mTilePath)
+			sb.append(p);
+		return sb.toString();
+	}
+
 	public String getTileUrl(Tile tile) {
 		return mUrl + mTileUrlFormatter.formatTilePath(this, tile);
 	}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.archive;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash table from tile key to record position and length.
+ * Keys are never removed, only replaced. Not synchronized.
+ */
+class ArchiveIndex {
+	private static final long EMPTY = -1;
+
+	private long[] mKeys;
+	private long[] mPositions;
+	private int[] mLengths;
+	private int mSize;
+	private int mMask;
+
+	ArchiveIndex() {
+		allocate(1024);
+	}
+
+	private void allocate(int capacity) {
+		mKeys = new long[capacity];
+		Arrays.fill(mKeys, EMPTY);
+		mPositions = new long[capacity];
+		mLengths = new int[capacity];
+		mMask = capacity - 1;
+		mSize = 0;
+	}
+
+	int size() {
+		return mSize;
+	}
+
+	int capacity() {
+		return mKeys.length;
+	}
+
+	void clear() {
+		Arrays.fill(mKeys, EMPTY);
+		mSize = 0;
+	}
+
+	boolean used(int slot) {
+		return mKeys[slot] != EMPTY;
+	}
+
+	long keyAt(int slot) {
+		return mKeys[slot];
+	}
+
+	long positionAt(int slot) {
+		return mPositions[slot];
+	}
+
+	int lengthAt(int slot) {
+		return mLengths[slot];
+	}
+
+	/**
+	 * @return the slot of key or -1 when not found.
+	 */
+	int find(long key) {
+		int slot = hash(key) & mMask;
+		while (true) {
+			long k = mKeys[slot];
+			if (k == key)
+				return slot;
+			if (k == EMPTY)
+				return -1;
+			slot = (slot + 1) & mMask;
+		}
+	}
+
+	long getPosition(long key) {
+		int slot = find(key);
+		return slot < 0 ? -1 : mPositions[slot];
+	}
+
+	void put(long key, long position, int length) {
+		/* keep the load factor below 0.5 */
+		if ((mSize + 1) * 2 > mKeys.length)
+			grow();
+
+		int slot = hash(key) & mMask;
+		while (mKeys[slot] != EMPTY && mKeys[slot] != key)
+			slot = (slot + 1) & mMask;
+
+		if (mKeys[slot] == EMPTY) {
+			mKeys[slot] = key;
+			mSize++;
+		}
+		mPositions[slot] = position;
+		mLengths[slot] = length;
+	}
+
+	private void grow() {
+		long[] keys = mKeys;
+		long[] positions = mPositions;
+		int[] lengths = mLengths;
+
+		allocate(keys.length * 2);
+
+		for (int i = 0; i < keys.length; i++)
+			if (keys[i] != EMPTY)
+				put(keys[i], positions[i], lengths[i]);
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
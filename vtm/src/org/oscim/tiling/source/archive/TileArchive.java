@@ -0,0 +1,493 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.archive;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+import org.oscim.core.Tile;
+import org.oscim.tiling.ITileCache;
+import org.oscim.utils.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single indexed container file for pre-rendered tiles of any format
+ * (e.g. OSciMap4, Mapnik vector tiles or bitmaps) addressed by z/x/y.
+ * <p>
+ * Layout (big-endian):
+ *
+ * <pre>
+ * header:  'VTMARCH1' version:int reserved:int
+ * records: 'TILE' zoom:byte x:int y:int length:int data[length]
+ * index:   'INDX' count:int (key:long position:long length:int)[count]
+ *          index-position:long 'VTMINDEX'
+ * </pre>
+ *
+ * Records are only appended, a later record for the same tile replaces an
+ * earlier one. The index is written by {@link #close()}. It is truncated
+ * before new records are appended, so when a writable archive was not closed
+ * properly the index is rebuilt by scanning the records on the next open.
+ * <p>
+ * When opened writable the archive also serves as {@link ITileCache}, e.g. as
+ * write-through cache of an UrlTileSource. Reads are positional and may be
+ * issued concurrently, each tile is read with one random access.
+ */
+public class TileArchive implements ITileCache {
+	static final Logger log = LoggerFactory.getLogger(TileArchive.class);
+
+	static final byte[] MAGIC = { 'V', 'T', 'M', 'A', 'R', 'C', 'H', '1' };
+	static final byte[] INDEX_END_MAGIC = { 'V', 'T', 'M', 'I', 'N', 'D', 'E', 'X' };
+	static final int RECORD_MAGIC = 0x54494C45; /* TILE */
+	static final int INDEX_MAGIC = 0x494E4458; /* INDX */
+
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 16;
+	static final int RECORD_HEADER_SIZE = 17;
+	static final int INDEX_ENTRY_SIZE = 20;
+	static final int INDEX_END_SIZE = 16;
+
+	/** Maximum size of one tile which is considered as valid */
+	public static final int MAX_TILE_SIZE = 1 << 24;
+
+	private final File mFile;
+	private final boolean mWritable;
+	private RandomAccessFile mRandomAccessFile;
+	private volatile FileChannel mChannel;
+
+	/** Tile key to record position and length, guarded by itself */
+	private final ArchiveIndex mIndex = new ArchiveIndex();
+
+	/** File position where the next record is appended */
+	private long mAppendPosition;
+
+	/** True when the index at the end of the file is up to date */
+	private boolean mIndexWritten;
+
+	private long mSizeLimit = Long.MAX_VALUE;
+
+	private final ArrayList<ByteArrayOutputStream> mCacheBuffers =
+	        new ArrayList<ByteArrayOutputStream>();
+
+	/**
+	 * @param file
+	 *            the archive file, created when writable and not existing.
+	 * @param writable
+	 *            allow to add tiles.
+	 */
+	public TileArchive(File file, boolean writable) {
+		mFile = file;
+		mWritable = writable;
+	}
+
+	public File getFile() {
+		return mFile;
+	}
+
+	public boolean isWritable() {
+		return mWritable;
+	}
+
+	/**
+	 * Open the archive and load or rebuild the index.
+	 *
+	 * @throws IOException
+	 *             when the file cannot be opened or is not an archive.
+	 */
+	public synchronized void open() throws IOException {
+		if (mChannel != null)
+			return;
+
+		if (!mWritable && !mFile.isFile())
+			throw new IOException("file does not exist: " + mFile);
+
+		mRandomAccessFile = new RandomAccessFile(mFile, mWritable ? "rw" : "r");
+		mChannel = mRandomAccessFile.getChannel();
+
+		try {
+			long size = mChannel.size();
+			if (size == 0 && mWritable) {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+				header.put(MAGIC).putInt(VERSION).putInt(0).flip();
+				writeFully(header, 0);
+				mAppendPosition = HEADER_SIZE;
+				mIndexWritten = false;
+				return;
+			}
+
+			ByteBuffer header = readFully(0, HEADER_SIZE);
+			for (int i = 0; i < MAGIC.length; i++)
+				if (header.get(i) != MAGIC[i])
+					throw new IOException("not a tile archive: " + mFile);
+
+			if (header.getInt(MAGIC.length) != VERSION)
+				throw new IOException("unsupported archive version: " + mFile);
+
+			if (!readIndex(size)) {
+				log.debug("rebuild index {}", mFile);
+				scanRecords(size);
+			}
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Write the index when tiles were added and close the file.
+	 */
+	public synchronized void close() {
+		if (mChannel == null)
+			return;
+
+		if (mWritable && !mIndexWritten) {
+			try {
+				writeIndex();
+			} catch (IOException e) {
+				log.error("cannot write index {}: {}", mFile, e.getMessage());
+			}
+		}
+		IOUtils.closeQuietly(mRandomAccessFile);
+		mRandomAccessFile = null;
+		mChannel = null;
+	}
+
+	/**
+	 * @return the number of tiles in the archive.
+	 */
+	public int getTileCount() {
+		synchronized (mIndex) {
+			return mIndex.size();
+		}
+	}
+
+	public boolean contains(Tile tile) {
+		synchronized (mIndex) {
+			return mIndex.getPosition(tileKey(tile)) >= 0;
+		}
+	}
+
+	/**
+	 * Read the data of a tile.
+	 *
+	 * @return the tile data, or null when the tile is not in the archive.
+	 */
+	public byte[] read(Tile tile) throws IOException {
+		long position;
+		int length;
+		synchronized (mIndex) {
+			int slot = mIndex.find(tileKey(tile));
+			if (slot < 0)
+				return null;
+
+			position = mIndex.positionAt(slot);
+			length = mIndex.lengthAt(slot);
+		}
+
+		FileChannel channel = mChannel;
+		if (channel == null)
+			throw new IOException("archive is closed");
+
+		byte[] data = new byte[length];
+		ByteBuffer buf = ByteBuffer.wrap(data);
+		while (buf.hasRemaining()) {
+			if (channel.read(buf, position + buf.position()) < 0)
+				throw new IOException("unexpected end of archive " + mFile);
+		}
+		return data;
+	}
+
+	/**
+	 * Append a tile to the archive, replacing a previous version.
+	 *
+	 * @return false when the archive is full.
+	 */
+	public synchronized boolean write(Tile tile, byte[] data, int offset, int length)
+	        throws IOException {
+		if (!mWritable)
+			throw new IOException("archive is read-only");
+		if (mChannel == null)
+			throw new IOException("archive is closed");
+		if (length <= 0 || length > MAX_TILE_SIZE)
+			throw new IllegalArgumentException("invalid tile size: " + length);
+
+		if (mAppendPosition + RECORD_HEADER_SIZE + length > mSizeLimit)
+			return false;
+
+		if (mIndexWritten) {
+			/* invalidate the index before the first new record */
+			mChannel.truncate(mAppendPosition);
+			mIndexWritten = false;
+		}
+
+		long position = mAppendPosition;
+		ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+		record.putInt(RECORD_MAGIC)
+		    .put(tile.zoomLevel)
+		    .putInt(tile.tileX)
+		    .putInt(tile.tileY)
+		    .putInt(length)
+		    .put(data, offset, length)
+		    .flip();
+
+		writeFully(record, position);
+		mAppendPosition = position + RECORD_HEADER_SIZE + length;
+
+		synchronized (mIndex) {
+			mIndex.put(tileKey(tile), position + RECORD_HEADER_SIZE, length);
+		}
+		return true;
+	}
+
+	/**
+	 * Write the index to the end of the file. Called by close().
+	 */
+	public synchronized void flush() throws IOException {
+		if (mWritable && mChannel != null && !mIndexWritten)
+			writeIndex();
+	}
+
+	/* ITileCache */
+
+	class CacheTileReader implements TileReader {
+		final InputStream mInputStream;
+		final Tile mTile;
+
+		public CacheTileReader(Tile tile, InputStream is) {
+			mTile = tile;
+			mInputStream = is;
+		}
+
+		@Override
+		public Tile getTile() {
+			return mTile;
+		}
+
+		@Override
+		public InputStream getInputStream() {
+			return mInputStream;
+		}
+	}
+
+	class CacheTileWriter implements TileWriter {
+		final ByteArrayOutputStream mOutputStream;
+		final Tile mTile;
+
+		CacheTileWriter(Tile tile, ByteArrayOutputStream os) {
+			mTile = tile;
+			mOutputStream = os;
+		}
+
+		@Override
+		public Tile getTile() {
+			return mTile;
+		}
+
+		@Override
+		public OutputStream getOutputStream() {
+			return mOutputStream;
+		}
+
+		@Override
+		public void complete(boolean success) {
+			saveTile(mTile, mOutputStream, success);
+		}
+	}
+
+	@Override
+	public TileReader getTile(Tile tile) {
+		try {
+			byte[] data = read(tile);
+			if (data == null)
+				return null;
+
+			return new CacheTileReader(tile, new ByteArrayInputStream(data));
+		} catch (IOException e) {
+			log.debug("{} archive read: {}", tile, e.getMessage());
+		}
+		return null;
+	}
+
+	@Override
+	public TileWriter writeTile(Tile tile) {
+		ByteArrayOutputStream os;
+
+		synchronized (mCacheBuffers) {
+			if (mCacheBuffers.size() == 0)
+				os = new ByteArrayOutputStream(32 * 1024);
+			else
+				os = mCacheBuffers.remove(mCacheBuffers.size() - 1);
+		}
+		return new CacheTileWriter(tile, os);
+	}
+
+	void saveTile(Tile tile, ByteArrayOutputStream data, boolean success) {
+		byte[] bytes = null;
+
+		if (success && mWritable && data.size() > 0 && data.size() <= MAX_TILE_SIZE)
+			bytes = data.toByteArray();
+
+		synchronized (mCacheBuffers) {
+			data.reset();
+			mCacheBuffers.add(data);
+		}
+
+		if (bytes == null)
+			return;
+
+		try {
+			write(tile, bytes, 0, bytes.length);
+		} catch (IOException e) {
+			log.debug("{} archive write: {}", tile, e.getMessage());
+		}
+	}
+
+	/**
+	 * Limit the file size, tiles are not added once the limit is reached.
+	 * Tiles are never removed from the archive.
+	 */
+	@Override
+	public synchronized void setCacheSize(long size) {
+		mSizeLimit = size;
+	}
+
+	/* index */
+
+	private boolean readIndex(long size) throws IOException {
+		if (size < HEADER_SIZE + INDEX_END_SIZE + 8)
+			return false;
+
+		ByteBuffer end = readFully(size - INDEX_END_SIZE, INDEX_END_SIZE);
+		for (int i = 0; i < INDEX_END_MAGIC.length; i++)
+			if (end.get(8 + i) != INDEX_END_MAGIC[i])
+				return false;
+
+		long indexPosition = end.getLong(0);
+		if (indexPosition < HEADER_SIZE || indexPosition > size - INDEX_END_SIZE - 8)
+			return false;
+
+		ByteBuffer head = readFully(indexPosition, 8);
+		int count = head.getInt(4);
+		if (head.getInt(0) != INDEX_MAGIC || count < 0
+		        || indexPosition + 8 + (long) count * INDEX_ENTRY_SIZE != size - INDEX_END_SIZE)
+			return false;
+
+		ByteBuffer entries = readFully(indexPosition + 8, count * INDEX_ENTRY_SIZE);
+		synchronized (mIndex) {
+			mIndex.clear();
+			for (int i = 0; i < count; i++) {
+				long key = entries.getLong();
+				long position = entries.getLong();
+				int length = entries.getInt();
+				mIndex.put(key, position, length);
+			}
+		}
+		mAppendPosition = indexPosition;
+		mIndexWritten = true;
+		return true;
+	}
+
+	private void writeIndex() throws IOException {
+		long indexPosition = mAppendPosition;
+		ByteBuffer buf;
+		synchronized (mIndex) {
+			int count = mIndex.size();
+			buf = ByteBuffer.allocate(8 + count * INDEX_ENTRY_SIZE + INDEX_END_SIZE);
+			buf.putInt(INDEX_MAGIC).putInt(count);
+			for (int i = 0, n = mIndex.capacity(); i < n; i++) {
+				if (!mIndex.used(i))
+					continue;
+				buf.putLong(mIndex.keyAt(i))
+				    .putLong(mIndex.positionAt(i))
+				    .putInt(mIndex.lengthAt(i));
+			}
+		}
+		buf.putLong(indexPosition).put(INDEX_END_MAGIC).flip();
+
+		mChannel.truncate(indexPosition);
+		writeFully(buf, indexPosition);
+		mChannel.force(false);
+		mIndexWritten = true;
+	}
+
+	/**
+	 * Rebuild the index from the records. A truncated record at the end of
+	 * the file, e.g. after a crash, is discarded.
+	 */
+	private void scanRecords(long size) throws IOException {
+		long position = HEADER_SIZE;
+		ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+
+		synchronized (mIndex) {
+			mIndex.clear();
+			while (position + RECORD_HEADER_SIZE <= size) {
+				header.clear();
+				while (header.hasRemaining())
+					if (mChannel.read(header, position + header.position()) < 0)
+						break;
+
+				if (header.hasRemaining() || header.getInt(0) != RECORD_MAGIC)
+					break;
+
+				int length = header.getInt(13);
+				if (length <= 0 || length > MAX_TILE_SIZE
+				        || position + RECORD_HEADER_SIZE + length > size)
+					break;
+
+				long key = tileKey(header.get(4), header.getInt(5), header.getInt(9));
+				mIndex.put(key, position + RECORD_HEADER_SIZE, length);
+				position += RECORD_HEADER_SIZE + length;
+			}
+		}
+		mAppendPosition = position;
+		mIndexWritten = false;
+
+		if (position < size && mWritable)
+			mChannel.truncate(position);
+	}
+
+	private ByteBuffer readFully(long position, int length) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(length);
+		while (buf.hasRemaining()) {
+			if (mChannel.read(buf, position + buf.position()) < 0)
+				throw new IOException("unexpected end of archive " + mFile);
+		}
+		buf.flip();
+		return buf;
+	}
+
+	private void writeFully(ByteBuffer buf, long position) throws IOException {
+		while (buf.hasRemaining())
+			mChannel.write(buf, position + buf.position());
+	}
+
+	static long tileKey(Tile tile) {
+		return tileKey(tile.zoomLevel, tile.tileX, tile.tileY);
+	}
+
+	static long tileKey(int z, int x, int y) {
+		return ((long) z << 56) | ((long) x << 28) | y;
+	}
+}
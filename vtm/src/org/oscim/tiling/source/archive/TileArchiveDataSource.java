@@ -0,0 +1,73 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.archive;
+
+import static org.oscim.tiling.ITileDataSink.QueryResult.FAILED;
+import static org.oscim.tiling.ITileDataSink.QueryResult.SUCCESS;
+import static org.oscim.tiling.ITileDataSink.QueryResult.TILE_NOT_FOUND;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import org.oscim.layers.tile.MapTile;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.source.ITileDecoder;
+import org.oscim.tiling.source.PbfDecoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class TileArchiveDataSource implements ITileDataSource {
+	static final Logger log = LoggerFactory.getLogger(TileArchiveDataSource.class);
+
+	protected final TileArchive mArchive;
+	protected final ITileDecoder mTileDecoder;
+
+	public TileArchiveDataSource(TileArchive archive, ITileDecoder tileDecoder) {
+		mArchive = archive;
+		mTileDecoder = tileDecoder;
+	}
+
+	@Override
+	public void query(MapTile tile, ITileDataSink sink) {
+		boolean ok = false;
+		try {
+			byte[] data = mArchive.read(tile);
+			if (data == null) {
+				sink.completed(TILE_NOT_FOUND);
+				return;
+			}
+			if (mTileDecoder instanceof PbfDecoder)
+				ok = ((PbfDecoder) mTileDecoder).decode(tile, sink, data, 0, data.length);
+			else
+				ok = mTileDecoder.decode(tile, sink, new ByteArrayInputStream(data));
+		} catch (IOException e) {
+			log.debug("{} Archive Error: {}", tile, e.getMessage());
+		}
+		sink.completed(ok ? SUCCESS : FAILED);
+	}
+
+	@Override
+	public void dispose() {
+		if (mTileDecoder instanceof PbfDecoder)
+			((PbfDecoder) mTileDecoder).dispose();
+	}
+
+	@Override
+	public void cancel() {
+	}
+}
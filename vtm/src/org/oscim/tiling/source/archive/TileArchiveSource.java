@@ -0,0 +1,140 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.archive;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.TileSource;
+import org.oscim.tiling.source.ITileDecoder;
+import org.oscim.tiling.source.bitmap.BitmapTileSource.BitmapTileDecoder;
+import org.oscim.tiling.source.oscimap4.TileDecoder;
+
+/**
+ * TileSource for pre-rendered tiles stored in a {@link TileArchive}.
+ * <p>
+ * The tile format is defined by the {@link DecoderFactory}, e.g.
+ * {@link #OSCIMAP4} for vector tiles or {@link #BITMAP} for image tiles to be
+ * used with a BitmapTileLayer.
+ */
+public class TileArchiveSource extends TileSource {
+
+	/**
+	 * Creates the decoder for each data source. Decoders are not shared
+	 * between loader threads.
+	 */
+	public interface DecoderFactory {
+		ITileDecoder createDecoder();
+	}
+
+	public final static DecoderFactory OSCIMAP4 = new DecoderFactory() {
+		@Override
+		public ITileDecoder createDecoder() {
+			return new TileDecoder();
+		}
+	};
+
+	public final static DecoderFactory BITMAP = new DecoderFactory() {
+		@Override
+		public ITileDecoder createDecoder() {
+			return new BitmapTileDecoder();
+		}
+	};
+
+	public static class Builder<T extends Builder<T>> extends TileSource.Builder<T> {
+		protected String file;
+		protected TileArchive archive;
+		protected DecoderFactory decoderFactory = OSCIMAP4;
+
+		public Builder() {
+			zoomMin = 0;
+			zoomMax = 17;
+		}
+
+		public T file(String file) {
+			this.file = file;
+			return self();
+		}
+
+		/** Use an archive which may be shared, e.g. as cache of an UrlTileSource */
+		public T archive(TileArchive archive) {
+			this.archive = archive;
+			return self();
+		}
+
+		public T decoder(DecoderFactory factory) {
+			this.decoderFactory = factory;
+			return self();
+		}
+
+		public TileArchiveSource build() {
+			return new TileArchiveSource(this);
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	public static Builder<?> builder() {
+		return new Builder();
+	}
+
+	private final DecoderFactory mDecoderFactory;
+	private final boolean mOwnArchive;
+	private TileArchive mArchive;
+
+	protected TileArchiveSource(Builder<?> builder) {
+		super(builder);
+		if (builder.archive == null && builder.file == null)
+			throw new IllegalArgumentException("no archive file set");
+
+		mDecoderFactory = builder.decoderFactory;
+		mOwnArchive = (builder.archive == null);
+		mArchive = mOwnArchive ? new TileArchive(new File(builder.file), false)
+		        : builder.archive;
+
+		setOption("file", mArchive.getFile().getPath());
+	}
+
+	public TileArchiveSource(String file) {
+		this(builder().file(file));
+	}
+
+	public TileArchive getArchive() {
+		return mArchive;
+	}
+
+	@Override
+	public OpenResult open() {
+		try {
+			mArchive.open();
+		} catch (IOException e) {
+			return new OpenResult(e.getMessage());
+		}
+		return OpenResult.SUCCESS;
+	}
+
+	@Override
+	public void close() {
+		if (mOwnArchive)
+			mArchive.close();
+	}
+
+	@Override
+	public ITileDataSource getDataSource() {
+		return new TileArchiveDataSource(mArchive, mDecoderFactory.createDecoder());
+	}
+}
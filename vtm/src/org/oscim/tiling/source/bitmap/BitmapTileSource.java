@@ -66,7 +66,7 @@ public class BitmapTileSource extends UrlTileSource {
 		return new UrlTileDataSource(this, new BitmapTileDecoder(), getHttpEngine());
 	}
 
-	public class BitmapTileDecoder implements ITileDecoder {
+	public static class BitmapTileDecoder implements ITileDecoder {
 
 		@Override
 		public boolean decode(Tile tile, ITileDataSink sink, InputStream is)
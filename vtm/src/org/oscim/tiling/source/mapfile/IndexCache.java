@@ -1,5 +1,6 @@
 /*
  * Copyright 2010, 2011, 2012 mapsforge.org
+ * Copyright 2014 Hannes Janetzek
  *
  * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
  *
@@ -18,59 +19,93 @@ package org.oscim.tiling.source.mapfile;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
-import java.util.Collections;
-import java.util.Map;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import org.oscim.tiling.source.mapfile.header.SubFileParameter;
-import org.oscim.utils.LRUCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * A cache for database index blocks with a fixed size and LRU policy.
+ * A cache for database index blocks with a fixed size, shared by all
+ * MapDatabase instances of a MapFileTileSource.
+ *
+ * The cache is split into stripes which are locked independently and only
+ * while looking up or inserting a block. Index blocks are keyed by their
+ * file position, which identifies the sub-file and the index block number.
+ * Missing blocks are read outside of any lock with positional reads, so
+ * that concurrent loaders do not serialize on file I/O.
+ *
+ * When the map file is memory-mapped, index entries are read directly from
+ * the mapping and nothing is cached.
  */
 class IndexCache {
+	static final Logger log = LoggerFactory.getLogger(IndexCache.class);
+
 	/**
 	 * Number of index entries that one index block consists of.
 	 */
 	private static final int INDEX_ENTRIES_PER_BLOCK = 128;
 
-	private static final Logger LOG = Logger.getLogger(IndexCache.class.getName());
-
 	/**
 	 * Maximum size in bytes of one index block.
 	 */
 	private static final int SIZE_OF_INDEX_BLOCK = INDEX_ENTRIES_PER_BLOCK
 	        * SubFileParameter.BYTES_PER_INDEX_ENTRY;
 
-	private final Map<IndexCacheEntryKey, byte[]> map;
-	private final RandomAccessFile randomAccessFile;
+	/**
+	 * Maximum number of stripes, must be a power of two.
+	 */
+	private static final int MAX_STRIPES = 16;
+
+	private final Stripe[] mStripes;
+	private final int mStripeMask;
+
+	private final FileChannel mChannel;
+	private final MappedFile mMappedFile;
 
 	/**
 	 * @param randomAccessFile
 	 *            the map file from which the index should be read and cached.
+	 * @param mappedFile
+	 *            the mapping of the map file, may be null.
 	 * @param capacity
-	 *            the maximum number of entries in the cache.
+	 *            the maximum number of index blocks in the cache.
 	 * @throws IllegalArgumentException
 	 *             if the capacity is negative.
 	 */
-	IndexCache(RandomAccessFile randomAccessFile, int capacity) {
-		this.randomAccessFile = randomAccessFile;
-		this.map = Collections.synchronizedMap(new LRUCache<IndexCacheEntryKey, byte[]>(capacity));
+	IndexCache(RandomAccessFile randomAccessFile, MappedFile mappedFile, int capacity) {
+		if (capacity < 0)
+			throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+
+		mChannel = randomAccessFile.getChannel();
+		mMappedFile = mappedFile;
+
+		int stripes = 1;
+		while (stripes < MAX_STRIPES && stripes * 2 <= capacity)
+			stripes *= 2;
+
+		mStripeMask = stripes - 1;
+		mStripes = new Stripe[stripes];
+
+		int stripeCapacity = (capacity + stripes - 1) / stripes;
+		for (int i = 0; i < stripes; i++)
+			mStripes[i] = new Stripe(stripeCapacity);
 	}
 
 	/**
 	 * Destroy the cache at the end of its lifetime.
 	 */
 	void destroy() {
-		this.map.clear();
+		for (Stripe s : mStripes)
+			s.clear();
 	}
 
 	/**
 	 * Returns the index entry of a block in the given map file. If the required
-	 * index entry is not cached, it will be
-	 * read from the map file index and put in the cache.
-	 * 
+	 * index entry is not cached, it will be read from the map file index and
+	 * put in the cache.
+	 *
 	 * @param subFileParameter
 	 *            the parameters of the map file for which the index entry is
 	 *            needed.
@@ -78,50 +113,134 @@ class IndexCache {
 	 *            the number of the block in the map file.
 	 * @return the index entry or -1 if the block number is invalid.
 	 */
-	synchronized long getIndexEntry(SubFileParameter subFileParameter, long blockNumber) {
-		try {
-			// check if the block number is out of bounds
-			if (blockNumber >= subFileParameter.numberOfBlocks) {
-				return -1;
-			}
+	long getIndexEntry(SubFileParameter subFileParameter, long blockNumber) {
+		// check if the block number is out of bounds
+		if (blockNumber >= subFileParameter.numberOfBlocks) {
+			return -1;
+		}
 
-			// calculate the index block number
-			long indexBlockNumber = blockNumber / INDEX_ENTRIES_PER_BLOCK;
+		if (mMappedFile != null) {
+			long position = subFileParameter.indexStartAddress
+			        + blockNumber * SubFileParameter.BYTES_PER_INDEX_ENTRY;
 
-			// create the cache entry key for this request
-			IndexCacheEntryKey indexCacheEntryKey = new IndexCacheEntryKey(subFileParameter,
-			                                                               indexBlockNumber);
+			return mMappedFile.getFiveBytesLong(position);
+		}
 
-			// check for cached index block
-			byte[] indexBlock = this.map.get(indexCacheEntryKey);
-			if (indexBlock == null) {
-				// cache miss, seek to the correct index block in the file and read it
-				long indexBlockPosition = subFileParameter.indexStartAddress + indexBlockNumber
-				        * SIZE_OF_INDEX_BLOCK;
+		// calculate the index block number
+		long indexBlockNumber = blockNumber / INDEX_ENTRIES_PER_BLOCK;
 
-				int remainingIndexSize = (int) (subFileParameter.indexEndAddress - indexBlockPosition);
-				int indexBlockSize = Math.min(SIZE_OF_INDEX_BLOCK, remainingIndexSize);
-				indexBlock = new byte[indexBlockSize];
+		// the file position of the index block is unique for all sub-files
+		long indexBlockPosition = subFileParameter.indexStartAddress
+		        + indexBlockNumber * SIZE_OF_INDEX_BLOCK;
 
-				this.randomAccessFile.seek(indexBlockPosition);
-				if (this.randomAccessFile.read(indexBlock, 0, indexBlockSize) != indexBlockSize) {
-					LOG.warning("reading the current index block has failed");
-					return -1;
+		Stripe stripe = mStripes[hash(indexBlockPosition) & mStripeMask];
+
+		// check for cached index block
+		byte[] indexBlock = stripe.get(indexBlockPosition);
+		if (indexBlock == null) {
+			// cache miss, read the index block from the file
+			int remainingIndexSize = (int) (subFileParameter.indexEndAddress - indexBlockPosition);
+			int indexBlockSize = Math.min(SIZE_OF_INDEX_BLOCK, remainingIndexSize);
+
+			indexBlock = readIndexBlock(indexBlockPosition, indexBlockSize);
+			if (indexBlock == null)
+				return -1;
+
+			stripe.put(indexBlockPosition, indexBlock);
+		}
+
+		// calculate the address of the index entry inside the index block
+		long indexEntryInBlock = blockNumber % INDEX_ENTRIES_PER_BLOCK;
+		int addressInIndexBlock = (int) (indexEntryInBlock * SubFileParameter.BYTES_PER_INDEX_ENTRY);
+
+		// return the real index entry
+		return Deserializer.getFiveBytesLong(indexBlock, addressInIndexBlock);
+	}
+
+	private byte[] readIndexBlock(long position, int size) {
+		byte[] indexBlock = new byte[size];
+		ByteBuffer buf = ByteBuffer.wrap(indexBlock);
+		try {
+			// positional reads do not modify the file pointer and can be
+			// issued concurrently.
+			while (buf.hasRemaining()) {
+				if (mChannel.read(buf, position + buf.position()) < 0) {
+					log.warn("reading the current index block has failed");
+					return null;
 				}
+			}
+		} catch (IOException e) {
+			log.error(e.getMessage());
+			return null;
+		}
+		return indexBlock;
+	}
+
+	private static int hash(long key) {
+		int h = (int) (key ^ (key >>> 32));
+		return h ^ (h >>> 16) ^ (h >>> 8);
+	}
 
-				// put the index block in the map
-				this.map.put(indexCacheEntryKey, indexBlock);
+	/**
+	 * Fixed-size set of index blocks with CLOCK eviction (an approximation
+	 * of LRU). Stripes are small, so lookup is a linear scan over the keys.
+	 */
+	static final class Stripe {
+		private final long[] keys;
+		private final byte[][] blocks;
+		private final boolean[] referenced;
+		private int size;
+		private int hand;
+
+		Stripe(int capacity) {
+			keys = new long[capacity];
+			blocks = new byte[capacity][];
+			referenced = new boolean[capacity];
+		}
+
+		synchronized byte[] get(long key) {
+			for (int i = 0; i < size; i++) {
+				if (keys[i] == key) {
+					referenced[i] = true;
+					return blocks[i];
+				}
 			}
+			return null;
+		}
 
-			// calculate the address of the index entry inside the index block
-			long indexEntryInBlock = blockNumber % INDEX_ENTRIES_PER_BLOCK;
-			int addressInIndexBlock = (int) (indexEntryInBlock * SubFileParameter.BYTES_PER_INDEX_ENTRY);
+		synchronized void put(long key, byte[] block) {
+			int capacity = keys.length;
+			if (capacity == 0)
+				return;
+
+			// another thread may have loaded the same block
+			for (int i = 0; i < size; i++)
+				if (keys[i] == key)
+					return;
+
+			int slot;
+			if (size < capacity) {
+				slot = size++;
+			} else {
+				// advance the clock hand to the first slot that was not
+				// accessed since the last round
+				while (referenced[hand]) {
+					referenced[hand] = false;
+					hand = (hand + 1) % capacity;
+				}
+				slot = hand;
+				hand = (hand + 1) % capacity;
+			}
+			keys[slot] = key;
+			blocks[slot] = block;
+			referenced[slot] = false;
+		}
 
-			// return the real index entry
-			return Deserializer.getFiveBytesLong(indexBlock, addressInIndexBlock);
-		} catch (IOException e) {
-			LOG.log(Level.SEVERE, null, e);
-			return -1;
+		synchronized void clear() {
+			for (int i = 0; i < size; i++)
+				blocks[i] = null;
+			size = 0;
+			hand = 0;
 		}
 	}
 }
@@ -24,6 +24,7 @@ import static org.oscim.tiling.ITileDataSink.QueryResult.SUCCESS;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 
 import org.oscim.core.GeometryBuffer.GeometryType;
 import org.oscim.core.MapElement;
@@ -31,9 +32,11 @@ import org.oscim.core.MercatorProjection;
 import org.oscim.core.Tag;
 import org.oscim.core.Tile;
 import org.oscim.layers.tile.MapTile;
+import org.oscim.layers.tile.TileMetrics;
 import org.oscim.tiling.ITileDataSink;
 import org.oscim.tiling.ITileDataSource;
 import org.oscim.tiling.source.mapfile.header.SubFileParameter;
+import org.oscim.utils.Stopwatch;
 import org.oscim.utils.geom.TileClipper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,7 +47,7 @@ import org.slf4j.LoggerFactory;
  * @see <a
  *      href="http://code.google.com/p/mapsforge/wiki/SpecificationBinaryMapFile">Specification</a>
  */
-public class MapDatabase implements ITileDataSource {
+public class MapDatabase implements ITileDataSource, TileMetrics.IOTimed {
 	/** Bitmask to extract the block offset from an index entry. */
 	private static final long BITMASK_INDEX_OFFSET = 0x7FFFFFFFFFL;
 
@@ -131,6 +134,7 @@ public class MapDatabase implements ITileDataSource {
 	private long mFileSize;
 	private boolean mDebugFile;
 	private RandomAccessFile mInputFile;
+	private MappedFile mMappedFile;
 	private ReadBuffer mReadBuffer;
 	private String mSignatureBlock;
 	private String mSignaturePoi;
@@ -148,19 +152,29 @@ public class MapDatabase implements ITileDataSource {
 
 	private final MapFileTileSource mTileSource;
 
+	private Stopwatch mIOTimer;
+
 	public MapDatabase(MapFileTileSource tileSource) throws IOException {
 		mTileSource = tileSource;
-		try {
-			/* open the file in read only mode */
-			mInputFile = new RandomAccessFile(tileSource.mapFile, "r");
-			mFileSize = mInputFile.length();
-			mReadBuffer = new ReadBuffer(mInputFile);
+		mMappedFile = tileSource.mappedFile;
 
-		} catch (IOException e) {
-			log.error(e.getMessage());
-			/* make sure that the file is closed */
-			dispose();
-			throw new IOException();
+		if (mMappedFile != null) {
+			/* decode blocks directly from the shared mapping */
+			mFileSize = mMappedFile.size();
+			mReadBuffer = new ReadBuffer(null);
+		} else {
+			try {
+				/* open the file in read only mode */
+				mInputFile = new RandomAccessFile(tileSource.mapFile, "r");
+				mFileSize = mInputFile.length();
+				mReadBuffer = new ReadBuffer(mInputFile);
+
+			} catch (IOException e) {
+				log.error(e.getMessage());
+				/* make sure that the file is closed */
+				dispose();
+				throw new IOException();
+			}
 		}
 
 		mTileProjection = new TileProjection();
@@ -225,9 +239,15 @@ public class MapDatabase implements ITileDataSource {
 		sink.completed(SUCCESS);
 	}
 
+	@Override
+	public void setIOTimer(Stopwatch timer) {
+		mIOTimer = timer;
+	}
+
 	@Override
 	public void dispose() {
 		mReadBuffer = null;
+		mMappedFile = null;
 		if (mInputFile != null) {
 
 			try {
@@ -438,14 +458,33 @@ public class MapDatabase implements ITileDataSource {
 					return;
 				}
 
-				/* seek to the current block in the map file */
-				mInputFile.seek(subFileParameter.startAddress + blockPointer);
+				if (mMappedFile != null) {
+					/* use the current block from the mapping without copying */
+					ByteBuffer block = mMappedFile.slice(subFileParameter.startAddress
+					        + blockPointer, blockSize);
 
-				/* read the current block into the buffer */
-				if (!mReadBuffer.readFromFile(blockSize)) {
-					/* skip the current block */
-					log.warn("reading current block has failed: " + blockSize);
-					return;
+					if (!mReadBuffer.setBuffer(block)) {
+						log.warn("mapping current block has failed: " + blockSize);
+						return;
+					}
+				} else {
+					if (mIOTimer != null)
+						mIOTimer.start();
+
+					/* seek to the current block in the map file */
+					mInputFile.seek(subFileParameter.startAddress + blockPointer);
+
+					/* read the current block into the buffer */
+					boolean read = mReadBuffer.readFromFile(blockSize);
+
+					if (mIOTimer != null)
+						mIOTimer.stop();
+
+					if (!read) {
+						/* skip the current block */
+						log.warn("reading current block has failed: " + blockSize);
+						return;
+					}
 				}
 
 				/* calculate the top-left coordinates of the underlying tile */
@@ -538,17 +577,12 @@ public class MapDatabase implements ITileDataSource {
 
 			/* bit 1-3 enable optional features
 			 * check if the POI has a name */
-			if ((featureByte & POI_FEATURE_NAME) != 0) {
-				String str = mReadBuffer.readUTF8EncodedString();
-				e.tags.add(new Tag(Tag.KEY_NAME, str, false));
-			}
+			if ((featureByte & POI_FEATURE_NAME) != 0)
+				mReadBuffer.readTag(e.tags, Tag.KEY_NAME);
 
 			/* check if the POI has a house number */
-			if ((featureByte & POI_FEATURE_HOUSE_NUMBER) != 0) {
-				// mReadBuffer.getPositionAndSkip();
-				// String str =
-				mReadBuffer.readUTF8EncodedString();
-			}
+			if ((featureByte & POI_FEATURE_HOUSE_NUMBER) != 0)
+				mReadBuffer.getPositionAndSkip();
 
 			/* check if the POI has an elevation */
 			if ((featureByte & POI_FEATURE_ELEVATION) != 0) {
@@ -771,32 +805,25 @@ public class MapDatabase implements ITileDataSource {
 			if (mTileSource.experimental) {
 				if (hasName) {
 					int textPos = mReadBuffer.readUnsignedInt();
-					String str = mReadBuffer.readUTF8EncodedStringAt(stringOffset + textPos);
-					e.tags.add(new Tag(Tag.KEY_NAME, str, false));
+					mReadBuffer.readTagAt(e.tags, Tag.KEY_NAME, stringOffset + textPos);
 				}
 				if (hasHouseNr) {
 					int textPos = mReadBuffer.readUnsignedInt();
-					String str = mReadBuffer.readUTF8EncodedStringAt(stringOffset + textPos);
-					e.tags.add(new Tag(Tag.KEY_HOUSE_NUMBER, str, false));
+					mReadBuffer.readTagAt(e.tags, Tag.KEY_HOUSE_NUMBER, stringOffset + textPos);
 				}
 				if (hasRef) {
 					int textPos = mReadBuffer.readUnsignedInt();
-					String str = mReadBuffer.readUTF8EncodedStringAt(stringOffset + textPos);
-					e.tags.add(new Tag(Tag.KEY_REF, str, false));
+					mReadBuffer.readTagAt(e.tags, Tag.KEY_REF, stringOffset + textPos);
 				}
 			} else {
-				if (hasName) {
-					String str = mReadBuffer.readUTF8EncodedString();
-					e.tags.add(new Tag(Tag.KEY_NAME, str, false));
-				}
-				if (hasHouseNr) {
-					String str = mReadBuffer.readUTF8EncodedString();
-					e.tags.add(new Tag(Tag.KEY_HOUSE_NUMBER, str, false));
-				}
-				if (hasRef) {
-					String str = mReadBuffer.readUTF8EncodedString();
-					e.tags.add(new Tag(Tag.KEY_REF, str, false));
-				}
+				if (hasName)
+					mReadBuffer.readTag(e.tags, Tag.KEY_NAME);
+
+				if (hasHouseNr)
+					mReadBuffer.readTag(e.tags, Tag.KEY_HOUSE_NUMBER);
+
+				if (hasRef)
+					mReadBuffer.readTag(e.tags, Tag.KEY_REF);
 			}
 			if ((featureByte & WAY_FEATURE_LABEL_POSITION) != 0)
 				// labelPosition =
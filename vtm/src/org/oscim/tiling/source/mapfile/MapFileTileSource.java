@@ -33,9 +33,9 @@ public class MapFileTileSource extends TileSource {
 	static final Logger log = LoggerFactory.getLogger(MapFileTileSource.class);
 
 	/**
-	 * Amount of cache blocks that the index cache should store.
+	 * Default amount of cache blocks that the index cache should store.
 	 */
-	private static final int INDEX_CACHE_SIZE = 64;
+	public static final int INDEX_CACHE_SIZE = 64;
 	private static final String READ_ONLY_MODE = "r";
 
 	MapFileHeader fileHeader;
@@ -45,10 +45,39 @@ public class MapFileTileSource extends TileSource {
 	File mapFile;
 	RandomAccessFile mInputFile;
 
+	/** Shared read-only mapping of the file, null when not memory-mapped */
+	MappedFile mappedFile;
+	private boolean mMemoryMapped;
+	private int mIndexCacheSize = INDEX_CACHE_SIZE;
+
 	public MapFileTileSource() {
 		super(0, 17);
 	}
 
+	/**
+	 * Map the file once into memory and let all MapDatabase instances decode
+	 * blocks directly from the mapping instead of reading them with their own
+	 * file handle. Must be set before {@link #open()}.
+	 */
+	public void setMemoryMapped(boolean enable) {
+		mMemoryMapped = enable;
+	}
+
+	public boolean isMemoryMapped() {
+		return mMemoryMapped;
+	}
+
+	/**
+	 * Set the number of index blocks kept in the index cache which is shared
+	 * by all MapDatabase instances. Must be set before {@link #open()}.
+	 */
+	public void setIndexCacheSize(int size) {
+		if (size < 0)
+			throw new IllegalArgumentException("size must not be negative: " + size);
+
+		mIndexCacheSize = size;
+	}
+
 	public boolean setMapFile(String filename) {
 		setOption("file", filename);
 
@@ -99,7 +128,10 @@ public class MapFileTileSource extends TileSource {
 			}
 			fileInfo = fileHeader.getMapFileInfo();
 			mapFile = file;
-			databaseIndexCache = new IndexCache(mInputFile, INDEX_CACHE_SIZE);
+			if (mMemoryMapped)
+				mappedFile = new MappedFile(mInputFile);
+
+			databaseIndexCache = new IndexCache(mInputFile, mappedFile, mIndexCacheSize);
 
 			experimental = fileInfo.fileVersion == 4;
 
@@ -130,6 +162,8 @@ public class MapFileTileSource extends TileSource {
 		fileHeader = null;
 		fileInfo = null;
 		mapFile = null;
+		/* mapping is released when no MapDatabase references it anymore */
+		mappedFile = null;
 
 		if (databaseIndexCache != null) {
 			databaseIndexCache.destroy();
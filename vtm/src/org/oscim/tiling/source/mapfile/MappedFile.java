@@ -0,0 +1,108 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.mapfile;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Read-only memory mapping of a map file which is shared by all
+ * MapDatabase instances of a MapFileTileSource.
+ *
+ * A single MappedByteBuffer is limited to 2GB, so the file is mapped in
+ * segments. Consecutive segments overlap by the maximum block size such that
+ * every block is contained completely in the segment of its start address.
+ */
+class MappedFile {
+
+	/** Start address distance between two segments */
+	static final long SEGMENT_SIZE = 1L << 30;
+
+	/** Overlap of two segments, must not be smaller than any block */
+	static final long SEGMENT_OVERLAP = ReadBuffer.MAXIMUM_BUFFER_SIZE;
+
+	private final MappedByteBuffer[] mSegments;
+	private final long mFileSize;
+
+	MappedFile(RandomAccessFile file) throws IOException {
+		FileChannel channel = file.getChannel();
+		mFileSize = channel.size();
+
+		int numSegments = (int) ((mFileSize + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+		mSegments = new MappedByteBuffer[Math.max(numSegments, 1)];
+
+		for (int i = 0; i < numSegments; i++) {
+			long start = i * SEGMENT_SIZE;
+			long size = Math.min(SEGMENT_SIZE + SEGMENT_OVERLAP, mFileSize - start);
+			mSegments[i] = channel.map(MapMode.READ_ONLY, start, size);
+		}
+	}
+
+	long size() {
+		return mFileSize;
+	}
+
+	/**
+	 * Converts five bytes at the given file position to an unsigned long.
+	 * <p>
+	 * The byte order is big-endian.
+	 * 
+	 * @param position
+	 *            the absolute file position.
+	 * @return the long value.
+	 */
+	long getFiveBytesLong(long position) {
+		int segment = (int) (position / SEGMENT_SIZE);
+		int offset = (int) (position - segment * SEGMENT_SIZE);
+		MappedByteBuffer buf = mSegments[segment];
+
+		return (buf.get(offset) & 0xffL) << 32
+		        | (buf.get(offset + 1) & 0xffL) << 24
+		        | (buf.get(offset + 2) & 0xffL) << 16
+		        | (buf.get(offset + 3) & 0xffL) << 8
+		        | (buf.get(offset + 4) & 0xffL);
+	}
+
+	/**
+	 * Returns a view on the given region of the file. The content is not
+	 * copied. Safe to be called concurrently.
+	 *
+	 * @param position
+	 *            the absolute file position.
+	 * @param length
+	 *            the length of the region, not larger than SEGMENT_OVERLAP.
+	 * @return the region, or null when it is outside of the file.
+	 */
+	ByteBuffer slice(long position, int length) {
+		if (position < 0 || length < 0 || length > SEGMENT_OVERLAP
+		        || position + length > mFileSize)
+			return null;
+
+		int segment = (int) (position / SEGMENT_SIZE);
+		int offset = (int) (position - segment * SEGMENT_SIZE);
+
+		/* duplicate() does not touch the shared buffer's position and limit */
+		ByteBuffer buf = mSegments[segment].duplicate();
+		buf.limit(offset + length);
+		buf.position(offset);
+		return buf.slice();
+	}
+}
@@ -19,13 +19,17 @@ package org.oscim.tiling.source.mapfile;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.util.logging.Logger;
 
 import org.oscim.core.Tag;
+import org.oscim.core.TagDictionary;
 import org.oscim.core.TagSet;
 
 /**
  * Reads from a {@link RandomAccessFile} into a buffer and decodes the data.
+ * Alternatively decodes directly from a slice of a memory-mapped file, see
+ * {@link #setBuffer(ByteBuffer)}.
  */
 public class ReadBuffer {
 	private static final String CHARSET_UTF8 = "UTF-8";
@@ -37,9 +41,14 @@ public class ReadBuffer {
 	static final int MAXIMUM_BUFFER_SIZE = 8000000;
 
 	private byte[] mBufferData;
+	private ByteBuffer mBufferWrapper;
+	private ByteBuffer mBuffer;
 	private int mBufferPosition;
 	private final RandomAccessFile mInputFile;
 
+	/** Scratch array to decode strings from buffers without backing array */
+	private byte[] mStringData;
+
 	ReadBuffer(RandomAccessFile inputFile) {
 		mInputFile = inputFile;
 	}
@@ -50,7 +59,7 @@ public class ReadBuffer {
 	 * @return the byte value.
 	 */
 	public byte readByte() {
-		return mBufferData[mBufferPosition++];
+		return mBuffer.get(mBufferPosition++);
 	}
 
 	/**
@@ -74,8 +83,10 @@ public class ReadBuffer {
 				return false;
 			}
 			mBufferData = new byte[length];
+			mBufferWrapper = ByteBuffer.wrap(mBufferData);
 		}
 
+		mBuffer = mBufferWrapper;
 		mBufferPosition = 0;
 
 		// reset the buffer position and read the data into the buffer
@@ -83,6 +94,28 @@ public class ReadBuffer {
 		return mInputFile.read(mBufferData, 0, length) == length;
 	}
 
+	/**
+	 * Uses the given buffer as read buffer and resets the internal buffer
+	 * position. The buffer is not copied, its content is decoded in place
+	 * starting at index 0 up to its limit.
+	 * 
+	 * @param buffer
+	 *            e.g. a slice of a memory-mapped map file.
+	 * @return true if the buffer can be used, false otherwise.
+	 */
+	public boolean setBuffer(ByteBuffer buffer) {
+		if (buffer == null)
+			return false;
+
+		if (buffer.limit() > MAXIMUM_BUFFER_SIZE) {
+			LOG.warning("invalid read length: " + buffer.limit());
+			return false;
+		}
+		mBuffer = buffer;
+		mBufferPosition = 0;
+		return true;
+	}
+
 	/**
 	 * Converts four bytes from the read buffer to a signed int.
 	 * <p>
@@ -92,13 +125,13 @@ public class ReadBuffer {
 	 */
 	public int readInt() {
 		int pos = mBufferPosition;
-		byte[] data = mBufferData;
+		ByteBuffer data = mBuffer;
 		mBufferPosition += 4;
 
-		return data[pos] << 24
-		        | (data[pos + 1] & 0xff) << 16
-		        | (data[pos + 2] & 0xff) << 8
-		        | (data[pos + 3] & 0xff);
+		return data.get(pos) << 24
+		        | (data.get(pos + 1) & 0xff) << 16
+		        | (data.get(pos + 2) & 0xff) << 8
+		        | (data.get(pos + 3) & 0xff);
 	}
 
 	/**
@@ -110,17 +143,17 @@ public class ReadBuffer {
 	 */
 	public long readLong() {
 		int pos = mBufferPosition;
-		byte[] data = mBufferData;
+		ByteBuffer data = mBuffer;
 		mBufferPosition += 8;
 
-		return (data[pos] & 0xffL) << 56
-		        | (data[pos + 1] & 0xffL) << 48
-		        | (data[pos + 2] & 0xffL) << 40
-		        | (data[pos + 3] & 0xffL) << 32
-		        | (data[pos + 4] & 0xffL) << 24
-		        | (data[pos + 5] & 0xffL) << 16
-		        | (data[pos + 6] & 0xffL) << 8
-		        | (data[pos + 7] & 0xffL);
+		return (data.get(pos) & 0xffL) << 56
+		        | (data.get(pos + 1) & 0xffL) << 48
+		        | (data.get(pos + 2) & 0xffL) << 40
+		        | (data.get(pos + 3) & 0xffL) << 32
+		        | (data.get(pos + 4) & 0xffL) << 24
+		        | (data.get(pos + 5) & 0xffL) << 16
+		        | (data.get(pos + 6) & 0xffL) << 8
+		        | (data.get(pos + 7) & 0xffL);
 
 	}
 
@@ -133,7 +166,7 @@ public class ReadBuffer {
 	 */
 	public int readShort() {
 		mBufferPosition += 2;
-		return mBufferData[mBufferPosition - 2] << 8 | (mBufferData[mBufferPosition - 1] & 0xff);
+		return mBuffer.get(mBufferPosition - 2) << 8 | (mBuffer.get(mBufferPosition - 1) & 0xff);
 	}
 
 	/**
@@ -147,53 +180,53 @@ public class ReadBuffer {
 	 */
 	public int readSignedInt() {
 		int pos = mBufferPosition;
-		byte[] data = mBufferData;
+		ByteBuffer data = mBuffer;
 		int flag;
 
-		if ((data[pos] & 0x80) == 0) {
+		if ((data.get(pos) & 0x80) == 0) {
 			mBufferPosition += 1;
-			flag = ((data[pos] & 0x40) >> 6);
+			flag = ((data.get(pos) & 0x40) >> 6);
 
-			return ((data[pos] & 0x3f) ^ -flag) + flag;
+			return ((data.get(pos) & 0x3f) ^ -flag) + flag;
 		}
 
-		if ((data[pos + 1] & 0x80) == 0) {
+		if ((data.get(pos + 1) & 0x80) == 0) {
 			mBufferPosition += 2;
-			flag = ((data[pos + 1] & 0x40) >> 6);
+			flag = ((data.get(pos + 1) & 0x40) >> 6);
 
-			return (((data[pos] & 0x7f)
-			        | (data[pos + 1] & 0x3f) << 7) ^ -flag) + flag;
+			return (((data.get(pos) & 0x7f)
+			        | (data.get(pos + 1) & 0x3f) << 7) ^ -flag) + flag;
 
 		}
 
-		if ((data[pos + 2] & 0x80) == 0) {
+		if ((data.get(pos + 2) & 0x80) == 0) {
 			mBufferPosition += 3;
-			flag = ((data[pos + 2] & 0x40) >> 6);
+			flag = ((data.get(pos + 2) & 0x40) >> 6);
 
-			return (((data[pos] & 0x7f)
-			        | (data[pos + 1] & 0x7f) << 7
-			        | (data[pos + 2] & 0x3f) << 14) ^ -flag) + flag;
+			return (((data.get(pos) & 0x7f)
+			        | (data.get(pos + 1) & 0x7f) << 7
+			        | (data.get(pos + 2) & 0x3f) << 14) ^ -flag) + flag;
 
 		}
 
-		if ((data[pos + 3] & 0x80) == 0) {
+		if ((data.get(pos + 3) & 0x80) == 0) {
 			mBufferPosition += 4;
-			flag = ((data[pos + 3] & 0x40) >> 6);
+			flag = ((data.get(pos + 3) & 0x40) >> 6);
 
-			return (((data[pos] & 0x7f)
-			        | ((data[pos + 1] & 0x7f) << 7)
-			        | ((data[pos + 2] & 0x7f) << 14)
-			        | ((data[pos + 3] & 0x3f) << 21)) ^ -flag) + flag;
+			return (((data.get(pos) & 0x7f)
+			        | ((data.get(pos + 1) & 0x7f) << 7)
+			        | ((data.get(pos + 2) & 0x7f) << 14)
+			        | ((data.get(pos + 3) & 0x3f) << 21)) ^ -flag) + flag;
 		}
 
 		mBufferPosition += 5;
-		flag = ((data[pos + 4] & 0x40) >> 6);
+		flag = ((data.get(pos + 4) & 0x40) >> 6);
 
-		return ((((data[pos] & 0x7f)
-		        | (data[pos + 1] & 0x7f) << 7
-		        | (data[pos + 2] & 0x7f) << 14
-		        | (data[pos + 3] & 0x7f) << 21
-		        | (data[pos + 4] & 0x3f) << 28)) ^ -flag) + flag;
+		return ((((data.get(pos) & 0x7f)
+		        | (data.get(pos + 1) & 0x7f) << 7
+		        | (data.get(pos + 2) & 0x7f) << 14
+		        | (data.get(pos + 3) & 0x7f) << 21
+		        | (data.get(pos + 4) & 0x3f) << 28)) ^ -flag) + flag;
 
 	}
 
@@ -212,53 +245,53 @@ public class ReadBuffer {
 	 */
 	public void readSignedInt(int[] values, int length) {
 		int pos = mBufferPosition;
-		byte[] data = mBufferData;
+		ByteBuffer data = mBuffer;
 		int flag;
 
 		for (int i = 0; i < length; i++) {
 
-			if ((data[pos] & 0x80) == 0) {
+			if ((data.get(pos) & 0x80) == 0) {
 
-				flag = ((data[pos] & 0x40) >> 6);
+				flag = ((data.get(pos) & 0x40) >> 6);
 
-				values[i] = ((data[pos] & 0x3f) ^ -flag) + flag;
+				values[i] = ((data.get(pos) & 0x3f) ^ -flag) + flag;
 				pos += 1;
 
-			} else if ((data[pos + 1] & 0x80) == 0) {
+			} else if ((data.get(pos + 1) & 0x80) == 0) {
 
-				flag = ((data[pos + 1] & 0x40) >> 6);
+				flag = ((data.get(pos + 1) & 0x40) >> 6);
 
-				values[i] = (((data[pos] & 0x7f)
-				        | ((data[pos + 1] & 0x3f) << 7)) ^ -flag) + flag;
+				values[i] = (((data.get(pos) & 0x7f)
+				        | ((data.get(pos + 1) & 0x3f) << 7)) ^ -flag) + flag;
 				pos += 2;
 
-			} else if ((data[pos + 2] & 0x80) == 0) {
+			} else if ((data.get(pos + 2) & 0x80) == 0) {
 
-				flag = ((data[pos + 2] & 0x40) >> 6);
+				flag = ((data.get(pos + 2) & 0x40) >> 6);
 
-				values[i] = (((data[pos] & 0x7f)
-				        | ((data[pos + 1] & 0x7f) << 7)
-				        | ((data[pos + 2] & 0x3f) << 14)) ^ -flag) + flag;
+				values[i] = (((data.get(pos) & 0x7f)
+				        | ((data.get(pos + 1) & 0x7f) << 7)
+				        | ((data.get(pos + 2) & 0x3f) << 14)) ^ -flag) + flag;
 				pos += 3;
 
-			} else if ((data[pos + 3] & 0x80) == 0) {
+			} else if ((data.get(pos + 3) & 0x80) == 0) {
 
-				flag = ((data[pos + 3] & 0x40) >> 6);
+				flag = ((data.get(pos + 3) & 0x40) >> 6);
 
-				values[i] = (((data[pos] & 0x7f)
-				        | ((data[pos + 1] & 0x7f) << 7)
-				        | ((data[pos + 2] & 0x7f) << 14)
-				        | ((data[pos + 3] & 0x3f) << 21)) ^ -flag) + flag;
+				values[i] = (((data.get(pos) & 0x7f)
+				        | ((data.get(pos + 1) & 0x7f) << 7)
+				        | ((data.get(pos + 2) & 0x7f) << 14)
+				        | ((data.get(pos + 3) & 0x3f) << 21)) ^ -flag) + flag;
 
 				pos += 4;
 			} else {
-				flag = ((data[pos + 4] & 0x40) >> 6);
+				flag = ((data.get(pos + 4) & 0x40) >> 6);
 
-				values[i] = ((((data[pos] & 0x7f)
-				        | ((data[pos + 1] & 0x7f) << 7)
-				        | ((data[pos + 2] & 0x7f) << 14)
-				        | ((data[pos + 3] & 0x7f) << 21)
-				        | ((data[pos + 4] & 0x3f) << 28))) ^ -flag) + flag;
+				values[i] = ((((data.get(pos) & 0x7f)
+				        | ((data.get(pos + 1) & 0x7f) << 7)
+				        | ((data.get(pos + 2) & 0x7f) << 14)
+				        | ((data.get(pos + 3) & 0x7f) << 21)
+				        | ((data.get(pos + 4) & 0x3f) << 28))) ^ -flag) + flag;
 
 				pos += 5;
 			}
@@ -278,40 +311,40 @@ public class ReadBuffer {
 	 */
 	public int readUnsignedInt() {
 		int pos = mBufferPosition;
-		byte[] data = mBufferData;
+		ByteBuffer data = mBuffer;
 
-		if ((data[pos] & 0x80) == 0) {
+		if ((data.get(pos) & 0x80) == 0) {
 			mBufferPosition += 1;
-			return (data[pos] & 0x7f);
+			return (data.get(pos) & 0x7f);
 		}
 
-		if ((data[pos + 1] & 0x80) == 0) {
+		if ((data.get(pos + 1) & 0x80) == 0) {
 			mBufferPosition += 2;
-			return (data[pos] & 0x7f)
-			        | (data[pos + 1] & 0x7f) << 7;
+			return (data.get(pos) & 0x7f)
+			        | (data.get(pos + 1) & 0x7f) << 7;
 		}
 
-		if ((data[pos + 2] & 0x80) == 0) {
+		if ((data.get(pos + 2) & 0x80) == 0) {
 			mBufferPosition += 3;
-			return (data[pos] & 0x7f)
-			        | ((data[pos + 1] & 0x7f) << 7)
-			        | ((data[pos + 2] & 0x7f) << 14);
+			return (data.get(pos) & 0x7f)
+			        | ((data.get(pos + 1) & 0x7f) << 7)
+			        | ((data.get(pos + 2) & 0x7f) << 14);
 		}
 
-		if ((data[pos + 3] & 0x80) == 0) {
+		if ((data.get(pos + 3) & 0x80) == 0) {
 			mBufferPosition += 4;
-			return (data[pos] & 0x7f)
-			        | ((data[pos + 1] & 0x7f) << 7)
-			        | ((data[pos + 2] & 0x7f) << 14)
-			        | ((data[pos + 3] & 0x7f) << 21);
+			return (data.get(pos) & 0x7f)
+			        | ((data.get(pos + 1) & 0x7f) << 7)
+			        | ((data.get(pos + 2) & 0x7f) << 14)
+			        | ((data.get(pos + 3) & 0x7f) << 21);
 		}
 
 		mBufferPosition += 5;
-		return (data[pos] & 0x7f)
-		        | ((data[pos + 1] & 0x7f) << 7)
-		        | ((data[pos + 2] & 0x7f) << 14)
-		        | ((data[pos + 3] & 0x7f) << 21)
-		        | ((data[pos + 4] & 0x7f) << 28);
+		return (data.get(pos) & 0x7f)
+		        | ((data.get(pos + 1) & 0x7f) << 7)
+		        | ((data.get(pos + 2) & 0x7f) << 14)
+		        | ((data.get(pos + 3) & 0x7f) << 21)
+		        | ((data.get(pos + 4) & 0x7f) << 28);
 	}
 
 	/**
@@ -341,11 +374,21 @@ public class ReadBuffer {
 	 * @return the UTF-8 decoded string (may be null).
 	 */
 	public String readUTF8EncodedString(int stringLength) {
-		if (stringLength > 0 && mBufferPosition + stringLength <= mBufferData.length) {
+		if (stringLength > 0 && mBufferPosition + stringLength <= mBuffer.limit()) {
+			int pos = mBufferPosition;
 			mBufferPosition += stringLength;
 			try {
-				return new String(mBufferData, mBufferPosition - stringLength, stringLength,
-				                  CHARSET_UTF8);
+				if (mBuffer.hasArray())
+					return new String(mBuffer.array(), mBuffer.arrayOffset() + pos,
+					                  stringLength, CHARSET_UTF8);
+
+				if (mStringData == null || mStringData.length < stringLength)
+					mStringData = new byte[stringLength];
+
+				for (int i = 0; i < stringLength; i++)
+					mStringData[i] = mBuffer.get(pos + i);
+
+				return new String(mStringData, 0, stringLength, CHARSET_UTF8);
 			} catch (UnsupportedEncodingException e) {
 				throw new IllegalStateException(e);
 			}
@@ -369,6 +412,51 @@ public class ReadBuffer {
 		return result;
 	}
 
+	/**
+	 * Decodes a variable amount of bytes from the read buffer to a Tag with
+	 * 'key' and adds it to 'tags'. The Tag is taken from the shared
+	 * {@link TagDictionary}.
+	 * 
+	 * @return true if a valid string was read.
+	 */
+	boolean readTag(TagSet tags, String key) {
+		int stringLength = readUnsignedInt();
+
+		if (stringLength > 0 && mBufferPosition + stringLength <= mBuffer.limit()) {
+			int pos = mBufferPosition;
+			mBufferPosition += stringLength;
+
+			if (mBuffer.hasArray()) {
+				tags.add(TagDictionary.shared.getTag(key, mBuffer.array(),
+				                                     mBuffer.arrayOffset() + pos,
+				                                     stringLength));
+				return true;
+			}
+
+			if (mStringData == null || mStringData.length < stringLength)
+				mStringData = new byte[stringLength];
+
+			for (int i = 0; i < stringLength; i++)
+				mStringData[i] = mBuffer.get(pos + i);
+
+			tags.add(TagDictionary.shared.getTag(key, mStringData, 0, stringLength));
+			return true;
+		}
+		LOG.warning("invalid string length: " + stringLength);
+		return false;
+	}
+
+	/**
+	 * Like {@link #readTag(TagSet, String)} for the string at 'position'.
+	 */
+	boolean readTagAt(TagSet tags, String key, int position) {
+		int curPosition = mBufferPosition;
+		mBufferPosition = position;
+		boolean result = readTag(tags, key);
+		mBufferPosition = curPosition;
+		return result;
+	}
+
 	/**
 	 * @return the current buffer position.
 	 */
@@ -380,7 +468,7 @@ public class ReadBuffer {
 	 * @return the current size of the read buffer.
 	 */
 	int getBufferSize() {
-		return mBufferData.length;
+		return mBuffer.limit();
 	}
 
 	/**
@@ -424,7 +512,7 @@ public class ReadBuffer {
 
 	int skipWays(int queryTileBitmask, int elements) {
 		int pos = mBufferPosition;
-		byte[] data = mBufferData;
+		ByteBuffer data = mBuffer;
 		int cnt = elements;
 		int skip;
 
@@ -432,30 +520,30 @@ public class ReadBuffer {
 
 		while (cnt > 0) {
 			// read way size (unsigned int)
-			if ((data[pos] & 0x80) == 0) {
-				skip = (data[pos] & 0x7f);
+			if ((data.get(pos) & 0x80) == 0) {
+				skip = (data.get(pos) & 0x7f);
 				pos += 1;
-			} else if ((data[pos + 1] & 0x80) == 0) {
-				skip = (data[pos] & 0x7f)
-				        | (data[pos + 1] & 0x7f) << 7;
+			} else if ((data.get(pos + 1) & 0x80) == 0) {
+				skip = (data.get(pos) & 0x7f)
+				        | (data.get(pos + 1) & 0x7f) << 7;
 				pos += 2;
-			} else if ((data[pos + 2] & 0x80) == 0) {
-				skip = (data[pos] & 0x7f)
-				        | ((data[pos + 1] & 0x7f) << 7)
-				        | ((data[pos + 2] & 0x7f) << 14);
+			} else if ((data.get(pos + 2) & 0x80) == 0) {
+				skip = (data.get(pos) & 0x7f)
+				        | ((data.get(pos + 1) & 0x7f) << 7)
+				        | ((data.get(pos + 2) & 0x7f) << 14);
 				pos += 3;
-			} else if ((data[pos + 3] & 0x80) == 0) {
-				skip = (data[pos] & 0x7f)
-				        | ((data[pos + 1] & 0x7f) << 7)
-				        | ((data[pos + 2] & 0x7f) << 14)
-				        | ((data[pos + 3] & 0x7f) << 21);
+			} else if ((data.get(pos + 3) & 0x80) == 0) {
+				skip = (data.get(pos) & 0x7f)
+				        | ((data.get(pos + 1) & 0x7f) << 7)
+				        | ((data.get(pos + 2) & 0x7f) << 14)
+				        | ((data.get(pos + 3) & 0x7f) << 21);
 				pos += 4;
 			} else {
-				skip = (data[pos] & 0x7f)
-				        | ((data[pos + 1] & 0x7f) << 7)
-				        | ((data[pos + 2] & 0x7f) << 14)
-				        | ((data[pos + 3] & 0x7f) << 21)
-				        | ((data[pos + 4] & 0x7f) << 28);
+				skip = (data.get(pos) & 0x7f)
+				        | ((data.get(pos + 1) & 0x7f) << 7)
+				        | ((data.get(pos + 2) & 0x7f) << 14)
+				        | ((data.get(pos + 3) & 0x7f) << 21)
+				        | ((data.get(pos + 4) & 0x7f) << 28);
 				pos += 5;
 			}
 			// invalid way size
@@ -465,10 +553,10 @@ public class ReadBuffer {
 			}
 
 			// check if way matches queryTileBitmask
-			if ((((data[pos] << 8) | (data[pos + 1] & 0xff)) & queryTileBitmask) == 0) {
+			if ((((data.get(pos) << 8) | (data.get(pos + 1) & 0xff)) & queryTileBitmask) == 0) {
 
 				// remember last tags position
-				if ((data[pos + 2] & WAY_NUMBER_OF_TAGS_BITMASK) != 0)
+				if ((data.get(pos + 2) & WAY_NUMBER_OF_TAGS_BITMASK) != 0)
 					lastTagPosition = pos + 2;
 
 				pos += skip;
@@ -21,7 +21,7 @@ import java.io.InputStream;
 
 import org.oscim.core.GeometryBuffer.GeometryType;
 import org.oscim.core.MapElement;
-import org.oscim.core.Tag;
+import org.oscim.core.TagDictionary;
 import org.oscim.core.TagSet;
 import org.oscim.core.Tile;
 import org.oscim.tiling.ITileDataSink;
@@ -74,7 +74,7 @@ public class TileDecoder extends PbfDecoder {
 	private final static float REF_TILE_SIZE = 4096.0f;
 	private final float mScaleFactor = REF_TILE_SIZE / Tile.SIZE;
 
-	TileDecoder() {
+	public TileDecoder() {
 		mElem = new MapElement();
 		mTileTags = new TagSet(100);
 	}
@@ -83,9 +83,27 @@ public class TileDecoder extends PbfDecoder {
 	public boolean decode(Tile tile, ITileDataSink sink, InputStream is)
 	        throws IOException {
 
-		readUnsignedInt(is, buffer);
 		setInputStream(is);
+		/* skip message length */
+		readUnsignedInt(is, buffer);
+
+		return decodeTile(tile, sink);
+	}
+
+	@Override
+	public boolean decode(Tile tile, ITileDataSink sink, byte[] data, int offset, int length)
+	        throws IOException {
 
+		if (length < 4)
+			return false;
+
+		/* skip message length */
+		setInput(data, offset + 4, length - 4);
+
+		return decodeTile(tile, sink);
+	}
+
+	private boolean decodeTile(Tile tile, ITileDataSink sink) throws IOException {
 		mTile = tile;
 		mMapDataSink = sink;
 
@@ -121,7 +139,7 @@ public class TileDecoder extends PbfDecoder {
 						          mTile, numKeys);
 						return false;
 					}
-					keys[curKey++] = decodeString().intern();
+					keys[curKey++] = decodeSharedString(true);
 					break;
 
 				case TAG_TILE_TAG_VALUES:
@@ -130,7 +148,7 @@ public class TileDecoder extends PbfDecoder {
 						          mTile, numValues);
 						return false;
 					}
-					values[curValue++] = decodeString();
+					values[curValue++] = decodeSharedString(false);
 					break;
 
 				case TAG_TILE_NUM_TAGS:
@@ -184,7 +202,8 @@ public class TileDecoder extends PbfDecoder {
 	private boolean decodeTileTags(int numTags, int[] tagIdx,
 	        String[] keys, String[] vals) {
 
-		Tag tag;
+		TagDictionary dict = TagDictionary.shared;
+
 		for (int i = 0, n = (numTags << 1); i < n; i += 2) {
 			int k = tagIdx[i];
 			int v = tagIdx[i + 1];
@@ -212,19 +231,7 @@ public class TileDecoder extends PbfDecoder {
 				val = vals[v];
 			}
 
-			// FIXME filter out all variable tags
-			// might depend on theme though
-			if (key == Tag.KEY_NAME
-			        || key == Tag.KEY_HEIGHT
-			        || key == Tag.KEY_MIN_HEIGHT
-			        || key == Tag.KEY_HOUSE_NUMBER
-			        || key == Tag.KEY_REF
-			        || key == Tag.KEY_ELE)
-				tag = new Tag(key, val, false);
-			else
-				tag = new Tag(key, val, false, true);
-
-			mTileTags.add(tag);
+			mTileTags.add(dict.getTag(key, val));
 		}
 
 		return true;
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counter for durations (or sizes): number of samples, their sum and
+ * maximum. Lock-free and allocation-free, can be updated from any thread.
+ */
+public final class Metric {
+
+	private final AtomicLong mCount = new AtomicLong();
+	private final AtomicLong mSum = new AtomicLong();
+	private final AtomicLong mMax = new AtomicLong();
+
+	public void add(long value) {
+		mCount.incrementAndGet();
+		mSum.addAndGet(value);
+
+		long max;
+		while (value > (max = mMax.get())) {
+			if (mMax.compareAndSet(max, value))
+				break;
+		}
+	}
+
+	/**
+	 * Add time elapsed since 'start'.
+	 * 
+	 * @param start
+	 *            time from {@link System#nanoTime()}
+	 * @return the current time, to be used as start of the next interval.
+	 */
+	public long addSince(long start) {
+		long now = System.nanoTime();
+		add(now - start);
+		return now;
+	}
+
+	public long getCount() {
+		return mCount.get();
+	}
+
+	public long getSum() {
+		return mSum.get();
+	}
+
+	public long getMax() {
+		return mMax.get();
+	}
+
+	public double getMean() {
+		long count = mCount.get();
+		return count == 0 ? 0 : mSum.get() / (double) count;
+	}
+
+	public void reset() {
+		mCount.set(0);
+		mSum.set(0);
+		mMax.set(0);
+	}
+
+	/** Format as time, assuming values are nanoseconds */
+	public String toTimeString() {
+		return getCount()
+		        + " mean:" + millis(getMean())
+		        + "ms max:" + millis(getMax()) + "ms";
+	}
+
+	/** nanoseconds to milliseconds, rounded to 1/100 */
+	static double millis(double nanos) {
+		return Math.round(nanos / 1e4) / 100.0;
+	}
+
+	@Override
+	public String toString() {
+		return getCount() + " sum:" + getSum() + " max:" + getMax();
+	}
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2014 Hannes Janetzek
+ *
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.utils;
+
+/**
+ * Sums up the time of start/stop intervals. Not thread-safe, to be owned
+ * by one thread.
+ */
+public final class Stopwatch {
+
+	private long mStart;
+	private long mElapsed;
+
+	public void start() {
+		mStart = System.nanoTime();
+	}
+
+	/** @return the duration of this interval in nanoseconds */
+	public long stop() {
+		long d = System.nanoTime() - mStart;
+		mElapsed += d;
+		return d;
+	}
+
+	/** @return sum of intervals since last reset in nanoseconds */
+	public long getElapsed() {
+		return mElapsed;
+	}
+
+	public void reset() {
+		mElapsed = 0;
+	}
+}
@@ -63,6 +63,57 @@ public class SimplifyDP {
 
 	public int simplify(float[] points, int inPos, int length, int out, float sqTolerance) {
 
+		markPoints(points, inPos, length, sqTolerance);
+
+		points[out++] = points[inPos];
+		points[out++] = points[inPos + 1];
+
+		int last = inPos + length - 2;
+
+		for (int i = 0; i < length / 2; i++) {
+			if (!markers[i])
+				continue;
+			markers[i] = false;
+
+			int pos = inPos + i * 2;
+
+			points[out++] = points[pos];
+			points[out++] = points[pos + 1];
+		}
+		points[out++] = points[last];
+		points[out++] = points[last + 1];
+
+		return out;
+	}
+
+	/**
+	 * Simplify without modifying points.
+	 * 
+	 * @param index
+	 *            receives the indices of the remaining points, relative to
+	 *            inPos. Must have space for length / 2 indices.
+	 * @return number of remaining points
+	 */
+	public int simplify(float[] points, int inPos, int length, int[] index, float sqTolerance) {
+
+		markPoints(points, inPos, length, sqTolerance);
+
+		int out = 0;
+		index[out++] = 0;
+
+		for (int i = 0; i < length / 2; i++) {
+			if (!markers[i])
+				continue;
+			markers[i] = false;
+			index[out++] = i;
+		}
+		index[out++] = length / 2 - 1;
+
+		return out;
+	}
+
+	private void markPoints(float[] points, int inPos, int length, float sqTolerance) {
+
 		if ((length >> 1) >= markers.length)
 			markers = new boolean[length >> 1];
 		//else
@@ -109,25 +160,5 @@ public class SimplifyDP {
 			last = stack[--sp];
 			first = stack[--sp];
 		}
-
-		points[out++] = points[inPos];
-		points[out++] = points[inPos + 1];
-
-		last = inPos + length - 2;
-
-		for (int i = 0; i < length / 2; i++) {
-			if (!markers[i])
-				continue;
-			markers[i] = false;
-
-			int pos = inPos + i * 2;
-
-			points[out++] = points[pos];
-			points[out++] = points[pos + 1];
-		}
-		points[out++] = points[last];
-		points[out++] = points[last + 1];
-
-		return out;
 	}
 }